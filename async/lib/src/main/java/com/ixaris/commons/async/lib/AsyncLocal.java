@@ -28,7 +28,8 @@ import com.ixaris.commons.misc.lib.id.UniqueIdGenerator;
 import com.ixaris.commons.misc.lib.object.EqualsUtil;
 
 /**
- * Works like thread local but across an async process. Uses thread locals internally.
+ * Works like thread local but across an async process. Uses thread locals internally. Each async local is assigned
+ * a slot on creation, and the values of all async locals are kept in an immutable array indexed by slot.
  *
  * <p>Async local values are expected to be immutable, since async locals can be used concurrently across threads if the process forks
  */
@@ -54,43 +55,65 @@ public class AsyncLocal<T> {
     
     public static final class Snapshot {
         
-        private final ImmutableMap<AsyncLocal<?>, Object> map;
+        private final AsyncLocalValues values;
         
         private Snapshot() {
-            map = ASYNC_LOCALS.get(); // return same instance (immutable)
+            values = ASYNC_LOCALS.get(); // return same instance (immutable)
         }
         
         private Snapshot(final AsyncLocals locals) {
-            final ImmutableMap.Builder<AsyncLocal<?>, Object> builder = ImmutableMap.builder();
-            locals
-                .getAsyncLocalMap()
-                .forEach((k, v) -> {
-                    final AsyncLocal<?> asyncLocal = ASYNC_LOCAL_MAP.get(k);
-                    if (asyncLocal == null) {
-                        throw new IllegalStateException(String.format("AsyncLocal for %s not found", k));
-                    }
-                    try {
-                        builder.put(asyncLocal, asyncLocal.decode(v));
-                    } catch (final InvalidProtocolBufferException e) {
-                        throw new IllegalStateException(e);
-                    }
-                });
-            map = builder.build();
+            AsyncLocalValues decoded = AsyncLocalValues.EMPTY;
+            for (final Entry<String, AsyncLocalValue> entry : locals.getAsyncLocalMap().entrySet()) {
+                final AsyncLocal<?> asyncLocal = ASYNC_LOCAL_MAP.get(entry.getKey());
+                if (asyncLocal == null) {
+                    throw new IllegalStateException(String.format("AsyncLocal for %s not found", entry.getKey()));
+                }
+                try {
+                    decoded = decoded.with(asyncLocal.slot, asyncLocal.decode(entry.getValue()));
+                } catch (final InvalidProtocolBufferException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (decoded != AsyncLocalValues.EMPTY) {
+                // the received async locals are the encoded form, so relaying them as is does not encode them again
+                decoded.setEncoded(locals);
+            }
+            values = decoded;
         }
         
         public Map<AsyncLocal<?>, Object> getMap() {
-            return map;
+            final ImmutableMap.Builder<AsyncLocal<?>, Object> builder = ImmutableMap.builder();
+            final AsyncLocal<?>[] slots = SLOTS;
+            for (int i = 0; i < values.slots(); i++) {
+                final Object value = values.get(i);
+                if (value != null) {
+                    builder.put(slots[i], value);
+                }
+            }
+            return builder.build();
         }
         
         public AsyncLocals encode() {
+            final AsyncLocals memoised = values.getEncoded();
+            if (memoised != null) {
+                return memoised;
+            }
+            
             final AsyncLocals.Builder builder = AsyncLocals.newBuilder();
-            map.forEach((k, v) -> {
-                final AsyncLocalValue encoded = encode(k, (v instanceof Stack) ? ((Stack) v).peek() : v);
-                if (encoded != null) {
-                    builder.putAsyncLocal(k.key, encoded);
+            final AsyncLocal<?>[] slots = SLOTS;
+            for (int i = 0; i < values.slots(); i++) {
+                final Object value = values.get(i);
+                if (value != null) {
+                    final AsyncLocal<?> asyncLocal = slots[i];
+                    final AsyncLocalValue encoded = encode(asyncLocal, (value instanceof Stack) ? ((Stack) value).peek() : value);
+                    if (encoded != null) {
+                        builder.putAsyncLocal(asyncLocal.key, encoded);
+                    }
                 }
-            });
-            return builder.build();
+            }
+            final AsyncLocals encoded = builder.build();
+            values.setEncoded(encoded);
+            return encoded;
         }
         
         @SuppressWarnings("unchecked")
@@ -123,8 +146,8 @@ public class AsyncLocal<T> {
                 throw new IllegalArgumentException("task is null");
             }
             
-            final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals = ASYNC_LOCALS.get();
-            ImmutableMap<AsyncLocal<?>, Object> asyncLocals = prevAsyncLocals;
+            final AsyncLocalValues prevAsyncLocals = ASYNC_LOCALS.get();
+            AsyncLocalValues asyncLocals = prevAsyncLocals;
             for (final Entry<AsyncLocal<?>, Object> entry : map.entrySet()) {
                 asyncLocals = entry.getKey().applyValue(entry.getValue(), asyncLocals);
             }
@@ -136,8 +159,8 @@ public class AsyncLocal<T> {
                 throw new IllegalArgumentException("task is null");
             }
             
-            final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals = ASYNC_LOCALS.get();
-            ImmutableMap<AsyncLocal<?>, Object> asyncLocals = prevAsyncLocals;
+            final AsyncLocalValues prevAsyncLocals = ASYNC_LOCALS.get();
+            AsyncLocalValues asyncLocals = prevAsyncLocals;
             for (final Entry<AsyncLocal<?>, Object> entry : map.entrySet()) {
                 asyncLocals = entry.getKey().applyValue(entry.getValue(), asyncLocals);
             }
@@ -149,8 +172,8 @@ public class AsyncLocal<T> {
                 throw new IllegalArgumentException("task is null");
             }
             
-            final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals = ASYNC_LOCALS.get();
-            ImmutableMap<AsyncLocal<?>, Object> asyncLocals = prevAsyncLocals;
+            final AsyncLocalValues prevAsyncLocals = ASYNC_LOCALS.get();
+            AsyncLocalValues asyncLocals = prevAsyncLocals;
             for (final Entry<AsyncLocal<?>, Object> entry : map.entrySet()) {
                 asyncLocals = entry.getKey().applyValue(entry.getValue(), asyncLocals);
             }
@@ -200,64 +223,65 @@ public class AsyncLocal<T> {
     }
     
     private static volatile ImmutableMap<String, AsyncLocal<?>> ASYNC_LOCAL_MAP = ImmutableMap.of();
+    private static volatile AsyncLocal<?>[] SLOTS = new AsyncLocal<?>[0];
     
     public static <T> Callable<T> wrap(final Callable<T> callable) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return () -> executeAndRestoreAsyncLocals(CallableThrows.from(callable), snapshot, ASYNC_LOCALS.get());
     }
     
     public static Runnable wrap(final Runnable runnable) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return () -> executeAndRestoreAsyncLocals(RunnableThrows.from(runnable), snapshot, ASYNC_LOCALS.get());
     }
     
     public static <T> Consumer<T> wrap(final Consumer<T> consumer) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return v -> executeAndRestoreAsyncLocals(() -> consumer.accept(v), snapshot, ASYNC_LOCALS.get());
     }
     
     public static <T, R> Function<T, R> wrap(final Function<T, R> function) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return t -> executeAndRestoreAsyncLocals(() -> function.apply(t), snapshot, ASYNC_LOCALS.get());
     }
     
     public static <T, U> BiConsumer<T, U> wrap(final BiConsumer<T, U> biConsumer) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return (t, u) -> executeAndRestoreAsyncLocals(() -> biConsumer.accept(t, u), snapshot, ASYNC_LOCALS.get());
     }
     
     public static <T, U, R> BiFunction<T, U, R> wrapThrows(final BiFunction<T, U, R> biFunction) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return (t, u) -> executeAndRestoreAsyncLocals(() -> biFunction.apply(t, u), snapshot, ASYNC_LOCALS.get());
     }
     
     public static <V, E extends Exception> CallableThrows<V, E> wrapThrows(final CallableThrows<V, E> callable) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return () -> executeAndRestoreAsyncLocals(callable, snapshot, ASYNC_LOCALS.get());
     }
     
     public static <E extends Exception> RunnableThrows<E> wrapThrows(final RunnableThrows<E> runnable) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return () -> executeAndRestoreAsyncLocals(runnable, snapshot, ASYNC_LOCALS.get());
     }
     
     public static <T, E extends Exception> ConsumerThrows<T, E> wrapThrows(final ConsumerThrows<T, E> consumer) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return t -> executeAndRestoreAsyncLocals(() -> consumer.accept(t), snapshot, ASYNC_LOCALS.get());
     }
     
     public static <T, R, E extends Exception> FunctionThrows<T, R, E> wrapThrows(final FunctionThrows<T, R, E> function) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return t -> executeAndRestoreAsyncLocals(() -> function.apply(t), snapshot, ASYNC_LOCALS.get());
     }
     
     public static <T, U, R, E extends Exception> BiFunctionThrows<T, U, R, E> wrapThrows(final BiFunctionThrows<T, U, R, E> biFunction) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return (t, u) -> executeAndRestoreAsyncLocals(() -> biFunction.apply(t, u), snapshot, ASYNC_LOCALS.get());
     }
     
     public static <T, E extends Exception> CompletionStageCallableThrows<T, E> wrapThrows(final CompletionStageCallableThrows<T, E> callable) {
-        final ImmutableMap<AsyncLocal<?>, Object> snapshot = ASYNC_LOCALS.get();
+        final AsyncLocalValues snapshot = ASYNC_LOCALS.get();
         return () -> executeAndRestoreAsyncLocals(callable, snapshot, ASYNC_LOCALS.get());
     }
     
@@ -278,7 +302,7 @@ public class AsyncLocal<T> {
             throw new IllegalArgumentException("callable is null");
         }
         
-        return executeAndRestoreAsyncLocals(callable, snapshot != null ? snapshot.map : EMPTY, ASYNC_LOCALS.get());
+        return executeAndRestoreAsyncLocals(callable, snapshot != null ? snapshot.values : AsyncLocalValues.EMPTY, ASYNC_LOCALS.get());
     }
     
     public static <V, E extends Exception> V exec(final Snapshot snapshot, final CallableThrows<V, E> callable) throws E {
@@ -286,7 +310,7 @@ public class AsyncLocal<T> {
             throw new IllegalArgumentException("callable is null");
         }
         
-        return executeAndRestoreAsyncLocals(callable, snapshot != null ? snapshot.map : EMPTY, ASYNC_LOCALS.get());
+        return executeAndRestoreAsyncLocals(callable, snapshot != null ? snapshot.values : AsyncLocalValues.EMPTY, ASYNC_LOCALS.get());
     }
     
     public static <E extends Exception> void exec(final Snapshot snapshot, final RunnableThrows<E> runnable) throws E {
@@ -294,13 +318,13 @@ public class AsyncLocal<T> {
             throw new IllegalArgumentException("runnable is null");
         }
         
-        executeAndRestoreAsyncLocals(runnable, snapshot != null ? snapshot.map : EMPTY, ASYNC_LOCALS.get());
+        executeAndRestoreAsyncLocals(runnable, snapshot != null ? snapshot.values : AsyncLocalValues.EMPTY, ASYNC_LOCALS.get());
     }
     
     @SuppressWarnings("squid:S1698")
     private static <V, E extends Exception> Async<V> executeAndRestoreAsyncLocals(final CompletionStageCallableThrows<V, E> callable,
-                                                                                  final ImmutableMap<AsyncLocal<?>, Object> asyncLocals,
-                                                                                  final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals) throws E {
+                                                                                  final AsyncLocalValues asyncLocals,
+                                                                                  final AsyncLocalValues prevAsyncLocals) throws E {
         if (asyncLocals == prevAsyncLocals) {
             return from(callable.call());
         } else {
@@ -316,8 +340,8 @@ public class AsyncLocal<T> {
     
     @SuppressWarnings("squid:S1698")
     private static <V, E extends Exception> V executeAndRestoreAsyncLocals(final CallableThrows<V, E> callable,
-                                                                           final ImmutableMap<AsyncLocal<?>, Object> asyncLocals,
-                                                                           final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals) throws E {
+                                                                           final AsyncLocalValues asyncLocals,
+                                                                           final AsyncLocalValues prevAsyncLocals) throws E {
         if (asyncLocals == prevAsyncLocals) {
             return callable.call();
         } else {
@@ -332,8 +356,8 @@ public class AsyncLocal<T> {
     
     @SuppressWarnings("squid:S1698")
     private static <E extends Exception> void executeAndRestoreAsyncLocals(final RunnableThrows<E> runnable,
-                                                                           final ImmutableMap<AsyncLocal<?>, Object> asyncLocals,
-                                                                           final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals) throws E {
+                                                                           final AsyncLocalValues asyncLocals,
+                                                                           final AsyncLocalValues prevAsyncLocals) throws E {
         if (asyncLocals == prevAsyncLocals) {
             runnable.run();
         } else {
@@ -346,10 +370,10 @@ public class AsyncLocal<T> {
         }
     }
     
-    private static final ImmutableMap<AsyncLocal<?>, Object> EMPTY = ImmutableMap.of();
-    private static final ThreadLocal<ImmutableMap<AsyncLocal<?>, Object>> ASYNC_LOCALS = ThreadLocal.withInitial(() -> EMPTY);
+    private static final ThreadLocal<AsyncLocalValues> ASYNC_LOCALS = ThreadLocal.withInitial(() -> AsyncLocalValues.EMPTY);
     
     private final String key;
+    private final int slot;
     private final AsyncLocalValidatorTransformer<T> validatorTransformer;
     
     public AsyncLocal() {
@@ -400,6 +424,10 @@ public class AsyncLocal<T> {
                 throw new IllegalStateException(String.format("Already registered AsyncLocal with key %s", key));
             }
             ASYNC_LOCAL_MAP = GuavaCollections.copyOfMapAdding(ASYNC_LOCAL_MAP, key, this);
+            slot = SLOTS.length;
+            final AsyncLocal<?>[] slots = Arrays.copyOf(SLOTS, slot + 1);
+            slots[slot] = this;
+            SLOTS = slots;
         }
     }
     
@@ -425,7 +453,7 @@ public class AsyncLocal<T> {
     
     @SuppressWarnings("unchecked")
     public final T get() {
-        Object o = ASYNC_LOCALS.get().get(this);
+        Object o = ASYNC_LOCALS.get().get(slot);
         if (o instanceof Stack) {
             o = ((Stack) o).peek();
         }
@@ -440,8 +468,8 @@ public class AsyncLocal<T> {
             throw new IllegalArgumentException("task is null");
         }
         
-        final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals = ASYNC_LOCALS.get();
-        final ImmutableMap<AsyncLocal<?>, Object> asyncLocals = applyValue(value, prevAsyncLocals);
+        final AsyncLocalValues prevAsyncLocals = ASYNC_LOCALS.get();
+        final AsyncLocalValues asyncLocals = applyValue(value, prevAsyncLocals);
         return executeAndRestoreAsyncLocals(task, asyncLocals, prevAsyncLocals);
     }
     
@@ -453,8 +481,8 @@ public class AsyncLocal<T> {
             throw new IllegalArgumentException("task is null");
         }
         
-        final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals = ASYNC_LOCALS.get();
-        final ImmutableMap<AsyncLocal<?>, Object> asyncLocals = applyValue(value, prevAsyncLocals);
+        final AsyncLocalValues prevAsyncLocals = ASYNC_LOCALS.get();
+        final AsyncLocalValues asyncLocals = applyValue(value, prevAsyncLocals);
         return executeAndRestoreAsyncLocals(task, asyncLocals, prevAsyncLocals);
     }
     
@@ -466,8 +494,8 @@ public class AsyncLocal<T> {
             throw new IllegalArgumentException("task is null");
         }
         
-        final ImmutableMap<AsyncLocal<?>, Object> prevAsyncLocals = ASYNC_LOCALS.get();
-        final ImmutableMap<AsyncLocal<?>, Object> asyncLocals = applyValue(value, prevAsyncLocals);
+        final AsyncLocalValues prevAsyncLocals = ASYNC_LOCALS.get();
+        final AsyncLocalValues asyncLocals = applyValue(value, prevAsyncLocals);
         executeAndRestoreAsyncLocals(task, asyncLocals, prevAsyncLocals);
     }
     
@@ -488,14 +516,14 @@ public class AsyncLocal<T> {
     }
     
     /**
-     * @return the async local map of values, which is the same instance if there is no change
+     * @return the async local values, which is the same instance if there is no change
      */
     @SuppressWarnings("unchecked")
-    private ImmutableMap<AsyncLocal<?>, Object> applyValue(final Object value, final ImmutableMap<AsyncLocal<?>, Object> asyncLocals) {
-        final Object currentObject = asyncLocals.get(this);
+    private AsyncLocalValues applyValue(final Object value, final AsyncLocalValues asyncLocals) {
+        final Object currentObject = asyncLocals.get(slot);
         if (currentObject == null) {
             // for non-stackable values, single value is placed without wrapping in a stack
-            return GuavaCollections.copyOfMapAdding(asyncLocals, this, value);
+            return asyncLocals.with(slot, value);
             
         } else if (!(currentObject instanceof Stack)) {
             final T current = (T) currentObject;
@@ -505,7 +533,7 @@ public class AsyncLocal<T> {
                 return asyncLocals;
             } else {
                 // second value causes stack to be created
-                return GuavaCollections.copyOfMapAdding(asyncLocals, this, Stack.init(current, transformed));
+                return asyncLocals.with(slot, Stack.init(current, transformed));
             }
             
         } else {
@@ -516,7 +544,7 @@ public class AsyncLocal<T> {
                 // same value, so just run
                 return asyncLocals;
             } else {
-                return GuavaCollections.copyOfMapAdding(asyncLocals, this, Stack.copyAndPush(stack, transformed));
+                return asyncLocals.with(slot, Stack.copyAndPush(stack, transformed));
             }
         }
     }
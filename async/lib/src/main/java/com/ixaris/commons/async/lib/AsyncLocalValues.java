@@ -0,0 +1,64 @@
+package com.ixaris.commons.async.lib;
+
+import java.util.Arrays;
+
+import com.ixaris.commons.async.lib.CommonsAsyncLib.AsyncLocals;
+
+/**
+ * Immutable set of async local values, indexed by the slot of each async local, giving O(1) lookup. Setting a value
+ * copies the array of slots (typically only a handful) while sharing the values themselves, and unchanged values
+ * return the same instance.
+ *
+ * <p>Instances are shared across threads and async processes, so the encoded form is memoised per instance. Routing
+ * the same (unchanged) async locals multiple times, or relaying async locals as received, encodes them only once.
+ */
+final class AsyncLocalValues {
+    
+    static final AsyncLocalValues EMPTY = new AsyncLocalValues(new Object[0], AsyncLocals.getDefaultInstance());
+    
+    private final Object[] values;
+    
+    // benign race, encoding is idempotent
+    private volatile AsyncLocals encoded;
+    
+    private AsyncLocalValues(final Object[] values, final AsyncLocals encoded) {
+        this.values = values;
+        this.encoded = encoded;
+    }
+    
+    Object get(final int slot) {
+        return (slot < values.length) ? values[slot] : null;
+    }
+    
+    /**
+     * @return the async local values with the given slot set to the given value, which is the same instance if there is
+     *     no change
+     */
+    @SuppressWarnings("squid:S1698")
+    AsyncLocalValues with(final int slot, final Object value) {
+        final Object current = get(slot);
+        if (current == value) {
+            return this;
+        }
+        
+        final Object[] copy = Arrays.copyOf(values, Math.max(values.length, slot + 1));
+        copy[slot] = value;
+        return new AsyncLocalValues(copy, null);
+    }
+    
+    /**
+     * @return the number of slots, any of which may be empty
+     */
+    int slots() {
+        return values.length;
+    }
+    
+    AsyncLocals getEncoded() {
+        return encoded;
+    }
+    
+    void setEncoded(final AsyncLocals encoded) {
+        this.encoded = encoded;
+    }
+    
+}
@@ -2,10 +2,14 @@ package com.ixaris.commons.async.lib;
 
 import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -15,6 +19,7 @@ import com.google.common.collect.ImmutableSet;
 import com.newrelic.api.agent.Token;
 import com.newrelic.api.agent.Trace;
 
+import com.ixaris.commons.async.lib.CommonsAsyncLib.AsyncLocalValue;
 import com.ixaris.commons.async.lib.thread.ThreadLocalHelper;
 import com.ixaris.commons.collections.lib.GuavaCollections;
 import com.ixaris.commons.misc.lib.exception.ExceptionUtil;
@@ -27,9 +32,45 @@ import com.ixaris.commons.misc.lib.function.RunnableThrows;
 
 /**
  * Maintains stack trace of separate parts of an asynchronous process
+ *
+ * <p>Capturing a trace at every async boundary has a cost on hot paths, so what is captured depends on the
+ * {@link CaptureMode}. For sampled and opt in modes, whether an async process is traced is decided when the process
+ * starts, and the decision is carried along the process. The length of the chain of steps and the number of frames
+ * looked at to find the caller of each step are bounded.
  */
 public final class AsyncTrace {
     
+    public enum CaptureMode {
+        
+        /**
+         * No traces are captured
+         */
+        OFF,
+        
+        /**
+         * Traces are captured for every async process, each step having the stack trace of the async boundary
+         */
+        FULL,
+        
+        /**
+         * Traces are captured for a sample of async processes, see {@link #setSampleRate(double)}
+         */
+        SAMPLED,
+        
+        /**
+         * Traces are captured for async processes executed with {@link #TRACED} set, e.g. for a specific operation, or
+         * for which the opt in predicate is true, e.g. for specific tenants, see {@link #setOptIn(BooleanSupplier)}
+         */
+        OPT_IN,
+        
+        /**
+         * Traces are captured for every async process, each step recording only its caller without a stack trace.
+         * Steps are described only when an exception joined to the trace is logged
+         */
+        LAZY
+        
+    }
+    
     private static ImmutableSet<String> IGNORED_PACKAGES = ImmutableSet.of();
     
     static {
@@ -42,13 +83,120 @@ public final class AsyncTrace {
     }
     
     public static final String ASYNC_TRACE_SKIP_PROPERTY = "async.trace.skip";
+    public static final String ASYNC_TRACE_MODE_PROPERTY = "async.trace.mode";
+    public static final String ASYNC_TRACE_SAMPLE_RATE_PROPERTY = "async.trace.sample.rate";
+    public static final String ASYNC_TRACE_MAX_DEPTH_PROPERTY = "async.trace.max.depth";
+    public static final String ASYNC_TRACE_MAX_FRAMES_PROPERTY = "async.trace.max.frames";
     
     private static final Logger LOG = LoggerFactory.getLogger(AsyncTrace.class);
     public static final AsyncLocal<Token> NEW_RELIC = new AsyncLocal<>("new_relic_token");
+    
+    /**
+     * Opts in async processes to tracing in {@link CaptureMode#OPT_IN} mode. Propagated across services.
+     */
+    public static final AsyncLocal<Boolean> TRACED = new AsyncLocal<Boolean>("async_trace") {
+        
+        @Override
+        public AsyncLocalValue encode(final Boolean value) {
+            return value ? AsyncLocalValue.newBuilder().setLongValue(1L).build() : null;
+        }
+        
+        @Override
+        public Boolean decode(final AsyncLocalValue value) {
+            return value.getLongValue() == 1L;
+        }
+        
+    };
+    
     private static final ThreadLocal<AsyncTrace> TRACE = ThreadLocal.withInitial(AsyncTrace::new);
-    private static final int MAX_TRACE_DEPTH = 24;
     
-    private static final boolean RECORD_TRACE = !Boolean.parseBoolean(System.getProperty(ASYNC_TRACE_SKIP_PROPERTY, "false"));
+    // carries the decision not to trace an async process
+    private static final AsyncTrace UNTRACED = new AsyncTrace();
+    
+    private static volatile CaptureMode captureMode = Boolean.parseBoolean(System.getProperty(ASYNC_TRACE_SKIP_PROPERTY, "false"))
+        ? CaptureMode.OFF : property(ASYNC_TRACE_MODE_PROPERTY, CaptureMode.FULL, v -> CaptureMode.valueOf(v.toUpperCase(Locale.ROOT)), m -> true);
+    private static volatile double sampleRate = property(ASYNC_TRACE_SAMPLE_RATE_PROPERTY, 0.01, Double::valueOf, r -> (r >= 0.0) && (r <= 1.0));
+    private static volatile BooleanSupplier optIn = () -> false;
+    private static volatile int maxTraceDepth = property(ASYNC_TRACE_MAX_DEPTH_PROPERTY, 24, Integer::valueOf, d -> d >= 0);
+    private static volatile int maxFrames = property(ASYNC_TRACE_MAX_FRAMES_PROPERTY, 128, Integer::valueOf, f -> f > 0);
+    
+    /**
+     * Reads a system property, falling back to the default value if the property is not set or is not valid, so that a
+     * misconfigured property does not fail loading this class
+     */
+    static <T> T property(final String name, final T defaultValue, final Function<String, T> parser, final Predicate<T> validator) {
+        final String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final T parsed = parser.apply(value.trim());
+            if (validator.test(parsed)) {
+                return parsed;
+            }
+        } catch (final IllegalArgumentException e) {
+            // not valid, fall back to the default value below
+        }
+        LOG.warn("Invalid value [{}] for system property {}, using {}", value, name, defaultValue);
+        return defaultValue;
+    }
+    
+    public static CaptureMode getCaptureMode() {
+        return captureMode;
+    }
+    
+    public static void setCaptureMode(final CaptureMode captureMode) {
+        if (captureMode == null) {
+            throw new IllegalArgumentException("captureMode is null");
+        }
+        
+        AsyncTrace.captureMode = captureMode;
+    }
+    
+    /**
+     * @param sampleRate the ratio of async processes to trace in {@link CaptureMode#SAMPLED} mode, between 0 and 1
+     */
+    public static void setSampleRate(final double sampleRate) {
+        if ((sampleRate < 0.0) || (sampleRate > 1.0)) {
+            throw new IllegalArgumentException("sampleRate should be between 0 and 1");
+        }
+        
+        AsyncTrace.sampleRate = sampleRate;
+    }
+    
+    /**
+     * @param optIn evaluated when an async process starts in {@link CaptureMode#OPT_IN} mode, e.g. checking the tenant
+     *     async local, to determine whether the process is traced
+     */
+    public static void setOptIn(final BooleanSupplier optIn) {
+        if (optIn == null) {
+            throw new IllegalArgumentException("optIn is null");
+        }
+        
+        AsyncTrace.optIn = optIn;
+    }
+    
+    /**
+     * @param maxTraceDepth the maximum number of steps in a trace, after which the last step is reused
+     */
+    public static void setMaxTraceDepth(final int maxTraceDepth) {
+        if (maxTraceDepth < 0) {
+            throw new IllegalArgumentException("maxTraceDepth should not be negative");
+        }
+        
+        AsyncTrace.maxTraceDepth = maxTraceDepth;
+    }
+    
+    /**
+     * @param maxFrames the maximum number of frames looked at to find the caller of a step
+     */
+    public static void setMaxFrames(final int maxFrames) {
+        if (maxFrames <= 0) {
+            throw new IllegalArgumentException("maxFrames should be positive");
+        }
+        
+        AsyncTrace.maxFrames = maxFrames;
+    }
     
     @SuppressWarnings("squid:S864")
     public static <T> Callable<T> wrap(final Callable<T> callable) {
@@ -116,14 +264,20 @@ public final class AsyncTrace {
         return (trace != null) ? () -> exec(trace, callable) : callable;
     }
     
-    @SuppressWarnings("squid:S864")
+    @SuppressWarnings({ "squid:S864", "squid:S1698" })
     public static AsyncTrace get() {
-        if (!RECORD_TRACE) {
+        final CaptureMode mode = captureMode;
+        if (mode == CaptureMode.OFF) {
             return null;
         }
         
-        final String caller = StackWalker.findCaller(c -> IGNORED_PACKAGES.stream().noneMatch(c::startsWith), 1);
         final AsyncTrace parent = TRACE.get();
+        if ((parent.step == null) && !isTraced(mode, parent == UNTRACED)) {
+            return UNTRACED;
+        }
+        
+        final String caller = StackWalker.findCaller(c -> IGNORED_PACKAGES.stream().noneMatch(c::startsWith), 1, maxFrames);
+        final boolean stackTrace = mode != CaptureMode.LAZY;
         
         // attempt to match a previous trace to the caller. If matched, trace is trimmed to that point
         AsyncStep matchedStep;
@@ -145,15 +299,15 @@ public final class AsyncTrace {
             // loop) and the last iteration with the iteration count
             final AsyncStep matchedStepCause = matchedStep.getCause();
             if ((matchedStepCause != null) && (matchedStep.caller.equals(matchedStepCause.caller))) {
-                step = new AsyncStep(caller, matchedStepCause, matchedStep.depth, matchedStep.iterations + 1);
+                step = new AsyncStep(caller, matchedStepCause, matchedStep.depth, matchedStep.iterations + 1, stackTrace);
             } else {
-                step = new AsyncStep(caller, matchedStep, matchedStep.depth, matchedStep.iterations + 1);
+                step = new AsyncStep(caller, matchedStep, matchedStep.depth, matchedStep.iterations + 1, stackTrace);
             }
         } else if (parent.step != null) {
-            step = parent.step.depth < MAX_TRACE_DEPTH
-                ? new AsyncStep(caller, parent.step, parent.step.depth + 1, 1) : parent.step;
+            step = parent.step.depth < maxTraceDepth
+                ? new AsyncStep(caller, parent.step, parent.step.depth + 1, 1, stackTrace) : parent.step;
         } else {
-            step = new AsyncStep(caller);
+            step = new AsyncStep(caller, null, 0, 1, stackTrace);
         }
         
         return new AsyncTrace(step);
@@ -227,6 +381,20 @@ public final class AsyncTrace {
         }
     }
     
+    /**
+     * Determines whether an async process being started (or an untraced one, which may opt in) is traced
+     */
+    private static boolean isTraced(final CaptureMode mode, final boolean untraced) {
+        switch (mode) {
+            case SAMPLED:
+                return !untraced && (ThreadLocalRandom.current().nextDouble() < sampleRate);
+            case OPT_IN:
+                return Boolean.TRUE.equals(TRACED.get()) || (!untraced && optIn.getAsBoolean());
+            default:
+                return !untraced;
+        }
+    }
+    
     private static void linkNewRelic() {
         final Token token = NEW_RELIC.get();
         if (token != null) {
@@ -265,19 +433,20 @@ public final class AsyncTrace {
         private final String caller;
         private final int depth;
         private final int iterations;
+        private final String threadName;
         
-        private AsyncStep(final String caller, final AsyncStep parent, final int depth, final int iterations) {
-            super(String.format("Async Step [%d] %sfrom %s @ %s", depth, ((iterations > 1) ? ("(x" + iterations + ") ") : ""), caller, Thread.currentThread().getName()), parent);
+        private AsyncStep(final String caller, final AsyncStep parent, final int depth, final int iterations, final boolean stackTrace) {
+            super(null, parent, true, stackTrace);
             this.caller = caller;
             this.depth = depth;
             this.iterations = iterations;
+            threadName = Thread.currentThread().getName();
         }
         
-        private AsyncStep(final String caller) {
-            super(String.format("Async Step [0] from %s @ %s", caller, Thread.currentThread().getName()));
-            this.caller = caller;
-            this.depth = 0;
-            this.iterations = 1;
+        @Override
+        public String getMessage() {
+            // formatted only when needed, typically when logging an exception joined to this trace
+            return String.format("Async Step [%d] %sfrom %s @ %s", depth, ((iterations > 1) ? ("(x" + iterations + ") ") : ""), caller, threadName);
         }
         
         @Override
@@ -0,0 +1,359 @@
+package com.ixaris.commons.async.lib.scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timeout facility based on a hashed timing wheel, with O(1) schedule and cancel. Intended for request timeouts, which
+ * are scheduled at a high rate and are mostly cancelled again shortly after, where a {@link Scheduler} or a
+ * {@link java.util.concurrent.ScheduledExecutorService} would churn its heap and contend on its lock.
+ *
+ * <p>Scheduling and cancelling only enqueue to lock-free queues; a single worker thread owns the wheel, moving new
+ * timeouts to their bucket and expiring the bucket of the current tick. Timeouts are therefore approximate, firing up
+ * to one tick late. Tasks are executed on the worker thread and should be short, e.g. relaying a timeout result to
+ * another executor.
+ */
+public final class HashedWheelTimer {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+    
+    private static final class CommonHolder {
+        
+        private static final HashedWheelTimer COMMON = new HashedWheelTimer("CommonTimeouts", 10L, TimeUnit.MILLISECONDS, 512);
+        
+    }
+    
+    /**
+     * @return a shared timer with 10ms ticks, suitable for request timeouts
+     */
+    public static HashedWheelTimer commonTimer() {
+        return CommonHolder.COMMON;
+    }
+    
+    public interface Timeout {
+        
+        /**
+         * @return true if cancelled, false if already expired or cancelled
+         */
+        boolean cancel();
+        
+        boolean isCancelled();
+        
+        boolean isExpired();
+        
+    }
+    
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+    
+    private static final int ST_PENDING = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+    
+    private static int normaliseTicksPerWheel(final int ticksPerWheel) {
+        return (ticksPerWheel <= 1) ? 1 : (Integer.highestOneBit(ticksPerWheel - 1) << 1);
+    }
+    
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE = AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+    
+    private final class WheelTimeout implements Timeout {
+        
+        private final Runnable task;
+        private final long deadline;
+        volatile int state = ST_PENDING;
+        
+        // following are only accessed by the worker thread
+        private long remainingRounds;
+        private WheelTimeout next;
+        private WheelTimeout prev;
+        private Bucket bucket;
+        
+        private WheelTimeout(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+        
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_PENDING, ST_CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            // unlinked from its bucket by the worker on the next tick
+            cancelledTimeouts.offer(this);
+            return true;
+        }
+        
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+        
+        @Override
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+        
+        @SuppressWarnings("squid:S1181")
+        private void expire() {
+            if (STATE.compareAndSet(this, ST_PENDING, ST_EXPIRED)) {
+                pending.decrementAndGet();
+                try {
+                    task.run();
+                } catch (final Throwable t) {
+                    LOG.error("Error while executing timeout task", t);
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * Doubly linked list of timeouts, only accessed by the worker thread
+     */
+    private final class Bucket {
+        
+        private WheelTimeout head;
+        private WheelTimeout tail;
+        
+        private void add(final WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = timeout;
+                tail = timeout;
+                occupiedBuckets++;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+        
+        private WheelTimeout remove(final WheelTimeout timeout) {
+            final WheelTimeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                if (timeout == tail) {
+                    head = null;
+                    tail = null;
+                    occupiedBuckets--;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+        
+        private void expire() {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                if (timeout.remainingRounds <= 0L) {
+                    // deadline of the timeout is within this tick, as it was placed in the corresponding bucket
+                    final WheelTimeout next = remove(timeout);
+                    timeout.expire();
+                    timeout = next;
+                } else if (timeout.isCancelled()) {
+                    timeout = remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+        
+    }
+    
+    private final String name;
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Thread worker;
+    private final long startTime;
+    
+    private final Queue<WheelTimeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    
+    private volatile boolean running = true;
+    private volatile int occupiedBuckets = 0;
+    private volatile long lastTickLag = 0L;
+    private volatile long maxTickLag = 0L;
+    private long tick = 0L;
+    
+    /**
+     * @param name the name of the worker thread
+     * @param tickDuration the duration of a tick, i.e. the precision of the timeouts
+     * @param unit the time unit of tickDuration
+     * @param ticksPerWheel the number of buckets (rounded up to a power of 2). A wheel round should cover the typical
+     *     timeout, so that most timeouts expire in the first round
+     */
+    public HashedWheelTimer(final String name, final long tickDuration, final TimeUnit unit, final int ticksPerWheel) {
+        if (name == null) {
+            throw new IllegalArgumentException("name is null");
+        }
+        if (tickDuration <= 0L) {
+            throw new IllegalArgumentException("tickDuration should be positive");
+        }
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("ticksPerWheel should be positive");
+        }
+        
+        this.name = name;
+        this.tickDuration = Math.max(unit.toNanos(tickDuration), TimeUnit.MILLISECONDS.toNanos(1L));
+        wheel = new Bucket[normaliseTicksPerWheel(ticksPerWheel)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = wheel.length - 1;
+        
+        startTime = System.nanoTime();
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    /**
+     * Schedules the specified task for execution after the specified delay (rounded up to the next tick)
+     *
+     * @param task the task to execute
+     * @param delay the time to delay execution
+     * @param unit the time unit of the delay
+     * @return the timeout which can be used to cancel the task
+     */
+    public Timeout newTimeout(final Runnable task, final long delay, final TimeUnit unit) {
+        if (task == null) {
+            throw new IllegalArgumentException("task is null");
+        }
+        if (!running) {
+            throw new IllegalStateException(name + " is shut down");
+        }
+        
+        final WheelTimeout timeout = new WheelTimeout(task, System.nanoTime() - startTime + Math.max(unit.toNanos(delay), 0L));
+        pending.incrementAndGet();
+        newTimeouts.offer(timeout);
+        return timeout;
+    }
+    
+    /**
+     * @return the number of scheduled timeouts that are neither expired nor cancelled
+     */
+    public long getPendingTimeouts() {
+        return pending.get();
+    }
+    
+    /**
+     * @return the number of wheel buckets holding at least one timeout
+     */
+    public int getOccupiedBuckets() {
+        return occupiedBuckets;
+    }
+    
+    public int getTicksPerWheel() {
+        return wheel.length;
+    }
+    
+    /**
+     * @return how late the worker processed the last tick, i.e. how late timeouts are firing in addition to the tick
+     *     precision
+     */
+    public long getTickLag(final TimeUnit unit) {
+        return unit.convert(lastTickLag, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * @return the maximum tick lag observed since started
+     */
+    public long getMaxTickLag(final TimeUnit unit) {
+        return unit.convert(maxTickLag, TimeUnit.NANOSECONDS);
+    }
+    
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+    
+    private void run() {
+        while (running) {
+            if (waitForNextTick()) {
+                processCancelled();
+                transferTimeouts();
+                wheel[(int) (tick & mask)].expire();
+                tick++;
+            }
+        }
+    }
+    
+    /**
+     * @return false if interrupted while shutting down
+     */
+    private boolean waitForNextTick() {
+        final long deadline = tickDuration * (tick + 1L);
+        while (true) {
+            final long currentTime = System.nanoTime() - startTime;
+            final long sleepTimeMs = (deadline - currentTime + 999_999L) / 1_000_000L;
+            if (sleepTimeMs <= 0L) {
+                final long lag = currentTime - deadline;
+                lastTickLag = lag;
+                if (lag > maxTickLag) {
+                    maxTickLag = lag;
+                }
+                return true;
+            }
+            
+            try {
+                Thread.sleep(sleepTimeMs);
+            } catch (final InterruptedException e) {
+                if (!running) {
+                    return false;
+                }
+            }
+        }
+    }
+    
+    private void processCancelled() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+    
+    private void transferTimeouts() {
+        // bounded, to avoid starving the expiry of the current tick when timeouts are added faster than transferred
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            final WheelTimeout timeout = newTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (!timeout.isCancelled()) {
+                final long calculated = timeout.deadline / tickDuration;
+                timeout.remainingRounds = (calculated - tick) / wheel.length;
+                // if already in the past, expire on the current tick
+                final long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " " + name;
+    }
+    
+}
@@ -17,6 +17,7 @@ import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
+import com.ixaris.commons.async.lib.CommonsAsyncLib.AsyncLocals;
 import com.ixaris.commons.async.lib.executor.AsyncExecutorWrapper;
 
 public class AsyncLocalTest {
@@ -25,6 +26,8 @@ public class AsyncLocalTest {
     
     private static final AsyncLocal<String> VAL2 = new AsyncLocal<>("VAL2", true);
     
+    private static final AsyncLocal<String> ENCODED = new StringAsyncLocal("ENCODED");
+    
     @Test
     public void testSetValue() {
         assertThat(VAL1.get()).isNull();
@@ -105,6 +108,25 @@ public class AsyncLocalTest {
         assertThat(AsyncLocal.snapshot().getMap()).isEqualTo(map);
     }
     
+    @Test
+    public void testSnapshotEncodingMemoised() {
+        assertThat(AsyncLocal.snapshot().encode().getAsyncLocalCount()).isZero();
+        ENCODED.exec("TEST", () -> {
+            final AsyncLocals encoded = AsyncLocal.snapshot().encode();
+            assertThat(encoded.getAsyncLocalMap().get("ENCODED").getStringValue()).isEqualTo("TEST");
+            assertThat(AsyncLocal.snapshot().encode()).isSameAs(encoded);
+            
+            // not encoded
+            VAL1.exec("TEST", () -> assertThat(AsyncLocal.snapshot().encode()).isEqualTo(encoded).isNotSameAs(encoded));
+            
+            // relaying received async locals as is should not encode them again
+            final AsyncLocal.Snapshot decoded = AsyncLocal.snapshot(encoded);
+            assertThat(decoded.getMap()).containsOnlyKeys(ENCODED).containsEntry(ENCODED, "TEST");
+            assertThat(decoded.encode()).isSameAs(encoded);
+            AsyncLocal.exec(decoded, () -> assertThat(AsyncLocal.snapshot().encode()).isSameAs(encoded));
+        });
+    }
+    
     @Test
     public void testBuilder() {
         assertThat(VAL1.get()).isNull();
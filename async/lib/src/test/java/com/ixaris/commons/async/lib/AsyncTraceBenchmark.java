@@ -0,0 +1,100 @@
+package com.ixaris.commons.async.lib;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ixaris.commons.async.lib.AsyncTrace.CaptureMode;
+
+/**
+ * Measures the overhead of async trace capture in each {@link CaptureMode} on a chain of {@link FutureAsync}, each
+ * link crossing an async boundary (executed directly on the calling thread to exclude thread handoff). The failing
+ * chain also describes the resulting trace, as when logging an exception escaping the chain.
+ *
+ * <p>Run {@link #main(String[])} to include the allocated bytes per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncTraceBenchmark {
+    
+    private static final Executor DIRECT = Runnable::run;
+    
+    @State(Scope.Benchmark)
+    public static class Chain {
+        
+        @Param({ "OFF", "FULL", "SAMPLED", "OPT_IN", "LAZY" })
+        private CaptureMode mode;
+        
+        @Param({ "10" })
+        private int length;
+        
+        @Setup
+        public void setup() {
+            AsyncTrace.setCaptureMode(mode);
+            AsyncTrace.setSampleRate(0.01);
+        }
+        
+        @TearDown
+        public void tearDown() {
+            AsyncTrace.setCaptureMode(CaptureMode.FULL);
+        }
+        
+    }
+    
+    @Benchmark
+    public FutureAsync<Integer> chain(final Chain chain) {
+        return link(chain.length, false);
+    }
+    
+    @Benchmark
+    public int failingChain(final Chain chain) {
+        final FutureAsync<Integer> future = link(chain.length, true);
+        int length = 0;
+        for (Throwable t = future.handle((r, e) -> CompletionStageUtil.extractCause(e)).join(); t != null; t = t.getCause()) {
+            length += String.valueOf(t.getMessage()).length() + t.getStackTrace().length;
+        }
+        return length;
+    }
+    
+    private static FutureAsync<Integer> link(final int remaining, final boolean fail) {
+        final CompletionStageCallableThrows<Integer, RuntimeException> next = () -> {
+            if (remaining > 0) {
+                return link(remaining - 1, fail);
+            } else if (fail) {
+                throw new IllegalStateException("failed");
+            } else {
+                return Async.result(0);
+            }
+        };
+        return AsyncExecutor.exec(DIRECT, next);
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+            .include(AsyncTraceBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+    
+}
@@ -15,14 +15,23 @@ import java.util.concurrent.Executors;
 import org.assertj.core.api.Assertions;
 import org.assertj.core.api.ThrowableAssert;
 import org.awaitility.Awaitility;
+import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.ixaris.commons.async.lib.AsyncTrace.CaptureMode;
 import com.ixaris.commons.async.lib.executor.AsyncExecutorWrapper;
 import com.ixaris.commons.misc.lib.exception.StackWalker;
 
 public class AsyncTraceTest {
     
+    @After
+    public void tearDown() {
+        AsyncTrace.setCaptureMode(CaptureMode.FULL);
+        AsyncTrace.setSampleRate(0.01);
+        AsyncTrace.setOptIn(() -> false);
+    }
+    
     @Test
     public void testLoggingFromRecursive() {
         final Executor ex = new AsyncExecutorWrapper<>(Executors.newFixedThreadPool(1));
@@ -92,6 +101,67 @@ public class AsyncTraceTest {
                         .hasNoCause()))));
     }
     
+    @Test
+    public void testCaptureModeOff() {
+        AsyncTrace.setCaptureMode(CaptureMode.OFF);
+        assertThat(AsyncTrace.get()).isNull();
+    }
+    
+    @Test
+    public void testCaptureModeSampled() {
+        AsyncTrace.setCaptureMode(CaptureMode.SAMPLED);
+        
+        AsyncTrace.setSampleRate(0.0);
+        final AsyncTrace untraced = AsyncTrace.get();
+        assertThat(AsyncTrace.join(new IllegalStateException(), untraced)).hasNoCause();
+        // decision is carried along the async process
+        AsyncTrace.setSampleRate(1.0);
+        AsyncTrace.exec(untraced, () -> assertThat(AsyncTrace.join(new IllegalStateException(), AsyncTrace.get())).hasNoCause());
+        
+        assertThat(AsyncTrace.join(new IllegalStateException(), AsyncTrace.get()))
+            .hasCauseInstanceOf(RuntimeException.class)
+            .satisfies(e -> assertThat(e.getCause().getMessage()).contains("Async Step [0] from"));
+    }
+    
+    @Test
+    public void testCaptureModeOptIn() {
+        AsyncTrace.setCaptureMode(CaptureMode.OPT_IN);
+        
+        final AsyncTrace untraced = AsyncTrace.get();
+        assertThat(AsyncTrace.join(new IllegalStateException(), untraced)).hasNoCause();
+        AsyncTrace.exec(untraced, () -> AsyncTrace.TRACED.exec(true, () -> {
+            assertThat(AsyncTrace.join(new IllegalStateException(), AsyncTrace.get())).hasCauseInstanceOf(RuntimeException.class);
+        }));
+        
+        AsyncTrace.setOptIn(() -> true);
+        assertThat(AsyncTrace.join(new IllegalStateException(), AsyncTrace.get())).hasCauseInstanceOf(RuntimeException.class);
+    }
+    
+    @Test
+    public void testCaptureModeLazy() {
+        AsyncTrace.setCaptureMode(CaptureMode.LAZY);
+        
+        final Throwable joined = AsyncTrace.join(new IllegalStateException(), AsyncTrace.get());
+        assertThat(joined.getCause().getStackTrace()).isEmpty();
+        assertThat(joined.getCause().getMessage()).contains("Async Step [0] from");
+    }
+    
+    @Test
+    public void testInvalidPropertyFallsBackToDefault() {
+        final String name = "async.trace.test";
+        try {
+            System.setProperty(name, "bogus");
+            assertThat(AsyncTrace.property(name, CaptureMode.FULL, CaptureMode::valueOf, m -> true)).isEqualTo(CaptureMode.FULL);
+            System.setProperty(name, "2.0");
+            assertThat(AsyncTrace.property(name, 0.01, Double::valueOf, r -> r <= 1.0)).isEqualTo(0.01);
+            System.setProperty(name, " LAZY ");
+            assertThat(AsyncTrace.property(name, CaptureMode.FULL, CaptureMode::valueOf, m -> true)).isEqualTo(CaptureMode.LAZY);
+        } finally {
+            System.clearProperty(name);
+        }
+        assertThat(AsyncTrace.property(name, CaptureMode.FULL, CaptureMode::valueOf, m -> true)).isEqualTo(CaptureMode.FULL);
+    }
+    
     /**
      * *************************************
      */
@@ -0,0 +1,75 @@
+package com.ixaris.commons.async.lib.scheduler;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ixaris.commons.async.lib.scheduler.HashedWheelTimer.Timeout;
+
+public class HashedWheelTimerTest {
+    
+    private HashedWheelTimer timer;
+    
+    @Before
+    public void setup() {
+        timer = new HashedWheelTimer("TestTimeouts", 10L, MILLISECONDS, 8);
+    }
+    
+    @After
+    public void teardown() {
+        timer.shutdown();
+    }
+    
+    @Test
+    public void testExpiry() {
+        final AtomicInteger expired = new AtomicInteger();
+        final long start = System.nanoTime();
+        // longer than a wheel round, to go through more than one round
+        final Timeout timeout = timer.newTimeout(expired::incrementAndGet, 200L, MILLISECONDS);
+        
+        Awaitility.await().atMost(5, SECONDS).until(timeout::isExpired);
+        assertThat(NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(200L);
+        assertThat(expired.get()).isEqualTo(1);
+        assertThat(timeout.cancel()).isFalse();
+        assertThat(timer.getPendingTimeouts()).isZero();
+    }
+    
+    @Test
+    public void testCancel() {
+        final AtomicInteger expired = new AtomicInteger();
+        final Timeout cancelled = timer.newTimeout(expired::incrementAndGet, 50L, MILLISECONDS);
+        final Timeout notCancelled = timer.newTimeout(expired::incrementAndGet, 100L, MILLISECONDS);
+        
+        assertThat(cancelled.cancel()).isTrue();
+        assertThat(cancelled.cancel()).isFalse();
+        assertThat(cancelled.isCancelled()).isTrue();
+        
+        Awaitility.await().atMost(5, SECONDS).until(notCancelled::isExpired);
+        assertThat(expired.get()).isEqualTo(1);
+        assertThat(timer.getPendingTimeouts()).isZero();
+        Awaitility.await().atMost(5, SECONDS).until(() -> timer.getOccupiedBuckets() == 0);
+    }
+    
+    @Test
+    public void testManyTimeouts() {
+        final AtomicInteger expired = new AtomicInteger();
+        for (int i = 0; i < 10000; i++) {
+            final Timeout timeout = timer.newTimeout(expired::incrementAndGet, i % 100, MILLISECONDS);
+            if ((i % 2) == 0) {
+                timeout.cancel();
+            }
+        }
+        
+        Awaitility.await().atMost(5, SECONDS).until(() -> timer.getPendingTimeouts() == 0L);
+        assertThat(expired.get()).isEqualTo(5000);
+    }
+    
+}
@@ -0,0 +1,88 @@
+package com.ixaris.commons.async.reactive;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base for request strategies that allow a maximum of concurrent messages, like {@link MaxConcurrentRequestStrategy}, but size that maximum
+ * from the latency observed when messages finish, rather than using a hand-tuned value. Subclasses implement the algorithm in
+ * {@link #updateLimit(int, int, long, boolean)}; the limit is kept within the given minimum and maximum.
+ *
+ * <p>Users of this class should call {@link #finishMessage(long, boolean)} when a message finishes processing. {@link #finishMessage()}
+ * releases the message without a sample, e.g. when it failed before being processed.
+ */
+public abstract class AbstractAdaptiveRequestStrategy implements RequestStrategy {
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int minLimit;
+    private final int maxLimit;
+    private volatile int limit;
+    
+    protected AbstractAdaptiveRequestStrategy(final int initialLimit, final int minLimit, final int maxLimit) {
+        if (minLimit < 1) {
+            throw new IllegalArgumentException("minLimit should be positive");
+        }
+        if (maxLimit < minLimit) {
+            throw new IllegalArgumentException("maxLimit should not be less than minLimit");
+        }
+        if ((initialLimit < minLimit) || (initialLimit > maxLimit)) {
+            throw new IllegalArgumentException("initialLimit should be between minLimit and maxLimit");
+        }
+        
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        limit = initialLimit;
+    }
+    
+    @Override
+    public final boolean startMessage() {
+        while (true) {
+            final int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    @Override
+    public final void finishMessage() {
+        inFlight.decrementAndGet();
+    }
+    
+    @Override
+    public final void finishMessage(final long latencyNanos, final boolean dropped) {
+        final int inFlightAtFinish = inFlight.getAndDecrement();
+        synchronized (this) {
+            limit = Math.max(minLimit, Math.min(maxLimit, updateLimit(limit, inFlightAtFinish, latencyNanos, dropped)));
+        }
+    }
+    
+    public final int getLimit() {
+        return limit;
+    }
+    
+    public final int getInFlight() {
+        return inFlight.get();
+    }
+    
+    /**
+     * Called for every finished message, one at a time.
+     *
+     * @param limit the current limit
+     * @param inFlight the number of messages in flight when the message finished, including the message itself
+     * @param latencyNanos the time from starting the message until it completed, in nanoseconds
+     * @param dropped true if the message failed because of overload
+     * @return the new limit, which is clamped between the minimum and maximum
+     */
+    protected abstract int updateLimit(int limit, int inFlight, long latencyNanos, boolean dropped);
+    
+    /**
+     * @return true if less than half the limit is used, in which case latency says little about whether the limit is too high or too low
+     */
+    protected static boolean isAppLimited(final int limit, final int inFlight) {
+        return inFlight * 2 < limit;
+    }
+    
+}
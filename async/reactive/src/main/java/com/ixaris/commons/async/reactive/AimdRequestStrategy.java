@@ -0,0 +1,63 @@
+package com.ixaris.commons.async.reactive;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase / multiplicative decrease of the concurrency limit. The limit grows by 1 for every message that completes within the
+ * latency threshold while the limit is in use, and is multiplied by the backoff ratio for every message that is dropped or exceeds the
+ * threshold. The threshold should be below the timeout of the callers, so that the limit backs off before messages start timing out.
+ *
+ * <p>Messages in flight at the same time tend to be slow together, so the limit backs off at most once per limit's worth of finished
+ * messages, rather than compounding the backoff for each of them.
+ */
+public final class AimdRequestStrategy extends AbstractAdaptiveRequestStrategy {
+    
+    private final long thresholdNanos;
+    private final double backoffRatio;
+    
+    // guarded by this
+    private int sinceBackoff = 0;
+    
+    public AimdRequestStrategy(final long threshold, final TimeUnit unit) {
+        this(20, 1, 1000, threshold, unit, 0.9);
+    }
+    
+    /**
+     * @param threshold the latency above which a message is considered to have been dropped
+     * @param backoffRatio the ratio by which to multiply the limit when backing off, between 0.5 and 1 (exclusive)
+     */
+    public AimdRequestStrategy(final int initialLimit,
+                               final int minLimit,
+                               final int maxLimit,
+                               final long threshold,
+                               final TimeUnit unit,
+                               final double backoffRatio) {
+        super(initialLimit, minLimit, maxLimit);
+        if (threshold <= 0L) {
+            throw new IllegalArgumentException("threshold should be positive");
+        }
+        if ((backoffRatio < 0.5) || (backoffRatio >= 1.0)) {
+            throw new IllegalArgumentException("backoffRatio should be between 0.5 and 1");
+        }
+        
+        thresholdNanos = unit.toNanos(threshold);
+        this.backoffRatio = backoffRatio;
+    }
+    
+    @Override
+    protected int updateLimit(final int limit, final int inFlight, final long latencyNanos, final boolean dropped) {
+        sinceBackoff++;
+        if (dropped || (latencyNanos > thresholdNanos)) {
+            if (sinceBackoff < limit) {
+                return limit;
+            }
+            sinceBackoff = 0;
+            return (int) (limit * backoffRatio);
+        } else if (isAppLimited(limit, inFlight)) {
+            return limit;
+        } else {
+            return limit + 1;
+        }
+    }
+    
+}
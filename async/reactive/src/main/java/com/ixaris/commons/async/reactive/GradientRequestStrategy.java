@@ -0,0 +1,75 @@
+package com.ixaris.commons.async.reactive;
+
+/**
+ * Sizes the concurrency limit from the gradient between the long term average latency and the latency of the latest message. While latency
+ * is stable, the limit grows by a queue allowance (the square root of the limit); when latency rises above the long term average (beyond the
+ * tolerance), the limit shrinks proportionally, down to half. Changes are smoothed to avoid reacting to outliers.
+ *
+ * <p>Since the long term average follows sustained latency increases, it is pulled back down when it exceeds twice the latest latency, so
+ * that the limit recovers once the overload passes.
+ */
+public final class GradientRequestStrategy extends AbstractAdaptiveRequestStrategy {
+    
+    private final double tolerance;
+    private final double smoothing;
+    private final int longWindow;
+    
+    // guarded by this
+    private double estimatedLimit;
+    private double longLatency = 0.0;
+    
+    public GradientRequestStrategy() {
+        this(20, 1, 1000, 1.5, 0.2, 600);
+    }
+    
+    /**
+     * @param tolerance the ratio of latency to the long term average that is tolerated before reducing the limit, at least 1
+     * @param smoothing the weight of a new limit against the current limit, between 0 (exclusive) and 1
+     * @param longWindow the number of messages over which the long term average latency is calculated
+     */
+    public GradientRequestStrategy(final int initialLimit,
+                                   final int minLimit,
+                                   final int maxLimit,
+                                   final double tolerance,
+                                   final double smoothing,
+                                   final int longWindow) {
+        super(initialLimit, minLimit, maxLimit);
+        if (tolerance < 1.0) {
+            throw new IllegalArgumentException("tolerance should be at least 1");
+        }
+        if ((smoothing <= 0.0) || (smoothing > 1.0)) {
+            throw new IllegalArgumentException("smoothing should be between 0 and 1");
+        }
+        if (longWindow < 1) {
+            throw new IllegalArgumentException("longWindow should be positive");
+        }
+        
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.longWindow = longWindow;
+        estimatedLimit = initialLimit;
+    }
+    
+    @Override
+    protected int updateLimit(final int limit, final int inFlight, final long latencyNanos, final boolean dropped) {
+        final double latency = Math.max(latencyNanos, 1L);
+        if (longLatency == 0.0) {
+            longLatency = latency;
+        } else {
+            longLatency += (latency - longLatency) / longWindow;
+            if (longLatency > latency * 2.0) {
+                longLatency *= 0.95;
+            }
+        }
+        
+        if (!dropped && isAppLimited(limit, inFlight)) {
+            return limit;
+        }
+        
+        final double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1.0, tolerance * longLatency / latency));
+        final double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.max(1.0, estimatedLimit * (1.0 - smoothing) + newLimit * smoothing);
+        return (int) estimatedLimit;
+    }
+    
+}
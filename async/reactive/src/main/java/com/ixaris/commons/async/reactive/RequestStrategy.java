@@ -22,4 +22,15 @@ public interface RequestStrategy {
      */
     void finishMessage();
     
+    /**
+     * To be called as soon as a message has completed processing, instead of {@link #finishMessage()}, when the time it took is known.
+     * Strategies that size their limit from observed latency use this; by default, the latency is ignored.
+     *
+     * @param latencyNanos the time from starting the message until it completed, in nanoseconds
+     * @param dropped true if the message failed because of overload, e.g. timed out
+     */
+    default void finishMessage(final long latencyNanos, final boolean dropped) {
+        finishMessage();
+    }
+    
 }
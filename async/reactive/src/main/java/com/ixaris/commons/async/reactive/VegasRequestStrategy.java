@@ -0,0 +1,68 @@
+package com.ixaris.commons.async.reactive;
+
+/**
+ * Sizes the concurrency limit in the style of TCP Vegas, estimating the number of queued messages from the ratio of the minimum observed
+ * latency (the latency without load) to the latest latency. The limit grows quickly while hardly anything is queued and shrinks when the
+ * estimated queue exceeds a threshold that grows logarithmically with the limit. Dropped messages also shrink the limit.
+ *
+ * <p>Since the minimum latency may change, e.g. after a deployment, it is re-probed periodically by resetting it to the latest latency.
+ */
+public final class VegasRequestStrategy extends AbstractAdaptiveRequestStrategy {
+    
+    private static int log10(final int limit) {
+        return Math.max(1, (int) Math.log10(limit));
+    }
+    
+    private final int probeInterval;
+    
+    // guarded by this
+    private long noLoadLatency = Long.MAX_VALUE;
+    private int untilProbe;
+    
+    public VegasRequestStrategy() {
+        this(20, 1, 1000, 1000);
+    }
+    
+    /**
+     * @param probeInterval the number of messages after which the minimum latency is reset
+     */
+    public VegasRequestStrategy(final int initialLimit, final int minLimit, final int maxLimit, final int probeInterval) {
+        super(initialLimit, minLimit, maxLimit);
+        if (probeInterval < 1) {
+            throw new IllegalArgumentException("probeInterval should be positive");
+        }
+        
+        this.probeInterval = probeInterval;
+        untilProbe = probeInterval;
+    }
+    
+    @Override
+    protected int updateLimit(final int limit, final int inFlight, final long latencyNanos, final boolean dropped) {
+        final long latency = Math.max(latencyNanos, 1L);
+        if (--untilProbe <= 0) {
+            untilProbe = probeInterval;
+            noLoadLatency = latency;
+        } else if (latency < noLoadLatency) {
+            noLoadLatency = latency;
+        }
+        
+        final int threshold = log10(limit);
+        if (dropped) {
+            return limit - threshold;
+        } else if (isAppLimited(limit, inFlight)) {
+            return limit;
+        }
+        
+        final int queued = (int) Math.ceil(limit * (1.0 - (double) noLoadLatency / latency));
+        if (queued <= threshold) {
+            return limit + 6 * threshold;
+        } else if (queued < 3 * threshold) {
+            return limit + threshold;
+        } else if (queued > 6 * threshold) {
+            return limit - threshold;
+        } else {
+            return limit;
+        }
+    }
+    
+}
@@ -0,0 +1,139 @@
+package com.ixaris.commons.async.reactive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load simulation comparing adaptive request strategies with a fixed concurrency limit. Runs in virtual time: a service with a fixed number
+ * of workers processes admitted messages in order, and callers give up on messages that take longer than the timeout, although the service
+ * still processes them. Goodput is the rate of messages completed within the timeout.
+ */
+public final class AdaptiveRequestStrategySimulationTest {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveRequestStrategySimulationTest.class);
+    
+    private static final int WORKERS = 10;
+    private static final long SERVICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+    private static final double CAPACITY = WORKERS * (double) TimeUnit.SECONDS.toNanos(1L) / SERVICE_NANOS;
+    private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(50L);
+    private static final long WARMUP_NANOS = TimeUnit.SECONDS.toNanos(10L);
+    private static final long DURATION_NANOS = TimeUnit.SECONDS.toNanos(60L);
+    
+    private static final class Result {
+        
+        private final double goodput;
+        private final double rejectedRatio;
+        private final long p99Nanos;
+        
+        private Result(final double goodput, final double rejectedRatio, final long p99Nanos) {
+            this.goodput = goodput;
+            this.rejectedRatio = rejectedRatio;
+            this.p99Nanos = p99Nanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("goodput %.0f/s, rejected %.1f%%, p99 %dms",
+                goodput,
+                rejectedRatio * 100.0,
+                TimeUnit.NANOSECONDS.toMillis(p99Nanos));
+        }
+        
+    }
+    
+    @Test
+    public void overload_adaptiveShouldSustainGoodputWithinTimeout() {
+        final Result fixed = simulate("fixed", new MaxConcurrentRequestStrategy(200), 2.0);
+        final Result aimd = simulate("aimd", new AimdRequestStrategy(25L, TimeUnit.MILLISECONDS), 2.0);
+        final Result gradient = simulate("gradient", new GradientRequestStrategy(), 2.0);
+        final Result vegas = simulate("vegas", new VegasRequestStrategy(), 2.0);
+        
+        // the fixed limit queues more than can be processed within the timeout, so most messages time out
+        assertThat(fixed.p99Nanos).isGreaterThan(TIMEOUT_NANOS);
+        for (final Result adaptive : Arrays.asList(aimd, gradient, vegas)) {
+            assertThat(adaptive.goodput).isGreaterThan(CAPACITY * 0.8).isGreaterThan(fixed.goodput * 2.0);
+            assertThat(adaptive.p99Nanos).isLessThan(fixed.p99Nanos / 2L);
+        }
+    }
+    
+    @Test
+    public void normalLoad_adaptiveShouldNotReject() {
+        for (final AbstractAdaptiveRequestStrategy strategy : Arrays.asList(new AimdRequestStrategy(25L, TimeUnit.MILLISECONDS),
+            new GradientRequestStrategy(),
+            new VegasRequestStrategy())) {
+            final Result result = simulate(strategy.getClass().getSimpleName(), strategy, 0.5);
+            assertThat(result.rejectedRatio).isLessThan(0.01);
+            assertThat(result.goodput).isGreaterThan(CAPACITY * 0.5 * 0.95);
+        }
+    }
+    
+    /**
+     * @param load the arrival rate as a multiple of the capacity of the service
+     */
+    private static Result simulate(final String name, final RequestStrategy strategy, final double load) {
+        final Random random = new Random(42L);
+        final double meanInterArrivalNanos = SERVICE_NANOS / (WORKERS * load);
+        
+        // when each worker is next free, and pending completions as {completion time, arrival time}
+        final PriorityQueue<Long> workers = new PriorityQueue<>();
+        for (int i = 0; i < WORKERS; i++) {
+            workers.add(0L);
+        }
+        final PriorityQueue<long[]> completions = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        
+        long[] latencies = new long[1024];
+        int measured = 0;
+        int good = 0;
+        int arrived = 0;
+        int rejected = 0;
+        
+        long now = 0L;
+        while (now < DURATION_NANOS) {
+            now += (long) (-Math.log(1.0 - random.nextDouble()) * meanInterArrivalNanos);
+            
+            while (!completions.isEmpty() && (completions.peek()[0] <= now)) {
+                final long[] completion = completions.poll();
+                final long latency = completion[0] - completion[1];
+                strategy.finishMessage(latency, latency > TIMEOUT_NANOS);
+                if (completion[1] >= WARMUP_NANOS) {
+                    if (measured == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, measured * 2);
+                    }
+                    latencies[measured++] = latency;
+                    if (latency <= TIMEOUT_NANOS) {
+                        good++;
+                    }
+                }
+            }
+            
+            final boolean measuring = now >= WARMUP_NANOS;
+            if (measuring) {
+                arrived++;
+            }
+            if (strategy.startMessage()) {
+                final long start = Math.max(now, workers.poll());
+                final long end = start + SERVICE_NANOS / 2L + (long) (random.nextDouble() * SERVICE_NANOS);
+                workers.add(end);
+                completions.add(new long[] { end, now });
+            } else if (measuring) {
+                rejected++;
+            }
+        }
+        
+        Arrays.sort(latencies, 0, measured);
+        final Result result = new Result(good * (double) TimeUnit.SECONDS.toNanos(1L) / (DURATION_NANOS - WARMUP_NANOS),
+            rejected / (double) arrived,
+            (measured > 0) ? latencies[(int) (measured * 0.99)] : 0L);
+        LOG.info("{} at {}x load: {}", name, load, result);
+        return result;
+    }
+    
+}
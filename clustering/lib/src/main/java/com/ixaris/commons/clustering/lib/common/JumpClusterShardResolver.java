@@ -0,0 +1,66 @@
+package com.ixaris.commons.clustering.lib.common;
+
+import java.util.Objects;
+
+import com.ixaris.commons.misc.lib.object.EqualsUtil;
+import com.ixaris.commons.misc.lib.object.ToStringUtil;
+
+/**
+ * Resolves shards using jump consistent hashing (Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash
+ * Algorithm"). Unlike {@link ModClusterShardResolver}, which remaps almost every key when the number of shards changes,
+ * growing from n to n + 1 shards only remaps the 1 / (n + 1) of keys that move to the new shard, so the number of
+ * shards of a cluster can be increased without reshuffling the data of every existing shard.
+ *
+ * <p>Note that this resolver maps keys to different shards than {@link ModClusterShardResolver} for the same number of
+ * shards, so every node of a cluster should use the same resolver, and switching an existing cluster requires data
+ * owned by shards to be migrated.
+ */
+public final class JumpClusterShardResolver implements ClusterShardResolver {
+    
+    public static int getShard(final long id, final int maxShards) {
+        long key = id;
+        long bucket = -1L;
+        long next = 0L;
+        while (next < maxShards) {
+            bucket = next;
+            key = (key * 2862933555777941757L) + 1L;
+            next = (long) ((bucket + 1L) * ((double) (1L << 31) / (double) ((key >>> 33) + 1L)));
+        }
+        return (int) bucket;
+    }
+    
+    private final int maxShards;
+    
+    public JumpClusterShardResolver(final int maxShards) {
+        if (maxShards < 1) {
+            throw new IllegalArgumentException("maxShards should be positive");
+        }
+        this.maxShards = maxShards;
+    }
+    
+    @Override
+    public int getMaxShards() {
+        return maxShards;
+    }
+    
+    @Override
+    public int getShard(final long id) {
+        return getShard(id, maxShards);
+    }
+    
+    @Override
+    public boolean equals(final Object o) {
+        return EqualsUtil.equals(this, o, other -> maxShards == other.maxShards);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxShards);
+    }
+    
+    @Override
+    public String toString() {
+        return ToStringUtil.of(this).with("maxShards", maxShards).toString();
+    }
+    
+}
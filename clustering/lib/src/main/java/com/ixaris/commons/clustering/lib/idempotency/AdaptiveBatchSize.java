@@ -0,0 +1,71 @@
+package com.ixaris.commons.clustering.lib.idempotency;
+
+/**
+ * Sizes the batches of pending messages fetched by an {@link AtLeastOnceMessageType} from the measured drain lag, i.e.
+ * for how long the queue has been continuously backlogged (every fetch returning a full batch). Once the drain lag
+ * exceeds the target, the batch size doubles on every fetch that is still full, up to the maximum. When a fetch
+ * returns a partial batch, the queue is drained and the batch size halves, down to the minimum.
+ */
+public final class AdaptiveBatchSize {
+    
+    private final int minSize;
+    private final int maxSize;
+    private final long targetDrainLag;
+    
+    private int size;
+    private long backlogSince = -1L;
+    
+    /**
+     * @param minSize the minimum (and initial) batch size
+     * @param maxSize the maximum batch size
+     * @param targetDrainLag the drain lag in milliseconds after which the batch size is increased
+     */
+    public AdaptiveBatchSize(final int minSize, final int maxSize, final long targetDrainLag) {
+        if (minSize <= 0) {
+            throw new IllegalArgumentException("minSize should be positive");
+        }
+        if (maxSize < minSize) {
+            throw new IllegalArgumentException("maxSize should be greater than or equal to minSize");
+        }
+        
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetDrainLag = targetDrainLag;
+        size = minSize;
+    }
+    
+    public synchronized int get() {
+        return size;
+    }
+    
+    /**
+     * Update the batch size given the result of a fetch
+     *
+     * @param fetched the number of messages fetched
+     * @param requested the batch size requested for the fetch
+     * @param now the current time in milliseconds
+     * @return true if more messages are pending, i.e. the fetch returned a full batch
+     */
+    public synchronized boolean update(final int fetched, final int requested, final long now) {
+        if (fetched >= requested) {
+            if (backlogSince < 0L) {
+                backlogSince = now;
+            } else if ((now - backlogSince) >= targetDrainLag) {
+                size = Math.min(maxSize, size << 1);
+            }
+            return true;
+        } else {
+            backlogSince = -1L;
+            size = Math.max(minSize, size >> 1);
+            return false;
+        }
+    }
+    
+    /**
+     * @return the time in milliseconds for which the queue has been backlogged, 0 if not backlogged
+     */
+    public synchronized long getDrainLag(final long now) {
+        return (backlogSince < 0L) ? 0L : (now - backlogSince);
+    }
+    
+}
@@ -1,6 +1,9 @@
 package com.ixaris.commons.clustering.lib.idempotency;
 
+import static com.ixaris.commons.async.lib.Async.result;
+
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 import com.ixaris.commons.async.lib.Async;
 
@@ -64,4 +67,47 @@ public interface AtLeastOnceMessageType<T> {
      */
     Async<Void> processMessage(StoredPendingMessage<T> pendingMessage, NextRetryTimeFunction nextRetryTimeFunction);
     
+    /**
+     * @return true if messages with the same shard and subtype should be processed together using
+     *     {@link #processMessages(List, NextRetryTimeFunction)} rather than one by one using
+     *     {@link #processMessage(StoredPendingMessage, NextRetryTimeFunction)}
+     */
+    default boolean isBatchProcessing() {
+        return false;
+    }
+    
+    /**
+     * Attempt to process a batch of messages having the same shard and subtype, in sequence number order. Only called
+     * if {@link #isBatchProcessing()} is true. Implementors are responsible for persisting immutability data for
+     * successfully processed messages, as well as failure counts and next retry time for each failed message, and for
+     * respecting {@link #isFailedMessageBlocksQueue()}.
+     *
+     * <p>By default, processes the messages one by one using
+     * {@link #processMessage(StoredPendingMessage, NextRetryTimeFunction)}, stopping at the first failure if
+     * {@link #isFailedMessageBlocksQueue()} is true.
+     *
+     * <p>This method MUST NOT block! Any blocking operations needs to be performed on a separate thread and complete
+     * the returned future
+     *
+     * @param pendingMessages The messages to be processed
+     * @param nextRetryTimeFunction
+     * @return future completed when the batch is processed, even if some of the messages failed
+     */
+    default Async<Void> processMessages(final List<StoredPendingMessage<T>> pendingMessages,
+                                        final NextRetryTimeFunction nextRetryTimeFunction) {
+        CompletionStage<Boolean> blocked = result(false);
+        for (final StoredPendingMessage<T> pendingMessage : pendingMessages) {
+            blocked = blocked.thenCompose(b -> {
+                if (b) {
+                    // an earlier message failed, and subsequent messages are blocked until it is retried
+                    return result(true);
+                }
+                return Async
+                    .from(() -> processMessage(pendingMessage, nextRetryTimeFunction))
+                    .handle((r, t) -> (t != null) && isFailedMessageBlocksQueue());
+            });
+        }
+        return Async.from(blocked).map(b -> null);
+    }
+    
 }
@@ -18,6 +18,14 @@ public interface AtLeastOnceProcessor {
      */
     void pollNow();
     
+    /**
+     * Trigger poll now for messages stored for the given shard. Implementations aware of the cluster should wake up the
+     * processor on the node owning the shard, which is not necessarily this node.
+     */
+    default void pollNow(final int shard) {
+        pollNow();
+    }
+    
     /**
      * Stop processing of messages.
      */
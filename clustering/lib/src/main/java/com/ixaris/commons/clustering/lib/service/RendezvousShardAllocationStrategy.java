@@ -0,0 +1,190 @@
+package com.ixaris.commons.clustering.lib.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.ixaris.commons.clustering.lib.common.ClusterNodeInfo;
+import com.ixaris.commons.collections.lib.BitSet;
+import com.ixaris.commons.collections.lib.BitSetIterator;
+
+/**
+ * Rebalance shards across the cluster using rendezvous (highest random weight) hashing with bounded loads, moving as
+ * few shards as possible when nodes join or leave. Every shard ranks the nodes by a hash of the shard and node id, and
+ * shards keep running where they are as long as every node has at least maxShards / nodes shards and at most the load
+ * bound (loadFactor * maxShards / nodes, rounded up):
+ * <ul>
+ *   <li>a node above the bound releases the shards that rank it lowest;</li>
+ *   <li>shards not running on any node (released, or owned by a node that left) go to the highest ranked node below
+ *       maxShards / nodes, or the highest ranked node below the bound if none;</li>
+ *   <li>a node still below maxShards / nodes (e.g. a node that joined) takes the shards that rank it highest from
+ *       nodes above maxShards / nodes.</li>
+ * </ul>
+ *
+ * <p>So when a node joins, the shards that move all move to the new node, and when a node leaves, only its shards move
+ * (with a load factor of 1, the default; a higher load factor lets loads drift further apart, in which case a node may
+ * need to take shards from another node after a node leaves). The allocation only depends on the current state, so
+ * rebalancing again while shards are stopping gives the same result. As with {@link DefaultShardAllocationStrategy},
+ * shards to stop are moved to stopping shards, and a shard is only started on another node once stopped; a stopping
+ * shard allocated to the same node is restarted.
+ */
+public final class RendezvousShardAllocationStrategy implements ShardAllocationStrategy {
+    
+    public static final double DEFAULT_LOAD_FACTOR = 1.0;
+    
+    /**
+     * @return the weight of the given node for the given shard; shards prefer nodes with a higher weight
+     */
+    public static long weight(final int shard, final int nodeId) {
+        // murmur3 64 bit finalizer
+        long h = (((long) nodeId) << 32) | (shard & 0xFFFFFFFFL);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    private final int maxShards;
+    private final double loadFactor;
+    
+    public RendezvousShardAllocationStrategy(final int maxShards) {
+        this(maxShards, DEFAULT_LOAD_FACTOR);
+    }
+    
+    /**
+     * @param loadFactor the maximum load of a node relative to an even distribution, at least 1
+     */
+    public RendezvousShardAllocationStrategy(final int maxShards, final double loadFactor) {
+        if (maxShards < 1) {
+            throw new IllegalArgumentException("maxShards should be positive");
+        }
+        if (!(loadFactor >= 1.0)) {
+            throw new IllegalArgumentException("loadFactor should be at least 1");
+        }
+        
+        this.maxShards = maxShards;
+        this.loadFactor = loadFactor;
+    }
+    
+    @Override
+    public int getMaxShards() {
+        return maxShards;
+    }
+    
+    @Override
+    public ShardRebalance rebalance(final SortedMap<Integer, ClusterNodeInfo> nodes) {
+        if (nodes.isEmpty()) {
+            return new ShardRebalance(Collections.emptyMap(), Collections.emptyMap());
+        }
+        
+        final int[] nodeIds = nodes.keySet().stream().mapToInt(Integer::intValue).toArray();
+        final int minLoad = maxShards / nodeIds.length;
+        final int maxLoad = Math.max((maxShards + nodeIds.length - 1) / nodeIds.length,
+            (int) Math.ceil((loadFactor * maxShards) / nodeIds.length));
+        
+        // per shard, the index of the node running it, stopping it and allocated it, or -1
+        final int[] running = new int[maxShards];
+        final int[] stopping = new int[maxShards];
+        final int[] allocated = new int[maxShards];
+        final int[] load = new int[nodeIds.length];
+        Arrays.fill(running, -1);
+        Arrays.fill(stopping, -1);
+        Arrays.fill(allocated, -1);
+        for (int i = 0; i < nodeIds.length; i++) {
+            final ClusterNodeInfo nodeInfo = nodes.get(nodeIds[i]);
+            for (final BitSetIterator it = nodeInfo.getShardsStopping().iterator(); it.hasNext();) {
+                stopping[it.next()] = i;
+            }
+            for (final BitSetIterator it = nodeInfo.getShards().iterator(); it.hasNext();) {
+                final int shard = it.next();
+                running[shard] = i;
+                allocated[shard] = i;
+                load[i]++;
+            }
+        }
+        
+        releaseAboveMaxLoad(nodeIds, allocated, load, maxLoad);
+        allocateUnallocated(nodeIds, allocated, load, minLoad, maxLoad);
+        takeForBelowMinLoad(nodeIds, allocated, load, minLoad);
+        
+        final Map<Integer, BitSet> toStop = new HashMap<>();
+        final Map<Integer, BitSet> toStart = new HashMap<>();
+        for (int shard = 0; shard < maxShards; shard++) {
+            final int target = allocated[shard];
+            if (running[shard] >= 0) {
+                if (running[shard] != target) {
+                    toStop.computeIfAbsent(nodeIds[running[shard]], k -> BitSet.of(maxShards)).add(shard);
+                }
+            } else if ((stopping[shard] < 0) || (stopping[shard] == target)) {
+                toStart.computeIfAbsent(nodeIds[target], k -> BitSet.of(maxShards)).add(shard);
+            }
+            // otherwise wait for the shard to be stopped before starting it on the allocated node
+        }
+        return new ShardRebalance(toStop, toStart);
+    }
+    
+    private void releaseAboveMaxLoad(final int[] nodeIds, final int[] allocated, final int[] load, final int maxLoad) {
+        for (int i = 0; i < nodeIds.length; i++) {
+            while (load[i] > maxLoad) {
+                int lowest = -1;
+                for (int shard = 0; shard < maxShards; shard++) {
+                    if ((allocated[shard] == i) && ((lowest < 0) || (weight(shard, nodeIds[i]) < weight(lowest, nodeIds[i])))) {
+                        lowest = shard;
+                    }
+                }
+                allocated[lowest] = -1;
+                load[i]--;
+            }
+        }
+    }
+    
+    private void allocateUnallocated(final int[] nodeIds, final int[] allocated, final int[] load, final int minLoad, final int maxLoad) {
+        for (int shard = 0; shard < maxShards; shard++) {
+            if (allocated[shard] < 0) {
+                int highest = highest(shard, nodeIds, load, minLoad);
+                if (highest < 0) {
+                    highest = highest(shard, nodeIds, load, maxLoad);
+                }
+                allocated[shard] = highest;
+                load[highest]++;
+            }
+        }
+    }
+    
+    /**
+     * @return the index of the highest ranked node for the shard with a load below the given limit, or -1 if none
+     */
+    private static int highest(final int shard, final int[] nodeIds, final int[] load, final int limit) {
+        int highest = -1;
+        for (int i = 0; i < nodeIds.length; i++) {
+            if ((load[i] < limit) && ((highest < 0) || (weight(shard, nodeIds[i]) > weight(shard, nodeIds[highest])))) {
+                highest = i;
+            }
+        }
+        return highest;
+    }
+    
+    private void takeForBelowMinLoad(final int[] nodeIds, final int[] allocated, final int[] load, final int minLoad) {
+        for (int i = 0; i < nodeIds.length; i++) {
+            while (load[i] < minLoad) {
+                int highest = -1;
+                for (int shard = 0; shard < maxShards; shard++) {
+                    final int from = allocated[shard];
+                    if ((from != i)
+                        && (load[from] > minLoad)
+                        && ((highest < 0) || (weight(shard, nodeIds[i]) > weight(highest, nodeIds[i])))) {
+                        highest = shard;
+                    }
+                }
+                load[allocated[highest]]--;
+                allocated[highest] = i;
+                load[i]++;
+            }
+        }
+    }
+    
+}
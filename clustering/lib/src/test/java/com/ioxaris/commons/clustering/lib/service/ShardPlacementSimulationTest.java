@@ -0,0 +1,291 @@
+package com.ioxaris.commons.clustering.lib.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ixaris.commons.clustering.lib.common.ClusterNodeInfo;
+import com.ixaris.commons.clustering.lib.common.ClusterShardResolver;
+import com.ixaris.commons.clustering.lib.common.JumpClusterShardResolver;
+import com.ixaris.commons.clustering.lib.common.ModClusterShardResolver;
+import com.ixaris.commons.clustering.lib.service.DefaultShardAllocationStrategy;
+import com.ixaris.commons.clustering.lib.service.RendezvousShardAllocationStrategy;
+import com.ixaris.commons.clustering.lib.service.ShardAllocationStrategy;
+import com.ixaris.commons.clustering.lib.service.ShardRebalance;
+import com.ixaris.commons.collections.lib.BitSet;
+import com.ixaris.commons.collections.lib.BitSetIterator;
+
+/**
+ * Simulates nodes joining and leaving a cluster and reports how many shards move and how evenly shards are spread, for
+ * the default and rendezvous allocation strategies, as well as how many keys move between shards when the number of
+ * shards grows, for the mod and jump shard resolvers.
+ */
+public class ShardPlacementSimulationTest {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(ShardPlacementSimulationTest.class);
+    
+    private static final int[] MAX_SHARDS = { 72, 256 };
+    private static final int MAX_SHARDS_LIMIT = 256;
+    private static final int MAX_NODES = 16;
+    
+    @Test
+    public void rendezvous_shouldOnlyMoveShardsToJoiningNode() {
+        for (final int maxShards : MAX_SHARDS) {
+            final ShardAllocationStrategy rendezvous = new RendezvousShardAllocationStrategy(maxShards);
+            final ShardAllocationStrategy defaultStrategy = new DefaultShardAllocationStrategy(maxShards);
+            final SortedMap<Integer, ClusterNodeInfo> rendezvousNodes = new TreeMap<>();
+            final SortedMap<Integer, ClusterNodeInfo> defaultNodes = new TreeMap<>();
+            
+            for (int nodeId = 0; nodeId < MAX_NODES; nodeId++) {
+                final int[] rendezvousBefore = owners(rendezvousNodes, maxShards);
+                final int[] defaultBefore = owners(defaultNodes, maxShards);
+                rendezvousNodes.put(nodeId, new ClusterNodeInfo(0L, null, null, null));
+                defaultNodes.put(nodeId, new ClusterNodeInfo(0L, null, null, null));
+                settle(rendezvous, rendezvousNodes);
+                settle(defaultStrategy, defaultNodes);
+                
+                final int rendezvousMoved = moved(rendezvousBefore, owners(rendezvousNodes, maxShards));
+                final int defaultMoved = moved(defaultBefore, owners(defaultNodes, maxShards));
+                final int joined = rendezvousNodes.get(nodeId).getShards().size();
+                report("join", maxShards, maxShards / (nodeId + 1), defaultMoved, defaultNodes, rendezvousMoved, rendezvousNodes);
+                
+                assertAllShardsRunning(rendezvousNodes, maxShards);
+                assertEvenSpread(rendezvousNodes, maxShards);
+                if (nodeId > 0) {
+                    // every moved shard moved to the new node, and the new node got its share
+                    assertThat(rendezvousMoved).isEqualTo(joined);
+                    assertThat(joined).isEqualTo(maxShards / (nodeId + 1));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void rendezvous_shouldOnlyMoveShardsOfLeavingNode() {
+        for (final int maxShards : MAX_SHARDS) {
+            final ShardAllocationStrategy rendezvous = new RendezvousShardAllocationStrategy(maxShards);
+            final ShardAllocationStrategy defaultStrategy = new DefaultShardAllocationStrategy(maxShards);
+            final SortedMap<Integer, ClusterNodeInfo> rendezvousNodes = new TreeMap<>();
+            final SortedMap<Integer, ClusterNodeInfo> defaultNodes = new TreeMap<>();
+            for (int nodeId = 0; nodeId < MAX_NODES; nodeId++) {
+                rendezvousNodes.put(nodeId, new ClusterNodeInfo(0L, null, null, null));
+                defaultNodes.put(nodeId, new ClusterNodeInfo(0L, null, null, null));
+                settle(rendezvous, rendezvousNodes);
+                settle(defaultStrategy, defaultNodes);
+            }
+            
+            final Random random = new Random(maxShards);
+            while (rendezvousNodes.size() > 1) {
+                // nodes leave in random order
+                final Integer nodeId = rendezvousNodes.keySet().toArray(new Integer[0])[random.nextInt(rendezvousNodes.size())];
+                final int[] rendezvousBefore = owners(rendezvousNodes, maxShards);
+                final int[] defaultBefore = owners(defaultNodes, maxShards);
+                final int left = rendezvousNodes.remove(nodeId).getShards().size();
+                defaultNodes.remove(nodeId);
+                settle(rendezvous, rendezvousNodes);
+                settle(defaultStrategy, defaultNodes);
+                
+                final int rendezvousMoved = moved(rendezvousBefore, owners(rendezvousNodes, maxShards));
+                final int defaultMoved = moved(defaultBefore, owners(defaultNodes, maxShards));
+                report("leave", maxShards, left, defaultMoved, defaultNodes, rendezvousMoved, rendezvousNodes);
+                
+                assertAllShardsRunning(rendezvousNodes, maxShards);
+                assertEvenSpread(rendezvousNodes, maxShards);
+                assertThat(rendezvousMoved).isEqualTo(left);
+            }
+        }
+    }
+    
+    @Test
+    public void rendezvous_shouldNotMoveMoreShardsWhileShardsAreStopping() {
+        final RendezvousShardAllocationStrategy strategy = new RendezvousShardAllocationStrategy(72);
+        final SortedMap<Integer, ClusterNodeInfo> nodes = new TreeMap<>();
+        for (int nodeId = 0; nodeId < 4; nodeId++) {
+            nodes.put(nodeId, new ClusterNodeInfo(0L, null, null, null));
+            settle(strategy, nodes);
+        }
+        
+        nodes.put(4, new ClusterNodeInfo(0L, null, null, null));
+        final ShardRebalance rebalance = strategy.rebalance(nodes);
+        assertThat(rebalance.getToStart()).isEmpty();
+        apply(nodes, rebalance);
+        
+        // until stopped, nothing more to do; then the stopped shards are started on the new node
+        assertThat(strategy.rebalance(nodes).isEmpty()).isTrue();
+        stopAll(nodes);
+        final ShardRebalance afterStopped = strategy.rebalance(nodes);
+        assertThat(afterStopped.getToStop()).isEmpty();
+        assertThat(afterStopped.getToStart().keySet()).containsExactly(4);
+        assertThat(afterStopped.getToStart().get(4).size()).isEqualTo(72 / 5);
+    }
+    
+    @Test
+    public void jump_shouldOnlyMoveKeysToNewShard() {
+        final Random random = new Random(1L);
+        final long[] keys = new long[100000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (i % 2 == 0) ? i : random.nextLong();
+        }
+        
+        for (int maxShards = 1; maxShards < 80; maxShards++) {
+            final ClusterShardResolver modBefore = new ModClusterShardResolver(maxShards);
+            final ClusterShardResolver modAfter = new ModClusterShardResolver(maxShards + 1);
+            final ClusterShardResolver jumpBefore = new JumpClusterShardResolver(maxShards);
+            final ClusterShardResolver jumpAfter = new JumpClusterShardResolver(maxShards + 1);
+            int modMoved = 0;
+            int jumpMoved = 0;
+            final int[] jumpLoad = new int[maxShards + 1];
+            for (final long key : keys) {
+                if (modBefore.getShard(key) != modAfter.getShard(key)) {
+                    modMoved++;
+                }
+                final int shard = jumpAfter.getShard(key);
+                jumpLoad[shard]++;
+                if (jumpBefore.getShard(key) != shard) {
+                    assertThat(shard).isEqualTo(maxShards);
+                    jumpMoved++;
+                }
+            }
+            final double expected = (double) keys.length / (maxShards + 1);
+            final double skew = max(jumpLoad) / expected;
+            if (maxShards % 8 == 0) {
+                LOG.info("{} -> {} shards: keys moved mod {} jump {}, max skew jump {}",
+                    maxShards,
+                    maxShards + 1,
+                    modMoved,
+                    jumpMoved,
+                    String.format("%.2f", skew));
+            }
+            assertThat(skew).isLessThan(1.1);
+            assertThat((double) jumpMoved).isBetween(expected * 0.9, expected * 1.1);
+        }
+    }
+    
+    private static void report(final String event,
+                               final int maxShards,
+                               final int minimum,
+                               final int defaultMoved,
+                               final SortedMap<Integer, ClusterNodeInfo> defaultNodes,
+                               final int rendezvousMoved,
+                               final SortedMap<Integer, ClusterNodeInfo> rendezvousNodes) {
+        LOG.info("{} ({} shards), {} nodes: minimum {}, moved default {} rendezvous {}, load default {}-{} rendezvous {}-{}",
+            event,
+            maxShards,
+            rendezvousNodes.size(),
+            minimum,
+            defaultMoved,
+            rendezvousMoved,
+            minLoad(defaultNodes),
+            maxLoad(defaultNodes),
+            minLoad(rendezvousNodes),
+            maxLoad(rendezvousNodes));
+    }
+    
+    /**
+     * Rebalance until stable, stopping shards as they would be stopped by nodes
+     */
+    private static void settle(final ShardAllocationStrategy strategy, final SortedMap<Integer, ClusterNodeInfo> nodes) {
+        for (int i = 0; i < 10; i++) {
+            final ShardRebalance rebalance = strategy.rebalance(nodes);
+            if (rebalance.isEmpty()) {
+                return;
+            }
+            apply(nodes, rebalance);
+            stopAll(nodes);
+        }
+        throw new AssertionError("Rebalance did not settle: " + nodes);
+    }
+    
+    private static void apply(final SortedMap<Integer, ClusterNodeInfo> nodes, final ShardRebalance rebalance) {
+        for (final Entry<Integer, ClusterNodeInfo> entry : nodes.entrySet()) {
+            final BitSet shards = BitSet.of(MAX_SHARDS_LIMIT);
+            final BitSet shardsStopping = BitSet.of(MAX_SHARDS_LIMIT);
+            shards.addAll(entry.getValue().getShards());
+            shardsStopping.addAll(entry.getValue().getShardsStopping());
+            final BitSet toStop = rebalance.getToStop().get(entry.getKey());
+            if (toStop != null) {
+                for (final BitSetIterator it = toStop.iterator(); it.hasNext();) {
+                    final int shard = it.next();
+                    assertThat(shards.remove(shard)).isTrue();
+                    shardsStopping.add(shard);
+                }
+            }
+            final BitSet toStart = rebalance.getToStart().get(entry.getKey());
+            if (toStart != null) {
+                for (final BitSetIterator it = toStart.iterator(); it.hasNext();) {
+                    final int shard = it.next();
+                    shardsStopping.remove(shard);
+                    shards.add(shard);
+                }
+            }
+            entry.setValue(new ClusterNodeInfo(0L, shards, shardsStopping, null));
+        }
+    }
+    
+    private static void stopAll(final SortedMap<Integer, ClusterNodeInfo> nodes) {
+        for (final Entry<Integer, ClusterNodeInfo> entry : nodes.entrySet()) {
+            entry.setValue(new ClusterNodeInfo(0L, entry.getValue().getShards(), null, null));
+        }
+    }
+    
+    private static int[] owners(final SortedMap<Integer, ClusterNodeInfo> nodes, final int maxShards) {
+        final int[] owners = new int[maxShards];
+        for (int shard = 0; shard < maxShards; shard++) {
+            owners[shard] = -1;
+        }
+        for (final Entry<Integer, ClusterNodeInfo> entry : nodes.entrySet()) {
+            for (final BitSetIterator it = entry.getValue().getShards().iterator(); it.hasNext();) {
+                owners[it.next()] = entry.getKey();
+            }
+        }
+        return owners;
+    }
+    
+    private static int moved(final int[] before, final int[] after) {
+        int moved = 0;
+        for (int shard = 0; shard < before.length; shard++) {
+            if ((before[shard] >= 0) && (before[shard] != after[shard])) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+    
+    private static void assertAllShardsRunning(final SortedMap<Integer, ClusterNodeInfo> nodes, final int maxShards) {
+        for (final int owner : owners(nodes, maxShards)) {
+            assertThat(owner).isGreaterThanOrEqualTo(0);
+        }
+    }
+    
+    /**
+     * Every node runs maxShards / nodes shards, rounded down or up
+     */
+    private static void assertEvenSpread(final SortedMap<Integer, ClusterNodeInfo> nodes, final int maxShards) {
+        assertThat(minLoad(nodes)).isEqualTo(maxShards / nodes.size());
+        assertThat(maxLoad(nodes)).isEqualTo((maxShards + nodes.size() - 1) / nodes.size());
+    }
+    
+    private static int minLoad(final SortedMap<Integer, ClusterNodeInfo> nodes) {
+        return nodes.values().stream().mapToInt(n -> n.getShards().size()).min().orElse(0);
+    }
+    
+    private static int maxLoad(final SortedMap<Integer, ClusterNodeInfo> nodes) {
+        return nodes.values().stream().mapToInt(n -> n.getShards().size()).max().orElse(0);
+    }
+    
+    private static int max(final int[] values) {
+        int max = 0;
+        for (final int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+    
+}
@@ -0,0 +1,52 @@
+package com.ixaris.commons.clustering.lib.idempotency;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveBatchSizeTest {
+    
+    @Test
+    public void fullBatches_shouldGrowOnceDrainLagExceedsTarget() {
+        final AdaptiveBatchSize batchSize = new AdaptiveBatchSize(10, 40, 100L);
+        assertThat(batchSize.get()).isEqualTo(10);
+        
+        assertThat(batchSize.update(10, 10, 0L)).isTrue();
+        assertThat(batchSize.update(10, 10, 50L)).isTrue();
+        // still within the target drain lag
+        assertThat(batchSize.get()).isEqualTo(10);
+        assertThat(batchSize.getDrainLag(50L)).isEqualTo(50L);
+        
+        assertThat(batchSize.update(10, 10, 100L)).isTrue();
+        assertThat(batchSize.get()).isEqualTo(20);
+        assertThat(batchSize.update(20, 20, 150L)).isTrue();
+        assertThat(batchSize.get()).isEqualTo(40);
+        assertThat(batchSize.update(40, 40, 200L)).isTrue();
+        assertThat(batchSize.get()).isEqualTo(40);
+    }
+    
+    @Test
+    public void partialBatches_shouldShrinkAndResetDrainLag() {
+        final AdaptiveBatchSize batchSize = new AdaptiveBatchSize(10, 40, 0L);
+        batchSize.update(10, 10, 0L);
+        batchSize.update(10, 10, 0L);
+        batchSize.update(20, 20, 0L);
+        assertThat(batchSize.get()).isEqualTo(40);
+        
+        assertThat(batchSize.update(5, 40, 10L)).isFalse();
+        assertThat(batchSize.get()).isEqualTo(20);
+        assertThat(batchSize.getDrainLag(10L)).isZero();
+        
+        batchSize.update(0, 20, 20L);
+        batchSize.update(0, 10, 30L);
+        assertThat(batchSize.get()).isEqualTo(10);
+    }
+    
+    @Test
+    public void invalidSizes_shouldBeRejected() {
+        assertThatThrownBy(() -> new AdaptiveBatchSize(0, 10, 0L)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveBatchSize(10, 5, 0L)).isInstanceOf(IllegalArgumentException.class);
+    }
+    
+}
@@ -0,0 +1,83 @@
+package com.ixaris.commons.clustering.lib.idempotency;
+
+import static com.ixaris.commons.async.lib.Async.rejected;
+import static com.ixaris.commons.async.lib.Async.result;
+import static com.ixaris.commons.async.lib.CompletionStageUtil.block;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.ixaris.commons.async.lib.Async;
+
+public class AtLeastOnceMessageTypeTest {
+    
+    private static final class TestMessageType implements AtLeastOnceMessageType<String> {
+        
+        private final boolean failedMessageBlocksQueue;
+        private final List<String> processed = new ArrayList<>();
+        
+        private TestMessageType(final boolean failedMessageBlocksQueue) {
+            this.failedMessageBlocksQueue = failedMessageBlocksQueue;
+        }
+        
+        @Override
+        public String getKey() {
+            return "test";
+        }
+        
+        @Override
+        public boolean isFailedMessageBlocksQueue() {
+            return failedMessageBlocksQueue;
+        }
+        
+        @Override
+        public Async<PendingMessages<String>> pending(final long timestamp) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public Async<Void> processMessage(final StoredPendingMessage<String> pendingMessage,
+                                          final NextRetryTimeFunction nextRetryTimeFunction) {
+            final String message = pendingMessage.getMessage();
+            processed.add(message);
+            if (message.startsWith("throw")) {
+                throw new IllegalStateException(message);
+            }
+            return message.startsWith("fail") ? rejected(new IllegalStateException(message)) : result();
+        }
+        
+    }
+    
+    @Test
+    public void defaultBatchProcessing_shouldProcessEveryMessageDespiteFailures() throws InterruptedException {
+        final TestMessageType messageType = new TestMessageType(false);
+        
+        block(messageType.processMessages(messages("a", "fail", "throw", "b"), failureCount -> 0L));
+        
+        assertThat(messageType.processed).containsExactly("a", "fail", "throw", "b");
+    }
+    
+    @Test
+    public void defaultBatchProcessing_shouldStopAtFirstFailureIfFailedMessageBlocksQueue() throws InterruptedException {
+        final TestMessageType messageType = new TestMessageType(true);
+        
+        block(messageType.processMessages(messages("a", "fail", "b"), failureCount -> 0L));
+        assertThat(messageType.processed).containsExactly("a", "fail");
+        
+        messageType.processed.clear();
+        block(messageType.processMessages(messages("a", "throw", "b"), failureCount -> 0L));
+        assertThat(messageType.processed).containsExactly("a", "throw");
+    }
+    
+    private static List<StoredPendingMessage<String>> messages(final String... messages) {
+        final List<StoredPendingMessage<String>> pendingMessages = new ArrayList<>(messages.length);
+        for (int i = 0; i < messages.length; i++) {
+            pendingMessages.add(new StoredPendingMessage<>(i, 0, "subtype", messages[i]));
+        }
+        return pendingMessages;
+    }
+    
+}
@@ -0,0 +1,364 @@
+package com.ixaris.commons.collections.lib;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent map from primitive long keys to non-null values, intended for hot registries such as in-flight request
+ * tables where keys are generated ids. The map is split into independent sections (selected by the high bits of the
+ * key hash), each of which is an open addressed table with linear probing and backward shift deletion, so there are
+ * no boxed keys, no entry nodes and no tombstones.
+ *
+ * <p>Reads are optimistic and do not block. Writes only contend with other writes hitting the same section, so with
+ * the default concurrency level there is no single monitor shared by all threads.
+ *
+ * @param <T> the value type
+ */
+public final class ConcurrentLongHashMap<T> {
+    
+    @FunctionalInterface
+    public interface EntryConsumer<T> {
+        
+        void accept(long key, T value);
+        
+    }
+    
+    private static final int DEFAULT_EXPECTED_ITEMS = 256;
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final float FILL_FACTOR = 0.66f;
+    
+    private static final class Section<T> extends StampedLock {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private long[] keys;
+        private Object[] values;
+        private volatile int size;
+        private int resizeThreshold;
+        
+        private Section(final int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            size = 0;
+            resizeThreshold = (int) (capacity * FILL_FACTOR);
+        }
+        
+        private T get(final long key, final long hash) {
+            final long stamp = tryOptimisticRead();
+            if (stamp != 0L) {
+                final T value = find(keys, values, key, hash);
+                if (validate(stamp)) {
+                    return value;
+                }
+            }
+            
+            final long readStamp = readLock();
+            try {
+                return find(keys, values, key, hash);
+            } finally {
+                unlockRead(readStamp);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private static <T> T find(final long[] keys, final Object[] values, final long key, final long hash) {
+            // under an optimistic read, keys and values may belong to different tables (both powers of two) while
+            // rehashing, and the probe needs to be bounded as the table may be changing underneath us
+            final int capacity = Math.min(keys.length, values.length);
+            final int mask = capacity - 1;
+            int bucket = (int) hash & mask;
+            for (int i = 0; i < capacity; i++) {
+                final Object value = values[bucket];
+                if (value == null) {
+                    return null;
+                } else if (keys[bucket] == key) {
+                    return (T) value;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+            return null;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private T put(final long key, final T value, final long hash, final boolean onlyIfAbsent) {
+            final long stamp = writeLock();
+            try {
+                final int mask = values.length - 1;
+                int bucket = (int) hash & mask;
+                while (true) {
+                    final Object storedValue = values[bucket];
+                    if (storedValue == null) {
+                        keys[bucket] = key;
+                        values[bucket] = value;
+                        size++;
+                        if (size > resizeThreshold) {
+                            rehash(values.length << 1);
+                        }
+                        return null;
+                    } else if (keys[bucket] == key) {
+                        if (!onlyIfAbsent) {
+                            values[bucket] = value;
+                        }
+                        return (T) storedValue;
+                    }
+                    bucket = (bucket + 1) & mask;
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        private T remove(final long key, final Object expectedValue, final long hash) {
+            final long stamp = writeLock();
+            try {
+                final int mask = values.length - 1;
+                int bucket = (int) hash & mask;
+                while (true) {
+                    final Object storedValue = values[bucket];
+                    if (storedValue == null) {
+                        return null;
+                    } else if (keys[bucket] == key) {
+                        if ((expectedValue != null) && !expectedValue.equals(storedValue)) {
+                            return null;
+                        }
+                        size--;
+                        shiftBack(bucket, mask);
+                        return (T) storedValue;
+                    }
+                    bucket = (bucket + 1) & mask;
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+        
+        /**
+         * Backward shift deletion: move subsequent entries of the probe sequence into the freed slot until an empty
+         * slot is found, so that lookups never need tombstones.
+         */
+        private void shiftBack(final int removed, final int mask) {
+            int free = removed;
+            int bucket = removed;
+            while (true) {
+                values[free] = null;
+                while (true) {
+                    bucket = (bucket + 1) & mask;
+                    if (values[bucket] == null) {
+                        return;
+                    }
+                    final int ideal = (int) hash(keys[bucket]) & mask;
+                    // entry can move to the free slot only if its ideal bucket is not cyclically in (free, bucket]
+                    if ((free <= bucket) ? ((free >= ideal) || (ideal > bucket)) : ((free >= ideal) && (ideal > bucket))) {
+                        break;
+                    }
+                }
+                keys[free] = keys[bucket];
+                values[free] = values[bucket];
+                free = bucket;
+            }
+        }
+        
+        private void forEach(final EntryConsumer<? super T> consumer, final boolean drain) {
+            final long[] keysSnapshot;
+            final Object[] valuesSnapshot;
+            final long stamp = drain ? writeLock() : readLock();
+            try {
+                keysSnapshot = Arrays.copyOf(keys, keys.length);
+                valuesSnapshot = Arrays.copyOf(values, values.length);
+                if (drain) {
+                    Arrays.fill(values, null);
+                    size = 0;
+                }
+            } finally {
+                unlock(stamp);
+            }
+            
+            // invoke outside the lock, as StampedLock is not reentrant and the consumer may well modify this map
+            for (int i = 0; i < valuesSnapshot.length; i++) {
+                if (valuesSnapshot[i] != null) {
+                    @SuppressWarnings("unchecked")
+                    final T value = (T) valuesSnapshot[i];
+                    consumer.accept(keysSnapshot[i], value);
+                }
+            }
+        }
+        
+        private void clear() {
+            final long stamp = writeLock();
+            try {
+                Arrays.fill(values, null);
+                size = 0;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+        
+        private void rehash(final int newCapacity) {
+            final long[] oldKeys = keys;
+            final Object[] oldValues = values;
+            final long[] newKeys = new long[newCapacity];
+            final Object[] newValues = new Object[newCapacity];
+            final int mask = newCapacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int bucket = (int) hash(oldKeys[i]) & mask;
+                    while (newValues[bucket] != null) {
+                        bucket = (bucket + 1) & mask;
+                    }
+                    newKeys[bucket] = oldKeys[i];
+                    newValues[bucket] = oldValues[i];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+            resizeThreshold = (int) (newCapacity * FILL_FACTOR);
+        }
+        
+    }
+    
+    private static int alignToPowerOfTwo(final int n) {
+        return (n <= 1) ? 1 : (Integer.highestOneBit(n - 1) << 1);
+    }
+    
+    /**
+     * murmur3 64-bit finalizer, so that sequential ids spread evenly across sections and buckets
+     */
+    private static long hash(final long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    private final Section<T>[] sections;
+    private final int sectionShift;
+    
+    public ConcurrentLongHashMap() {
+        this(DEFAULT_EXPECTED_ITEMS, DEFAULT_CONCURRENCY_LEVEL);
+    }
+    
+    public ConcurrentLongHashMap(final int expectedItems) {
+        this(expectedItems, DEFAULT_CONCURRENCY_LEVEL);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongHashMap(final int expectedItems, final int concurrencyLevel) {
+        if (expectedItems <= 0) {
+            throw new IllegalArgumentException("Illegal expected items: " + expectedItems);
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Illegal concurrency level: " + concurrencyLevel);
+        }
+        
+        final int numSections = alignToPowerOfTwo(concurrencyLevel);
+        final int perSectionCapacity = alignToPowerOfTwo(Math.max(2, (int) ((expectedItems / numSections) / FILL_FACTOR) + 1));
+        sections = new Section[numSections];
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section<>(perSectionCapacity);
+        }
+        sectionShift = 64 - Integer.numberOfTrailingZeros(numSections);
+    }
+    
+    public int size() {
+        int size = 0;
+        for (final Section<T> section : sections) {
+            size += section.size;
+        }
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        for (final Section<T> section : sections) {
+            if (section.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public T get(final long key) {
+        final long h = hash(key);
+        return getSection(h).get(key, h);
+    }
+    
+    public boolean containsKey(final long key) {
+        return get(key) != null;
+    }
+    
+    /**
+     * @return the previous value mapped to the key, or null if there was none
+     */
+    public T put(final long key, final T value) {
+        checkValue(value);
+        final long h = hash(key);
+        return getSection(h).put(key, value, h, false);
+    }
+    
+    /**
+     * @return the existing value mapped to the key (in which case the map is not modified), or null if the value was
+     *     added
+     */
+    public T putIfAbsent(final long key, final T value) {
+        checkValue(value);
+        final long h = hash(key);
+        return getSection(h).put(key, value, h, true);
+    }
+    
+    /**
+     * @return the value that was mapped to the key, or null if the key was not mapped. When called concurrently for
+     *     the same key, exactly one caller obtains the value.
+     */
+    public T remove(final long key) {
+        final long h = hash(key);
+        return getSection(h).remove(key, null, h);
+    }
+    
+    /**
+     * @return true if the key was mapped to the given value and was removed
+     */
+    public boolean remove(final long key, final T value) {
+        checkValue(value);
+        final long h = hash(key);
+        return getSection(h).remove(key, value, h) != null;
+    }
+    
+    /**
+     * Visit a weakly consistent snapshot of the entries (each section is visited atomically)
+     */
+    public void forEach(final EntryConsumer<? super T> consumer) {
+        for (final Section<T> section : sections) {
+            section.forEach(consumer, false);
+        }
+    }
+    
+    /**
+     * Remove all entries, passing each removed entry to the given consumer. An entry is only ever passed to a single
+     * drain, and is never returned by a concurrent {@link #remove(long)}.
+     */
+    public void drain(final EntryConsumer<? super T> consumer) {
+        for (final Section<T> section : sections) {
+            section.forEach(consumer, true);
+        }
+    }
+    
+    public void clear() {
+        for (final Section<T> section : sections) {
+            section.clear();
+        }
+    }
+    
+    private Section<T> getSection(final long hash) {
+        return (sectionShift == 64) ? sections[0] : sections[(int) (hash >>> sectionShift)];
+    }
+    
+    private static void checkValue(final Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value is null");
+        }
+    }
+    
+}
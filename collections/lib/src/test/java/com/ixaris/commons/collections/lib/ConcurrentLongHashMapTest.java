@@ -0,0 +1,103 @@
+package com.ixaris.commons.collections.lib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentLongHashMapTest {
+    
+    @Test
+    public void testMap() {
+        final ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+        
+        assertTrue(map.isEmpty());
+        
+        map.put(12L, "12");
+        map.put(64L, "64");
+        
+        assertEquals(2, map.size());
+        assertEquals("12", map.get(12L));
+        assertEquals("64", map.get(64L));
+        assertEquals("64", map.putIfAbsent(64L, "65"));
+        assertEquals("64", map.get(64L));
+        
+        assertEquals("64", map.remove(64L));
+        assertNull(map.remove(64L));
+        assertFalse(map.remove(12L, "13"));
+        assertTrue(map.remove(12L, "12"));
+        
+        assertTrue(map.isEmpty());
+    }
+    
+    @Test
+    public void testMatchesHashMapWhileGrowingAndShrinking() {
+        final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>(4, 2);
+        final Map<Long, Long> expected = new HashMap<>();
+        final Random random = new Random(0L);
+        
+        for (int i = 0; i < 100000; i++) {
+            final long key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, key), map.put(key, key));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        
+        assertEquals(expected.size(), map.size());
+        for (long key = 0L; key < 2000L; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+    
+    @Test
+    public void testDrain() {
+        final ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+        for (long i = 0L; i < 100L; i++) {
+            map.put(i, Long.toString(i));
+        }
+        
+        final AtomicInteger count = new AtomicInteger();
+        map.drain((k, v) -> {
+            assertEquals(Long.toString(k), v);
+            count.incrementAndGet();
+        });
+        
+        assertEquals(100, count.get());
+        assertTrue(map.isEmpty());
+    }
+    
+    @Test
+    public void testConcurrentPutAndRemove() throws InterruptedException {
+        final ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+        final AtomicInteger failures = new AtomicInteger();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final long base = ((long) t) << 40;
+            threads[t] = new Thread(() -> {
+                for (long i = 0L; i < 20000L; i++) {
+                    map.put(base + i, "value");
+                    if ((map.get(base + i) == null) || (map.remove(base + i) == null)) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(0, failures.get());
+        assertTrue(map.isEmpty());
+    }
+    
+}
@@ -22,6 +22,7 @@ import com.ixaris.commons.dimensions.config.cache.ConfigCache;
 import com.ixaris.commons.dimensions.config.cache.ConfigCacheProvider;
 import com.ixaris.commons.dimensions.config.data.ConfigSetEntity;
 import com.ixaris.commons.dimensions.config.data.ConfigValueEntity;
+import com.ixaris.commons.dimensions.config.data.ConfigVersion;
 import com.ixaris.commons.dimensions.config.value.NullMarker;
 import com.ixaris.commons.dimensions.config.value.Value;
 import com.ixaris.commons.dimensions.lib.base.DimensionalHelper;
@@ -61,11 +62,18 @@ public final class ConfigHelper {
         // first try the cache. We have a 2 level cache, property > context instances > value
         final Object cached = defCache.get(context);
         
-        if (cached != null) {
+        if ((cached != null) && !defCache.isVersionCheckDue()) {
             return result(cached.equals(NullMarker.NULL) ? Optional.empty() : Optional.of((T) cached));
         }
         
         return db.transactionRequired(() -> {
+            final long version = readVersion(defCache, context);
+            final Object revalidated = defCache.get(context);
+            if (revalidated != null) {
+                final Optional<T> cachedValue = revalidated.equals(NullMarker.NULL) ? Optional.empty() : Optional.of((T) revalidated);
+                return cachedValue;
+            }
+            
             // next try the database
             final Optional<T> value = ConfigValueEntity.lookupBestMatch(context);
             if (!value.isPresent() && !def.isNullExpected()) {
@@ -74,7 +82,7 @@ public final class ConfigHelper {
             
             // cache the retrieved value. If we arrived here, context value is not cached
             // replace null with a custom null object to distinguish between no cached value and cached as null
-            JOOQ_TX.get().onCommit(() -> defCache.put(context, value.map(v -> (Object) v).orElse(NullMarker.NULL)));
+            JOOQ_TX.get().onCommit(() -> defCache.put(context, value.map(v -> (Object) v).orElse(NullMarker.NULL), version));
             return value;
         });
     }
@@ -110,12 +118,23 @@ public final class ConfigHelper {
         if (def.isCacheable()) {
             final Object cached = defCache.get(context);
             
-            if (cached != null) {
+            if ((cached != null) && !defCache.isVersionCheckDue()) {
                 return result((Set<T>) cached);
             }
         }
         
         return db.transactionRequired(() -> {
+            final long version;
+            if (def.isCacheable()) {
+                version = readVersion(defCache, context);
+                final Object revalidated = defCache.get(context);
+                if (revalidated != null) {
+                    return (Set<T>) revalidated;
+                }
+            } else {
+                version = 0L;
+            }
+            
             // next try the database
             final Optional<Set<T>> set = ConfigSetEntity.lookupBestMatch(context);
             if (!set.isPresent() && !def.isNullExpected()) {
@@ -124,7 +143,7 @@ public final class ConfigHelper {
             
             if (def.isCacheable()) {
                 // cache the retrieved set. If we arrived here, context set is not cached
-                JOOQ_TX.get().onCommit(() -> defCache.put(context, set.orElse(Collections.emptySet())));
+                JOOQ_TX.get().onCommit(() -> defCache.put(context, set.orElse(Collections.emptySet()), version));
             }
             return set.orElse(Collections.emptySet());
         });
@@ -160,11 +179,17 @@ public final class ConfigHelper {
             final ConfigCache defCache = cache.of(def);
             final Object cached = defCache.get(context);
             
-            if (cached != null) {
+            if ((cached != null) && !defCache.isVersionCheckDue()) {
                 return result(!cached.equals(NullMarker.NULL) && ((Set<T>) cached).contains(value));
             }
             
             return db.transactionRequired(() -> {
+                final long version = readVersion(defCache, context);
+                final Object revalidated = defCache.get(context);
+                if (revalidated != null) {
+                    return !revalidated.equals(NullMarker.NULL) && ((Set<T>) revalidated).contains(value);
+                }
+                
                 // if we get here, there is no cached value
                 // next try the database. Since set is cacheable, we will try to get the set and cache it
                 final Optional<Set<T>> set = ConfigSetEntity.lookupBestMatch(context);
@@ -173,7 +198,7 @@ public final class ConfigHelper {
                 }
                 
                 // cache the retrieved set. If we arrived here, context set is not cached
-                JOOQ_TX.get().onCommit(() -> defCache.put(context, set.orElse(Collections.emptySet())));
+                JOOQ_TX.get().onCommit(() -> defCache.put(context, set.orElse(Collections.emptySet()), version));
                 return set.map(s -> s.contains(value)).orElse(false);
             });
             
@@ -185,4 +210,19 @@ public final class ConfigHelper {
         }
     }
     
+    /**
+     * Reads the persisted version of the definition before reading the value to cache, so that a change committed
+     * after the value is read invalidates it, and values cached before a change missed by this node are not returned.
+     *
+     * @return the version to cache the value with
+     */
+    private static long readVersion(final ConfigCache defCache, final Context<? extends ConfigDef<?>> context) {
+        if (!context.isCacheable()) {
+            return 0L;
+        }
+        final long version = ConfigVersion.lookup(context.getDef());
+        defCache.versionRead(version);
+        return version;
+    }
+    
 }
@@ -12,12 +12,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.dimensions.config.ConfigDef;
 import com.ixaris.commons.dimensions.config.SetDef;
 import com.ixaris.commons.dimensions.config.SetUpdates;
 import com.ixaris.commons.dimensions.config.ValueDef;
 import com.ixaris.commons.dimensions.config.cache.ConfigCacheProvider;
 import com.ixaris.commons.dimensions.config.data.ConfigSetEntity;
 import com.ixaris.commons.dimensions.config.data.ConfigValueEntity;
+import com.ixaris.commons.dimensions.config.data.ConfigVersion;
 import com.ixaris.commons.dimensions.config.value.Value;
 import com.ixaris.commons.dimensions.config.value.validation.CascadeSetValidation;
 import com.ixaris.commons.dimensions.config.value.validation.CascadeValueValidation;
@@ -65,7 +67,7 @@ public class ConfigAdminHelper {
         if (cascade != null) {
             ConfigValueEntity.cascadeUpdate(context, cascade, value);
         }
-        JOOQ_TX.get().onCommit(() -> cache.of(context.getDef()).invalidate());
+        invalidateOnCommit(cache, context.getDef());
         return currentValue != null ? currentValue.getValue() : null;
     }
     
@@ -85,7 +87,7 @@ public class ConfigAdminHelper {
             .lookupExactMatch(context)
             .map(v -> {
                 v.delete();
-                JOOQ_TX.get().onCommit(() -> cache.of(context.getDef()).invalidate());
+                invalidateOnCommit(cache, context.getDef());
                 return true;
             })
             .orElse(false);
@@ -126,7 +128,7 @@ public class ConfigAdminHelper {
             ConfigSetEntity.cascadeUpdate(context, cascade, set, updates);
         }
         if (context.getDef().isCacheable()) {
-            JOOQ_TX.get().onCommit(() -> cache.of(context.getDef()).invalidate());
+            invalidateOnCommit(cache, context.getDef());
         }
         return updates;
     }
@@ -172,7 +174,7 @@ public class ConfigAdminHelper {
             ConfigSetEntity.cascadeUpdate(context, validation, set, updates);
         }
         if (context.getDef().isCacheable()) {
-            JOOQ_TX.get().onCommit(() -> cache.of(context.getDef()).invalidate()); // invalidate the cache on commit
+            invalidateOnCommit(cache, context.getDef());
         }
         return updates;
     }
@@ -192,13 +194,22 @@ public class ConfigAdminHelper {
             .map(s -> {
                 s.delete();
                 if (context.getDef().isCacheable()) {
-                    JOOQ_TX.get().onCommit(() -> cache.of(context.getDef()).invalidate());
+                    invalidateOnCommit(cache, context.getDef());
                 }
                 return true;
             })
             .orElse(false);
     }
     
+    /**
+     * Increments the version of the definition, so that nodes that miss the invalidation detect the change when
+     * checking the version, and invalidates the cache once the change is committed.
+     */
+    private static void invalidateOnCommit(final ConfigCacheProvider cache, final ConfigDef<?> def) {
+        final long version = ConfigVersion.increment(def);
+        JOOQ_TX.get().onCommit(() -> cache.of(def).invalidate(version));
+    }
+    
     @SuppressWarnings("unchecked")
     private static <T extends Value, V extends ValueDef<T>> CascadeValueValidation<? super T> validateValueAndGetCascadeIfApplicable(final Context<V> context,
                                                                                                                                      final T newValue) throws ConfigValidationException {
@@ -3,15 +3,38 @@ package com.ixaris.commons.dimensions.config.cache;
 import com.ixaris.commons.dimensions.config.ConfigDef;
 import com.ixaris.commons.dimensions.lib.context.Context;
 
+/**
+ * Cache of the values of a definition. Cached values are tagged with the version of the definition (see
+ * {@link com.ixaris.commons.dimensions.config.data.ConfigVersion}) read in the same transaction as the value, and are
+ * not returned once a newer version is known, either through {@link #invalidate(long)} or {@link #versionRead(long)}.
+ */
 public interface ConfigCache {
     
+    /**
+     * @return the cached value, or null if not cached or cached with an older version than the latest known version
+     */
     Object get(Context<? extends ConfigDef<?>> key);
     
-    void put(Context<? extends ConfigDef<?>> key, Object value);
+    /**
+     * Cache a value read with the given version. Ignored if a newer version is already known.
+     */
+    void put(Context<? extends ConfigDef<?>> key, Object value, long version);
+    
+    /**
+     * @return true if cached values should be confirmed by reading the persisted version, to detect missed
+     *     invalidations. Returns true to one caller per check interval.
+     */
+    boolean isVersionCheckDue();
+    
+    /**
+     * Record the persisted version, invalidating values cached with an older version.
+     */
+    void versionRead(long version);
     
     /**
-     * for cluster caches, should invalidate on all nodes
+     * Invalidate values cached with a version older than the given version. for cluster caches, should invalidate on
+     * all nodes
      */
-    void invalidate();
+    void invalidate(long version);
     
 }
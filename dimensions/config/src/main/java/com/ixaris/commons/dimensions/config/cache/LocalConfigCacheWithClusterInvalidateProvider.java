@@ -1,8 +1,15 @@
 package com.ixaris.commons.dimensions.config.cache;
 
 import static com.ixaris.commons.async.lib.Async.result;
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -24,10 +31,18 @@ import com.ixaris.commons.multitenancy.lib.MultiTenancy;
 import com.ixaris.commons.multitenancy.lib.cache.AbstractTenantAwareCache;
 import com.ixaris.commons.multitenancy.lib.cache.AbstractTenantAwareCache.TenantKey;
 
+/**
+ * Local config cache, invalidated on all nodes using a cluster broadcast. Cached values are indexed by tenant /
+ * definition, so invalidating a definition only touches the values cached for that definition. Since broadcasts are
+ * best effort, cached values are also tagged with the persisted version of the definition, and the persisted version
+ * is read again once per version check interval, so a node that missed an invalidation stops serving stale values
+ * within the interval, and only refreshes the values of the definitions that changed.
+ */
 @Component
 public final class LocalConfigCacheWithClusterInvalidateProvider implements ConfigCacheProvider, ClusterBroadcastHandler<InvalidateConfigCache> {
     
     private static final int DEFAULT_SIZE = 5000;
+    private static final long DEFAULT_VERSION_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30L);
     
     private static final class Key extends TenantKey {
         
@@ -49,22 +64,163 @@ public final class LocalConfigCacheWithClusterInvalidateProvider implements Conf
         
     }
     
-    private static final class LocalConfigCache extends AbstractTenantAwareCache<Key, Object> {
+    private static final class DefKey extends TenantKey {
         
-        private LocalConfigCache(final MultiTenancy multiTenancy, final int maxSize) {
+        public final ConfigDef<?> def;
+        
+        private DefKey(final ConfigDef<?> def) {
+            this.def = def;
+        }
+        
+        private DefKey(final String tenantId, final ConfigDef<?> def) {
+            super(tenantId);
+            this.def = def;
+        }
+        
+        @Override
+        public boolean equals(final Object o) {
+            return EqualsUtil.equals(this, o, other -> tenantId.equals(other.tenantId) && def.equals(other.def));
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenantId, def);
+        }
+        
+    }
+    
+    private static final class Entry {
+        
+        private final Object value;
+        private final long version;
+        
+        private Entry(final Object value, final long version) {
+            this.value = value;
+            this.version = version;
+        }
+        
+    }
+    
+    /**
+     * The latest known version, and the keys of the cached values, of a definition for a tenant
+     */
+    private static final class DefState {
+        
+        private final AtomicLong version = new AtomicLong();
+        private final AtomicLong versionCheckDueAt;
+        private final Set<Key> keys = ConcurrentHashMap.newKeySet();
+        
+        private DefState(final long versionCheckDueAt) {
+            this.versionCheckDueAt = new AtomicLong(versionCheckDueAt);
+        }
+        
+        /**
+         * @return true if the known version was older than the given version
+         */
+        private boolean advance(final long to) {
+            return version.getAndAccumulate(to, Math::max) < to;
+        }
+        
+    }
+    
+    private static final class LocalConfigCache extends AbstractTenantAwareCache<Key, Entry> {
+        
+        private final long versionCheckIntervalNanos;
+        private final ConcurrentMap<DefKey, DefState> states = new ConcurrentHashMap<>();
+        
+        private LocalConfigCache(final MultiTenancy multiTenancy, final int maxSize, final long versionCheckIntervalMillis) {
             super(multiTenancy, maxSize, TimeUnit.HOURS.toMillis(1L));
+            versionCheckIntervalNanos = TimeUnit.MILLISECONDS.toNanos(versionCheckIntervalMillis);
         }
         
-        private Object get(final Context<? extends ConfigDef<?>> key) {
-            return get(new Key(key));
+        private Object get(final Context<? extends ConfigDef<?>> context) {
+            final Key key = new Key(context);
+            final DefState state = states.get(new DefKey(key.tenantId, context.getDef()));
+            if (state == null) {
+                return null;
+            }
+            final Entry entry = get(key);
+            return ((entry != null) && (entry.version >= state.version.get())) ? entry.value : null;
         }
         
-        private void put(final Context<? extends ConfigDef<?>> key, final Object value) {
-            put(new Key(key), value);
+        private void put(final Context<? extends ConfigDef<?>> context, final Object value, final long version) {
+            final Key key = new Key(context);
+            final DefState state = state(new DefKey(key.tenantId, context.getDef()));
+            if (state.advance(version)) {
+                invalidateIndexed(state);
+            } else if (version < state.version.get()) {
+                // read before the latest known change
+                return;
+            }
+            // indexed before caching, so a versioned invalidation in between either removes the value or finds it
+            // stale. an unversioned invalidation (see invalidateAllTenants()) that runs before the value is indexed
+            // does not remove it, so a value read before the change may still be served until the next version check
+            state.keys.add(key);
+            put(key, new Entry(value, version));
         }
         
-        private void invalidate(final ConfigDef<?> def) {
-            invalidateMatching(k -> k.context.getDef().equals(def));
+        private boolean isVersionCheckDue(final ConfigDef<?> def) {
+            final DefState state = states.get(new DefKey(def));
+            if (state == null) {
+                // nothing cached
+                return false;
+            }
+            final long now = System.nanoTime();
+            final long dueAt = state.versionCheckDueAt.get();
+            return ((now - dueAt) >= 0L) && state.versionCheckDueAt.compareAndSet(dueAt, now + versionCheckIntervalNanos);
+        }
+        
+        private void versionRead(final ConfigDef<?> def, final long version) {
+            final DefState state = state(new DefKey(def));
+            state.versionCheckDueAt.set(System.nanoTime() + versionCheckIntervalNanos);
+            if (state.advance(version)) {
+                invalidateIndexed(state);
+            }
+        }
+        
+        private void invalidate(final ConfigDef<?> def, final long version) {
+            final DefState state = state(new DefKey(def));
+            state.advance(version);
+            invalidateIndexed(state);
+        }
+        
+        /**
+         * Unversioned invalidations cannot tell apart stale values being cached concurrently, so the persisted version
+         * is also checked on the next read, rather than once the version check interval elapses
+         */
+        private void invalidateAllTenants(final ConfigDef<?> def) {
+            states.forEach((k, state) -> {
+                if (k.def.equals(def)) {
+                    state.versionCheckDueAt.set(System.nanoTime());
+                    invalidateIndexed(state);
+                }
+            });
+        }
+        
+        @Override
+        public void onTenantInactive(final String tenantId) {
+            super.onTenantInactive(tenantId);
+            states.keySet().removeIf(k -> tenantId.equals(k.tenantId));
+        }
+        
+        @Override
+        protected void postEvict(final Key key, final Entry value) {
+            final DefState state = states.get(new DefKey(key.tenantId, key.context.getDef()));
+            if (state != null) {
+                state.keys.remove(key);
+            }
+        }
+        
+        private DefState state(final DefKey defKey) {
+            return states.computeIfAbsent(defKey, k -> new DefState(System.nanoTime() + versionCheckIntervalNanos));
+        }
+        
+        private void invalidateIndexed(final DefState state) {
+            for (final Iterator<Key> it = state.keys.iterator(); it.hasNext();) {
+                final Key key = it.next();
+                it.remove();
+                invalidate(key);
+            }
         }
         
     }
@@ -81,8 +237,18 @@ public final class LocalConfigCacheWithClusterInvalidateProvider implements Conf
     public LocalConfigCacheWithClusterInvalidateProvider(final MultiTenancy multiTenancy,
                                                          final ClusterRegistry clusterRegistry,
                                                          final int cacheableSize) {
+        this(multiTenancy, clusterRegistry, cacheableSize, DEFAULT_VERSION_CHECK_INTERVAL_MILLIS);
+    }
+    
+    public LocalConfigCacheWithClusterInvalidateProvider(final MultiTenancy multiTenancy,
+                                                         final ClusterRegistry clusterRegistry,
+                                                         final int cacheableSize,
+                                                         final long versionCheckIntervalMillis) {
+        if (versionCheckIntervalMillis < 0L) {
+            throw new IllegalArgumentException("versionCheckIntervalMillis should not be negative");
+        }
         this.clusterRegistry = clusterRegistry;
-        cacheable = new LocalConfigCache(multiTenancy, cacheableSize);
+        cacheable = new LocalConfigCache(multiTenancy, cacheableSize, versionCheckIntervalMillis);
     }
     
     @PostConstruct
@@ -111,14 +277,15 @@ public final class LocalConfigCacheWithClusterInvalidateProvider implements Conf
     public Async<Boolean> handle(final InvalidateConfigCache message) {
         final ConfigDef<?> def = message.getSet()
             ? SetDefRegistry.getInstance().resolve(message.getKey()) : ValueDefRegistry.getInstance().resolve(message.getKey());
-        invalidate(def);
+        if ((message.getVersion() > 0L) && (TENANT.get() != null)) {
+            cacheable.invalidate(def, message.getVersion());
+        } else {
+            // unversioned invalidation, e.g. from a node not yet upgraded
+            cacheable.invalidateAllTenants(def);
+        }
         return result(true);
     }
     
-    private void invalidate(final ConfigDef<?> def) {
-        cacheable.invalidate(def);
-    }
-    
     private final class ConfigCacheWrapper implements ConfigCache {
         
         private final ConfigDef<?> def;
@@ -133,18 +300,28 @@ public final class LocalConfigCacheWithClusterInvalidateProvider implements Conf
         }
         
         @Override
-        public void put(final Context<? extends ConfigDef<?>> key, final Object value) {
+        public void put(final Context<? extends ConfigDef<?>> key, final Object value, final long version) {
             if (key.isCacheable()) {
-                cacheable.put(key, value);
+                cacheable.put(key, value, version);
             }
         }
         
         @Override
-        public void invalidate() {
-            LocalConfigCacheWithClusterInvalidateProvider.this.invalidate(def);
+        public boolean isVersionCheckDue() {
+            return cacheable.isVersionCheckDue(def);
+        }
+        
+        @Override
+        public void versionRead(final long version) {
+            cacheable.versionRead(def, version);
+        }
+        
+        @Override
+        public void invalidate(final long version) {
+            cacheable.invalidate(def, version);
             clusterRegistry.broadcast(
                 LocalConfigCacheWithClusterInvalidateProvider.this,
-                InvalidateConfigCache.newBuilder().setKey(def.getKey()).setSet(def instanceof SetDef).build());
+                InvalidateConfigCache.newBuilder().setKey(def.getKey()).setSet(def instanceof SetDef).setVersion(version).build());
         }
         
     }
@@ -0,0 +1,57 @@
+package com.ixaris.commons.dimensions.config.data;
+
+import static com.ixaris.commons.dimensions.config.jooq.tables.LibDimConfigVersion.LIB_DIM_CONFIG_VERSION;
+import static com.ixaris.commons.jooq.persistence.TransactionalDSLContext.JOOQ_TX;
+
+import com.ixaris.commons.dimensions.config.ConfigDef;
+import com.ixaris.commons.dimensions.config.SetDef;
+
+/**
+ * The version of the configuration of a value or set definition, incremented whenever a value or set of the definition
+ * changes. Since the version is stored in the tenant's schema, it is a per tenant / definition version. Caches compare
+ * the version of cached values to the persisted version, to detect changes even if they missed the invalidation
+ * broadcast.
+ */
+public final class ConfigVersion {
+    
+    private static final String VALUE = "V";
+    private static final String SET = "S";
+    
+    /**
+     * @return the version of the definition, or 0 if never changed
+     */
+    public static long lookup(final ConfigDef<?> def) {
+        final Long version = JOOQ_TX.get()
+            .select(LIB_DIM_CONFIG_VERSION.VERSION)
+            .from(LIB_DIM_CONFIG_VERSION)
+            .where(LIB_DIM_CONFIG_VERSION.CONFIG_KEY.eq(def.getKey()).and(LIB_DIM_CONFIG_VERSION.CONFIG_TYPE.eq(type(def))))
+            .fetchOne(LIB_DIM_CONFIG_VERSION.VERSION);
+        return version != null ? version : 0L;
+    }
+    
+    /**
+     * Increments the version of the definition. The row stays locked until the transaction completes, so concurrent
+     * changes to the same definition commit in version order.
+     *
+     * @return the incremented version
+     */
+    public static long increment(final ConfigDef<?> def) {
+        JOOQ_TX.get()
+            .insertInto(LIB_DIM_CONFIG_VERSION,
+                LIB_DIM_CONFIG_VERSION.CONFIG_KEY,
+                LIB_DIM_CONFIG_VERSION.CONFIG_TYPE,
+                LIB_DIM_CONFIG_VERSION.VERSION)
+            .values(def.getKey(), type(def), 1L)
+            .onDuplicateKeyUpdate()
+            .set(LIB_DIM_CONFIG_VERSION.VERSION, LIB_DIM_CONFIG_VERSION.VERSION.plus(1L))
+            .execute();
+        return lookup(def);
+    }
+    
+    private static String type(final ConfigDef<?> def) {
+        return def instanceof SetDef ? SET : VALUE;
+    }
+    
+    private ConfigVersion() {}
+    
+}
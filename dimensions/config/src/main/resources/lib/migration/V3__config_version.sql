@@ -0,0 +1,6 @@
+CREATE TABLE lib_dim_config_version (
+    config_key VARCHAR(50) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+    config_type CHAR(1) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (config_key, config_type)
+) DEFAULT CHARSET=utf8 ROW_FORMAT=COMPRESSED;
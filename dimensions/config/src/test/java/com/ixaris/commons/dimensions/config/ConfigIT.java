@@ -1044,6 +1044,27 @@ public class ConfigIT {
         }));
     }
     
+    @Test
+    public void getConfigValue_InvalidationMissed_ChangeDetectedByVersionCheck() throws Throwable {
+        // another node, not receiving invalidation broadcasts, checking the version on every read
+        final LocalConfigCacheWithClusterInvalidateProvider otherNodeCache = new LocalConfigCacheWithClusterInvalidateProvider(
+            TEST_HELPER.getMultiTenancy(), new LocalCluster(Collections.emptySet(), Collections.emptySet()), 100, 0L);
+        final ConfigHelper otherNodeConfig = new ConfigHelper(provider, otherNodeCache);
+        final Context<TestValue1> context = Context.newBuilder(TestValue1.getInstance()).add(BDimDef.getInstance().create("VERSIONED")).build();
+        
+        DATA_UNIT.exec(UNIT, () -> TENANT.exec(TestTenants.DEFAULT, () -> {
+            try {
+                block(configAdmin.setConfigValue(context, new StringValue("first")));
+                assertEquals(new StringValue("first"), block(otherNodeConfig.getConfigValue(context)).orElse(null));
+                block(configAdmin.setConfigValue(context, new StringValue("second")));
+            } catch (final ConfigValidationException e) {
+                fail(e.getMessage());
+            }
+            
+            assertEquals(new StringValue("second"), block(otherNodeConfig.getConfigValue(context)).orElse(null));
+        }));
+    }
+    
     @Test(expected = IllegalStateException.class)
     public void testRetrieveNullSet() throws Throwable {
         DATA_UNIT.exec(UNIT, () -> TENANT.exec(TestTenants.DEFAULT, () -> {
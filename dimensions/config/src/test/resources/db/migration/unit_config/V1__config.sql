@@ -46,3 +46,10 @@ CREATE TABLE lib_dim_config_set_dimension (
     KEY ix_lib_dim_config_set_dimension__name_long_value (dimension_name, long_value),
     KEY ix_lib_dim_config_set_dimension__name_string_value (dimension_name, string_value(32))
 ) DEFAULT CHARSET=utf8 ROW_FORMAT=COMPRESSED;
+
+CREATE TABLE lib_dim_config_version (
+    config_key VARCHAR(50) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+    config_type CHAR(1) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (config_key, config_type)
+) DEFAULT CHARSET=utf8 ROW_FORMAT=COMPRESSED;
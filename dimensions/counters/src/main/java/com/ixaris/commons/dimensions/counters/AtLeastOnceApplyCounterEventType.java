@@ -1,5 +1,6 @@
 package com.ixaris.commons.dimensions.counters;
 
+import static com.ixaris.commons.async.lib.Async.all;
 import static com.ixaris.commons.async.lib.Async.await;
 import static com.ixaris.commons.async.lib.Async.awaitExceptions;
 import static com.ixaris.commons.async.lib.Async.result;
@@ -8,23 +9,37 @@ import static com.ixaris.commons.dimensions.counters.jooq.tables.LibDimCounterEv
 import static com.ixaris.commons.jooq.persistence.Entity.attachAndDelete;
 import static com.ixaris.commons.jooq.persistence.Entity.attachAndStore;
 import static com.ixaris.commons.jooq.persistence.TransactionalDSLContext.JOOQ_TX;
+import static com.ixaris.commons.misc.lib.object.Tuple.tuple;
 import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jooq.UpdatableRecord;
 import org.jooq.exception.DataChangedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.async.lib.AsyncLocal;
 import com.ixaris.commons.async.lib.CommonsAsyncLib.Correlation;
+import com.ixaris.commons.clustering.lib.idempotency.AdaptiveBatchSize;
 import com.ixaris.commons.clustering.lib.idempotency.PendingMessages;
 import com.ixaris.commons.clustering.lib.idempotency.StoredPendingMessage;
 import com.ixaris.commons.clustering.lib.service.ClusterRegistry;
 import com.ixaris.commons.clustering.lib.service.ShardNotLocalException;
 import com.ixaris.commons.dimensions.counters.cache.CounterCache;
 import com.ixaris.commons.dimensions.counters.cache.CounterCacheProvider;
+import com.ixaris.commons.dimensions.counters.cache.CounterNearCache;
 import com.ixaris.commons.dimensions.counters.data.CounterEntity;
 import com.ixaris.commons.dimensions.counters.data.CounterEventEntity;
 import com.ixaris.commons.dimensions.counters.jooq.tables.records.LibDimCounterEventQueueRecord;
@@ -32,6 +47,7 @@ import com.ixaris.commons.dimensions.lib.context.Context;
 import com.ixaris.commons.dimensions.lib.context.DimensionDef;
 import com.ixaris.commons.jooq.persistence.JooqAsyncPersistenceProvider;
 import com.ixaris.commons.misc.lib.id.UniqueIdGenerator;
+import com.ixaris.commons.misc.lib.object.Tuple2;
 import com.ixaris.commons.multitenancy.lib.async.AbstractTenantAwareAtLeastOnceMessageType;
 import com.ixaris.commons.multitenancy.lib.async.MultiTenantAtLeastOnceProcessorFactory;
 
@@ -39,18 +55,89 @@ import com.ixaris.commons.multitenancy.lib.async.MultiTenantAtLeastOnceProcessor
  * Counter event at least once message type. This ensures that counter events are processed at least once. Idempotency turns this at least once
  * guarantee into an exactly once guarantee.
  *
+ * <p>Pending events are processed in batches per shard and counter / partition dimension. Within a batch, the deltas of
+ * the events having the same partition dimension value are folded in memory per counter and narrow window, so that each
+ * affected counter is updated and stored once per batch rather than once per event. This avoids hot counters becoming a
+ * row lock hotspot. The queue records are deleted in the same transaction, preserving at least once semantics. If the
+ * coalesced transaction fails, the events are applied one by one, so that a failing event does not hold back the others.
+ *
  * @author brian.vella
  */
 public final class AtLeastOnceApplyCounterEventType extends AbstractTenantAwareAtLeastOnceMessageType<LibDimCounterEventQueueRecord> {
     
+    private static final Logger LOG = LoggerFactory.getLogger(AtLeastOnceApplyCounterEventType.class);
+    
     public static final String KEY = "APPLY_COUNTER_EVENT";
     public static final String PROP_COUNTEREVENTAPPLY_REFRESH_INTERVAL = "countereventapply.refreshinterval";
     public static final long REFRESH_INTERVAL = 10000L;
-    private final int BATCH_SIZE = 32;
+    private static final int MIN_BATCH_SIZE = 32;
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long TARGET_DRAIN_LAG = 1000L;
+    
+    /**
+     * Deltas accumulated for a counter, per narrow window number. Applying the deltas fails wherever applying the events
+     * one by one would fail, e.g. when a reversal is queued before the event it reverses, so that the events are then
+     * applied one by one.
+     */
+    private static final class CounterDeltas<R extends UpdatableRecord<R>, C extends CounterDef<R, C>> {
+        
+        private final CounterEntity<R, C> counter;
+        private final WindowWidth narrowWindowWidth;
+        // count, sum, lowest count reached and latest timestamp per narrow window, applied in window order
+        private final SortedMap<Long, long[]> windows = new TreeMap<>();
+        // narrow window number and whether the counter is affected (rather than reversed) per event, in queue order
+        private final List<Tuple2<Long, Boolean>> events = new ArrayList<>();
+        
+        private CounterDeltas(final CounterEntity<R, C> counter) {
+            this.counter = counter;
+            narrowWindowWidth = counter.getNarrowWindowWidth();
+        }
+        
+        private void add(final CounterEventEntity<C> event, final boolean counterAffected) {
+            final long windowNumber = narrowWindowWidth.getWindowNumber(event.getTimestamp());
+            final long[] window = windows.computeIfAbsent(windowNumber, k -> new long[4]);
+            if (counterAffected) {
+                window[0]++;
+                window[1] += event.getDelta();
+            } else {
+                window[0]--;
+                window[1] -= event.getDelta();
+                window[2] = Math.min(window[2], window[0]);
+            }
+            window[3] = Math.max(window[3], event.getTimestamp());
+            events.add(tuple(windowNumber, counterAffected));
+        }
+        
+        private void apply() {
+            if (counter.getWideWindowMultiple() > 1) {
+                // the wide window count is shared by the narrow windows, so check the lowest count reached across the
+                // narrow windows in queue order, skipping events before the wide window which are ignored
+                final long firstWindowNumber = narrowWindowWidth.getWindowNumber(System.currentTimeMillis()) - counter.getWideWindowMultiple() + 1;
+                long count = 0L;
+                long lowestCount = 0L;
+                for (final Tuple2<Long, Boolean> event : events) {
+                    if (event.get1() >= firstWindowNumber) {
+                        count += event.get2() ? 1L : -1L;
+                        lowestCount = Math.min(lowestCount, count);
+                    }
+                }
+                if (counter.getCounter().getCount() + lowestCount < 0L) {
+                    throw new IllegalStateException("Cannot reverse a counter wide window below count 0");
+                }
+            }
+            
+            for (final long[] window : windows.values()) {
+                counter.add(window[0], window[1], window[2], window[3]);
+            }
+        }
+        
+    }
     
     private final JooqAsyncPersistenceProvider db;
     private final CounterCacheProvider cache;
+    private final CounterNearCache nearCache;
     private final ClusterRegistry clusterRegistry;
+    private final Map<String, AdaptiveBatchSize> batchSizes = new ConcurrentHashMap<>();
     
     public AtLeastOnceApplyCounterEventType(final JooqAsyncPersistenceProvider db,
                                             final CounterCacheProvider cache,
@@ -66,9 +153,23 @@ public final class AtLeastOnceApplyCounterEventType extends AbstractTenantAwareA
                                             final MultiTenantAtLeastOnceProcessorFactory processorFactory,
                                             final long refreshInterval,
                                             final Set<String> units) {
+        this(db, cache, null, clusterRegistry, processorFactory, refreshInterval, units);
+    }
+    
+    /**
+     * @param nearCache if not null, contexts of applied counters are invalidated in the near cache of every node
+     */
+    public AtLeastOnceApplyCounterEventType(final JooqAsyncPersistenceProvider db,
+                                            final CounterCacheProvider cache,
+                                            final CounterNearCache nearCache,
+                                            final ClusterRegistry clusterRegistry,
+                                            final MultiTenantAtLeastOnceProcessorFactory processorFactory,
+                                            final long refreshInterval,
+                                            final Set<String> units) {
         super(processorFactory, refreshInterval, units);
         this.db = db;
         this.cache = cache;
+        this.nearCache = nearCache;
         this.clusterRegistry = clusterRegistry;
     }
     
@@ -77,14 +178,22 @@ public final class AtLeastOnceApplyCounterEventType extends AbstractTenantAwareA
         return KEY;
     }
     
+    @Override
+    public boolean isBatchProcessing() {
+        return true;
+    }
+    
     @Override
     public Async<PendingMessages<LibDimCounterEventQueueRecord>> pending(final long timestamp) {
+        final AdaptiveBatchSize batchSize = batchSizes.computeIfAbsent(TENANT.get(),
+            k -> new AdaptiveBatchSize(MIN_BATCH_SIZE, MAX_BATCH_SIZE, TARGET_DRAIN_LAG));
+        final int limit = batchSize.get();
         return db.transaction(() -> JOOQ_TX.get()
             .selectFrom(LIB_DIM_COUNTER_EVENT_QUEUE)
             .where(LIB_DIM_COUNTER_EVENT_QUEUE.NEXT_RETRY_TIME.le(timestamp))
             .and(LIB_DIM_COUNTER_EVENT_QUEUE.SHARD.in(clusterRegistry.getNodeInfo().getShards().toBoxedArray()))
             .orderBy(LIB_DIM_COUNTER_EVENT_QUEUE.SEQUENCE_NUMBER)
-            .limit(BATCH_SIZE)
+            .limit(limit)
             .fetch()
             .into(LIB_DIM_COUNTER_EVENT_QUEUE)
             .map(record -> {
@@ -97,7 +206,7 @@ public final class AtLeastOnceApplyCounterEventType extends AbstractTenantAwareA
                 return new StoredPendingMessage<>(
                     record.getSequenceNumber().longValue(), record.getShard(), messageSubType, record);
             }))
-            .map(l -> new PendingMessages<>(l, l.size() == BATCH_SIZE));
+            .map(l -> new PendingMessages<>(l, batchSize.update(l.size(), limit, System.currentTimeMillis())));
     }
     
     @SuppressWarnings("squid:S1166")
@@ -108,8 +217,7 @@ public final class AtLeastOnceApplyCounterEventType extends AbstractTenantAwareA
         try {
             return awaitExceptions(clusterRegistry.forShard(pendingMessage.getShard(), () -> AsyncLocal
                 .with(TENANT, eventRecord.getTenantId())
-                .with(CORRELATION,
-                    Correlation.newBuilder().setCorrelationId(UniqueIdGenerator.generate()).setIntentId((eventRecord.getIntentId() != null) ? eventRecord.getIntentId() : 0).build())
+                .with(CORRELATION, withIntentId(Correlation.newBuilder().setCorrelationId(UniqueIdGenerator.generate()), eventRecord))
                 .<Void, RuntimeException>exec(() -> awaitExceptions(CounterDef.queue(eventRecord.getCounterKey(),
                     eventRecord.getDimensionName(),
                     eventRecord.getDimensionStringValue(),
@@ -129,6 +237,167 @@ public final class AtLeastOnceApplyCounterEventType extends AbstractTenantAwareA
         }
     }
     
+    /**
+     * Processes the events of a (shard, counter / partition dimension) group, coalescing the events having the same
+     * partition dimension value
+     */
+    @Override
+    public Async<Void> processMessages(final List<StoredPendingMessage<LibDimCounterEventQueueRecord>> pendingMessages,
+                                       final NextRetryTimeFunction nextRetryTimeFunction) {
+        final Map<Tuple2<String, Long>, List<StoredPendingMessage<LibDimCounterEventQueueRecord>>> byPartitionValue = new LinkedHashMap<>();
+        for (final StoredPendingMessage<LibDimCounterEventQueueRecord> pendingMessage : pendingMessages) {
+            final LibDimCounterEventQueueRecord eventRecord = pendingMessage.getMessage();
+            byPartitionValue
+                .computeIfAbsent(tuple(eventRecord.getDimensionStringValue(), eventRecord.getDimensionLongValue()), k -> new ArrayList<>())
+                .add(pendingMessage);
+        }
+        
+        final List<Async<Void>> processed = new ArrayList<>(byPartitionValue.size());
+        for (final List<StoredPendingMessage<LibDimCounterEventQueueRecord>> partitionValueMessages : byPartitionValue.values()) {
+            processed.add(processPartitionValueMessages(partitionValueMessages, nextRetryTimeFunction));
+        }
+        return all(processed).map(r -> null);
+    }
+    
+    /**
+     * Applies the events coalesced in a single transaction. Should this fail, the transaction is rolled back as a whole
+     * and the events are applied one by one, so that only the failing events are retried rather than every event of
+     * the counter / partition dimension value.
+     */
+    @SuppressWarnings("squid:S1166")
+    private Async<Void> processPartitionValueMessages(final List<StoredPendingMessage<LibDimCounterEventQueueRecord>> pendingMessages,
+                                                      final NextRetryTimeFunction nextRetryTimeFunction) {
+        final StoredPendingMessage<LibDimCounterEventQueueRecord> first = pendingMessages.get(0);
+        final LibDimCounterEventQueueRecord firstRecord = first.getMessage();
+        if (pendingMessages.size() == 1) {
+            return processMessage(first, nextRetryTimeFunction);
+        }
+        
+        final List<LibDimCounterEventQueueRecord> eventRecords = new ArrayList<>(pendingMessages.size());
+        for (final StoredPendingMessage<LibDimCounterEventQueueRecord> pendingMessage : pendingMessages) {
+            eventRecords.add(pendingMessage.getMessage());
+        }
+        try {
+            return awaitExceptions(clusterRegistry.forShard(first.getShard(), () -> AsyncLocal
+                .with(TENANT, firstRecord.getTenantId())
+                .with(CORRELATION, Correlation.newBuilder().setCorrelationId(UniqueIdGenerator.generate()).build())
+                .<Void, RuntimeException>exec(() -> awaitExceptions(CounterDef.queue(firstRecord.getCounterKey(),
+                    firstRecord.getDimensionName(),
+                    firstRecord.getDimensionStringValue(),
+                    firstRecord.getDimensionLongValue(),
+                    () -> applyCounterEvents(eventRecords))))));
+        } catch (final ShardNotLocalException e) {
+            // abandon as shard no longer local
+            return result();
+        } catch (final RuntimeException e) {
+            LOG.warn("Applying {} coalesced events of counter [{}] dimension [{}] failed. Applying them one by one",
+                pendingMessages.size(),
+                firstRecord.getCounterKey(),
+                firstRecord.getDimensionName(),
+                e);
+        }
+        
+        RuntimeException failure = null;
+        for (final StoredPendingMessage<LibDimCounterEventQueueRecord> pendingMessage : pendingMessages) {
+            try {
+                await(processMessage(pendingMessage, nextRetryTimeFunction));
+            } catch (final RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return result();
+    }
+    
+    /**
+     * Applies the given events, having the same counter, partition dimension and partition dimension value, folding
+     * their deltas per counter and narrow window so that each affected counter is updated once
+     */
+    @SuppressWarnings("unchecked")
+    private <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> Async<Void> applyCounterEvents(final List<LibDimCounterEventQueueRecord> eventRecords) {
+        final LibDimCounterEventQueueRecord first = eventRecords.get(0);
+        final C def = (C) CounterDefRegistry.getInstance().resolve(first.getCounterKey());
+        final Correlation correlation = CORRELATION.get();
+        final List<Long> sequenceNumbers = new ArrayList<>(eventRecords.size());
+        for (final LibDimCounterEventQueueRecord eventRecord : eventRecords) {
+            sequenceNumbers.add(eventRecord.getSequenceNumber().longValue());
+        }
+        
+        return db.transaction(() -> {
+            // idempotent marking that these events are processed (will be rolled back if processing fails)
+            // absence of record means already processed
+            final Set<Long> unprocessed = new HashSet<>(JOOQ_TX.get()
+                .select(LIB_DIM_COUNTER_EVENT_QUEUE.SEQUENCE_NUMBER)
+                .from(LIB_DIM_COUNTER_EVENT_QUEUE)
+                .where(LIB_DIM_COUNTER_EVENT_QUEUE.SEQUENCE_NUMBER.in(sequenceNumbers))
+                .forUpdate()
+                .fetch(r -> r.value1().longValue()));
+            if (unprocessed.isEmpty()) {
+                return null;
+            }
+            JOOQ_TX.get()
+                .deleteFrom(LIB_DIM_COUNTER_EVENT_QUEUE)
+                .where(LIB_DIM_COUNTER_EVENT_QUEUE.SEQUENCE_NUMBER.in(unprocessed))
+                .execute();
+            
+            final DimensionDef<?> partitionDimensionDef = first.getDimensionName() != null
+                ? def.getContextDef().resolve(first.getDimensionName()) : null;
+            final Map<Context<C>, List<CounterEntity<R, C>>> countersByContext = new HashMap<>();
+            final Map<Long, CounterDeltas<R, C>> deltasByCounter = new LinkedHashMap<>();
+            for (final LibDimCounterEventQueueRecord eventRecord : eventRecords) {
+                if (unprocessed.contains(eventRecord.getSequenceNumber().longValue())) {
+                    CORRELATION.exec(withIntentId(correlation.toBuilder(), eventRecord), () -> {
+                        final CounterEventEntity<C> event = def.lookupCounterEvent(eventRecord.getEventId());
+                        final List<CounterEntity<R, C>> counters = countersByContext.computeIfAbsent(event.getContext(),
+                            c -> CounterEntity.lookupMatching(c, partitionDimensionDef));
+                        for (final CounterEntity<R, C> counter : counters) {
+                            deltasByCounter
+                                .computeIfAbsent(counter.getCounter().getId(), k -> new CounterDeltas<>(counter))
+                                .add(event, eventRecord.getCounterAffected());
+                        }
+                    });
+                }
+            }
+            
+            final List<CounterEntity<R, C>> counters = new ArrayList<>(deltasByCounter.size());
+            final List<CounterEntity<R, C>> toCache = new ArrayList<>();
+            for (final CounterDeltas<R, C> deltas : deltasByCounter.values()) {
+                deltas.apply();
+                final CounterEntity<R, C> counter = deltas.counter;
+                // update cache if cacheable
+                final Context<C> context = counter.getContext();
+                if (context.isCacheable()) {
+                    final CounterEntity<R, C> cached = cache.of(def).get(
+                        context, counter.getNarrowWindowWidth(), counter.getWideWindowMultiple());
+                    
+                    // if cached counter with the right Narrow Window number has been found in cache.
+                    if (cached != null) {
+                        counter.getCounter().setLastQueried(cached.getCounter().getLastQueried());
+                    }
+                    toCache.add(counter);
+                }
+                counter
+                    .getCounter()
+                    .setQueriedUpdatedDiff(System.currentTimeMillis() - counter.getCounter().getLastQueried());
+                counters.add(counter);
+            }
+            
+            CounterEntity.storeAll(counters);
+            if (!toCache.isEmpty()) {
+                final CounterCache<R, C> defCache = cache.of(def);
+                JOOQ_TX.get().onCommit(() -> toCache.forEach(defCache::put));
+            }
+            invalidateNearCacheOnCommit(def, toCache);
+            return null;
+        });
+    }
+    
     @SuppressWarnings({ "unchecked", "squid:S1166" })
     private <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> Async<Void> applyCounterEvent(final LibDimCounterEventQueueRecord eventRecord) {
         final C def = (C) CounterDefRegistry.getInstance().resolve(eventRecord.getCounterKey());
@@ -178,8 +447,34 @@ public final class AtLeastOnceApplyCounterEventType extends AbstractTenantAwareA
                     JOOQ_TX.get().onCommit(() -> defCache.put(counter));
                 }
             }
+            invalidateNearCacheOnCommit(def, counters);
             return null;
         });
     }
     
+    private static Correlation withIntentId(final Correlation.Builder correlation, final LibDimCounterEventQueueRecord eventRecord) {
+        return correlation.setIntentId((eventRecord.getIntentId() != null) ? eventRecord.getIntentId() : 0).build();
+    }
+    
+    /**
+     * Invalidates the contexts of the given counters from the near cache of every node once the applied events are
+     * committed. Only cacheable contexts are cached in the near cache.
+     */
+    private <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> void invalidateNearCacheOnCommit(final C def,
+                                                                                                        final List<CounterEntity<R, C>> counters) {
+        if (nearCache == null) {
+            return;
+        }
+        
+        final Set<Context<C>> contexts = new LinkedHashSet<>();
+        for (final CounterEntity<R, C> counter : counters) {
+            if (counter.getContext().isCacheable()) {
+                contexts.add(counter.getContext());
+            }
+        }
+        if (!contexts.isEmpty()) {
+            JOOQ_TX.get().onCommit(() -> nearCache.invalidate(def, contexts));
+        }
+    }
+    
 }
@@ -14,6 +14,7 @@ import org.springframework.core.env.Environment;
 import com.ixaris.commons.clustering.lib.service.ClusterRegistry;
 import com.ixaris.commons.dimensions.counters.cache.ClusterShardedCounterCacheProvider;
 import com.ixaris.commons.dimensions.counters.cache.CounterCacheProvider;
+import com.ixaris.commons.dimensions.counters.cache.CounterNearCache;
 import com.ixaris.commons.jooq.persistence.JooqAsyncPersistenceProvider;
 import com.ixaris.commons.misc.lib.defaults.Defaults;
 import com.ixaris.commons.multitenancy.lib.MultiTenancy;
@@ -35,10 +36,12 @@ public class CounterEventApplyConfig {
                                                                                          final MultiTenancy multiTenancy,
                                                                                          final Environment env,
                                                                                          final MultiTenantAtLeastOnceProcessorFactory atLeastOnceProcessorFactory,
-                                                                                         final Optional<Set<AtLeastOnceApplyCounterEventDataUnit>> units) {
+                                                                                         final Optional<Set<AtLeastOnceApplyCounterEventDataUnit>> units,
+                                                                                         final Optional<CounterNearCache> nearCache) {
         
         final AtLeastOnceApplyCounterEventType processor = new AtLeastOnceApplyCounterEventType(db,
             cache,
+            nearCache.orElse(null),
             clusterRegistry,
             atLeastOnceProcessorFactory,
             getRefreshInterval(env),
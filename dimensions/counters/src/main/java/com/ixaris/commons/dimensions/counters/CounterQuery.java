@@ -0,0 +1,87 @@
+package com.ixaris.commons.dimensions.counters;
+
+import java.util.Objects;
+
+import org.jooq.UpdatableRecord;
+
+import com.ixaris.commons.dimensions.lib.context.Context;
+import com.ixaris.commons.misc.lib.object.EqualsUtil;
+import com.ixaris.commons.misc.lib.object.ToStringUtil;
+
+/**
+ * A counter to retrieve using {@link CountersHelper#getCounters(java.util.List)}. See
+ * {@link CountersHelper#getCounter(Context, WindowWidth, int, boolean)} for the parameters.
+ */
+public final class CounterQuery<R extends UpdatableRecord<R>, C extends CounterDef<R, C>> {
+    
+    private final Context<C> context;
+    private final WindowWidth narrowWindowWidth;
+    private final int wideWindowMultiple;
+    private final boolean lastFull;
+    
+    public CounterQuery(final Context<C> context, final WindowWidth narrowWindowWidth, final int wideWindowMultiple) {
+        this(context, narrowWindowWidth, wideWindowMultiple, false);
+    }
+    
+    public CounterQuery(final Context<C> context,
+                        final WindowWidth narrowWindowWidth,
+                        final int wideWindowMultiple,
+                        final boolean lastFull) {
+        if (context == null) {
+            throw new IllegalArgumentException("context is null");
+        }
+        if (narrowWindowWidth == null) {
+            throw new IllegalArgumentException("narrowWindowWidth is null");
+        }
+        if (lastFull && (wideWindowMultiple == 1)) {
+            throw new IllegalArgumentException(
+                "Only 1 window is maintained for counter with wideWindowMultiple = 1. Cannot retrieve LastFullNarrow window counter.");
+        }
+        
+        this.context = context;
+        this.narrowWindowWidth = narrowWindowWidth;
+        this.wideWindowMultiple = wideWindowMultiple;
+        this.lastFull = lastFull;
+    }
+    
+    public Context<C> getContext() {
+        return context;
+    }
+    
+    public WindowWidth getNarrowWindowWidth() {
+        return narrowWindowWidth;
+    }
+    
+    public int getWideWindowMultiple() {
+        return wideWindowMultiple;
+    }
+    
+    public boolean isLastFull() {
+        return lastFull;
+    }
+    
+    @Override
+    public boolean equals(final Object o) {
+        return EqualsUtil.equals(this, o, other -> context.equals(other.context)
+            && narrowWindowWidth.equals(other.narrowWindowWidth)
+            && (wideWindowMultiple == other.wideWindowMultiple)
+            && (lastFull == other.lastFull));
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(context, narrowWindowWidth, wideWindowMultiple, lastFull);
+    }
+    
+    @Override
+    public String toString() {
+        return ToStringUtil
+            .of(this)
+            .with("context", context)
+            .with("narrowWindowWidth", narrowWindowWidth)
+            .with("wideWindowMultiple", wideWindowMultiple)
+            .with("lastFull", lastFull)
+            .toString();
+    }
+    
+}
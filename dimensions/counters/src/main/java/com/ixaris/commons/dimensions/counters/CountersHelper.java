@@ -4,12 +4,21 @@
  */
 package com.ixaris.commons.dimensions.counters;
 
+import static com.ixaris.commons.async.lib.Async.all;
+import static com.ixaris.commons.async.lib.Async.result;
 import static com.ixaris.commons.async.lib.idempotency.Intent.INTENT;
+import static com.ixaris.commons.clustering.lib.common.ClusterShardResolver.getShardKeyFromString;
 import static com.ixaris.commons.jooq.persistence.Entity.attachAndStore;
 import static com.ixaris.commons.jooq.persistence.TransactionalDSLContext.JOOQ_TX;
 import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 import javax.annotation.PostConstruct;
@@ -19,6 +28,8 @@ import org.jooq.UpdatableRecord;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.protobuf.MessageLite;
+
 import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.async.lib.idempotency.Intent;
 import com.ixaris.commons.clustering.lib.service.ClusterRegistry;
@@ -28,8 +39,11 @@ import com.ixaris.commons.dimensions.counters.CommonsDimensionsCounters.CounterW
 import com.ixaris.commons.dimensions.counters.CommonsDimensionsCounters.CounterWindowWidth.TimeUnit;
 import com.ixaris.commons.dimensions.counters.CommonsDimensionsCounters.GetCounter;
 import com.ixaris.commons.dimensions.counters.CommonsDimensionsCounters.GetCounterResult;
+import com.ixaris.commons.dimensions.counters.CommonsDimensionsCounters.GetCounters;
+import com.ixaris.commons.dimensions.counters.CommonsDimensionsCounters.GetCountersResult;
 import com.ixaris.commons.dimensions.counters.cache.CounterCache;
 import com.ixaris.commons.dimensions.counters.cache.CounterCacheProvider;
+import com.ixaris.commons.dimensions.counters.cache.CounterNearCache;
 import com.ixaris.commons.dimensions.counters.data.CounterEntity;
 import com.ixaris.commons.dimensions.counters.data.CounterEventEntity;
 import com.ixaris.commons.dimensions.counters.jooq.tables.records.LibDimCounterEventQueueRecord;
@@ -43,13 +57,20 @@ import com.ixaris.commons.jooq.persistence.JooqAsyncPersistenceProvider;
 @Component
 public final class CountersHelper {
     
-    private static long getShardKeyFromString(final String key) {
-        try {
-            return Long.parseLong(key);
-        } catch (final NumberFormatException e) {
-            // hashcode for empty string is 0
-            return key.hashCode();
+    /**
+     * Counters to retrieve from the same shard
+     */
+    private static final class ShardRequest {
+        
+        private final PersistedDimensionValue routeKey;
+        private final GetCounters.Builder request = GetCounters.newBuilder();
+        private final List<Integer> indexes = new ArrayList<>();
+        private final List<CounterNearCache.Entry> nearCacheEntries = new ArrayList<>();
+        
+        private ShardRequest(final PersistedDimensionValue routeKey) {
+            this.routeKey = routeKey;
         }
+        
     }
     
     private static final long UPDATE_LAST_QUERIED_THRESHOLD_MILLIS = 24L * WindowTimeUnit.MILLISECONDS_IN_HOUR;
@@ -92,7 +113,7 @@ public final class CountersHelper {
         }
     }
     
-    private static <C extends CounterDef<?, C>> LibDimCounterEventQueueRecord getRecordFromEvent(final CounterEventEntity<C> event, final C def) {
+    private static <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> LibDimCounterEventQueueRecord getRecordFromEvent(final CounterEventEntity<C> event, final C def) {
         final LibDimCounterEventQueueRecord record = new LibDimCounterEventQueueRecord();
         record.setCounterKey(def.getKey());
         record.setEventId(event.getId());
@@ -108,18 +129,54 @@ public final class CountersHelper {
         return new WindowWidth(windowWidth.getWidth(), WindowTimeUnit.valueOf(windowWidth.getUnit().name()));
     }
     
+    private static <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> PersistedDimensionValue getRouteKey(final Context<C> context) {
+        final Dimension<?> dimension = CounterDef.extractFirstPartitionDimension(context.getDef(), context);
+        return dimension != null ? dimension.getPersistedValue() : new PersistedDimensionValue(0L);
+    }
+    
+    private static <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> GetCounter toRequest(final CounterQuery<R, C> query) {
+        return GetCounter.newBuilder()
+            .setKey(query.getContext().getDef().getKey())
+            .setContext(query.getContext().toProtobuf())
+            .setNarrowWindowWidth(
+                CounterWindowWidth.newBuilder()
+                    .setWidth(query.getNarrowWindowWidth().getWidth())
+                    .setUnit(TimeUnit.valueOf(query.getNarrowWindowWidth().getUnit().name())))
+            .setWideWindowMultiple(query.getWideWindowMultiple())
+            .setLastFull(query.isLastFull())
+            .build();
+    }
+    
+    private static CounterValue toCounterValue(final GetCounterResult result) {
+        return new CounterValue(new WindowValue(result.getWideCount(), result.getWideSum()),
+            new WindowValue(result.getNarrowCount(), result.getNarrowSum()));
+    }
+    
     private final JooqAsyncPersistenceProvider db;
     private final CounterCacheProvider cache;
     private final ClusterRegistry clusterRegistry;
+    private final CounterNearCache nearCache;
     private final ClusterRouteHandler<GetCounter, GetCounterResult> getCounterRouteHandler;
+    private final ClusterRouteHandler<GetCounters, GetCountersResult> getCountersRouteHandler;
     
+    public CountersHelper(final JooqAsyncPersistenceProvider db,
+                          final CounterCacheProvider cache,
+                          final ClusterRegistry clusterRegistry) {
+        this(db, cache, clusterRegistry, Optional.empty());
+    }
+    
+    /**
+     * @param nearCache if present, counter values are cached on this node for up to the near cache's maximum staleness
+     */
     @Autowired
     public CountersHelper(final JooqAsyncPersistenceProvider db,
                           final CounterCacheProvider cache,
-                          ClusterRegistry clusterRegistry) {
+                          final ClusterRegistry clusterRegistry,
+                          final Optional<CounterNearCache> nearCache) {
         this.db = db;
         this.cache = cache;
         this.clusterRegistry = clusterRegistry;
+        this.nearCache = nearCache.orElse(null);
         
         getCounterRouteHandler = new ClusterRouteHandler<GetCounter, GetCounterResult>() {
             
@@ -134,15 +191,35 @@ public final class CountersHelper {
             }
             
         };
+        
+        getCountersRouteHandler = new ClusterRouteHandler<GetCounters, GetCountersResult>() {
+            
+            @Override
+            public String getKey() {
+                return "counters_get_batch";
+            }
+            
+            @Override
+            public Async<GetCountersResult> handle(final long id, final String key, final GetCounters request) {
+                final List<Async<GetCounterResult>> results = new ArrayList<>(request.getCountersCount());
+                for (final GetCounter getCounter : request.getCountersList()) {
+                    results.add(internalHandle(getCounter));
+                }
+                return all(results).map(l -> GetCountersResult.newBuilder().addAllResults(l).build());
+            }
+            
+        };
     }
     
     @PostConstruct
     public void startup() {
         clusterRegistry.register(getCounterRouteHandler);
+        clusterRegistry.register(getCountersRouteHandler);
     }
     
     @PreDestroy
     public void shutdown() {
+        clusterRegistry.deregister(getCountersRouteHandler);
         clusterRegistry.deregister(getCounterRouteHandler);
     }
     
@@ -167,31 +244,96 @@ public final class CountersHelper {
                                                                                                      final WindowWidth narrowWindowWidth,
                                                                                                      final int wideWindowMultiple,
                                                                                                      final boolean lastFull) throws ClusterRouteTimeoutException {
-        
-        if (lastFull && (wideWindowMultiple == 1)) {
-            throw new IllegalArgumentException(
-                "Only 1 window is maintained for counter with wideWindowMultiple = 1. Cannot retrieve LastFullNarrow window counter.");
+        return getCounter(new CounterQuery<>(context, narrowWindowWidth, wideWindowMultiple, lastFull));
+    }
+    
+    public <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> Async<CounterValue> getCounter(final CounterQuery<R, C> query) throws ClusterRouteTimeoutException {
+        final CounterNearCache.Entry nearCacheEntry = nearCacheEntry(query.getContext());
+        if (nearCacheEntry != null) {
+            final CounterValue cached = nearCacheEntry.get(query.getNarrowWindowWidth(), query.getWideWindowMultiple(), query.isLastFull());
+            if (cached != null) {
+                return result(cached);
+            }
         }
         
-        final Dimension<?> dimension = CounterDef.extractFirstPartitionDimension(context.getDef(), context);
-        final PersistedDimensionValue persistedValue = dimension != null
-            ? dimension.getPersistedValue() : new PersistedDimensionValue(0L);
+        final PersistedDimensionValue routeKey = getRouteKey(query.getContext());
+        return route(getCounterRouteHandler, routeKey, toRequest(query)).map(res -> {
+            final CounterValue value = toCounterValue(res);
+            if (nearCacheEntry != null) {
+                nearCacheEntry.put(query.getNarrowWindowWidth(), query.getWideWindowMultiple(), query.isLastFull(), value);
+            }
+            return value;
+        });
+    }
+    
+    /**
+     * Retrieves several counters, in a single routed request per shard owning any of the counters (and without a
+     * routed request for counters in the near cache, if any). Typically used to retrieve all the counters needed to
+     * check a set of limits.
+     *
+     * @return the counter values, in the same order as the queries
+     */
+    public Async<List<CounterValue>> getCounters(final List<? extends CounterQuery<?, ?>> queries) throws ClusterRouteTimeoutException {
+        final CounterValue[] values = new CounterValue[queries.size()];
+        final Map<Integer, ShardRequest> byShard = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            addToShardRequest(queries.get(i), i, values, byShard);
+        }
         
-        final GetCounter request = GetCounter.newBuilder()
-            .setKey(context.getDef().getKey())
-            .setContext(context.toProtobuf())
-            .setNarrowWindowWidth(
-                CounterWindowWidth.newBuilder()
-                    .setWidth(narrowWindowWidth.getWidth())
-                    .setUnit(TimeUnit.valueOf(narrowWindowWidth.getUnit().name())))
-            .setWideWindowMultiple(wideWindowMultiple)
-            .setLastFull(lastFull)
-            .build();
+        final List<Async<Void>> routed = new ArrayList<>(byShard.size());
+        for (final ShardRequest shardRequest : byShard.values()) {
+            routed.add(route(getCountersRouteHandler, shardRequest.routeKey, shardRequest.request.build()).map(res -> {
+                for (int i = 0; i < shardRequest.indexes.size(); i++) {
+                    final int index = shardRequest.indexes.get(i);
+                    final CounterValue value = toCounterValue(res.getResults(i));
+                    final CounterNearCache.Entry nearCacheEntry = shardRequest.nearCacheEntries.get(i);
+                    if (nearCacheEntry != null) {
+                        final CounterQuery<?, ?> query = queries.get(index);
+                        nearCacheEntry.put(query.getNarrowWindowWidth(), query.getWideWindowMultiple(), query.isLastFull(), value);
+                    }
+                    values[index] = value;
+                }
+                return null;
+            }));
+        }
+        return all(routed).map(r -> Arrays.asList(values));
+    }
+    
+    private <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> void addToShardRequest(final CounterQuery<R, C> query,
+                                                                                              final int index,
+                                                                                              final CounterValue[] values,
+                                                                                              final Map<Integer, ShardRequest> byShard) {
+        final CounterNearCache.Entry nearCacheEntry = nearCacheEntry(query.getContext());
+        if (nearCacheEntry != null) {
+            final CounterValue cached = nearCacheEntry.get(query.getNarrowWindowWidth(), query.getWideWindowMultiple(), query.isLastFull());
+            if (cached != null) {
+                values[index] = cached;
+                return;
+            }
+        }
         
-        return (persistedValue.getLongValue() != null
-            ? clusterRegistry.route(getCounterRouteHandler, persistedValue.getLongValue(), request)
-            : clusterRegistry.route(getCounterRouteHandler, persistedValue.getStringValue(), request))
-                .map(res -> new CounterValue(new WindowValue(res.getWideCount(), res.getWideSum()), new WindowValue(res.getNarrowCount(), res.getNarrowSum())));
+        final PersistedDimensionValue routeKey = getRouteKey(query.getContext());
+        final int shard = clusterRegistry.getShard(routeKey.getLongValue() != null
+            ? routeKey.getLongValue() : getShardKeyFromString(routeKey.getStringValue()));
+        final ShardRequest shardRequest = byShard.computeIfAbsent(shard, k -> new ShardRequest(routeKey));
+        shardRequest.request.addCounters(toRequest(query));
+        shardRequest.indexes.add(index);
+        shardRequest.nearCacheEntries.add(nearCacheEntry);
+    }
+    
+    /**
+     * @return the near cache entry for the context, or null if there is no near cache or the context is not cacheable
+     */
+    private <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> CounterNearCache.Entry nearCacheEntry(final Context<C> context) {
+        return ((nearCache != null) && context.isCacheable()) ? nearCache.entry(context) : null;
+    }
+    
+    private <REQ extends MessageLite, RES extends MessageLite> Async<RES> route(final ClusterRouteHandler<REQ, RES> handler,
+                                                                               final PersistedDimensionValue routeKey,
+                                                                               final REQ request) throws ClusterRouteTimeoutException {
+        return routeKey.getLongValue() != null
+            ? clusterRegistry.route(handler, routeKey.getLongValue(), request)
+            : clusterRegistry.route(handler, routeKey.getStringValue(), request);
     }
     
     @SuppressWarnings("unchecked")
@@ -0,0 +1,186 @@
+package com.ixaris.commons.dimensions.counters.cache;
+
+import static com.ixaris.commons.async.lib.Async.result;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.jooq.UpdatableRecord;
+
+import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.clustering.lib.service.ClusterBroadcastHandler;
+import com.ixaris.commons.clustering.lib.service.ClusterRegistry;
+import com.ixaris.commons.dimensions.counters.CommonsDimensionsCounters.InvalidateCounterNearCache;
+import com.ixaris.commons.dimensions.counters.CounterDef;
+import com.ixaris.commons.dimensions.counters.CounterDefRegistry;
+import com.ixaris.commons.dimensions.counters.CounterValue;
+import com.ixaris.commons.dimensions.counters.WindowWidth;
+import com.ixaris.commons.dimensions.counters.cache.CounterNearCache.Entry;
+import com.ixaris.commons.dimensions.counters.cache.CounterNearCache.Key;
+import com.ixaris.commons.dimensions.lib.CommonsDimensionsLib;
+import com.ixaris.commons.dimensions.lib.context.Context;
+import com.ixaris.commons.misc.lib.object.EqualsUtil;
+import com.ixaris.commons.multitenancy.lib.MultiTenancy;
+import com.ixaris.commons.multitenancy.lib.cache.AbstractTenantAwareCache;
+
+/**
+ * Optional near cache of counter values on the nodes querying counters, so that counters queried again shortly after
+ * are not routed to the node owning the counter's shard. The owner broadcasts an invalidation when applying events to
+ * a counter, and since broadcasts are best effort, cached values also expire after the maximum staleness, which bounds
+ * how stale a value may be. Only suitable where checks against values up to the maximum staleness old are acceptable.
+ *
+ * <p>To enable, define a bean of this type; {@link com.ixaris.commons.dimensions.counters.CountersHelper} and
+ * {@link com.ixaris.commons.dimensions.counters.AtLeastOnceApplyCounterEventType} use it if present.
+ */
+public final class CounterNearCache extends AbstractTenantAwareCache<Key, Entry> implements ClusterBroadcastHandler<InvalidateCounterNearCache> {
+    
+    public static final int DEFAULT_SIZE = 10000;
+    
+    public static final class Key extends AbstractTenantAwareCache.TenantKey {
+        
+        public final CounterDef<?, ?> def;
+        public final Context<?> context;
+        
+        public Key(final CounterDef<?, ?> def, final Context<?> context) {
+            this.def = def;
+            this.context = context;
+        }
+        
+        @Override
+        public boolean equals(final Object o) {
+            return EqualsUtil.equals(this, o, other -> tenantId.equals(other.tenantId) && def.equals(other.def) && context.equals(other.context));
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(def, context);
+        }
+        
+    }
+    
+    private static final class WindowKey {
+        
+        private final WindowWidth narrowWindowWidth;
+        private final int wideWindowMultiple;
+        private final boolean lastFull;
+        
+        private WindowKey(final WindowWidth narrowWindowWidth, final int wideWindowMultiple, final boolean lastFull) {
+            this.narrowWindowWidth = narrowWindowWidth;
+            this.wideWindowMultiple = wideWindowMultiple;
+            this.lastFull = lastFull;
+        }
+        
+        @Override
+        public boolean equals(final Object o) {
+            return EqualsUtil.equals(this, o, other -> narrowWindowWidth.equals(other.narrowWindowWidth)
+                && (wideWindowMultiple == other.wideWindowMultiple)
+                && (lastFull == other.lastFull));
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(narrowWindowWidth, wideWindowMultiple, lastFull);
+        }
+        
+    }
+    
+    /**
+     * The cached values of a counter context, per window. An invalidation replaces the entry rather than clearing it,
+     * so values retrieved before the invalidation, and put in the entry obtained before retrieving them, are discarded.
+     */
+    public static final class Entry {
+        
+        private final ConcurrentMap<WindowKey, CounterValue> values = new ConcurrentHashMap<>();
+        
+        private Entry() {}
+        
+        public CounterValue get(final WindowWidth narrowWindowWidth, final int wideWindowMultiple, final boolean lastFull) {
+            return values.get(new WindowKey(narrowWindowWidth, wideWindowMultiple, lastFull));
+        }
+        
+        public void put(final WindowWidth narrowWindowWidth, final int wideWindowMultiple, final boolean lastFull, final CounterValue value) {
+            values.put(new WindowKey(narrowWindowWidth, wideWindowMultiple, lastFull), value);
+        }
+        
+    }
+    
+    private final ClusterRegistry clusterRegistry;
+    
+    public CounterNearCache(final MultiTenancy multiTenancy, final ClusterRegistry clusterRegistry, final long maxStalenessMillis) {
+        this(multiTenancy, clusterRegistry, DEFAULT_SIZE, maxStalenessMillis);
+    }
+    
+    public CounterNearCache(final MultiTenancy multiTenancy,
+                            final ClusterRegistry clusterRegistry,
+                            final int size,
+                            final long maxStalenessMillis) {
+        super(multiTenancy, size, maxStalenessMillis);
+        if (maxStalenessMillis <= 0L) {
+            throw new IllegalArgumentException("maxStalenessMillis should be positive");
+        }
+        this.clusterRegistry = clusterRegistry;
+    }
+    
+    @PostConstruct
+    @Override
+    public void startup() {
+        super.startup();
+        clusterRegistry.register(this);
+    }
+    
+    @PreDestroy
+    @Override
+    public void shutdown() {
+        clusterRegistry.deregister(this);
+        super.shutdown();
+    }
+    
+    @Override
+    public String getKey() {
+        return "counters_near_invalidate";
+    }
+    
+    /**
+     * @return the entry of the given counter context, created if absent. Values retrieved after obtaining the entry
+     *     should be put in this entry.
+     */
+    public <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> Entry entry(final Context<C> context) {
+        return cache.asMap().computeIfAbsent(new Key(context.getDef(), context), k -> new Entry());
+    }
+    
+    /**
+     * Invalidate the given counter contexts on all nodes
+     */
+    public <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> void invalidate(final C def, final Collection<Context<C>> contexts) {
+        if (contexts.isEmpty()) {
+            return;
+        }
+        
+        final InvalidateCounterNearCache.Builder message = InvalidateCounterNearCache.newBuilder().setKey(def.getKey());
+        for (final Context<C> context : contexts) {
+            invalidate(new Key(def, context));
+            message.addContexts(context.toProtobuf());
+        }
+        clusterRegistry.broadcast(this, message.build());
+    }
+    
+    @Override
+    public Async<Boolean> handle(final InvalidateCounterNearCache message) {
+        internalHandle(message);
+        return result(true);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> void internalHandle(final InvalidateCounterNearCache message) {
+        final C def = (C) CounterDefRegistry.getInstance().resolve(message.getKey());
+        for (final CommonsDimensionsLib.Context context : message.getContextsList()) {
+            invalidate(new Key(def, def.getContextDef().contextFromProtobuf(def, context)));
+        }
+    }
+    
+}
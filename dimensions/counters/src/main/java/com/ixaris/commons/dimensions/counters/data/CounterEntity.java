@@ -306,6 +306,25 @@ public final class CounterEntity<R extends UpdatableRecord<R>, C extends Counter
         }
     }
     
+    /**
+     * Store a number of counters, typically updated together when applying coalesced counter events. The updates of the
+     * counter records are batched.
+     */
+    public static <R extends UpdatableRecord<R>, C extends CounterDef<R, C>> void storeAll(final Collection<CounterEntity<R, C>> counters) {
+        final List<LibDimCounterRecord> counterRecords = new ArrayList<>(counters.size());
+        for (final CounterEntity<R, C> counter : counters) {
+            counterRecords.add(counter.counter);
+        }
+        attachAndStore(counterRecords);
+        for (final CounterEntity<R, C> counter : counters) {
+            if (!counter.contextStored) {
+                attachAndStore(counter.contextRecord);
+                counter.contextStored = true;
+            }
+            counter.narrowMap.store();
+        }
+    }
+    
     private static LibDimCounterRecord newCounterRecord() {
         final LibDimCounterRecord record = new LibDimCounterRecord();
         record.setId(UniqueIdGenerator.generate());
@@ -526,6 +545,58 @@ public final class CounterEntity<R extends UpdatableRecord<R>, C extends Counter
         }
     }
     
+    /**
+     * Apply the net effect of a sequence of increments and decrements with timestamps in the same narrow window, as
+     * accumulated when coalescing counter events. Fails wherever applying the increments and decrements one by one
+     * would fail, given the lowest net count reached while applying them in order, e.g. -1 if the sequence starts with
+     * a decrement. For a counter with wideWindowMultiple = 1, a sequence starting with a decrement in an expired window
+     * also fails, since the decrement would apply to the expired window, and should be applied one by one. Ignores
+     * update if timestamp is before wide window scope.
+     *
+     * @param count The net number of events to add to counter count, i.e. increments less decrements
+     * @param sum The net amount to add to counter sum
+     * @param lowestCount The lowest net number of events reached while applying the events in order, 0 or negative
+     * @param timestamp The latest timestamp of the events, to reflect the narrow window to update
+     */
+    public final void add(final long count, final long sum, final long lowestCount, final long timestamp) {
+        if ((lowestCount > 0L) || (lowestCount > count)) {
+            throw new IllegalArgumentException("Invalid lowestCount " + lowestCount + " for count " + count);
+        }
+        if (timestamp > System.currentTimeMillis()) {
+            throw new IllegalArgumentException("Timestamp cannot be in the future: " + timestamp);
+        }
+        final WindowWidth narrowWindowWidth = getNarrowWindowWidth();
+        if (timestamp < getWideWindowStartTime(narrowWindowWidth, counter.getWideWindowMultiple(), System.currentTimeMillis())) {
+            // do nothing if timestamp is before wide window scope.
+            return;
+        }
+        
+        // if narrow == wide window and delta falls in a new window, the first increment starts a fresh wide window
+        final long narrowWindowNumber = narrowWindowWidth.getWindowNumber(timestamp);
+        final boolean expired = (counter.getWideWindowMultiple() == 1) && (narrowWindowNumber > counter.getStartNarrowWindowNumber());
+        if ((expired ? 0L : counter.getCount()) + lowestCount < 0L) {
+            throw new IllegalStateException("Cannot reverse a counter wide window below count 0");
+        }
+        if (expired) {
+            dropExpiredWindows(timestamp);
+        }
+        
+        counter.setCount(counter.getCount() + count);
+        counter.setSum(counter.getSum() + sum);
+        
+        // if narrow == wide window, we do NOT keep/update narrow windows.
+        if (counter.getWideWindowMultiple() != 1) {
+            narrowMap.update(narrowWindowNumber, (record, d) -> {
+                if (record.getCount() + lowestCount < 0L) {
+                    throw new IllegalStateException("Cannot reverse - narrow window does not exist");
+                }
+                record.setCount(record.getCount() + count);
+                record.setSum(record.getSum() + sum);
+                return true;
+            });
+        }
+    }
+    
     /**
      * Drops any Expired windows.
      *
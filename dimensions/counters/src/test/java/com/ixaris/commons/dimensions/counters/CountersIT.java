@@ -8,9 +8,11 @@ import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 import static com.ixaris.commons.multitenancy.lib.data.DataUnit.DATA_UNIT;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +31,7 @@ import com.ixaris.commons.clustering.lib.extra.LocalCluster;
 import com.ixaris.commons.clustering.lib.service.ClusterRouteTimeoutException;
 import com.ixaris.commons.dimensions.counters.admin.CountersAdminHelper;
 import com.ixaris.commons.dimensions.counters.cache.ClusterShardedCounterCacheProvider;
+import com.ixaris.commons.dimensions.counters.jooq.tables.records.LibDimCounterEventQueueRecord;
 import com.ixaris.commons.dimensions.counters.support.ADimensionDef;
 import com.ixaris.commons.dimensions.counters.support.AEnum;
 import com.ixaris.commons.dimensions.counters.support.BDimensionDef;
@@ -189,6 +192,13 @@ public class CountersIT {
         return block(counters.getCounter(Context.empty(TestCounterDef.getInstance()), new WindowWidth(1, WindowTimeUnit.ALWAYS), 1));
     }
     
+    private CounterValue getCounterFor(final AEnum a, final WindowWidth narrowWindowWidth, final int wideWindowMultiple) throws InterruptedException,
+                                                                                                                              ClusterRouteTimeoutException {
+        return block(counters.getCounter(Context.newBuilder(TestCounterDef.getInstance()).add(ADimensionDef.getInstance().create(a)).build(),
+            narrowWindowWidth,
+            wideWindowMultiple));
+    }
+    
     private WindowValue addDelta(final WindowValue windowValue, long deltaCount, long deltaSum) {
         return new WindowValue(windowValue.getCount() + deltaCount, windowValue.getSum() + deltaSum);
     }
@@ -230,12 +240,16 @@ public class CountersIT {
     }
     
     private void waitForPendingEventsToBeProcessed() throws InterruptedException {
+        waitForPendingEventsToBeProcessed(0);
+    }
+    
+    private void waitForPendingEventsToBeProcessed(final int remaining) throws InterruptedException {
         boolean first = false;
         for (int i = 0; i < 200; i++) {
             Thread.sleep(200L); // some time for async processing
             
             final int count = db.transaction(() -> JOOQ_TX.get().fetchCount(LIB_DIM_COUNTER_EVENT_QUEUE));
-            if (count == 0) {
+            if (count == remaining) {
                 if (first) {
                     // check twice in a row
                     return;
@@ -604,6 +618,31 @@ public class CountersIT {
         }));
     }
     
+    @Test
+    public void testGetCountersBatch() throws Throwable {
+        DATA_UNIT.exec(UNIT, () -> TENANT.exec(TestTenants.DEFAULT, () -> {
+            final WindowWidth narrowWindowWidth = new WindowWidth(1, WindowTimeUnit.DAY);
+            final Context<TestCounterDef> context2 = Context.newBuilder(TestCounterDef.getInstance())
+                .add(ADimensionDef.getInstance().create(AEnum.AAA))
+                .build();
+            final Context<TestCounterDef> context3 = Context.newBuilder(TestCounterDef.getInstance())
+                .add(ADimensionDef.getInstance().create(AEnum.AAA))
+                .add(BDimensionDef.getInstance().create(10L))
+                .add(CDimensionDef.getInstance().create(20L))
+                .build();
+            
+            final List<CounterValue> values = block(counters.getCounters(Arrays.asList(
+                new CounterQuery<>(Context.empty(TestCounterDef.getInstance()), narrowWindowWidth, 7),
+                new CounterQuery<>(Context.empty(TestCounterDef.getInstance()), narrowWindowWidth, 7, true),
+                new CounterQuery<>(context2, narrowWindowWidth, 7),
+                new CounterQuery<>(context3, narrowWindowWidth, 7, true))));
+            
+            // same values, in the same order, as retrieving the counters one by one
+            assertEquals(Arrays.asList(getCounter1(), getCounter1LastFull(), getCounter2(), getCounter3LastFull()), values);
+            assertEquals(Collections.emptyList(), block(counters.getCounters(Collections.emptyList())));
+        }));
+    }
+    
     @Test
     public void testCleanup() throws Throwable {
         DATA_UNIT.exec(UNIT, () -> TENANT.exec(TestTenants.DEFAULT, () -> {
@@ -799,4 +838,104 @@ public class CountersIT {
         }));
     }
     
+    @Test
+    public void testCoalescedEvents() throws Throwable {
+        DATA_UNIT.exec(UNIT, () -> TENANT.exec(TestTenants.DEFAULT, () -> {
+            final WindowWidth day = new WindowWidth(1, WindowTimeUnit.DAY);
+            final CounterValue initial = getCounterFor(AEnum.COA, day, 7);
+            final Context<TestCounterDef> context = Context
+                .newBuilder(TestCounterDef.getInstance())
+                .add(ADimensionDef.getInstance().create(AEnum.COA))
+                .build();
+            
+            // queued in the same transaction, so processed in the same batch
+            final long now = System.currentTimeMillis();
+            final List<TestEventEntity> events = createAndStoreEvent(true,
+                tuple(context, 5L, now),
+                tuple(context, 7L, now),
+                tuple(context, 11L, now - WindowTimeUnit.MILLISECONDS_IN_DAY), // a different narrow window
+                tuple(context, 13L, now),
+                tuple(context, 17L, now - (WindowTimeUnit.MILLISECONDS_IN_DAY * 8))); // before the wide window, ignored
+            
+            assertEquals(new CounterValue(addDelta(initial.getWide(), 4L, 36L), addDelta(initial.getNarrow(), 3L, 25L)),
+                getCounterFor(AEnum.COA, day, 7));
+            
+            // reverse some of the events in the same batch as new events
+            db.transaction(() -> {
+                for (final TestEventEntity event : events.subList(0, 3)) {
+                    event.getEvent().setCounterAffected(false);
+                    event.store();
+                    CountersHelper.queueEvent(event, localCluster);
+                }
+                final TestEventEntity event = new TestEventEntity(19L, System.currentTimeMillis(), true, AEnum.COA, null, null).store();
+                CountersHelper.queueEvent(event, localCluster);
+                return null;
+            });
+            waitForPendingEventsToBeProcessed();
+            
+            assertEquals(new CounterValue(addDelta(initial.getWide(), 2L, 32L), addDelta(initial.getNarrow(), 2L, 32L)),
+                getCounterFor(AEnum.COA, day, 7));
+        }));
+    }
+    
+    @Test
+    public void testCoalescedEventsReversalQueuedFirst() throws Throwable {
+        DATA_UNIT.exec(UNIT, () -> TENANT.exec(TestTenants.DEFAULT, () -> {
+            // the current hour window has count 0, so a reversal cannot be applied before any increment
+            final WindowWidth hour = new WindowWidth(1, WindowTimeUnit.HOUR);
+            final CounterValue initial = getCounterFor(AEnum.REV, hour, 1);
+            
+            // the reversal of the first event is queued before the events, in the same batch. The batch cannot be
+            // coalesced, as the reversal fails on its own, and is retried once the events are applied
+            db.transaction(() -> {
+                final long now = System.currentTimeMillis();
+                final TestEventEntity reversed = new TestEventEntity(5L, now, false, AEnum.REV, null, null).store();
+                CountersHelper.queueEvent(reversed, localCluster);
+                reversed.getEvent().setCounterAffected(true);
+                reversed.store();
+                CountersHelper.queueEvent(reversed, localCluster);
+                CountersHelper.queueEvent(new TestEventEntity(7L, now, true, AEnum.REV, null, null).store(), localCluster);
+                return null;
+            });
+            waitForPendingEventsToBeProcessed();
+            
+            assertEquals(new CounterValue(addDelta(initial.getWide(), 1L, 7L), addDelta(initial.getNarrow(), 1L, 7L)),
+                getCounterFor(AEnum.REV, hour, 1));
+        }));
+    }
+    
+    @Test
+    public void testCoalescedEventsFailure() throws Throwable {
+        DATA_UNIT.exec(UNIT, () -> TENANT.exec(TestTenants.DEFAULT, () -> {
+            final WindowWidth day = new WindowWidth(1, WindowTimeUnit.DAY);
+            final CounterValue initial = getCounterFor(AEnum.FLD, day, 7);
+            
+            // the second event is deleted once queued, so fails to be applied
+            final long failingEventId = db.transaction(() -> {
+                final long now = System.currentTimeMillis();
+                final List<Long> eventIds = new ArrayList<>();
+                for (final long delta : new long[] { 5L, 7L, 11L }) {
+                    final TestEventEntity event = new TestEventEntity(delta, now, true, AEnum.FLD, null, null).store();
+                    CountersHelper.queueEvent(event, localCluster);
+                    eventIds.add(event.getId());
+                }
+                TestEventEntity.lookup(eventIds.get(1)).delete();
+                return eventIds.get(1);
+            });
+            
+            try {
+                // only the failing event remains queued
+                waitForPendingEventsToBeProcessed(1);
+                
+                assertEquals(new CounterValue(addDelta(initial.getWide(), 2L, 16L), addDelta(initial.getNarrow(), 2L, 16L)),
+                    getCounterFor(AEnum.FLD, day, 7));
+                final LibDimCounterEventQueueRecord failing = db.transaction(() -> JOOQ_TX.get().fetchOne(LIB_DIM_COUNTER_EVENT_QUEUE));
+                assertEquals(failingEventId, failing.getEventId().longValue());
+                assertTrue(failing.getFailureCount() > 0);
+            } finally {
+                db.transaction(() -> JOOQ_TX.get().deleteFrom(LIB_DIM_COUNTER_EVENT_QUEUE).execute());
+            }
+        }));
+    }
+    
 }
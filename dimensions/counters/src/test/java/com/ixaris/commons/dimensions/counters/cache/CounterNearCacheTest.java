@@ -0,0 +1,151 @@
+package com.ixaris.commons.dimensions.counters.cache;
+
+import static com.ixaris.commons.async.lib.CompletionStageUtil.block;
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ixaris.commons.clustering.lib.extra.LocalCluster;
+import com.ixaris.commons.dimensions.counters.CommonsDimensionsCounters.InvalidateCounterNearCache;
+import com.ixaris.commons.dimensions.counters.CounterDefRegistry;
+import com.ixaris.commons.dimensions.counters.CounterValue;
+import com.ixaris.commons.dimensions.counters.WindowTimeUnit;
+import com.ixaris.commons.dimensions.counters.WindowValue;
+import com.ixaris.commons.dimensions.counters.WindowWidth;
+import com.ixaris.commons.dimensions.counters.support.ADimensionDef;
+import com.ixaris.commons.dimensions.counters.support.AEnum;
+import com.ixaris.commons.dimensions.counters.support.TestCounterDef;
+import com.ixaris.commons.dimensions.lib.context.Context;
+import com.ixaris.commons.misc.lib.registry.Registry;
+import com.ixaris.commons.multitenancy.lib.MultiTenancy;
+import com.ixaris.commons.multitenancy.test.TestTenants;
+
+public class CounterNearCacheTest {
+    
+    private static final long MAX_STALENESS = 200L;
+    private static final WindowWidth DAY = new WindowWidth(1, WindowTimeUnit.DAY);
+    private static final CounterValue VALUE = new CounterValue(new WindowValue(3L, 30L), new WindowValue(1L, 10L));
+    
+    private final Context<TestCounterDef> context = Context
+        .newBuilder(TestCounterDef.getInstance())
+        .add(ADimensionDef.getInstance().create(AEnum.AAA))
+        .build();
+    private final Context<TestCounterDef> otherContext = Context
+        .newBuilder(TestCounterDef.getInstance())
+        .add(ADimensionDef.getInstance().create(AEnum.BBB))
+        .build();
+    
+    private LocalCluster localCluster;
+    private CounterNearCache nearCache;
+    
+    @BeforeClass
+    public static void setupClass() {
+        CounterDefRegistry.getInstance().postConstruct();
+        Registry.registerInApplicableRegistries(TestCounterDef.getInstance());
+    }
+    
+    @AfterClass
+    public static void teardownClass() {
+        Registry.unregisterFromApplicableRegistries(TestCounterDef.getInstance());
+        CounterDefRegistry.getInstance().preDestroy();
+    }
+    
+    @Before
+    public void setup() {
+        localCluster = new LocalCluster(Collections.emptySet(), Collections.emptySet());
+        nearCache = new CounterNearCache(new MultiTenancy(), localCluster, MAX_STALENESS);
+        nearCache.startup();
+    }
+    
+    @After
+    public void teardown() {
+        nearCache.shutdown();
+    }
+    
+    @Test
+    public void get_shouldMissUntilPut() {
+        TENANT.exec(TestTenants.DEFAULT, () -> {
+            assertThat(nearCache.entry(context).get(DAY, 7, false)).isNull();
+            
+            nearCache.entry(context).put(DAY, 7, false, VALUE);
+            
+            assertThat(nearCache.entry(context).get(DAY, 7, false)).isEqualTo(VALUE);
+            // other windows and contexts are cached separately
+            assertThat(nearCache.entry(context).get(DAY, 7, true)).isNull();
+            assertThat(nearCache.entry(context).get(DAY, 1, false)).isNull();
+            assertThat(nearCache.entry(otherContext).get(DAY, 7, false)).isNull();
+        });
+    }
+    
+    @Test
+    public void get_shouldMissForOtherTenant() {
+        TENANT.exec(TestTenants.DEFAULT, () -> nearCache.entry(context).put(DAY, 7, false, VALUE));
+        
+        TENANT.exec("other", () -> {
+            assertThat(nearCache.entry(context).get(DAY, 7, false)).isNull();
+        });
+    }
+    
+    @Test
+    public void invalidate_shouldDiscardValuesPutInPreviousEntry() {
+        TENANT.exec(TestTenants.DEFAULT, () -> {
+            nearCache.entry(context).put(DAY, 7, false, VALUE);
+            nearCache.entry(otherContext).put(DAY, 7, false, VALUE);
+            final CounterNearCache.Entry entry = nearCache.entry(context);
+            
+            nearCache.invalidate(TestCounterDef.getInstance(), Collections.singleton(context));
+            
+            assertThat(nearCache.entry(context).get(DAY, 7, false)).isNull();
+            assertThat(nearCache.entry(otherContext).get(DAY, 7, false)).isEqualTo(VALUE);
+            
+            // a value retrieved before the invalidation is put in the discarded entry
+            entry.put(DAY, 7, false, VALUE);
+            assertThat(nearCache.entry(context).get(DAY, 7, false)).isNull();
+        });
+    }
+    
+    @Test
+    public void invalidationBroadcast_shouldInvalidateContexts() throws Throwable {
+        TENANT.exec(TestTenants.DEFAULT, () -> {
+            nearCache.entry(context).put(DAY, 7, false, VALUE);
+            nearCache.entry(otherContext).put(DAY, 7, false, VALUE);
+            
+            // as broadcast by the node applying events to the counter
+            assertThat(block(localCluster.broadcast(nearCache,
+                InvalidateCounterNearCache.newBuilder()
+                    .setKey(TestCounterDef.getInstance().getKey())
+                    .addContexts(context.toProtobuf())
+                    .build())))
+                .isTrue();
+            
+            assertThat(nearCache.entry(context).get(DAY, 7, false)).isNull();
+            assertThat(nearCache.entry(otherContext).get(DAY, 7, false)).isEqualTo(VALUE);
+        });
+    }
+    
+    @Test
+    public void get_shouldMissOnceMaxStalenessElapsed() throws InterruptedException {
+        TENANT.exec(TestTenants.DEFAULT, () -> {
+            nearCache.entry(context).put(DAY, 7, false, VALUE);
+            assertThat(nearCache.entry(context).get(DAY, 7, false)).isEqualTo(VALUE);
+            
+            // values expire even if an invalidation broadcast is missed
+            Thread.sleep(MAX_STALENESS * 2L);
+            
+            assertThat(nearCache.entry(context).get(DAY, 7, false)).isNull();
+        });
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void maxStaleness_shouldBePositive() {
+        new CounterNearCache(new MultiTenancy(), localCluster, 0L);
+    }
+    
+}
@@ -9,6 +9,9 @@ public enum AEnum {
     STR,
     ASY,
     ASC,
-    CLN
+    CLN,
+    COA,
+    REV,
+    FLD
     
 }
@@ -27,9 +27,9 @@ import org.springframework.stereotype.Component;
 
 import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.dimensions.counters.CounterDef;
+import com.ixaris.commons.dimensions.counters.CounterQuery;
 import com.ixaris.commons.dimensions.counters.CounterValue;
 import com.ixaris.commons.dimensions.counters.CountersHelper;
-import com.ixaris.commons.dimensions.counters.WindowWidth;
 import com.ixaris.commons.dimensions.lib.base.DimensionalHelper;
 import com.ixaris.commons.dimensions.lib.context.Context;
 import com.ixaris.commons.dimensions.lib.context.Dimension;
@@ -117,19 +117,19 @@ public final class LimitsHelper {
             return result(new LimitBounds<>(null, null, null, null, null, null));
         }
         
+        final List<CounterValue> counterValues = await(getCounterValues(context, limits));
         final List<Async<LimitBounds<I, L>>> promises = new ArrayList<>(limits.size());
+        int i = 0;
         for (final LimitEntity<I, L> limit : limits) {
-            promises.add(getDeltasToReachSingleLimit(context, limit, extensionParam));
+            promises.add(getDeltasToReachSingleLimit(context, limit, counterValues.get(i++), extensionParam));
         }
         return all(promises).map(this::collapseLimitBounds);
     }
     
     private <T, I extends AbstractLimitExtensionEntity<T, I>, R extends UpdatableRecord<R>, C extends CounterDef<R, C>, L extends CounterLimitDef<I, C>> Async<LimitBounds<I, L>> getDeltasToReachSingleLimit(final Context<L> context,
                                                                                                                                                                                                               final LimitEntity<I, L> limit,
-                                                                                                                                                                                                              final T extensionParam) throws TimeoutException {
-        final CounterValue cv = await(getCounterValue(
-            context, limit.getContext(), limit.getNarrowWindowWidth(), limit.getWideWindowMultiple()));
-        
+                                                                                                                                                                                                              final CounterValue cv,
+                                                                                                                                                                                                              final T extensionParam) {
         final L def = context.getDef();
         
         Long count = null;
@@ -178,9 +178,11 @@ public final class LimitsHelper {
             return result(Collections.emptyList());
         }
         
+        final List<CounterValue> counterValues = await(getCounterValues(context, limits));
         final List<Async<LimitExceeded>> promises = new ArrayList<>(limits.size());
+        int i = 0;
         for (final LimitEntity<I, L> limit : limits) {
-            promises.add(validateDeltaAgainstSingleLimit(context, limit, extensionParam, countDelta, sumDelta));
+            promises.add(validateDeltaAgainstSingleLimit(limit, counterValues.get(i++), extensionParam, countDelta, sumDelta));
         }
         
         return all(promises).map(l -> l.stream().filter(Objects::nonNull).collect(Collectors.toList()));
@@ -191,10 +193,16 @@ public final class LimitsHelper {
                                                                                                                                                                                                              final T extensionParam,
                                                                                                                                                                                                              final long countDelta,
                                                                                                                                                                                                              final long sumDelta) throws TimeoutException {
-        final CounterValue cv = await(getCounterValue(
-            context, limit.getContext(), limit.getNarrowWindowWidth(), limit.getWideWindowMultiple()));
-        
-        final L def = context.getDef();
+        final CounterValue cv = await(counters.getCounter(getCounterQuery(context, limit)));
+        return validateDeltaAgainstSingleLimit(limit, cv, extensionParam, countDelta, sumDelta);
+    }
+    
+    private <T, I extends AbstractLimitExtensionEntity<T, I>, R extends UpdatableRecord<R>, C extends CounterDef<R, C>, L extends CounterLimitDef<I, C>> Async<LimitExceeded> validateDeltaAgainstSingleLimit(final LimitEntity<I, L> limit,
+                                                                                                                                                                                                              final CounterValue cv,
+                                                                                                                                                                                                              final T extensionParam,
+                                                                                                                                                                                                              final long countDelta,
+                                                                                                                                                                                                              final long sumDelta) {
+        final L def = limit.getContext().getDef();
         
         boolean countExceeded = false;
         boolean minExceeded = false;
@@ -242,10 +250,24 @@ public final class LimitsHelper {
         }
     }
     
-    private <R extends UpdatableRecord<R>, C extends CounterDef<R, C>, L extends CounterLimitDef<?, C>> Async<CounterValue> getCounterValue(final Context<L> queryContext,
-                                                                                                                                            final Context<L> limitContext,
-                                                                                                                                            final WindowWidth narrowWindowWidth,
-                                                                                                                                            final int wideWindowMultiple) throws TimeoutException {
+    /**
+     * Retrieves the counter values for all the given limits in one batch, i.e. one routed request per shard owning
+     * the counters rather than one per limit
+     *
+     * @return the counter values, in the iteration order of the limits
+     */
+    private <I extends AbstractLimitExtensionEntity<?, I>, R extends UpdatableRecord<R>, C extends CounterDef<R, C>, L extends CounterLimitDef<I, C>> Async<List<CounterValue>> getCounterValues(final Context<L> queryContext,
+                                                                                                                                                                                               final SortedSet<LimitEntity<I, L>> limits) throws TimeoutException {
+        final List<CounterQuery<R, C>> queries = new ArrayList<>(limits.size());
+        for (final LimitEntity<I, L> limit : limits) {
+            queries.add(getCounterQuery(queryContext, limit));
+        }
+        return counters.getCounters(queries);
+    }
+    
+    private <I extends AbstractLimitExtensionEntity<?, I>, R extends UpdatableRecord<R>, C extends CounterDef<R, C>, L extends CounterLimitDef<I, C>> CounterQuery<R, C> getCounterQuery(final Context<L> queryContext,
+                                                                                                                                                                                        final LimitEntity<I, L> limit) {
+        final Context<L> limitContext = limit.getContext();
         
         // Iterate over the dimensions defined for the given limit to fill up the counter context. If a dimension is set
         // as a MATCH_ANY value, then
@@ -265,7 +287,7 @@ public final class LimitsHelper {
         counterContext.addAll(limitContext.getDef().getConstantDimensions());
         final Context<C> context = counterContext.build();
         
-        return counters.getCounter(context, narrowWindowWidth, wideWindowMultiple);
+        return new CounterQuery<>(context, limit.getNarrowWindowWidth(), limit.getWideWindowMultiple());
     }
     
     private <I extends AbstractLimitExtensionEntity<?, I>, L extends CounterLimitDef<I, ?>> LimitBounds<I, L> collapseLimitBounds(final List<LimitBounds<I, L>> l) {
@@ -1,23 +1,40 @@
 package com.ixaris.commons.dimensions.limits.cache;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.StampedLock;
 
 import com.ixaris.commons.dimensions.lib.context.Context;
+import com.ixaris.commons.dimensions.lib.context.Dimension;
+import com.ixaris.commons.dimensions.lib.context.DimensionDef;
+import com.ixaris.commons.dimensions.lib.context.DimensionDef.ValueMatch;
 import com.ixaris.commons.dimensions.limits.LimitDef;
 import com.ixaris.commons.dimensions.limits.data.AbstractLimitExtensionEntity;
 import com.ixaris.commons.dimensions.limits.data.LimitEntity;
 import com.ixaris.commons.misc.lib.lock.LockUtil;
 
+/**
+ * Holds the limits of a limit definition, and matches them against query contexts.
+ *
+ * <p>Effective limits are indexed by dimension value, so that a query only tests the limits that may match it rather than
+ * all the limits of the definition. Matching limits are also memoised per query context, until the set of effective
+ * limits changes, i.e. until the next limit expiry or effective from boundary.
+ */
 public class LimitCacheEntry<I extends AbstractLimitExtensionEntity<?, I>, L extends LimitDef<I>> {
     
+    private static final int MAX_MEMOISED_CONTEXTS = 1024;
+    
     private static final Comparator<LimitEntity<?, ?>> COMPARATOR = (e1, e2) -> {
         // Sorted from most specific to least specific by dimension mask, then context depth
         final long maskDiff = e1.getContext().getDimensionsMask() - e2.getContext().getDimensionsMask();
@@ -30,10 +47,110 @@ public class LimitCacheEntry<I extends AbstractLimitExtensionEntity<?, I>, L ext
         }
     };
     
+    /**
+     * Inverted index of the limits by the value of a dimension
+     */
+    private static final class DimensionIndex {
+        
+        // limits that do not define the dimension, matching any query
+        private final BitSet undefined = new BitSet();
+        // limits that may match any defined query value, i.e. MATCH_ANY values or values of hierarchical / range
+        // dimensions, which are not matched by equality
+        private final BitSet anyDefined = new BitSet();
+        private final Map<Object, BitSet> values = new HashMap<>();
+        
+        private void or(final BitSet candidates, final Dimension<?> queryDimension) {
+            candidates.or(undefined);
+            if (queryDimension != null) {
+                candidates.or(anyDefined);
+                final BitSet matching = values.get(queryDimension.getValue());
+                if (matching != null) {
+                    candidates.or(matching);
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * Snapshot of the effective limits, replaced whenever limits expire or become effective
+     */
+    private final class Index {
+        
+        private final List<LimitEntity<I, L>> limits;
+        private final Map<DimensionDef<?>, DimensionIndex> dimensions = new HashMap<>();
+        private final Map<Context<L>, SortedSet<LimitEntity<I, L>>> memoised = new ConcurrentHashMap<>();
+        
+        private Index(final List<LimitEntity<I, L>> limits) {
+            this.limits = limits;
+            if (limits.isEmpty()) {
+                return;
+            }
+            
+            for (final DimensionDef<?> dimensionDef : limits.get(0).getContext().getDef().getContextDef()) {
+                final boolean exact = (dimensionDef.getValueMatch() == ValueMatch.LONG) || (dimensionDef.getValueMatch() == ValueMatch.STRING);
+                final DimensionIndex dimensionIndex = new DimensionIndex();
+                for (int i = 0; i < limits.size(); i++) {
+                    final Dimension<?> dimension = limits.get(i).getContext().get(dimensionDef);
+                    if (dimension == null) {
+                        dimensionIndex.undefined.set(i);
+                    } else if (dimension.isMatchAny() || !exact) {
+                        dimensionIndex.anyDefined.set(i);
+                    } else {
+                        dimensionIndex.values.computeIfAbsent(dimension.getValue(), k -> new BitSet()).set(i);
+                    }
+                }
+                dimensions.put(dimensionDef, dimensionIndex);
+            }
+        }
+        
+        private SortedSet<LimitEntity<I, L>> getLimitsForContext(final Context<L> context) {
+            if (!context.isCacheable()) {
+                return match(context);
+            }
+            
+            SortedSet<LimitEntity<I, L>> matching = memoised.get(context);
+            if (matching == null) {
+                matching = match(context);
+                if (memoised.size() >= MAX_MEMOISED_CONTEXTS) {
+                    memoised.clear();
+                }
+                memoised.put(context, matching);
+            }
+            return matching;
+        }
+        
+        private TreeSet<LimitEntity<I, L>> match(final Context<L> context) {
+            final BitSet candidates = new BitSet(limits.size());
+            candidates.set(0, limits.size());
+            for (final Map.Entry<DimensionDef<?>, DimensionIndex> entry : dimensions.entrySet()) {
+                final BitSet dimensionCandidates = new BitSet(limits.size());
+                entry.getValue().or(dimensionCandidates, context.get(entry.getKey()));
+                candidates.and(dimensionCandidates);
+                if (candidates.isEmpty()) {
+                    break;
+                }
+            }
+            
+            // the index narrows down the candidates, the exact match (e.g. for hierarchies) is still done by the filter
+            final TreeSet<LimitEntity<I, L>> matching = new TreeSet<>(COMPARATOR);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                final LimitEntity<I, L> limit = limits.get(i);
+                if (LimitFilterType.MATCHING.test(limit, context)) {
+                    matching.add(limit);
+                }
+            }
+            overrideMatchAnys(matching);
+            return matching;
+        }
+        
+    }
+    
     private final Set<LimitEntity<I, L>> futureEffectiveLimits = new LinkedHashSet<>();
     private final Set<LimitEntity<I, L>> effectiveNoExpiryLimits = new HashSet<>();
     
     private final StampedLock lock = new StampedLock();
+    private volatile Index index;
     
     // sort by expiry for fast update
     private final SortedSet<LimitEntity<I, L>> effectiveWithExpiryLimits = new TreeSet<>((e1, e2) -> {
@@ -64,6 +181,7 @@ public class LimitCacheEntry<I extends AbstractLimitExtensionEntity<?, I>, L ext
                 effectiveWithExpiryLimits.add(limit);
             } // else ignore, no longer effective
         }
+        index = new Index(getEffectiveLimits());
     }
     
     /**
@@ -76,18 +194,15 @@ public class LimitCacheEntry<I extends AbstractLimitExtensionEntity<?, I>, L ext
         final long now = System.currentTimeMillis();
         removeExpiredAndAddFutureEffective(now);
         
-        final TreeSet<LimitEntity<I, L>> combinedLimits = LockUtil.read(lock, true, () -> {
-            final TreeSet<LimitEntity<I, L>> c = new TreeSet<>(COMPARATOR);
-            effectiveNoExpiryLimits.stream()
-                .filter(entry -> LimitFilterType.MATCHING.test(entry, context))
-                .forEachOrdered(c::add);
-            effectiveWithExpiryLimits.stream()
-                .filter(entry -> LimitFilterType.MATCHING.test(entry, context))
-                .forEachOrdered(c::add);
-            return c;
-        });
-        overrideMatchAnys(combinedLimits);
-        return combinedLimits;
+        // copied since memoised results are shared between callers (linear, as the memoised set is already sorted)
+        return new TreeSet<>(index.getLimitsForContext(context));
+    }
+    
+    private List<LimitEntity<I, L>> getEffectiveLimits() {
+        final List<LimitEntity<I, L>> limits = new ArrayList<>(effectiveNoExpiryLimits.size() + effectiveWithExpiryLimits.size());
+        limits.addAll(effectiveNoExpiryLimits);
+        limits.addAll(effectiveWithExpiryLimits);
+        return limits;
     }
     
     private void removeExpiredAndAddFutureEffective(final long now) {
@@ -129,6 +244,8 @@ public class LimitCacheEntry<I extends AbstractLimitExtensionEntity<?, I>, L ext
                         break;
                     }
                 }
+                
+                index = new Index(getEffectiveLimits());
                 return true;
             });
     }
@@ -84,6 +84,37 @@ public class LimitCacheEntryTest {
         assertThat(limitsForContext).containsExactly(allStarLimit, specificLimit);
     }
     
+    @Test
+    public void getLimitsForContext_limitsDefiningDimensionsMissingFromQuery_shouldNotMatch() throws Throwable {
+        final long now = System.currentTimeMillis();
+        
+        final List<LimitEntity<NoLimitExtensionEntity, TestOptionalDimensionsLimit>> limits = new ArrayList<>();
+        
+        final LimitEntity<NoLimitExtensionEntity, TestOptionalDimensionsLimit> long1Limit = initialiseLimit(new Dimension<>(123L,
+            Long1DimensionDef.getInstance()));
+        long1Limit.getLimit().setEffectiveFrom(now);
+        long1Limit.getLimit().setMaxAmount(100L);
+        limits.add(long1Limit);
+        
+        final LimitEntity<NoLimitExtensionEntity, TestOptionalDimensionsLimit> long2Limit = initialiseLimit(new Dimension<>(456L,
+            Long2DimensionDef.getInstance()));
+        long2Limit.getLimit().setEffectiveFrom(now);
+        long2Limit.getLimit().setMaxAmount(200L);
+        limits.add(long2Limit);
+        
+        final LimitCacheEntry<NoLimitExtensionEntity, TestOptionalDimensionsLimit> cacheEntry = new LimitCacheEntry<>(limits);
+        
+        final Context<TestOptionalDimensionsLimit> context = Context.newBuilder(TestOptionalDimensionsLimit.getInstance())
+            .add(new Dimension<>(123L, Long1DimensionDef.getInstance()))
+            .build();
+        final SortedSet<LimitEntity<NoLimitExtensionEntity, TestOptionalDimensionsLimit>> limitsForContext = cacheEntry.getLimitsForContext(context);
+        assertThat(limitsForContext).containsExactly(long1Limit);
+        
+        // returned sets are not shared between calls
+        limitsForContext.clear();
+        assertThat(cacheEntry.getLimitsForContext(context)).containsExactly(long1Limit);
+    }
+    
     @Test
     public void getLimitsForContext_multipleCalls_shouldNotConcurrentlyModifyCachedLimits() throws Throwable {
         final long now = System.currentTimeMillis();
@@ -7,6 +7,7 @@ import javax.sql.DataSource;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 import com.ixaris.commons.persistence.lib.datasource.AbstractMigratableMultiTenantDataSource;
 import com.ixaris.commons.persistence.lib.datasource.MultiTenancyDataSourceConfig;
@@ -28,6 +29,8 @@ public final class HikariMultiTenantDataSource extends AbstractMigratableMultiTe
     // tenant specify them!
     private static final int MINIMUM_POOL_SIZE_DEFAULT = 1;
     private static final int MAXIMUM_POOL_SIZE_DEFAULT = 50;
+    private static final int PREPARED_STATEMENT_CACHE_SIZE = 100;
+    private static final int PREPARED_STATEMENT_CACHE_SQL_LIMIT = 2048;
     
     private final Object metricRegistry;
     private final Object healthCheckRegistry;
@@ -45,6 +48,11 @@ public final class HikariMultiTenantDataSource extends AbstractMigratableMultiTe
         this.healthCheckRegistry = healthCheckRegistry;
     }
     
+    @Override
+    public int getMaximumPoolSize() {
+        return MAXIMUM_POOL_SIZE_DEFAULT;
+    }
+    
     @Override
     protected DataSource createShared(final Map<String, String> properties) {
         final HikariConfig hikariConfig = new HikariConfig();
@@ -70,10 +78,15 @@ public final class HikariMultiTenantDataSource extends AbstractMigratableMultiTe
         // BV 6/3/2017 but transactions do not work with autocommit, so we should not use such features
         hikariConfig.setAutoCommit(false);
         
-        // statement caching is intentionally not enabled. we are using JDBC's catalog feature to 'dynamically' set the
-        // schema which is being retrieved. This has the side-effect of only working on the statement that will carry
-        // out the query. with caching, we will have (cached) statements still holding a reference to the schema
-        // (catalog) that was used when the statement was first created.
+        // we are using JDBC's catalog feature to 'dynamically' set the schema which is being retrieved, so statements
+        // prepared on the server are bound to the catalog (schema) that was used when the statement was first
+        // prepared. the driver's server side statement cache is keyed by (catalog, sql), so a statement cached for a
+        // tenant is only reused for the same tenant's catalog, and queries repeated on a connection are not prepared
+        // again. the cache is kept small per connection to stay well within the server's limit of prepared statements
+        hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
+        hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
+        hikariConfig.addDataSourceProperty("prepStmtCacheSize", PREPARED_STATEMENT_CACHE_SIZE);
+        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", PREPARED_STATEMENT_CACHE_SQL_LIMIT);
         
         hikariConfig.setMetricRegistry(metricRegistry);
         hikariConfig.setHealthCheckRegistry(healthCheckRegistry);
@@ -81,4 +94,15 @@ public final class HikariMultiTenantDataSource extends AbstractMigratableMultiTe
         return new HikariDataSource(hikariConfig);
     }
     
+    @Override
+    protected int getIdleConnections(final DataSource sharedDataSource) {
+        return idleConnections((HikariDataSource) sharedDataSource);
+    }
+    
+    static int idleConnections(final HikariDataSource dataSource) {
+        // the pool is only available once started
+        final HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool != null ? pool.getIdleConnections() : 0;
+    }
+    
 }
@@ -0,0 +1,207 @@
+package com.ixaris.commons.hikari.persistence;
+
+import static com.ixaris.commons.async.lib.Async.result;
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
+import static com.ixaris.commons.multitenancy.lib.data.DataUnit.DATA_UNIT;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.async.lib.CompletionStageUtil;
+import com.ixaris.commons.misc.lib.datasource.DataSourceWrapper;
+import com.ixaris.commons.multitenancy.lib.MultiTenancy;
+import com.ixaris.commons.multitenancy.lib.datasource.AbstractMultiTenantDataSource;
+
+/**
+ * Measures obtaining a connection from a shared Hikari pool and running a query on it, for tenants picked at random,
+ * with and without preferring idle connections already on the catalog of the tenant. The pool is backed by an
+ * in-memory H2 database, where setting the catalog does nothing, so setting the catalog is mapped to setting the
+ * schema, which executes a statement like MySQL does when changing the catalog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class CatalogAffinityBenchmark {
+    
+    private static final String UNIT = "unit";
+    private static final String URL = "jdbc:h2:mem:catalog_affinity;DB_CLOSE_DELAY=-1";
+    private static final int POOL_SIZE = 8;
+    
+    private static final class H2MultiTenantDataSource extends AbstractMultiTenantDataSource {
+        
+        private final boolean catalogAffinity;
+        
+        private H2MultiTenantDataSource(final boolean catalogAffinity) {
+            super("bench", "bench", UNIT, Collections.singleton(UNIT));
+            this.catalogAffinity = catalogAffinity;
+        }
+        
+        @Override
+        public Async<Void> preActivate(final String tenantId) {
+            final Map<String, String> properties = new HashMap<>();
+            properties.put(URL_KEY, URL);
+            properties.put(USER_KEY, "sa");
+            properties.put(PASSWORD_KEY, "sa");
+            addTenant(tenantId, properties);
+            return result();
+        }
+        
+        @Override
+        public Async<Void> activate(final String tenantId) {
+            return result();
+        }
+        
+        @Override
+        public Async<Void> deactivate(final String tenantId) {
+            return result();
+        }
+        
+        @Override
+        public Async<Void> postDeactivate(final String tenantId) {
+            removeTenant(tenantId);
+            return result();
+        }
+        
+        @Override
+        protected DataSource createShared(final Map<String, String> properties) {
+            final JdbcDataSource h2DataSource = new JdbcDataSource();
+            h2DataSource.setURL(properties.get(URL_KEY));
+            final HikariConfig hikariConfig = new HikariConfig();
+            hikariConfig.setDataSource(new CatalogAsSchemaDataSource(h2DataSource));
+            hikariConfig.setMinimumIdle(POOL_SIZE);
+            hikariConfig.setMaximumPoolSize(POOL_SIZE);
+            hikariConfig.setAutoCommit(false);
+            return new HikariDataSource(hikariConfig);
+        }
+        
+        @Override
+        protected int getIdleConnections(final DataSource sharedDataSource) {
+            return catalogAffinity ? HikariMultiTenantDataSource.idleConnections((HikariDataSource) sharedDataSource) : 0;
+        }
+        
+    }
+    
+    private static final class CatalogAsSchemaDataSource extends DataSourceWrapper {
+        
+        private CatalogAsSchemaDataSource(final DataSource dataSource) {
+            super(dataSource);
+        }
+        
+        @Override
+        public Connection getConnection() throws SQLException {
+            final Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                if (method.getName().equals("setCatalog")) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("SET SCHEMA " + args[0]);
+                    }
+                    return null;
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (final InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+        
+    }
+    
+    @State(Scope.Benchmark)
+    public static class Tenants {
+        
+        @Param({ "false", "true" })
+        private boolean catalogAffinity;
+        
+        @Param({ "8" })
+        private int tenants;
+        
+        private MultiTenancy multiTenancy;
+        private H2MultiTenantDataSource dataSource;
+        
+        @Setup
+        public void setup() throws SQLException, InterruptedException {
+            final JdbcDataSource h2DataSource = new JdbcDataSource();
+            h2DataSource.setURL(URL);
+            try (Connection connection = h2DataSource.getConnection(); Statement statement = connection.createStatement()) {
+                for (int i = 0; i < tenants; i++) {
+                    statement.execute("CREATE SCHEMA IF NOT EXISTS bench_" + UNIT + "_" + tenantId(i));
+                }
+            }
+            
+            multiTenancy = new MultiTenancy();
+            multiTenancy.start();
+            dataSource = new H2MultiTenantDataSource(catalogAffinity);
+            multiTenancy.registerTenantLifecycleParticipant(dataSource);
+            for (int i = 0; i < tenants; i++) {
+                CompletionStageUtil.block(multiTenancy.addTenant(tenantId(i)));
+            }
+        }
+        
+        @TearDown
+        public void tearDown() {
+            multiTenancy.stop();
+        }
+        
+        private static String tenantId(final int i) {
+            return "t" + i;
+        }
+        
+    }
+    
+    @Benchmark
+    public int query(final Tenants tenants) throws SQLException {
+        final String tenantId = Tenants.tenantId(ThreadLocalRandom.current().nextInt(tenants.tenants));
+        return DATA_UNIT.exec(UNIT, () -> TENANT.exec(tenantId, () -> {
+            try (Connection connection = tenants.dataSource.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }));
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(CatalogAffinityBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+    
+}
@@ -0,0 +1,380 @@
+package com.ixaris.commons.iso8583.lib;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.ixaris.commons.iso8583.lib.ISOMsg.ISOField;
+import com.ixaris.commons.iso8583.lib.ISOPackager.MtiType;
+
+/**
+ * Packs messages directly into a {@link ByteBuffer}, and unpacks messages lazily from a {@link ByteBuffer} into an
+ * {@link ISOMsgView}, which only indexes the bitmaps and the offsets of the fields, and decodes fields when accessed.
+ * Unlike {@link ISOPackager#pack(ISOMsg, java.io.OutputStream)} and
+ * {@link ISOPackager#unpack(ISOMsg, java.io.InputStream)}, no arrays are allocated for field lengths or values. The
+ * header length, fixed length and coding of every field are resolved once per packager.
+ *
+ * <p>To pack into a Netty ByteBuf, pack into byteBuf.nioBuffer(byteBuf.writerIndex(), byteBuf.writableBytes()) and
+ * advance the writer index by the packed length. To unpack, unpack from byteBuf.nioBuffer().
+ *
+ * <p>Obtained from {@link ISOPackager#getCodec()}. Thread safe.
+ */
+public final class ISOCodec {
+    
+    private static final int UNUSED = -1;
+    private static final int VARIABLE = -1;
+    private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+    
+    private final int mtiLength;
+    private final boolean binLength;
+    private final Charset charset;
+    private final int fieldCount;
+    private final int[] headerLengths;
+    private final int[] fixedLengths;
+    private final int[] maxLengths;
+    private final FieldContentCoding[] codings;
+    
+    ISOCodec(final MtiType mtiType, final boolean binLength, final Charset charset, final ISOFieldSpec[] fieldSpecs) {
+        switch (mtiType) {
+            case BIN:
+                mtiLength = 2;
+                break;
+            case ASCII:
+                mtiLength = 4;
+                break;
+            default:
+                mtiLength = 0;
+        }
+        this.binLength = binLength;
+        this.charset = charset;
+        
+        fieldCount = fieldSpecs.length;
+        headerLengths = new int[fieldCount];
+        fixedLengths = new int[fieldCount];
+        maxLengths = new int[fieldCount];
+        codings = new FieldContentCoding[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            final ISOFieldSpec fieldSpec = fieldSpecs[i];
+            headerLengths[i] = resolveHeaderLength(fieldSpec.getFormat(), binLength);
+            fixedLengths[i] = fieldSpec.getFormat() == FieldFormat.FIXED ? fieldSpec.getMaxLength() : VARIABLE;
+            maxLengths[i] = fieldSpec.getMaxLength();
+            codings[i] = fieldSpec.getCoding();
+        }
+    }
+    
+    private static int resolveHeaderLength(final FieldFormat format, final boolean binLength) {
+        switch (format) {
+            case UNUSED:
+                return UNUSED;
+            case FIXED:
+                return 0;
+            case HLVAR:
+                return 1;
+            case HLLVAR:
+                return binLength ? 1 : 2;
+            case HLLLVAR:
+                return binLength ? 2 : 3;
+            case HLLLLVAR:
+                return binLength ? 2 : 4;
+            case HLLLLLVAR:
+                return binLength ? 3 : 5;
+            case HLLLLLLVAR:
+                return binLength ? 3 : 6;
+            default:
+                throw new UnsupportedOperationException("Unsupported format [" + format + "]");
+        }
+    }
+    
+    /**
+     * Packs the message into the buffer, starting at the buffer's position, and advances the position past the message.
+     *
+     * @return the packed length
+     * @throws BufferOverflowException if the message does not fit in the buffer, in which case the position of the
+     *     buffer is not changed
+     */
+    public int pack(final ISOMsg m, final ByteBuffer buffer) {
+        final int start = buffer.position();
+        try {
+            final byte[] mti = m.getMTI();
+            if (mti != null) {
+                buffer.put(mti);
+            }
+            
+            for (final Map.Entry<Integer, ISOField> field : m.fieldMap().entrySet()) {
+                final ISOField value = field.getValue();
+                packLength(buffer, field.getKey(), value.length);
+                buffer.put(value.rawData);
+            }
+        } catch (final BufferOverflowException e) {
+            buffer.position(start);
+            throw e;
+        }
+        return buffer.position() - start;
+    }
+    
+    private void packLength(final ByteBuffer buffer, final int index, final int length) {
+        final int headerLength = headerLength(index);
+        if (headerLength == 0) {
+            return;
+        }
+        if (buffer.remaining() < headerLength) {
+            throw new BufferOverflowException();
+        }
+        
+        final int position = buffer.position();
+        int remaining = length;
+        if (binLength) {
+            // binary coded decimal, 2 digits per byte
+            for (int i = headerLength - 1; i >= 0; i--) {
+                final int digits = remaining % 100;
+                buffer.put(position + i, (byte) (((digits / 10) << 4) | (digits % 10)));
+                remaining /= 100;
+            }
+        } else {
+            for (int i = headerLength - 1; i >= 0; i--) {
+                buffer.put(position + i, (byte) ('0' + (remaining % 10)));
+                remaining /= 10;
+            }
+        }
+        if (remaining != 0) {
+            throw new IllegalStateException("Length [" + length + "] of field [" + index + "] does not fit in header");
+        }
+        buffer.position(position + headerLength);
+    }
+    
+    /**
+     * @return a view to unpack messages into, which may be reused for subsequent messages
+     */
+    public ISOMsgView newView() {
+        return new ISOMsgView(this, fieldCount);
+    }
+    
+    /**
+     * Unpacks a message into a new view. Prefer {@link #unpack(ByteBuffer, ISOMsgView)} with a reused view.
+     */
+    public ISOMsgView unpack(final ByteBuffer buffer) {
+        return unpack(buffer, newView());
+    }
+    
+    /**
+     * Indexes the message starting at the buffer's position, and advances the position past the message. Only the
+     * bitmaps and the offsets and lengths of the fields are read, fields are decoded when accessed through the view.
+     * The buffer should not be modified while the view is in use.
+     *
+     * @param view the view to unpack into, replacing any previously unpacked message
+     * @return the view
+     * @throws BufferUnderflowException if the buffer does not contain the whole message, in which case the position of
+     *     the buffer is not changed
+     */
+    public ISOMsgView unpack(final ByteBuffer buffer, final ISOMsgView view) {
+        if (view.codec != this) {
+            throw new IllegalArgumentException("view created by a different codec");
+        }
+        
+        final int start = buffer.position();
+        view.reset(buffer, start);
+        
+        int position = ensureAvailable(buffer, start + mtiLength);
+        
+        final long primaryBitMap = readBitMap(buffer, position, ISOMsg.PRIMARY_BIT_MAP_INDEX);
+        position = view.index(ISOMsg.PRIMARY_BIT_MAP_INDEX, position, bitMapLength(ISOMsg.PRIMARY_BIT_MAP_INDEX));
+        
+        final long secondaryBitMap;
+        if (isBitMapFieldSet(primaryBitMap, 1)) {
+            secondaryBitMap = readBitMap(buffer, position, ISOMsg.SECONDARY_BIT_MAP_INDEX);
+            position = view.index(ISOMsg.SECONDARY_BIT_MAP_INDEX, position, bitMapLength(ISOMsg.SECONDARY_BIT_MAP_INDEX));
+        } else {
+            secondaryBitMap = 0L;
+        }
+        
+        for (int i = 2; i <= 64; i++) {
+            if (isBitMapFieldSet(primaryBitMap, i)) {
+                position = indexField(buffer, view, i, position);
+            }
+        }
+        
+        if (secondaryBitMap != 0L) {
+            final long tertiaryBitMap;
+            if (isBitMapFieldSet(secondaryBitMap, 1)) {
+                checkIndex(ISOMsg.TERTIARY_BIT_MAP_INDEX);
+                tertiaryBitMap = readBitMap(buffer, position, ISOMsg.TERTIARY_BIT_MAP_INDEX);
+                position = view.index(ISOMsg.TERTIARY_BIT_MAP_INDEX, position, bitMapLength(ISOMsg.TERTIARY_BIT_MAP_INDEX));
+            } else {
+                tertiaryBitMap = 0L;
+            }
+            
+            for (int i = 66; i <= 128; i++) {
+                if (isBitMapFieldSet(secondaryBitMap, i - 64)) {
+                    position = indexField(buffer, view, i, position);
+                }
+            }
+            
+            if (tertiaryBitMap != 0L) {
+                for (int i = 129; i <= ISOMsg.FIELD_MAX_INDEX; i++) {
+                    if (isBitMapFieldSet(tertiaryBitMap, i - 128)) {
+                        position = indexField(buffer, view, i, position);
+                    }
+                }
+            }
+        }
+        
+        view.end = position;
+        buffer.position(position);
+        return view;
+    }
+    
+    private int indexField(final ByteBuffer buffer, final ISOMsgView view, final int index, final int position) {
+        final int headerLength = headerLength(index);
+        final int dataPosition = ensureAvailable(buffer, position + headerLength);
+        
+        final int length;
+        if (fixedLengths[index] != VARIABLE) {
+            length = fixedLengths[index];
+        } else {
+            length = unpackLength(buffer, position, headerLength);
+            if (length > maxLengths[index]) {
+                throw new IllegalStateException("Length [" + length + "] of field [" + index + "] exceeds maximum [" + maxLengths[index] + "]");
+            }
+        }
+        
+        ensureAvailable(buffer, dataPosition + lengthInBytes(index, length));
+        return view.index(index, dataPosition, length);
+    }
+    
+    private int unpackLength(final ByteBuffer buffer, final int position, final int headerLength) {
+        int length = 0;
+        if (binLength) {
+            for (int i = 0; i < headerLength; i++) {
+                final int b = buffer.get(position + i) & 0xFF;
+                length = (length * 100) + ((b >>> 4) * 10) + (b & 0xF);
+            }
+        } else {
+            for (int i = 0; i < headerLength; i++) {
+                final int digit = buffer.get(position + i) - '0';
+                if ((digit < 0) || (digit > 9)) {
+                    throw new IllegalStateException("Invalid length digit at [" + (position + i) + "]");
+                }
+                length = (length * 10) + digit;
+            }
+        }
+        return length;
+    }
+    
+    private long readBitMap(final ByteBuffer buffer, final int position, final int index) {
+        ensureAvailable(buffer, position + bitMapLength(index));
+        long bitMap = 0L;
+        if (codings[index] == FieldContentCoding.BIN) {
+            for (int i = 0; i < 8; i++) {
+                bitMap = (bitMap << 8) | (buffer.get(position + i) & 0xFF);
+            }
+        } else {
+            for (int i = 0; i < 16; i++) {
+                final int digit = Character.digit(buffer.get(position + i), 16);
+                if (digit < 0) {
+                    throw new IllegalStateException("Invalid bitmap hex digit at [" + (position + i) + "]");
+                }
+                bitMap = (bitMap << 4) | digit;
+            }
+        }
+        return bitMap;
+    }
+    
+    private int bitMapLength(final int index) {
+        switch (codings[index]) {
+            case BIN:
+                return 8;
+            case ASCII:
+                return 16;
+            default:
+                throw new UnsupportedOperationException("Unsupported encoding [" + codings[index] + "] for bitmap field");
+        }
+    }
+    
+    private static boolean isBitMapFieldSet(final long bitMap, final int index) {
+        return (bitMap & (1L << (64 - index))) != 0L;
+    }
+    
+    private static int ensureAvailable(final ByteBuffer buffer, final int end) {
+        if (end > buffer.limit()) {
+            throw new BufferUnderflowException();
+        }
+        return end;
+    }
+    
+    private void checkIndex(final int index) {
+        if (index >= fieldCount) {
+            throw new IllegalStateException("Field [" + index + "] not defined");
+        }
+    }
+    
+    private int headerLength(final int index) {
+        checkIndex(index);
+        final int headerLength = headerLengths[index];
+        if (headerLength == UNUSED) {
+            throw new IllegalStateException("Field [" + index + "] is not used");
+        }
+        return headerLength;
+    }
+    
+    private int lengthInBytes(final int index, final int length) {
+        switch (codings[index]) {
+            case ASCII:
+            case BIN:
+                return length;
+            default:
+                throw new UnsupportedOperationException("Unsupported coding [" + codings[index] + "]");
+        }
+    }
+    
+    int getMtiLength() {
+        return mtiLength;
+    }
+    
+    /**
+     * Decodes a field the same way as {@link ISOPackager#decodeField(ISOField, int)}
+     */
+    String decode(final ByteBuffer buffer, final int index, final int position, final int length) {
+        switch (codings[index]) {
+            case ASCII:
+                if (buffer.hasArray()) {
+                    final int offset = buffer.arrayOffset() + position;
+                    return charset != null
+                        ? new String(buffer.array(), offset, length, charset) : new String(buffer.array(), offset, length);
+                }
+                final byte[] bytes = copy(buffer, position, length);
+                return charset != null ? new String(bytes, charset) : new String(bytes);
+            case BIN:
+                return toHex(buffer, position, length);
+            default:
+                throw new UnsupportedOperationException("Coding [" + codings[index] + "] not found");
+        }
+    }
+    
+    static byte[] copy(final ByteBuffer buffer, final int position, final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        return bytes;
+    }
+    
+    /**
+     * Same as {@link ISOPackager#toHex(int, byte[])}, i.e. the last byte of an odd length is not zero padded
+     */
+    private static String toHex(final ByteBuffer buffer, final int position, final int length) {
+        final byte[] hex = new byte[length * 2];
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            final int b = buffer.get(position + i) & 0xFF;
+            if ((b >= 0x10) || ISOPackager.isEven(length) || (i < length - 1)) {
+                hex[h++] = HEX_DIGITS[b >>> 4];
+            }
+            hex[h++] = HEX_DIGITS[b & 0xF];
+        }
+        return new String(hex, 0, h, StandardCharsets.US_ASCII);
+    }
+    
+}
@@ -222,6 +222,13 @@ public abstract class ISOMsg {
         return Collections.unmodifiableSortedMap(fields);
     }
     
+    /**
+     * @return the fields, without the unmodifiable wrapper, which wraps every entry when iterating
+     */
+    final SortedMap<Integer, ISOField> fieldMap() {
+        return fields;
+    }
+    
     public static final class ISOField {
         
         public final int length;
@@ -0,0 +1,190 @@
+package com.ixaris.commons.iso8583.lib;
+
+import java.nio.ByteBuffer;
+
+import com.ixaris.commons.iso8583.lib.ISOMsg.ISOField;
+
+/**
+ * A message unpacked lazily by {@link ISOCodec#unpack(ByteBuffer, ISOMsgView)}, indexing the offsets and lengths of the
+ * fields in the buffer it was unpacked from. Fields are only decoded when accessed, and string values are decoded once.
+ * The buffer should not be modified while the view is in use.
+ *
+ * <p>A view may be reused to unpack subsequent messages, so as not to allocate the index for every message. Not thread
+ * safe.
+ */
+public final class ISOMsgView {
+    
+    private static final int ABSENT = -1;
+    
+    final ISOCodec codec;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final String[] values;
+    private final int[] present;
+    private int presentCount = 0;
+    private ByteBuffer buffer;
+    private int start;
+    int end;
+    
+    ISOMsgView(final ISOCodec codec, final int fieldCount) {
+        this.codec = codec;
+        offsets = new int[fieldCount];
+        lengths = new int[fieldCount];
+        values = new String[fieldCount];
+        present = new int[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            lengths[i] = ABSENT;
+        }
+    }
+    
+    void reset(final ByteBuffer buffer, final int start) {
+        for (int i = 0; i < presentCount; i++) {
+            final int index = present[i];
+            lengths[index] = ABSENT;
+            values[index] = null;
+        }
+        presentCount = 0;
+        this.buffer = buffer;
+        this.start = start;
+        end = start;
+    }
+    
+    /**
+     * @return the position following the field
+     */
+    int index(final int index, final int offset, final int length) {
+        offsets[index] = offset;
+        lengths[index] = length;
+        present[presentCount++] = index;
+        return offset + length;
+    }
+    
+    /**
+     * @return the MTI as a number, e.g. 100 for 0100, or -1 if the packager has no MTI
+     */
+    public int getMTI() {
+        final int mtiLength = codec.getMtiLength();
+        if (mtiLength == 0) {
+            return -1;
+        }
+        
+        int mti = 0;
+        if (mtiLength == 2) {
+            // binary coded decimal
+            for (int i = 0; i < mtiLength; i++) {
+                final int b = buffer.get(start + i) & 0xFF;
+                mti = (mti * 100) + ((b >>> 4) * 10) + (b & 0xF);
+            }
+        } else {
+            for (int i = 0; i < mtiLength; i++) {
+                mti = (mti * 10) + (buffer.get(start + i) - '0');
+            }
+        }
+        return mti;
+    }
+    
+    /**
+     * @return the packed length of the message
+     */
+    public int getLength() {
+        return end - start;
+    }
+    
+    public boolean hasField(final int index) {
+        return (index >= 0) && (index < lengths.length) && (lengths[index] != ABSENT);
+    }
+    
+    /**
+     * @return the length of the field, as in the length header, or -1 if not present
+     */
+    public int getFieldLength(final int index) {
+        return hasField(index) ? lengths[index] : ABSENT;
+    }
+    
+    /**
+     * @return the value decoded as by {@link ISOMsg#getStringValue(int)}, or null if not present
+     */
+    public String getStringValue(final int index) {
+        if (!hasField(index)) {
+            return null;
+        }
+        
+        String value = values[index];
+        if (value == null) {
+            value = codec.decode(buffer, index, offsets[index], lengths[index]);
+            values[index] = value;
+        }
+        return value;
+    }
+    
+    /**
+     * Parses the decimal digits of an ASCII field without decoding a string, e.g. for amounts and trace numbers
+     *
+     * @throws IllegalStateException if not present
+     * @throws NumberFormatException if the value is not a non-negative number that fits in a long
+     */
+    public long getLongValue(final int index) {
+        if (!hasField(index)) {
+            throw new IllegalStateException("Field [" + index + "] not present");
+        }
+        
+        final int offset = offsets[index];
+        final int length = lengths[index];
+        if ((length == 0) || (length > 18)) {
+            throw new NumberFormatException("Field [" + index + "] of length [" + length + "] is not a long");
+        }
+        
+        long value = 0L;
+        for (int i = 0; i < length; i++) {
+            final int digit = buffer.get(offset + i) - '0';
+            if ((digit < 0) || (digit > 9)) {
+                throw new NumberFormatException("Field [" + index + "] is not a long");
+            }
+            value = (value * 10L) + digit;
+        }
+        return value;
+    }
+    
+    /**
+     * @return a read only buffer over the bytes of the field, sharing the content of the unpacked buffer, or null if not
+     *     present
+     */
+    public ByteBuffer getFieldBuffer(final int index) {
+        if (!hasField(index)) {
+            return null;
+        }
+        
+        final ByteBuffer field = buffer.asReadOnlyBuffer();
+        field.limit(offsets[index] + lengths[index]).position(offsets[index]);
+        return field.slice();
+    }
+    
+    /**
+     * @return a copy of the bytes of the field, or null if not present
+     */
+    public UnmodifiableByteArray getByteValue(final int index) {
+        return hasField(index) ? new UnmodifiableByteArray(ISOCodec.copy(buffer, offsets[index], lengths[index])) : null;
+    }
+    
+    /**
+     * Copies the MTI and fields to the given message, which is then the same as a message unpacked using
+     * {@link ISOPackager#unpack(ISOMsg, java.io.InputStream)}. The bitmaps of the message are generated from the fields.
+     *
+     * @return the given message
+     */
+    public <T extends ISOMsg> T copyTo(final T m) {
+        final int mtiLength = codec.getMtiLength();
+        if (mtiLength > 0) {
+            m.setMTI(ISOCodec.copy(buffer, start, mtiLength));
+        }
+        
+        for (int i = 0; i < presentCount; i++) {
+            final int index = present[i];
+            if ((index != ISOMsg.PRIMARY_BIT_MAP_INDEX) && (index != ISOMsg.SECONDARY_BIT_MAP_INDEX) && (index != ISOMsg.TERTIARY_BIT_MAP_INDEX)) {
+                m.set(index, new ISOField(lengths[index], ISOCodec.copy(buffer, offsets[index], lengths[index])));
+            }
+        }
+        return m;
+    }
+    
+}
@@ -316,6 +316,7 @@ public abstract class ISOPackager {
     private final boolean binLength;
     private final Charset charset;
     private final ISOFieldSpec[] fieldSpecs;
+    private final ISOCodec codec;
     
     public ISOPackager(final MtiType mtiType,
                        final VarFieldLengthType varFieldLengthType,
@@ -331,6 +332,15 @@ public abstract class ISOPackager {
         if ((fieldSpecs.length != 65) && (fieldSpecs.length != 129) && (fieldSpecs.length != 193)) {
             throw new IllegalArgumentException("Should have PRIMARY BITMAP + 64 / 128 / 192 fields specified");
         }
+        
+        codec = new ISOCodec(mtiType, binLength, charset, fieldSpecs);
+    }
+    
+    /**
+     * @return the codec packing into and unpacking from byte buffers, using the field specs of this packager
+     */
+    public final ISOCodec getCodec() {
+        return codec;
     }
     
     public final void unpack(final ISOMsg m, final InputStream is) throws IOException {
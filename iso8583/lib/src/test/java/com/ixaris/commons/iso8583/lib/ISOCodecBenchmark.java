@@ -0,0 +1,132 @@
+package com.ixaris.commons.iso8583.lib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ixaris.commons.iso8583.lib.InterswitchMsg.Field;
+
+/**
+ * Compares packing and unpacking typical 0100 authorisation requests and 0110 responses using the stream based
+ * {@link ISOPackager} with the {@link ISOCodec} packing into a reused buffer and unpacking into a reused
+ * {@link ISOMsgView}. The unpack benchmarks read the fields typically used to route and match messages, i.e. MTI, STAN,
+ * amount and response code, since the view only decodes fields when accessed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ISOCodecBenchmark {
+    
+    @State(Scope.Thread)
+    public static class Data {
+        
+        private InterswitchMsg request;
+        private InterswitchMsg response;
+        private byte[] packedRequest;
+        private byte[] packedResponse;
+        private ByteBuffer buffer;
+        private ByteBuffer requestBuffer;
+        private ByteBuffer responseBuffer;
+        private ISOMsgView view;
+        
+        @Setup
+        public void setup() throws IOException {
+            request = InterswitchUtils.authorisationRequest("000001");
+            response = InterswitchUtils.authorisationResponse(request, "123456");
+            
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            InterswitchPackager.getInstance().assemble(request, os);
+            packedRequest = os.toByteArray();
+            os.reset();
+            InterswitchPackager.getInstance().assemble(response, os);
+            packedResponse = os.toByteArray();
+            
+            buffer = ByteBuffer.allocateDirect(1024);
+            requestBuffer = ByteBuffer.wrap(packedRequest);
+            responseBuffer = ByteBuffer.wrap(packedResponse);
+            view = InterswitchPackager.getInstance().getCodec().newView();
+        }
+        
+    }
+    
+    @Benchmark
+    public byte[] packRequestStream(final Data data) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream(data.request.getLength());
+        InterswitchPackager.getInstance().assemble(data.request, os);
+        return os.toByteArray();
+    }
+    
+    @Benchmark
+    public int packRequestBuffer(final Data data) {
+        data.buffer.clear();
+        return InterswitchPackager.getInstance().getCodec().pack(data.request, data.buffer);
+    }
+    
+    @Benchmark
+    public byte[] packResponseStream(final Data data) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream(data.response.getLength());
+        InterswitchPackager.getInstance().assemble(data.response, os);
+        return os.toByteArray();
+    }
+    
+    @Benchmark
+    public int packResponseBuffer(final Data data) {
+        data.buffer.clear();
+        return InterswitchPackager.getInstance().getCodec().pack(data.response, data.buffer);
+    }
+    
+    @Benchmark
+    public long unpackRequestStream(final Data data) throws IOException {
+        final InterswitchMsg m = InterswitchPackager.getInstance().disassemble(new ByteArrayInputStream(data.packedRequest));
+        return m.getMTI().length + Long.parseLong(m.getValue(Field.SYSTEM_TRACE_AUDIT_NUMBER)) + Long.parseLong(m.getValue(Field.TRANSACTION_AMOUNT));
+    }
+    
+    @Benchmark
+    public long unpackRequestView(final Data data) {
+        data.requestBuffer.clear();
+        final ISOMsgView view = InterswitchPackager.getInstance().getCodec().unpack(data.requestBuffer, data.view);
+        return view.getMTI() + view.getLongValue(Field.SYSTEM_TRACE_AUDIT_NUMBER.index()) + view.getLongValue(Field.TRANSACTION_AMOUNT.index());
+    }
+    
+    @Benchmark
+    public String unpackResponseStream(final Data data) throws IOException {
+        final InterswitchMsg m = InterswitchPackager.getInstance().disassemble(new ByteArrayInputStream(data.packedResponse));
+        return new String(m.getMTI()) + m.getValue(Field.SYSTEM_TRACE_AUDIT_NUMBER) + m.getValue(Field.AUTH_RESPONSE_CODE);
+    }
+    
+    @Benchmark
+    public String unpackResponseView(final Data data) {
+        data.responseBuffer.clear();
+        final ISOMsgView view = InterswitchPackager.getInstance().getCodec().unpack(data.responseBuffer, data.view);
+        return view.getMTI() + view.getStringValue(Field.SYSTEM_TRACE_AUDIT_NUMBER.index()) + view.getStringValue(Field.AUTH_RESPONSE_CODE.index());
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+            .include(ISOCodecBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+    
+}
@@ -0,0 +1,128 @@
+package com.ixaris.commons.iso8583.lib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ixaris.commons.iso8583.lib.InterswitchMsg.Field;
+
+public class ISOCodecTest {
+    
+    private static final byte[] NOTIFICATION = ISOPackager
+        .fromHex(
+            "39323230f23e46952fe0852000000002040000223136353339393833303133303633303638323031313030303030303030303230303030303038323832323135333930303630353732333135333930383238313830323038323830303030393031303030303043303030303030303043303030303030303030363530363134333234353339393833303133303633303638323d31383032323231303030323635393233313430313037313833303032323131414d4230393031414d42303930313030303030303031415348414b4520484f55534520414745474520202020204c41474f5320202020202020204c474e47353636303230313035333536364430303030303032303030303030303431353130303130303036363638313537353030303030303230303030303030303030303030303030304330303030303030304330303030303030303138323438303239373034393031303035393030303135353131323031323133333434303032303030343238641c1420000000003130303036363638313537354f4c444d4642737263202020414343494f4e535754736e6b3030363035372020202020204754424d434465626974202031313132414343494f4e4d4642736e6b3031323334303030303030202020353636414343494f4e2020323031353038333130303330353231324d6564696142617463684e7231363333373537343231314d65646961546f74616c73333132313c4d65646961546f74616c733e3c546f74616c3e3c416d6f756e743e3232333030303030303c2f416d6f756e743e3c43757272656e63793e3536363c2f43757272656e63793e3c4d65646961436c6173733e436173683c2f4d65646961436c6173733e3c2f546f74616c3e3c2f4d65646961546f74616c733e3231344164646974696f6e616c496e666f333132323c4164646974696f6e616c496e666f3e3c446f776e6c6f61643e3c41544d436f6e66696749443e353030363c2f41544d436f6e66696749443e3c41746d417070436f6e66696749443e353030363c2f41746d417070436f6e66696749443e3c2f446f776e6c6f61643e3c2f4164646974696f6e616c496e666f3e58");
+    
+    @Test
+    public void pack_sameAsStreamPack() throws IOException {
+        final InterswitchMsg request = InterswitchUtils.authorisationRequest("000001");
+        
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        InterswitchPackager.getInstance().assemble(request, os);
+        
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.position(10);
+        final int length = InterswitchPackager.getInstance().getCodec().pack(request, buffer);
+        
+        Assert.assertEquals(request.getLength(), length);
+        Assert.assertEquals(10 + length, buffer.position());
+        Assert.assertArrayEquals(os.toByteArray(), Arrays.copyOfRange(buffer.array(), 10, 10 + length));
+    }
+    
+    @Test
+    public void pack_directBuffer() throws IOException {
+        final InterswitchMsg m = InterswitchPackager.getInstance().disassemble(new ByteArrayInputStream(NOTIFICATION));
+        
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(NOTIFICATION.length);
+        InterswitchPackager.getInstance().getCodec().pack(m, buffer);
+        
+        final byte[] data = new byte[NOTIFICATION.length];
+        buffer.flip();
+        buffer.get(data);
+        Assert.assertArrayEquals(NOTIFICATION, data);
+    }
+    
+    @Test
+    public void pack_overflow_positionUnchanged() {
+        final InterswitchMsg request = InterswitchUtils.authorisationRequest("000001");
+        final ByteBuffer buffer = ByteBuffer.allocate(request.getLength() - 1);
+        buffer.put((byte) 1);
+        
+        try {
+            InterswitchPackager.getInstance().getCodec().pack(request, buffer);
+            Assert.fail("expected overflow");
+        } catch (final BufferOverflowException expected) {
+            Assert.assertEquals(1, buffer.position());
+        }
+    }
+    
+    @Test
+    public void unpack_sameAsStreamUnpack() throws IOException {
+        final InterswitchMsg m = InterswitchPackager.getInstance().disassemble(new ByteArrayInputStream(NOTIFICATION));
+        
+        final ByteBuffer buffer = ByteBuffer.wrap(NOTIFICATION);
+        final ISOMsgView view = InterswitchPackager.getInstance().getCodec().unpack(buffer);
+        
+        Assert.assertEquals(NOTIFICATION.length, buffer.position());
+        Assert.assertEquals(NOTIFICATION.length, view.getLength());
+        Assert.assertEquals(9220, view.getMTI());
+        for (int i = 2; i <= 128; i++) {
+            if (i != ISOMsg.TERTIARY_BIT_MAP_INDEX) {
+                Assert.assertEquals("field " + i, m.getStringValue(i), view.getStringValue(i));
+            }
+        }
+        Assert.assertEquals(m.getByteValue(127), view.getByteValue(127));
+        Assert.assertEquals(Long.parseLong(m.getValue(Field.TRANSACTION_AMOUNT)), view.getLongValue(Field.TRANSACTION_AMOUNT.index()));
+        
+        final InterswitchMsg copy = view.copyTo(new InterswitchMsg());
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        InterswitchPackager.getInstance().assemble(copy, os);
+        Assert.assertArrayEquals(NOTIFICATION, os.toByteArray());
+    }
+    
+    @Test
+    public void unpack_reusedView() {
+        final ISOCodec codec = InterswitchPackager.getInstance().getCodec();
+        final InterswitchMsg request = InterswitchUtils.authorisationRequest("000001");
+        final InterswitchMsg response = InterswitchUtils.authorisationResponse(request, "123456");
+        
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        codec.pack(request, buffer);
+        codec.pack(response, buffer);
+        buffer.flip();
+        
+        final ISOMsgView view = codec.newView();
+        codec.unpack(buffer, view);
+        Assert.assertEquals(100, view.getMTI());
+        Assert.assertEquals("ASHAKE HOUSE AGEGE     LAGOS        LGNG", view.getStringValue(Field.CARD_ACCEPTOR_NAME_LOCATION.index()));
+        Assert.assertFalse(view.hasField(Field.AUTH_RESPONSE_CODE.index()));
+        
+        codec.unpack(buffer, view);
+        Assert.assertEquals(110, view.getMTI());
+        Assert.assertEquals("00", view.getStringValue(Field.AUTH_RESPONSE_CODE.index()));
+        Assert.assertEquals(1L, view.getLongValue(Field.SYSTEM_TRACE_AUDIT_NUMBER.index()));
+        Assert.assertFalse(view.hasField(Field.CARD_ACCEPTOR_NAME_LOCATION.index()));
+        Assert.assertNull(view.getStringValue(Field.CARD_ACCEPTOR_NAME_LOCATION.index()));
+        Assert.assertEquals(-1, view.getFieldLength(Field.CARD_ACCEPTOR_NAME_LOCATION.index()));
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+    
+    @Test
+    public void unpack_underflow_positionUnchanged() {
+        final ByteBuffer buffer = ByteBuffer.wrap(NOTIFICATION, 0, NOTIFICATION.length - 1);
+        
+        try {
+            InterswitchPackager.getInstance().getCodec().unpack(buffer);
+            Assert.fail("expected underflow");
+        } catch (final BufferUnderflowException expected) {
+            Assert.assertEquals(0, buffer.position());
+        }
+    }
+    
+}
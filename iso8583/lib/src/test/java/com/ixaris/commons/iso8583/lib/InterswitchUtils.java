@@ -0,0 +1,62 @@
+package com.ixaris.commons.iso8583.lib;
+
+import com.ixaris.commons.iso8583.lib.InterswitchMsg.Field;
+
+/**
+ * Typical Interswitch authorisation messages, used by tests and benchmarks
+ */
+public final class InterswitchUtils {
+    
+    /**
+     * @return a 0100 authorisation request
+     */
+    public static InterswitchMsg authorisationRequest(final String stan) {
+        final InterswitchMsg m = new InterswitchMsg("0100");
+        m.set(Field.PRIMARY_ACCOUNT_NUMBER, "5399830130630682");
+        m.set(Field.PROCESSING_CODE, "000000");
+        m.set(Field.TRANSACTION_AMOUNT, "000000002000");
+        m.set(Field.TRANSMISSION_DATE_TIME, "0828221539");
+        m.set(Field.SYSTEM_TRACE_AUDIT_NUMBER, stan);
+        m.set(Field.LOCAL_TRANSACTION_TIME, "221539");
+        m.set(Field.LOCAL_TRANSACTION_DATE, "0828");
+        m.set(Field.EXPIRATION_DATE, "1802");
+        m.set(Field.MERCHANT_TYPE, "6011");
+        m.set(Field.POS_ENTRY_MODE, "051");
+        m.set(Field.POS_CONDITION_CODE, "00");
+        m.set(Field.ACQUIRING_INSTITUTION_ID_CODE, "539983");
+        m.set(Field.RETRIEVAL_REFERENCE_NUMBER, "000000" + stan);
+        m.set(Field.CARD_ACCEPTOR_TERMINAL_ID, "10433266");
+        m.set(Field.CARD_ACCEPTOR_ID_CODE, "AMB0901AMB09010");
+        m.set(Field.CARD_ACCEPTOR_NAME_LOCATION, "ASHAKE HOUSE AGEGE     LAGOS        LGNG");
+        m.set(Field.TRANSACTION_CURRENCY_CODE, "566");
+        m.set(Field.POS_DATA_CODE, "510101511344101");
+        return m;
+    }
+    
+    /**
+     * @return a 0110 authorisation response to the given request
+     */
+    public static InterswitchMsg authorisationResponse(final InterswitchMsg request, final String authorisationId) {
+        final InterswitchMsg m = new InterswitchMsg("0110");
+        for (final Field field : new Field[] {
+            Field.PRIMARY_ACCOUNT_NUMBER,
+            Field.PROCESSING_CODE,
+            Field.TRANSACTION_AMOUNT,
+            Field.TRANSMISSION_DATE_TIME,
+            Field.SYSTEM_TRACE_AUDIT_NUMBER,
+            Field.LOCAL_TRANSACTION_TIME,
+            Field.LOCAL_TRANSACTION_DATE,
+            Field.ACQUIRING_INSTITUTION_ID_CODE,
+            Field.RETRIEVAL_REFERENCE_NUMBER,
+            Field.CARD_ACCEPTOR_TERMINAL_ID,
+            Field.TRANSACTION_CURRENCY_CODE }) {
+            m.set(field, request.getValue(field));
+        }
+        m.set(Field.AUTHORIZATION_ID_RESPONSE, authorisationId);
+        m.set(Field.AUTH_RESPONSE_CODE, InterswitchMsg.ResponseCode.APPROVED_00.code());
+        return m;
+    }
+    
+    private InterswitchUtils() {}
+    
+}
@@ -13,21 +13,28 @@ import static com.ixaris.commons.misc.lib.object.Tuple.tuple;
 import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 import static org.jooq.impl.DSL.row;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
 
 import org.checkerframework.checker.units.qual.C;
+import org.jooq.Condition;
 import org.jooq.Record2;
 import org.jooq.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
 
 import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.async.lib.AsyncLocal;
+import com.ixaris.commons.clustering.lib.idempotency.AdaptiveBatchSize;
 import com.ixaris.commons.clustering.lib.idempotency.PendingMessages;
 import com.ixaris.commons.clustering.lib.idempotency.StoredPendingMessage;
 import com.ixaris.commons.clustering.lib.service.ClusterRegistry;
@@ -66,11 +73,15 @@ import com.ixaris.commons.persistence.microservices.AtLeastOnceServiceEventPubli
  */
 public final class AtLeastOncePublishEventType extends AbstractTenantAwareAtLeastOnceMessageType<LibPublishEventQueueRecord> {
     
+    private static final Logger LOG = LoggerFactory.getLogger(AtLeastOncePublishEventType.class);
+    
     public static final String KEY = "PUBLISH_EVENTS";
     
     public static final String PROP_EVENTPUBLISH_REFRESH_INTERVAL = "eventpublish.refreshinterval";
     public static final long REFRESH_INTERVAL = 10000L;
-    private static final int BATCH_SIZE = 32;
+    private static final int MIN_BATCH_SIZE = 32;
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long TARGET_DRAIN_LAG = 1000L;
     
     private static EventEnvelope toEventEnvelope(final LibPublishEventQueueRecord r) {
         try {
@@ -107,12 +118,12 @@ public final class AtLeastOncePublishEventType extends AbstractTenantAwareAtLeas
         private final ServicePathHolder path;
         private final ServiceSkeletonProxy<?> proxy;
         private final ClusterRegistry clusterRegistry;
-        private final Runnable pollNow;
+        private final IntConsumer pollNow;
         
         private AtLeastOnceEventPublisherImpl(final ServicePathHolder path,
                                               final ServiceSkeletonProxy<?> proxy,
                                               final ClusterRegistry clusterRegistry,
-                                              final Runnable pollNow) {
+                                              final IntConsumer pollNow) {
             this.path = path;
             this.proxy = proxy;
             this.clusterRegistry = clusterRegistry;
@@ -125,9 +136,10 @@ public final class AtLeastOncePublishEventType extends AbstractTenantAwareAtLeas
                 final LibPublishEventQueueRecord record = new LibPublishEventQueueRecord();
                 record.setPath(path.toString());
                 record.setEventEnvelope(buildEnvelope(path, proxy, header, event).toByteArray());
-                record.setShard(clusterRegistry.getShard(header.getPartitionId()));
+                final int shard = clusterRegistry.getShard(header.getPartitionId());
+                record.setShard(shard);
                 attachAndStore(record);
-                JOOQ_TX.get().onCommit(pollNow);
+                JOOQ_TX.get().onCommit(() -> pollNow.accept(shard));
             } catch (final ClientInvalidRequestException e) {
                 throw new IllegalArgumentException("Invalid event", e);
             }
@@ -139,6 +151,7 @@ public final class AtLeastOncePublishEventType extends AbstractTenantAwareAtLeas
     private final ClusterRegistry clusterRegistry;
     private final ServiceSupport serviceSupport;
     private final Map<PublisherKey, Tuple2<ServicePathHolder, ServiceSkeletonProxy<?>>> publishers = new HashMap<>();
+    private final Map<String, AdaptiveBatchSize> batchSizes = new ConcurrentHashMap<>();
     
     public AtLeastOncePublishEventType(final JooqAsyncPersistenceProvider db,
                                        final ClusterRegistry clusterRegistry,
@@ -165,25 +178,37 @@ public final class AtLeastOncePublishEventType extends AbstractTenantAwareAtLeas
         return KEY;
     }
     
+    @Override
+    public boolean isBatchProcessing() {
+        return true;
+    }
+    
     @Override
     public Async<PendingMessages<LibPublishEventQueueRecord>> pending(final long timestamp) {
+        final AdaptiveBatchSize batchSize = batchSizes.computeIfAbsent(TENANT.get(),
+            k -> new AdaptiveBatchSize(MIN_BATCH_SIZE, MAX_BATCH_SIZE, TARGET_DRAIN_LAG));
+        final int limit = batchSize.get();
+        final Integer[] shards = clusterRegistry.getNodeInfo().getShards().toBoxedArray();
         return db.transaction(() -> {
             final Result<Record2<Integer, String>> blockedDueToFailure = JOOQ_TX.get()
                 .select(LIB_PUBLISH_EVENT_QUEUE.SHARD, LIB_PUBLISH_EVENT_QUEUE.PATH)
                 .from(LIB_PUBLISH_EVENT_QUEUE)
                 .where(LIB_PUBLISH_EVENT_QUEUE.NEXT_RETRY_TIME.gt(timestamp))
+                .and(LIB_PUBLISH_EVENT_QUEUE.SHARD.in(shards))
                 .fetch();
             
+            final Condition localShards = LIB_PUBLISH_EVENT_QUEUE.SHARD.in(shards);
             return JOOQ_TX.get()
                 .selectFrom(LIB_PUBLISH_EVENT_QUEUE)
-                .where(row(LIB_PUBLISH_EVENT_QUEUE.SHARD, LIB_PUBLISH_EVENT_QUEUE.PATH).notIn(blockedDueToFailure))
-                .and(LIB_PUBLISH_EVENT_QUEUE.SHARD.in(clusterRegistry.getNodeInfo().getShards().toBoxedArray()))
+                .where(blockedDueToFailure.isEmpty()
+                    ? localShards
+                    : localShards.and(row(LIB_PUBLISH_EVENT_QUEUE.SHARD, LIB_PUBLISH_EVENT_QUEUE.PATH).notIn(blockedDueToFailure)))
                 .orderBy(LIB_PUBLISH_EVENT_QUEUE.SEQUENCE_NUMBER)
-                .limit(BATCH_SIZE)
+                .limit(limit)
                 .fetch()
                 .map(r -> new StoredPendingMessage<>(r.getSequenceNumber().longValue(), r.getShard(), r.getPath(), r));
         })
-            .map(l -> new PendingMessages<>(l, l.size() == BATCH_SIZE));
+            .map(l -> new PendingMessages<>(l, batchSize.update(l.size(), limit, System.currentTimeMillis())));
     }
     
     @SuppressWarnings("squid:S1166")
@@ -198,12 +223,7 @@ public final class AtLeastOncePublishEventType extends AbstractTenantAwareAtLeas
             .<Void, RuntimeException>exec(() -> {
                 try {
                     return awaitExceptions(clusterRegistry.<Void, RuntimeException>forShard(pendingMessage.getShard(), () -> {
-                        final PublisherKey key = new PublisherKey(
-                            eventEnvelope.getServiceName(), ServicePathHolder.of(eventEnvelope.getPathList()));
-                        final Tuple2<ServicePathHolder, ServiceSkeletonProxy<?>> publisher;
-                        synchronized (publishers) {
-                            publisher = publishers.get(key);
-                        }
+                        final Tuple2<ServicePathHolder, ServiceSkeletonProxy<?>> publisher = getPublisher(eventEnvelope);
                         await(publishEnvelope(publisher.get1(), publisher.get2(), eventEnvelope));
                         return db.transaction(() -> {
                             attachAndDelete(queueRecord);
@@ -225,6 +245,80 @@ public final class AtLeastOncePublishEventType extends AbstractTenantAwareAtLeas
             });
     }
     
+    /**
+     * Publishes all events of a (shard, path) group together without waiting for each acknowledgement in turn, then
+     * removes the acknowledged events using a single delete and records the failures using a single batch update
+     */
+    @SuppressWarnings("squid:S1166")
+    @Override
+    public Async<Void> processMessages(final List<StoredPendingMessage<LibPublishEventQueueRecord>> pendingMessages,
+                                       final NextRetryTimeFunction nextRetryTimeFunction) {
+        final int shard = pendingMessages.get(0).getShard();
+        try {
+            return awaitExceptions(clusterRegistry.<Void, RuntimeException>forShard(shard, () -> {
+                // the events are handed to the dispatcher together, e.g. to be sent to the broker in a single batch
+                final List<Async<EventAck>> acks = ServiceSupport.dispatchEventsTogether(() -> {
+                    final List<Async<EventAck>> eventAcks = new ArrayList<>(pendingMessages.size());
+                    for (final StoredPendingMessage<LibPublishEventQueueRecord> pendingMessage : pendingMessages) {
+                        eventAcks.add(publish(pendingMessage.getMessage()));
+                    }
+                    return eventAcks;
+                });
+                
+                final List<Long> published = new ArrayList<>(pendingMessages.size());
+                final List<LibPublishEventQueueRecord> failed = new ArrayList<>();
+                for (int i = 0; i < pendingMessages.size(); i++) {
+                    final LibPublishEventQueueRecord queueRecord = pendingMessages.get(i).getMessage();
+                    try {
+                        await(acks.get(i));
+                        published.add(queueRecord.getSequenceNumber().longValue());
+                    } catch (final RuntimeException e) {
+                        LOG.error("Error publishing event [{}] for path [{}]", queueRecord.getSequenceNumber(), queueRecord.getPath(), e);
+                        queueRecord.setFailureCount(queueRecord.getFailureCount() + 1);
+                        queueRecord.setNextRetryTime(nextRetryTimeFunction.calculate(queueRecord.getFailureCount()));
+                        failed.add(queueRecord);
+                    }
+                }
+                
+                return db.transaction(() -> {
+                    if (!published.isEmpty()) {
+                        JOOQ_TX.get()
+                            .deleteFrom(LIB_PUBLISH_EVENT_QUEUE)
+                            .where(LIB_PUBLISH_EVENT_QUEUE.SEQUENCE_NUMBER.in(published))
+                            .execute();
+                    }
+                    if (!failed.isEmpty()) {
+                        JOOQ_TX.get().batchUpdate(failed).execute();
+                    }
+                    return (Void) null;
+                });
+            }));
+        } catch (final ShardNotLocalException e) {
+            // abandon as shard no longer local
+            return result();
+        }
+    }
+    
+    private Async<EventAck> publish(final LibPublishEventQueueRecord queueRecord) {
+        return Async.from(() -> {
+            final EventEnvelope eventEnvelope = toEventEnvelope(queueRecord);
+            return AsyncLocal
+                .with(TENANT, eventEnvelope.getTenantId())
+                .with(CORRELATION, extractCorrelation(eventEnvelope))
+                .<EventAck, RuntimeException>exec(() -> {
+                    final Tuple2<ServicePathHolder, ServiceSkeletonProxy<?>> publisher = getPublisher(eventEnvelope);
+                    return publishEnvelope(publisher.get1(), publisher.get2(), eventEnvelope);
+                });
+        });
+    }
+    
+    private Tuple2<ServicePathHolder, ServiceSkeletonProxy<?>> getPublisher(final EventEnvelope eventEnvelope) {
+        final PublisherKey key = new PublisherKey(eventEnvelope.getServiceName(), ServicePathHolder.of(eventEnvelope.getPathList()));
+        synchronized (publishers) {
+            return publishers.get(key);
+        }
+    }
+    
     public <C extends MessageLite, E extends MessageLite, R> AtLeastOnceServiceEventPublisher<C, E, R> register(final ServiceEventPublisher<C, E, ?> publisher) {
         final ServiceSkeletonProxy<?> proxy = serviceSupport.getOrCreate(publisher.getSkeletonType());
         final ServicePathHolder path = publisher.getPath();
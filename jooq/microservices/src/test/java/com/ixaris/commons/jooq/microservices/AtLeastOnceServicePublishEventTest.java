@@ -4,13 +4,19 @@ import static com.ixaris.commons.async.lib.Async.result;
 import static com.ixaris.commons.async.lib.CompletionStageUtil.join;
 import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 import static com.ixaris.commons.multitenancy.lib.data.DataUnit.DATA_UNIT;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.jupiter.api.AfterEach;
@@ -66,7 +72,8 @@ public final class AtLeastOnceServicePublishEventTest {
     private JooqAsyncPersistenceProvider db;
     private ServiceSupport serviceSupport;
     private ExampleSkeletonImpl exampleSkeletonImpl;
-    private ServiceEventDispatcher dispatcher = mock(ServiceEventDispatcher.class);
+    // real default methods, so that events dispatched together are dispatched one by one through the stubbed method
+    private ServiceEventDispatcher dispatcher = mock(ServiceEventDispatcher.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
     
     @BeforeEach
     public void setup() {
@@ -135,7 +142,7 @@ public final class AtLeastOnceServicePublishEventTest {
         final AtLeastOnceServiceEventPublisher<ExampleContext, ExampleEvent, ?> publisher = publisherFactory.create(
             publisherMock);
         
-        when(dispatcher.dispatch(any())).thenAnswer(i -> {
+        when(dispatcher.dispatch(any(EventEnvelope.class))).thenAnswer(i -> {
             final EventEnvelope eventEnvelope = i.getArgument(0);
             return result(
                 EventAckEnvelope.newBuilder()
@@ -153,7 +160,7 @@ public final class AtLeastOnceServicePublishEventTest {
                 return null;
             })));
         
-        Mockito.verify(dispatcher, timeout(1000L).times(1)).dispatch(any());
+        Mockito.verify(dispatcher, timeout(1000L).times(1)).dispatch(any(EventEnvelope.class));
     }
     
     @Test
@@ -164,7 +171,7 @@ public final class AtLeastOnceServicePublishEventTest {
             publisherMock);
         
         final AtomicBoolean failed = new AtomicBoolean();
-        when(dispatcher.dispatch(any())).thenAnswer(i -> {
+        when(dispatcher.dispatch(any(EventEnvelope.class))).thenAnswer(i -> {
             final EventEnvelope eventEnvelope = i.getArgument(0);
             return result(
                 EventAckEnvelope.newBuilder()
@@ -183,7 +190,71 @@ public final class AtLeastOnceServicePublishEventTest {
                 return null;
             })));
         
-        Mockito.verify(dispatcher, timeout(8000L).times(2)).dispatch(any());
+        Mockito.verify(dispatcher, timeout(8000L).times(2)).dispatch(any(EventEnvelope.class));
+    }
+    
+    @Test
+    public void itShouldPublishPendingEventsInBatch() {
+        final ServiceEventPublisher<ExampleContext, ExampleEvent, ?> publisherMock = mockPublisher(PATH);
+        Mockito.doReturn(ExampleSkeleton.class).when(publisherMock).getSkeletonType();
+        final AtLeastOnceServiceEventPublisher<ExampleContext, ExampleEvent, ?> publisher = publisherFactory.create(
+            publisherMock);
+        
+        when(dispatcher.dispatch(any(EventEnvelope.class))).thenAnswer(i -> result(ack(i.getArgument(0), ResponseStatusCode.OK)));
+        
+        AsyncLocal
+            .with(TENANT, TestTenants.DEFAULT)
+            .with(DATA_UNIT, SERVICE_NAME)
+            .<Void, RuntimeException>exec(() -> join(db.transaction(() -> {
+                for (int i = 1; i <= 3; i++) {
+                    publisher.publish(header(), event(i));
+                }
+                return null;
+            })));
+        
+        // acknowledged events are removed from the queue together, so are not published again
+        Mockito.verify(dispatcher, timeout(1000L).times(3)).dispatch(any(EventEnvelope.class));
+        Mockito.verify(dispatcher, after(2000L).times(3)).dispatch(any(EventEnvelope.class));
+    }
+    
+    @Test
+    public void itShouldOnlyRedeliverFailedEventsOfBatch() {
+        final ServiceEventPublisher<ExampleContext, ExampleEvent, ?> publisherMock = mockPublisher(PATH);
+        Mockito.doReturn(ExampleSkeleton.class).when(publisherMock).getSkeletonType();
+        final AtLeastOnceServiceEventPublisher<ExampleContext, ExampleEvent, ?> publisher = publisherFactory.create(
+            publisherMock);
+        
+        final List<EventEnvelope> dispatched = new CopyOnWriteArrayList<>();
+        when(dispatcher.dispatch(any(EventEnvelope.class))).thenAnswer(i -> {
+            final EventEnvelope eventEnvelope = i.getArgument(0);
+            dispatched.add(eventEnvelope);
+            // simulate the failure of the second event of the batch
+            return result(ack(eventEnvelope, (dispatched.size() == 2) ? ResponseStatusCode.SERVER_ERROR : ResponseStatusCode.OK));
+        });
+        
+        AsyncLocal
+            .with(TENANT, TestTenants.DEFAULT)
+            .with(DATA_UNIT, SERVICE_NAME)
+            .<Void, RuntimeException>exec(() -> join(db.transaction(() -> {
+                for (int i = 1; i <= 3; i++) {
+                    publisher.publish(header(), event(i));
+                }
+                return null;
+            })));
+        
+        // the failure does not prevent the rest of the batch from being published, and only the failed event is
+        // published again once its retry time is reached
+        Mockito.verify(dispatcher, timeout(8000L).times(4)).dispatch(any(EventEnvelope.class));
+        Mockito.verify(dispatcher, after(2000L).times(4)).dispatch(any(EventEnvelope.class));
+        assertThat(dispatched.get(3).getPayload()).isEqualTo(dispatched.get(1).getPayload());
+    }
+    
+    private static EventAckEnvelope ack(final EventEnvelope eventEnvelope, final ResponseStatusCode statusCode) {
+        return EventAckEnvelope.newBuilder()
+            .setCallRef(eventEnvelope.getCallRef())
+            .setCorrelationId(eventEnvelope.getCorrelationId())
+            .setStatusCode(statusCode)
+            .build();
     }
     
     @SuppressWarnings("unchecked")
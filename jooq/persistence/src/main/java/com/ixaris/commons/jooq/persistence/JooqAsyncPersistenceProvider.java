@@ -2,6 +2,8 @@ package com.ixaris.commons.jooq.persistence;
 
 import static com.ixaris.commons.jooq.persistence.TransactionalDSLContext.JOOQ_TX;
 
+import java.util.concurrent.ExecutorService;
+
 import org.jooq.DSLContext;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
@@ -27,6 +29,15 @@ public final class JooqAsyncPersistenceProvider extends AsyncPersistenceProvider
         this.dslContext = dslContext;
     }
     
+    /**
+     * @param executor the executor on which transactions are executed, typically a
+     *     {@link com.ixaris.commons.persistence.lib.TransactionExecutor} sized to match the connection pool
+     */
+    public JooqAsyncPersistenceProvider(final DSLContext dslContext, final ExecutorService executor) {
+        super(executor);
+        this.dslContext = dslContext;
+    }
+    
     @Override
     public JooqProcessedIntents getProcessedIntents() {
         return processedIntents;
@@ -9,6 +9,9 @@ import org.jooq.impl.DefaultDSLContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.ixaris.commons.persistence.lib.TransactionExecutor;
+import com.ixaris.commons.persistence.lib.datasource.AbstractMigratableMultiTenantDataSource;
+
 /**
  * Configuration that sets up <a href="http://www.jooq.org/doc/latest/manual-single-page/">Jooq</a> for use with multi-tenant datasources. Mainly
  * required due to our connection pools being setup per data-source, rather than per tenant (thus requiring switching of schema depending on the
@@ -23,7 +26,8 @@ public class JooqMultiTenancyConfiguration {
         // DSL context takes connections from datasource, which itself provides connections with the appropriate tenant
         // We need to make sure the SQL generated is not generated with the database name, so that we can 'dynamically'
         // use the datasource connections
-        // note: JDBC connections must not have a preparedStatement cache
+        // note: a JDBC prepared statement cache must be keyed by catalog as well as SQL, since statements prepared on
+        // the server are bound to the tenant's catalog (see HikariMultiTenantDataSource)
         // We disable the fetch warnings setting so that we optimise the number of statements we send to mysql for
         // performance improvement
         final Settings settings = new Settings().withRenderSchema(false).withFetchWarnings(false);
@@ -35,9 +39,19 @@ public class JooqMultiTenancyConfiguration {
         return createDslContext(dataSource);
     }
     
+    /**
+     * @return the maximum number of concurrent transactions, matching the connection pool of the data source, since
+     *     transactions beyond the number of connections just block waiting for a connection
+     */
+    public static int getTransactionPoolSize(final DataSource dataSource) {
+        return (dataSource instanceof AbstractMigratableMultiTenantDataSource)
+            ? ((AbstractMigratableMultiTenantDataSource) dataSource).getMaximumPoolSize() : TransactionExecutor.DEFAULT_POOL_SIZE;
+    }
+    
     @Bean(destroyMethod = "shutdown")
-    public JooqAsyncPersistenceProvider jooqAsyncPersistenceProvider(final DSLContext dslContext) {
-        return new JooqAsyncPersistenceProvider(dslContext);
+    public JooqAsyncPersistenceProvider jooqAsyncPersistenceProvider(final DataSource dataSource, final DSLContext dslContext) {
+        return new JooqAsyncPersistenceProvider(dslContext,
+            new TransactionExecutor(getTransactionPoolSize(dataSource), TransactionExecutor.DEFAULT_MAX_QUEUED_PER_TENANT, false));
     }
     
 }
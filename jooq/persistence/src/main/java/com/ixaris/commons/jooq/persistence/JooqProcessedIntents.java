@@ -3,37 +3,118 @@ package com.ixaris.commons.jooq.persistence;
 import static com.ixaris.commons.jooq.persistence.TransactionalDSLContext.JOOQ_TX;
 import static com.ixaris.commons.jooq.persistence.TransactionalDSLContext.isDuplicateEntryException;
 import static com.ixaris.commons.jooq.persistence.jooq.tables.LibProcessedIntents.LIB_PROCESSED_INTENTS;
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.jooq.exception.DataAccessException;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import com.ixaris.commons.async.lib.idempotency.Intent;
 import com.ixaris.commons.jooq.persistence.jooq.tables.records.LibProcessedIntentsRecord;
+import com.ixaris.commons.misc.lib.object.EqualsUtil;
 import com.ixaris.commons.persistence.lib.exception.DuplicateIntentException;
 import com.ixaris.commons.persistence.lib.exception.EntityNotFoundException;
 import com.ixaris.commons.persistence.lib.idempotency.ProcessedIntents;
 
+/**
+ * Processed intents stored in the tenant's schema. Intents committed or found to be duplicates recently on this node
+ * are also remembered in a bounded set, so that duplicates, typically from redeliveries or retries following a timeout,
+ * are detected without a round trip to the database. The set is local to this node and entries expire, so an intent
+ * deleted on another node may still be reported as processed by this node until the entry expires.
+ */
 public class JooqProcessedIntents implements ProcessedIntents {
     
+    public static final int DEFAULT_RECENT_SIZE = 10000;
+    public static final long DEFAULT_RECENT_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(5L);
+    
+    // created time of duplicates created by other transactions, forgotten by any deleteCreatedBefore
+    private static final long UNKNOWN_CREATED = Long.MIN_VALUE;
+    
+    private static final class RecentKey {
+        
+        private final String tenantId;
+        private final Intent intent;
+        
+        private RecentKey(final String tenantId, final Intent intent) {
+            this.tenantId = tenantId;
+            this.intent = intent;
+        }
+        
+        @Override
+        public boolean equals(final Object o) {
+            return EqualsUtil.equals(this, o, other -> tenantId.equals(other.tenantId) && intent.equals(other.intent));
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenantId, intent);
+        }
+        
+    }
+    
+    // the time the intent was created, for the recent set
+    private final Cache<RecentKey, Long> recent;
+    
+    public JooqProcessedIntents() {
+        this(DEFAULT_RECENT_SIZE, DEFAULT_RECENT_EXPIRY_MILLIS);
+    }
+    
+    /**
+     * @param recentSize the maximum number of recent intents remembered, or 0 to always check the database
+     * @param recentExpiryMillis how long recent intents are remembered. Should be shorter than the time processed intents
+     *     are kept for (see {@link #deleteCreatedBefore(long, int)})
+     */
+    public JooqProcessedIntents(final int recentSize, final long recentExpiryMillis) {
+        if (recentSize < 0) {
+            throw new IllegalArgumentException("recentSize should not be negative");
+        }
+        if (recentExpiryMillis <= 0L) {
+            throw new IllegalArgumentException("recentExpiryMillis should be positive");
+        }
+        recent = recentSize > 0
+            ? CacheBuilder.newBuilder().maximumSize(recentSize).expireAfterWrite(recentExpiryMillis, TimeUnit.MILLISECONDS).build() : null;
+    }
+    
     @Override
     public void create(final Intent intent) throws DuplicateIntentException {
+        final RecentKey key = recentKey(intent);
+        if (isRecent(key)) {
+            throw new DuplicateIntentException("Duplicate intent " + intent.getId());
+        }
+        
+        final long created = System.currentTimeMillis();
         try {
             final LibProcessedIntentsRecord record = JOOQ_TX.get().newRecord(LIB_PROCESSED_INTENTS);
             record.setIntentId(intent.getId());
             record.setPath(intent.getPath());
             record.setHash(intent.getHash());
+            record.setCreated(created);
             record.store();
         } catch (final DataAccessException e) {
             if (isDuplicateEntryException(e)) {
+                // the duplicate key is only reported once the other transaction commits, so the intent is processed
+                addRecent(key, UNKNOWN_CREATED);
                 throw new DuplicateIntentException("Duplicate intent " + intent.getId());
             }
             throw e;
         }
+        
+        if (key != null) {
+            JOOQ_TX.get().onCommit(() -> addRecent(key, created));
+        }
     }
     
     @Override
     public Optional<Intent> fetch(final Intent intent) {
+        if (isRecent(recentKey(intent))) {
+            return Optional.of(intent);
+        }
+        
         return JOOQ_TX.get()
             .fetchOptional(LIB_PROCESSED_INTENTS,
                 (LIB_PROCESSED_INTENTS.INTENT_ID.equal(intent.getId()))
@@ -49,11 +130,61 @@ public class JooqProcessedIntents implements ProcessedIntents {
     
     @Override
     public void delete(final Intent intent) {
-        final int rowsDeleted = JOOQ_TX.get().executeDelete(new LibProcessedIntentsRecord(intent.getId(), intent.getPath(), intent.getHash()));
+        final RecentKey key = recentKey(intent);
+        if (key != null) {
+            recent.invalidate(key);
+        }
+        
+        final int rowsDeleted = JOOQ_TX.get()
+            .deleteFrom(LIB_PROCESSED_INTENTS)
+            .where(LIB_PROCESSED_INTENTS.INTENT_ID.equal(intent.getId()))
+            .and(LIB_PROCESSED_INTENTS.PATH.equal(intent.getPath()))
+            .and(LIB_PROCESSED_INTENTS.HASH.equal(intent.getHash()))
+            .execute();
         
         if (rowsDeleted != 1) {
             throw new EntityNotFoundException(String.format("Entity with id [%s] does not exist", intent));
         }
     }
     
+    /**
+     * Deletes intents processed before the given timestamp as a range delete on the created index, in chunks of at most
+     * limit intents so as not to hold locks on a large range of rows in a single transaction. Recent intents of the
+     * tenant that may have been created before the timestamp are forgotten, so they are checked in the database again.
+     */
+    @Override
+    public int deleteCreatedBefore(final long timestamp, final int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit should be positive");
+        }
+        
+        if (recent != null) {
+            final String tenantId = TENANT.get();
+            recent.asMap().entrySet().removeIf(e -> e.getKey().tenantId.equals(tenantId) && (e.getValue() < timestamp));
+        }
+        
+        return JOOQ_TX.get().deleteFrom(LIB_PROCESSED_INTENTS).where(LIB_PROCESSED_INTENTS.CREATED.lessThan(timestamp)).limit(limit).execute();
+    }
+    
+    /**
+     * @return the key for the recent intents, or null if recent intents are not remembered or outside a tenant context
+     */
+    private RecentKey recentKey(final Intent intent) {
+        if (recent == null) {
+            return null;
+        }
+        final String tenantId = TENANT.get();
+        return tenantId != null ? new RecentKey(tenantId, intent) : null;
+    }
+    
+    private boolean isRecent(final RecentKey key) {
+        return (key != null) && (recent.getIfPresent(key) != null);
+    }
+    
+    private void addRecent(final RecentKey key, final long created) {
+        if (key != null) {
+            recent.put(key, created);
+        }
+    }
+    
 }
@@ -0,0 +1,7 @@
+ALTER TABLE lib_processed_intents
+    ADD COLUMN created BIGINT NOT NULL DEFAULT 0,
+    ADD KEY ix_lib_processed_intents__created (created);
+
+-- stamp existing intents with the migration time, so that they are kept for the full retention period rather than
+-- being deleted by the first expiry as if created at epoch 0
+UPDATE lib_processed_intents SET created = ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000);
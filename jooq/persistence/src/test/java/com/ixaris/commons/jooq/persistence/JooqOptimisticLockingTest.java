@@ -133,6 +133,8 @@ public class JooqOptimisticLockingTest {
         t.join();
         
         assertThat(exRef.get()).isInstanceOf(OptimisticLockException.class);
+        // not retried
+        assertThat(provider.getOptimisticLockRetryCount()).isZero();
         
         final Character flag = AsyncLocal
             .with(TENANT, TestTenants.DEFAULT)
@@ -213,6 +215,7 @@ public class JooqOptimisticLockingTest {
         t.join();
         
         assertThat(exRef.get()).isNull();
+        assertThat(provider.getOptimisticLockRetryCount()).isEqualTo(1L);
         
         final Character flag = AsyncLocal
             .with(TENANT, TestTenants.DEFAULT)
@@ -1,14 +1,24 @@
 package com.ixaris.commons.jooq.persistence;
 
+import static com.ixaris.commons.async.lib.CompletionStageUtil.block;
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 import static com.ixaris.commons.multitenancy.lib.data.DataUnit.DATA_UNIT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.util.Collections;
 
 import org.junit.After;
+import org.junit.Test;
 import org.springframework.test.annotation.DirtiesContext;
 
+import com.ixaris.commons.async.lib.AsyncLocal;
+import com.ixaris.commons.async.lib.idempotency.Intent;
 import com.ixaris.commons.misc.lib.function.RunnableThrows;
+import com.ixaris.commons.misc.lib.id.UniqueIdGenerator;
+import com.ixaris.commons.multitenancy.test.TestTenants;
 import com.ixaris.commons.persistence.lib.AsyncPersistenceProvider;
+import com.ixaris.commons.persistence.lib.exception.DuplicateIntentException;
 import com.ixaris.commons.persistence.test.AbstractProcessedIntentsTest;
 
 /**
@@ -43,4 +53,89 @@ public class JooqProcessedIntentsTest extends AbstractProcessedIntentsTest {
         return new JooqAsyncPersistenceProvider(JooqMultiTenancyConfiguration.createDslContext(testHelper.getDataSource()));
     }
     
+    @Test
+    public void create_RecentIntent_DuplicateDetectedWithoutDatabase() throws Exception {
+        final AsyncPersistenceProvider provider = createProvider();
+        final AsyncPersistenceProvider otherProvider = createProvider();
+        final Intent intent = new Intent(UniqueIdGenerator.generate(), "op", 0L);
+        asTenant(TestTenants.DEFAULT, () -> {
+            create(provider, intent);
+            // deleted through a provider that does not share the recent intents, so only the recent intents know of it
+            block(otherProvider.transaction(() -> {
+                otherProvider.getProcessedIntents().delete(intent);
+                return null;
+            }));
+            assertThat(exists(otherProvider, intent)).isFalse();
+            
+            assertThat(exists(provider, intent)).isTrue();
+            assertThatThrownBy(() -> create(provider, intent)).isInstanceOf(DuplicateIntentException.class);
+        });
+    }
+    
+    @Test
+    public void create_TransactionRolledBack_IntentNotRemembered() throws Exception {
+        final AsyncPersistenceProvider provider = createProvider();
+        final Intent intent = new Intent(UniqueIdGenerator.generate(), "op", 0L);
+        asTenant(TestTenants.DEFAULT, () -> {
+            assertThatThrownBy(() -> block(provider.transaction(() -> {
+                provider.getProcessedIntents().create(intent);
+                throw new IllegalStateException("rollback");
+            }))).isInstanceOf(IllegalStateException.class);
+            
+            assertThat(exists(provider, intent)).isFalse();
+            create(provider, intent);
+            assertThat(exists(provider, intent)).isTrue();
+        });
+    }
+    
+    @Test
+    public void create_RecentIntentOfOtherTenant_Created() throws Exception {
+        testHelper.getMultiTenancy().addTenant(TestTenants.LEFT);
+        final AsyncPersistenceProvider provider = createProvider();
+        final Intent intent = new Intent(UniqueIdGenerator.generate(), "op", 0L);
+        asTenant(TestTenants.DEFAULT, () -> create(provider, intent));
+        
+        asTenant(TestTenants.LEFT, () -> {
+            assertThat(exists(provider, intent)).isFalse();
+            create(provider, intent);
+            assertThat(exists(provider, intent)).isTrue();
+        });
+    }
+    
+    @Test
+    public void deleteCreatedBefore_RecentIntentCreatedBefore_Forgotten() throws Exception {
+        final AsyncPersistenceProvider provider = createProvider();
+        final Intent intent = new Intent(UniqueIdGenerator.generate(), "op", 0L);
+        asTenant(TestTenants.DEFAULT, () -> {
+            create(provider, intent);
+            
+            // nothing created before the intent
+            block(provider.transaction(() -> provider.getProcessedIntents().deleteCreatedBefore(0L, 100)));
+            assertThat(exists(provider, intent)).isTrue();
+            
+            int deleted;
+            do {
+                deleted = block(provider.transaction(() -> provider.getProcessedIntents().deleteCreatedBefore(System.currentTimeMillis() + 1L, 100)));
+            } while (deleted == 100);
+            
+            assertThat(exists(provider, intent)).isFalse();
+            create(provider, intent);
+        });
+    }
+    
+    private static void create(final AsyncPersistenceProvider provider, final Intent intent) throws Exception {
+        block(provider.transaction(() -> {
+            provider.getProcessedIntents().create(intent);
+            return null;
+        }));
+    }
+    
+    private static boolean exists(final AsyncPersistenceProvider provider, final Intent intent) throws Exception {
+        return block(provider.transaction(() -> provider.getProcessedIntents().exists(intent)));
+    }
+    
+    private static void asTenant(final String tenant, final RunnableThrows<? extends Exception> runnable) throws Exception {
+        AsyncLocal.with(TENANT, tenant).with(DATA_UNIT, SERVICE_NAME).exec(runnable);
+    }
+    
 }
@@ -0,0 +1,81 @@
+package com.ixaris.commons.jooq.persistence.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ixaris.commons.jooq.persistence.JooqHikariTestHelper;
+import com.ixaris.commons.jooq.test.MultiTenancyTestDataSourceConfig;
+import com.ixaris.commons.persistence.lib.datasource.MultiTenancyDataSourceConfig;
+import com.ixaris.commons.persistence.lib.datasource.RelationalDbProperties;
+
+/**
+ * Applies the library's processed intents migrations to a schema holding intents processed before the created column
+ * was added.
+ */
+public class ProcessedIntentsMigrationTest {
+    
+    private static final String SCHEMA = "test_lib_processed_intents_migration";
+    private static final String LOCATION = "filesystem:src/main/resources/lib/migration";
+    
+    private final MultiTenancyDataSourceConfig config = MultiTenancyTestDataSourceConfig.multiTenancyDataSourceConfig();
+    
+    @Before
+    public void setup() throws SQLException {
+        JooqHikariTestHelper.clearDatabase(config, SCHEMA);
+    }
+    
+    @After
+    public void teardown() throws SQLException {
+        JooqHikariTestHelper.clearDatabase(config, SCHEMA);
+    }
+    
+    @Test
+    public void createdColumnAdded_existingIntentsStampedWithMigrationTime() throws SQLException {
+        flyway().target("1").load().migrate();
+        execute("INSERT INTO lib_processed_intents (intent_id, path, hash) VALUES (1, 'path', 1), (2, 'path', 2)");
+        
+        final long beforeMigration = System.currentTimeMillis() - 1000L; // tolerate clock skew with the database
+        flyway().load().migrate();
+        final long afterMigration = System.currentTimeMillis() + 1000L;
+        
+        try (
+            final Connection connection = connection();
+            final Statement statement = connection.createStatement();
+            final ResultSet resultSet = statement.executeQuery("SELECT MIN(created), MAX(created), COUNT(*) FROM lib_processed_intents")) {
+            resultSet.next();
+            assertThat(resultSet.getLong(1)).isGreaterThanOrEqualTo(beforeMigration);
+            assertThat(resultSet.getLong(2)).isLessThanOrEqualTo(afterMigration);
+            assertThat(resultSet.getInt(3)).isEqualTo(2);
+        }
+    }
+    
+    private FluentConfiguration flyway() {
+        final RelationalDbProperties mysql = config.getDefaults().getMysql();
+        return Flyway.configure().dataSource(mysql.getUrl(), mysql.getUser(), mysql.getPassword()).schemas(SCHEMA).locations(LOCATION);
+    }
+    
+    private Connection connection() throws SQLException {
+        final RelationalDbProperties mysql = config.getDefaults().getMysql();
+        final Connection connection = DriverManager.getConnection(mysql.getUrl(), mysql.getUser(), mysql.getPassword());
+        connection.setCatalog(SCHEMA);
+        return connection;
+    }
+    
+    private void execute(final String sql) throws SQLException {
+        try (final Connection connection = connection(); final Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+    
+}
@@ -2,7 +2,9 @@ CREATE TABLE lib_processed_intents (
     intent_id BIGINT NOT NULL,
     path VARCHAR(255) CHARACTER SET latin1 COLLATE latin1_bin NOT NULL,
     hash BIGINT NOT NULL,
-    PRIMARY KEY (intent_id, path, hash)
+    created BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (intent_id, path, hash),
+    KEY ix_lib_processed_intents__created (created)
 ) DEFAULT CHARSET=utf8 ROW_FORMAT=COMPRESSED;
 
 CREATE TABLE author (
@@ -3,9 +3,17 @@ package com.ixaris.commons.kafka.microservices.service;
 import static com.ixaris.commons.async.lib.Async.awaitExceptions;
 import static com.ixaris.commons.async.lib.Async.result;
 import static com.ixaris.commons.async.lib.AsyncExecutor.relay;
+import static com.ixaris.commons.misc.lib.object.Tuple.tuple;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -19,6 +27,7 @@ import com.ixaris.commons.microservices.lib.proto.CommonsMicroservicesLib.EventA
 import com.ixaris.commons.microservices.lib.proto.CommonsMicroservicesLib.EventEnvelope;
 import com.ixaris.commons.microservices.lib.proto.CommonsMicroservicesLib.ResponseStatusCode;
 import com.ixaris.commons.microservices.lib.service.support.ServiceEventDispatcher;
+import com.ixaris.commons.misc.lib.object.Tuple2;
 
 /**
  * Kafka Implementation dispatching service events
@@ -36,13 +45,48 @@ public final class KafkaServiceEventDispatcher implements ServiceEventDispatcher
         connection.register(paths.stream().map(p -> KafkaUtil.resolveTopicName(name, p)).collect(Collectors.toSet()));
     }
     
-    @SuppressWarnings({ "squid:S1181", "squid:S1193" })
     @Override
     public Async<EventAckEnvelope> dispatch(final EventEnvelope eventEnvelope) {
         final String topicName = KafkaUtil.resolveTopicName(name, eventEnvelope.getPathList());
+        return ack(eventEnvelope, () -> connection.publish(topicName, eventEnvelope.getPartitionId(), eventEnvelope.toByteArray()));
+    }
+    
+    /**
+     * Events are published in a single batch per topic
+     */
+    @Override
+    public List<Async<EventAckEnvelope>> dispatch(final List<EventEnvelope> eventEnvelopes) {
+        final Map<String, List<Integer>> topics = new LinkedHashMap<>();
+        for (int i = 0; i < eventEnvelopes.size(); i++) {
+            topics.computeIfAbsent(KafkaUtil.resolveTopicName(name, eventEnvelopes.get(i).getPathList()), k -> new ArrayList<>()).add(i);
+        }
         
+        final List<Async<EventAckEnvelope>> acks = new ArrayList<>(Collections.nCopies(eventEnvelopes.size(), null));
+        for (final Entry<String, List<Integer>> topic : topics.entrySet()) {
+            final List<Tuple2<Long, byte[]>> messages = new ArrayList<>(topic.getValue().size());
+            for (final int i : topic.getValue()) {
+                final EventEnvelope eventEnvelope = eventEnvelopes.get(i);
+                messages.add(tuple(eventEnvelope.getPartitionId(), eventEnvelope.toByteArray()));
+            }
+            List<Async<Void>> published;
+            try {
+                published = connection.publish(topic.getKey(), messages);
+            } catch (final RuntimeException e) {
+                published = Collections.nCopies(messages.size(), Async.rejected(e));
+            }
+            for (int j = 0; j < published.size(); j++) {
+                final int i = topic.getValue().get(j);
+                final Async<Void> publishedEvent = published.get(j);
+                acks.set(i, ack(eventEnvelopes.get(i), () -> publishedEvent));
+            }
+        }
+        return acks;
+    }
+    
+    @SuppressWarnings({ "squid:S1181", "squid:S1193" })
+    private Async<EventAckEnvelope> ack(final EventEnvelope eventEnvelope, final Supplier<Async<Void>> publish) {
         try {
-            return awaitExceptions(relay(connection.publish(topicName, eventEnvelope.getPartitionId(), eventEnvelope.toByteArray())))
+            return awaitExceptions(relay(publish.get()))
                 .map(rm -> EventAckEnvelope.newBuilder()
                     .setCorrelationId(eventEnvelope.getCorrelationId())
                     .setCallRef(eventEnvelope.getCallRef())
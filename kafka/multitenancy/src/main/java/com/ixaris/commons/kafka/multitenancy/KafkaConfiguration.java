@@ -11,6 +11,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 
+import com.ixaris.commons.kafka.multitenancy.KafkaSettings.KafkaConfigurationBuilder;
+import com.ixaris.commons.kafka.multitenancy.KafkaSettings.PublishBatching;
 import com.ixaris.commons.misc.spring.EnvDefaults;
 import com.ixaris.commons.multitenancy.lib.MultiTenancy;
 
@@ -35,16 +37,27 @@ public class KafkaConfiguration {
                                        @Value("${kafka.url:kafka-service:9092}") final String kafkaUrl,
                                        @Value("${kafka.partitions:" + DEFAULT_PARTITIONS + "}") final short kafkaPartitions,
                                        @Value("${kafka.replicationFactor:" + DEFAULT_REPLICATION_FACTOR + "}") final short kafkaReplicationFactor,
+                                       @Value("${kafka.keyParallel:false}") final boolean kafkaKeyParallel,
+                                       @Value("${kafka.publishLingerTopics:}") final String[] kafkaPublishLingerTopics,
+                                       @Value("${kafka.publishLingerMs:2}") final long kafkaPublishLingerMs,
+                                       @Value("${kafka.publishBatchSize:500}") final int kafkaPublishBatchSize,
                                        final Environment environment) {
         // services with the same group id "compete" with each other for Kafka events -
         // we want only one service per "type" to respond (regardless of replicas), so use the name as the group id
-        return KafkaSettings.newBuilder()
+        final KafkaConfigurationBuilder builder = KafkaSettings.newBuilder()
             .setUrl(kafkaUrl)
             .setTopicPrefix(getKafkaTopicPrefix(environment, envName))
             .setPartitions(kafkaPartitions)
             .setReplicationFactor(kafkaReplicationFactor)
             .setGroupId(serviceName)
-            .build();
+            .setKeyParallel(kafkaKeyParallel)
+            .setPublishBatching(new PublishBatching(0L, kafkaPublishBatchSize));
+        // lingering is opt in, for the topics publishing bursts of events
+        final PublishBatching lingerPublishBatching = new PublishBatching(kafkaPublishLingerMs, kafkaPublishBatchSize);
+        for (final String topic : kafkaPublishLingerTopics) {
+            builder.setTopicPublishBatching(topic, lingerPublishBatching);
+        }
+        return builder.build();
     }
     
     static String getKafkaTopicPrefix(final Environment env, final String defaultValue) {
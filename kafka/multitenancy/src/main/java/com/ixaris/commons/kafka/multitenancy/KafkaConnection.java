@@ -1,6 +1,7 @@
 package com.ixaris.commons.kafka.multitenancy;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
@@ -11,6 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.misc.lib.object.Tuple2;
 
 /**
  * This class represents the connection to Kafka for publishing/subscribing to events
@@ -69,7 +71,16 @@ public class KafkaConnection implements KafkaConnectionHandler {
             throw new IllegalStateException("Connection is closed");
         }
         final String prefixedTopic = getPrefixedTopic(topic);
-        return producer.publish(prefixedTopic, partition, message);
+        return producer.publish(prefixedTopic, kafkaSettings.getPublishBatching(topic), partition, message);
+    }
+    
+    @Override
+    public List<Async<Void>> publish(final String topic, final List<Tuple2<Long, byte[]>> messages) {
+        if (!active.get()) {
+            throw new IllegalStateException("Connection is closed");
+        }
+        final String prefixedTopic = getPrefixedTopic(topic);
+        return producer.publish(prefixedTopic, kafkaSettings.getPublishBatching(topic), messages);
     }
     
     @Override
@@ -1,8 +1,10 @@
 package com.ixaris.commons.kafka.multitenancy;
 
+import java.util.List;
 import java.util.Set;
 
 import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.misc.lib.object.Tuple2;
 
 /**
  * @author <a href="mailto:Armand.Sciberras@ixaris.com">Armand.Sciberras</a>
@@ -13,6 +15,14 @@ public interface KafkaConnectionHandler {
     
     Async<Void> publish(String qualifiedEventName, long partitionId, byte[] message);
     
+    /**
+     * Publish many messages to the same topic at once, e.g. when draining a backlog of events
+     *
+     * @param messages the partition id and message pairs
+     * @return the publish result of each message, in the same order as the messages
+     */
+    List<Async<Void>> publish(String qualifiedEventName, List<Tuple2<Long, byte[]>> messages);
+    
     void subscribe(String subscriberName, String eventName, KafkaMessageHandler messageHandler);
     
     void unsubscribe(String subscriberName, String eventName);
@@ -6,15 +6,20 @@ import static com.ixaris.commons.async.lib.Async.result;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -36,6 +41,12 @@ final class KafkaConsumerThread extends Thread {
     
     private static final Logger LOG = LoggerFactory.getLogger(KafkaConsumerThread.class);
     
+    /**
+     * Poll duration while records are being processed in parallel by key, which bounds how late offsets are committed
+     * and paused partitions are resumed
+     */
+    private static final Duration KEY_PARALLEL_POLL_DURATION = Duration.ofMillis(100L);
+    
     private static final class TopicPartitionPendingInfo {
         
         private int failureCount = 0;
@@ -51,12 +62,40 @@ final class KafkaConsumerThread extends Thread {
         
     }
     
+    /**
+     * Invoked by the consumer from within poll(), hence on this thread
+     */
+    private final class KeyParallelRebalanceListener implements ConsumerRebalanceListener {
+        
+        @Override
+        public void onPartitionsRevoked(final Collection<TopicPartition> partitions) {
+            commitSync(partitions);
+            for (final TopicPartition partition : partitions) {
+                final KeyParallelPartition keyParallelPartition = keyParallelPartitions.remove(partition);
+                if (keyParallelPartition != null) {
+                    keyParallelPartition.revoke();
+                }
+                paused.remove(partition);
+            }
+        }
+        
+        @Override
+        public void onPartitionsAssigned(final Collection<TopicPartition> partitions) {
+            // processing starts when records are received
+        }
+        
+    }
+    
     private final KafkaConnection connection;
     private final String groupId;
     private volatile KafkaConsumer<String, byte[]> consumer;
     private volatile ImmutableMap<String, KafkaMessageHandler> topics = ImmutableMap.of();
     private final Map<TopicPartition, TopicPartitionPendingInfo> backoff = new HashMap<>();
     
+    // following are used only when consuming in parallel by key, and only accessed by this thread
+    private final Map<TopicPartition, KeyParallelPartition> keyParallelPartitions = new HashMap<>();
+    private final Set<TopicPartition> paused = new HashSet<>();
+    
     public KafkaConsumerThread(final KafkaConnection connection, final String groupId) {
         super("KafkaConsumer-" + groupId);
         this.connection = connection;
@@ -78,12 +117,30 @@ final class KafkaConsumerThread extends Thread {
         this.consumer = new KafkaConsumer<>(props);
         ImmutableMap<String, KafkaMessageHandler> subscribedTopics = ImmutableMap.of();
         
+        final boolean keyParallel = connection.kafkaSettings.isKeyParallel();
         while (connection.active.get()) {
             if (subscribedTopics != topics) {
-                consumer.subscribe(topics.keySet());
+                if (keyParallel) {
+                    consumer.subscribe(topics.keySet(), new KeyParallelRebalanceListener());
+                } else {
+                    consumer.subscribe(topics.keySet());
+                }
                 subscribedTopics = topics;
             }
             
+            if (keyParallel) {
+                try {
+                    if (subscribedTopics.isEmpty()) {
+                        waitForTopicSubscriptions();
+                    } else {
+                        processReceivedMessagesByKey(subscribedTopics);
+                    }
+                } catch (final WakeupException ignored) {
+                    // ignore for shutdown
+                }
+                continue;
+            }
+            
             try {
                 final List<Async<Void>> partitions = new ArrayList<>();
                 final Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
@@ -102,6 +159,9 @@ final class KafkaConsumerThread extends Thread {
             }
         }
         
+        if (keyParallel) {
+            commitSync(keyParallelPartitions.keySet());
+        }
         consumer.close();
     }
     
@@ -133,6 +193,69 @@ final class KafkaConsumerThread extends Thread {
         }
     }
     
+    /**
+     * Never blocks on processing: records are dispatched to their partition by key, then the offsets processed so far
+     * are committed asynchronously. Partitions with too many uncommitted records are paused until they catch up.
+     */
+    private void processReceivedMessagesByKey(final ImmutableMap<String, KafkaMessageHandler> topics) {
+        final boolean processing = keyParallelPartitions.values().stream().anyMatch(p -> p.getUncommitted() > 0);
+        final Duration pollDuration = processing ? KEY_PARALLEL_POLL_DURATION : Duration.ofMillis(connection.kafkaSettings.getMaxBlock());
+        final ConsumerRecords<String, byte[]> records = consumer.poll(pollDuration);
+        for (final TopicPartition partition : records.partitions()) {
+            final KeyParallelPartition keyParallelPartition = keyParallelPartitions.computeIfAbsent(partition,
+                p -> new KeyParallelPartition(p, topics.get(p.topic()), connection.executor, this::retryDelay));
+            for (final ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                keyParallelPartition.add(record);
+            }
+        }
+        
+        final Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
+        final int maxUncommitted = connection.kafkaSettings.getMaxUncommittedPerPartition();
+        for (final Entry<TopicPartition, KeyParallelPartition> entry : keyParallelPartitions.entrySet()) {
+            final TopicPartition partition = entry.getKey();
+            final KeyParallelPartition keyParallelPartition = entry.getValue();
+            final OffsetAndMetadata offset = keyParallelPartition.advanceWatermark();
+            if (offset != null) {
+                commit.put(partition, offset);
+            }
+            
+            final int uncommitted = keyParallelPartition.getUncommitted();
+            if ((uncommitted >= maxUncommitted) && paused.add(partition)) {
+                consumer.pause(Collections.singleton(partition));
+            } else if ((uncommitted <= (maxUncommitted / 2)) && paused.remove(partition)) {
+                consumer.resume(Collections.singleton(partition));
+            }
+        }
+        
+        if (!commit.isEmpty()) {
+            consumer.commitAsync(commit, (offsets, e) -> {
+                if (e != null) {
+                    LOG.warn("Failed to commit offsets {}", offsets, e);
+                }
+            });
+        }
+    }
+    
+    private void commitSync(final Collection<TopicPartition> partitions) {
+        final Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
+        for (final TopicPartition partition : partitions) {
+            final KeyParallelPartition keyParallelPartition = keyParallelPartitions.get(partition);
+            if (keyParallelPartition != null) {
+                final OffsetAndMetadata offset = keyParallelPartition.advanceWatermark();
+                if (offset != null) {
+                    commit.put(partition, offset);
+                }
+            }
+        }
+        if (!commit.isEmpty()) {
+            try {
+                consumer.commitSync(commit);
+            } catch (final RuntimeException e) {
+                LOG.warn("Failed to commit offsets {}", commit, e);
+            }
+        }
+    }
+    
     private void retryFailedMessages(final ImmutableMap<String, KafkaMessageHandler> topics,
                                      final List<Async<Void>> partitions,
                                      final Map<TopicPartition, OffsetAndMetadata> commit) {
@@ -227,8 +350,12 @@ final class KafkaConsumerThread extends Thread {
         return topics.isEmpty();
     }
     
+    private long retryDelay(final int failureCount) {
+        return Math.min(connection.kafkaSettings.getMinBackoff() * failureCount * failureCount, connection.kafkaSettings.getMaxBackoff());
+    }
+    
     private long exponentialBackoff(final int failureCount) {
-        return System.currentTimeMillis() + Math.min(connection.kafkaSettings.getMinBackoff() * failureCount * failureCount, connection.kafkaSettings.getMaxBackoff());
+        return System.currentTimeMillis() + retryDelay(failureCount);
     }
     
 }
@@ -2,10 +2,12 @@ package com.ixaris.commons.kafka.multitenancy;
 
 import static com.ixaris.commons.async.lib.Async.result;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.misc.lib.object.Tuple2;
 import com.ixaris.commons.multitenancy.lib.object.AbstractEagerMultiTenantSharedObject;
 
 /**
@@ -102,4 +104,9 @@ public final class KafkaMultiTenantConnection extends AbstractEagerMultiTenantSh
         return kafkaConnection.publish(eventName, partitionId, message);
     }
     
+    @Override
+    public List<Async<Void>> publish(final String eventName, final List<Tuple2<Long, byte[]>> messages) {
+        return kafkaConnection.publish(eventName, messages);
+    }
+    
 }
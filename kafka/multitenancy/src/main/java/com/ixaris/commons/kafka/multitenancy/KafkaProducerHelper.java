@@ -1,12 +1,19 @@
 package com.ixaris.commons.kafka.multitenancy;
 
+import static com.ixaris.commons.misc.lib.object.Tuple.tuple;
+
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -29,11 +36,101 @@ import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.async.lib.AsyncExecutor;
 import com.ixaris.commons.async.lib.FutureAsync;
 import com.ixaris.commons.collections.lib.GuavaCollections;
+import com.ixaris.commons.kafka.multitenancy.KafkaSettings.PublishBatching;
+import com.ixaris.commons.misc.lib.object.Tuple2;
 
 final class KafkaProducerHelper {
     
     private static final Logger LOG = LoggerFactory.getLogger(KafkaProducerHelper.class);
     
+    private static final class PendingMessage {
+        
+        private final long partition;
+        private final byte[] message;
+        private final FutureAsync<Void> future = new FutureAsync<>();
+        private final BiConsumer<? super Void, ? super Throwable> relayConsumer = AsyncExecutor.relayConsumer(future);
+        
+        private PendingMessage(final long partition, final byte[] message) {
+            this.partition = partition;
+            this.message = message;
+        }
+        
+    }
+    
+    /**
+     * Coalesces messages published to a topic, so that bursts (e.g. an outbox draining a backlog) are sent together,
+     * sharing a single acknowledgement timeout, instead of scheduling a timeout for every message
+     */
+    private final class TopicBatch {
+        
+        private final String topic;
+        private final PublishBatching batching;
+        private List<PendingMessage> pending = new ArrayList<>();
+        private ScheduledFuture<?> linger;
+        private boolean closed;
+        
+        private TopicBatch(final String topic, final PublishBatching batching) {
+            this.topic = topic;
+            this.batching = batching;
+        }
+        
+        private List<Async<Void>> add(final List<Tuple2<Long, byte[]>> messages) {
+            final List<Async<Void>> futures = new ArrayList<>(messages.size());
+            final List<PendingMessage> toSend;
+            synchronized (this) {
+                for (final Tuple2<Long, byte[]> message : messages) {
+                    final PendingMessage pendingMessage = new PendingMessage(message.get1(), message.get2());
+                    pending.add(pendingMessage);
+                    futures.add(pendingMessage.future);
+                }
+                if (closed || (batching.getLingerMs() == 0L) || (pending.size() >= batching.getBatchSize())) {
+                    toSend = drain();
+                } else {
+                    toSend = null;
+                    if (linger == null) {
+                        linger = connection.executor.schedule(this::flush, batching.getLingerMs(), TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            if (toSend != null) {
+                send(topic, toSend);
+            }
+            return futures;
+        }
+        
+        private void flush() {
+            final List<PendingMessage> toSend;
+            synchronized (this) {
+                linger = null;
+                toSend = drain();
+            }
+            if (!toSend.isEmpty()) {
+                send(topic, toSend);
+            }
+        }
+        
+        /**
+         * Stops lingering, so that messages are sent immediately from now on
+         *
+         * @return the pending messages, to be sent before the producer is closed
+         */
+        private synchronized List<PendingMessage> close() {
+            closed = true;
+            return drain();
+        }
+        
+        private List<PendingMessage> drain() {
+            if (linger != null) {
+                linger.cancel(false);
+                linger = null;
+            }
+            final List<PendingMessage> drained = pending;
+            pending = new ArrayList<>();
+            return drained;
+        }
+        
+    }
+    
     private final KafkaConnection connection;
     private volatile KafkaProducer<String, byte[]> producer;
     private volatile AdminClient adminClient;
@@ -43,10 +140,28 @@ final class KafkaProducerHelper {
     
     private volatile ImmutableSet<String> createdTopics = ImmutableSet.of();
     
+    private final Map<String, TopicBatch> batches = new ConcurrentHashMap<>();
+    
     KafkaProducerHelper(final KafkaConnection connection) {
         this.connection = connection;
     }
     
+    /**
+     * Messages are coalesced per topic before being sent (see {@link TopicBatch}), so the producer does not linger
+     * again, i.e. topics without publish batching are sent immediately
+     */
+    static Properties producerProperties(final KafkaSettings kafkaSettings) {
+        final Properties props = new Properties();
+        props.put(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, kafkaSettings.getUrl());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, Long.toString(kafkaSettings.getMaxBlock()));
+        props.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, "20000");
+        props.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, "500");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, "0");
+        return props;
+    }
+    
     synchronized void start() {
         final Properties props = new Properties();
         props.put(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, connection.kafkaSettings.getUrl());
@@ -55,15 +170,18 @@ final class KafkaProducerHelper {
         register(toCreateTopics);
         toCreateTopics = ImmutableSet.of();
         
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
-        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, Long.toString(connection.kafkaSettings.getMaxBlock()));
-        props.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, "20000");
-        props.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, "500");
-        producer = new KafkaProducer<>(props);
+        producer = new KafkaProducer<>(producerProperties(connection.kafkaSettings));
     }
     
     synchronized void shutdown() {
+        // send the lingering messages and cancel the scheduled flushes while the producer is still open
+        for (final TopicBatch batch : batches.values()) {
+            final List<PendingMessage> toSend = batch.close();
+            if (!toSend.isEmpty()) {
+                send(batch.topic, toSend);
+            }
+        }
+        batches.clear();
         producer.close();
         producer = null;
         adminClient.close();
@@ -105,19 +223,35 @@ final class KafkaProducerHelper {
         }
     }
     
-    Async<Void> publish(final String topic, final long partition, final byte[] message) {
-        final FutureAsync<Void> future = new FutureAsync<>();
-        final BiConsumer<? super Void, ? super Throwable> relayConsumer = AsyncExecutor.relayConsumer(future);
+    Async<Void> publish(final String topic, final PublishBatching batching, final long partition, final byte[] message) {
+        return publish(topic, batching, Collections.singletonList(tuple(partition, message))).get(0);
+    }
+    
+    List<Async<Void>> publish(final String topic, final PublishBatching batching, final List<Tuple2<Long, byte[]>> messages) {
+        return batches.computeIfAbsent(topic, t -> new TopicBatch(t, batching)).add(messages);
+    }
+    
+    @SuppressWarnings("squid:S1181")
+    private void send(final String topic, final List<PendingMessage> messages) {
+        final KafkaProducer<String, byte[]> sendProducer = producer;
+        if (sendProducer == null) {
+            final IllegalStateException closed = new IllegalStateException("Producer is closed");
+            for (final PendingMessage message : messages) {
+                message.relayConsumer.accept(null, closed);
+            }
+            return;
+        }
         
         final ScheduledFuture<?> schedule = connection.executor.schedule(
             () -> {
-                if (!future.isDone()) {
-                    relayConsumer.accept(
-                        null,
-                        new TimeoutException(String.format(
-                            "Failed to ack event published to %s in %d ms",
-                            topic,
-                            connection.kafkaSettings.getAckTimeout())));
+                final TimeoutException timeout = new TimeoutException(String.format(
+                    "Failed to ack event published to %s in %d ms",
+                    topic,
+                    connection.kafkaSettings.getAckTimeout()));
+                for (final PendingMessage message : messages) {
+                    if (!message.future.isDone()) {
+                        message.relayConsumer.accept(null, timeout);
+                    }
                 }
             },
             connection.kafkaSettings.getAckTimeout(),
@@ -126,13 +260,23 @@ final class KafkaProducerHelper {
         // make sure topic is created
         register(Collections.singleton(topic));
         
-        final ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, Long.toString(partition), message);
-        producer.send(record, (r, e) -> {
-            schedule.cancel(false);
-            relayConsumer.accept(null, e);
-        });
-        
-        return future;
+        final AtomicInteger remaining = new AtomicInteger(messages.size());
+        for (final PendingMessage message : messages) {
+            final ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, Long.toString(message.partition), message.message);
+            try {
+                sendProducer.send(record, (r, e) -> {
+                    if (remaining.decrementAndGet() == 0) {
+                        schedule.cancel(false);
+                    }
+                    message.relayConsumer.accept(null, e);
+                });
+            } catch (final Throwable t) {
+                if (remaining.decrementAndGet() == 0) {
+                    schedule.cancel(false);
+                }
+                message.relayConsumer.accept(null, t);
+            }
+        }
     }
     
 }
@@ -1,14 +1,50 @@
 package com.ixaris.commons.kafka.multitenancy;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.collect.ImmutableMap;
+
 public final class KafkaSettings {
     
     public static KafkaConfigurationBuilder newBuilder() {
         return new KafkaConfigurationBuilder();
     }
     
+    /**
+     * Messages published to a topic are coalesced for up to lingerMs, or until batchSize messages are pending, and
+     * sent together with a single acknowledgement timeout. A lingerMs of 0, the default, sends every publish call
+     * immediately. Lingering adds latency to every publish, so should be enabled only for the topics that need it.
+     */
+    public static final class PublishBatching {
+        
+        private final long lingerMs;
+        private final int batchSize;
+        
+        public PublishBatching(final long lingerMs, final int batchSize) {
+            if (lingerMs < 0L) {
+                throw new IllegalArgumentException("lingerMs should not be negative");
+            }
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize should be positive");
+            }
+            
+            this.lingerMs = lingerMs;
+            this.batchSize = batchSize;
+        }
+        
+        public long getLingerMs() {
+            return lingerMs;
+        }
+        
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+    }
+    
     /**
      * This value should be less than DEFAULT_ACK_TIMEOUT, so we don't reply with a timeout for an event but in reality
      * the event is delivered to kafka.
@@ -26,6 +62,14 @@ public final class KafkaSettings {
      */
     private static final long DEFAULT_ACK_TIMEOUT = TimeUnit.SECONDS.toMillis(20L);
     
+    /**
+     * Number of records received for a partition and not yet committed, at which the partition is paused when
+     * consuming in parallel by key.
+     */
+    private static final int DEFAULT_MAX_UNCOMMITTED_PER_PARTITION = 1000;
+    
+    private static final PublishBatching DEFAULT_PUBLISH_BATCHING = new PublishBatching(0L, 500);
+    
     private final String url;
     private final String topicPrefix;
     private final short partitions;
@@ -35,6 +79,10 @@ public final class KafkaSettings {
     private final long ackTimeout;
     private final long minBackoff;
     private final long maxBackoff;
+    private final boolean keyParallel;
+    private final int maxUncommittedPerPartition;
+    private final PublishBatching publishBatching;
+    private final ImmutableMap<String, PublishBatching> topicPublishBatching;
     
     private KafkaSettings(final String url,
                           final String topicPrefix,
@@ -44,7 +92,11 @@ public final class KafkaSettings {
                           final Long maxBlock,
                           final Long ackTimeoutMs,
                           final Long minBackoffMs,
-                          final Long maxBackoffMs) {
+                          final Long maxBackoffMs,
+                          final Boolean keyParallel,
+                          final Integer maxUncommittedPerPartition,
+                          final PublishBatching publishBatching,
+                          final Map<String, PublishBatching> topicPublishBatching) {
         this.url = url;
         this.topicPrefix = Optional.ofNullable(topicPrefix).orElse(DEFAULT_TOPIC_PREFIX);
         this.partitions = Optional.ofNullable(partitions).orElse(DEFAULT_PARTITIONS);
@@ -54,6 +106,10 @@ public final class KafkaSettings {
         ackTimeout = orDefault(ackTimeoutMs, DEFAULT_ACK_TIMEOUT);
         minBackoff = orDefault(minBackoffMs, DEFAULT_MIN_BACKOFF);
         maxBackoff = orDefault(maxBackoffMs, DEFAULT_MAX_BACKOFF);
+        this.keyParallel = Optional.ofNullable(keyParallel).orElse(false);
+        this.maxUncommittedPerPartition = Optional.ofNullable(maxUncommittedPerPartition).orElse(DEFAULT_MAX_UNCOMMITTED_PER_PARTITION);
+        this.publishBatching = Optional.ofNullable(publishBatching).orElse(DEFAULT_PUBLISH_BATCHING);
+        this.topicPublishBatching = ImmutableMap.copyOf(topicPublishBatching);
     }
     
     private static long orDefault(final Long durationMs, final long defaultDuration) {
@@ -96,6 +152,27 @@ public final class KafkaSettings {
         return maxBackoff;
     }
     
+    /**
+     * @return true if records of a partition with different keys are processed concurrently, preserving order per key
+     *     and committing only contiguous processed offsets. Otherwise, the records of a partition are processed in
+     *     sequence.
+     */
+    public boolean isKeyParallel() {
+        return keyParallel;
+    }
+    
+    public int getMaxUncommittedPerPartition() {
+        return maxUncommittedPerPartition;
+    }
+    
+    /**
+     * @param topic the (unprefixed) topic name
+     * @return the publish batching for the given topic, falling back to the default publish batching
+     */
+    public PublishBatching getPublishBatching(final String topic) {
+        return topicPublishBatching.getOrDefault(topic, publishBatching);
+    }
+    
     public static final class KafkaConfigurationBuilder {
         
         private String url;
@@ -107,6 +184,10 @@ public final class KafkaSettings {
         private Long ackTimeoutMs;
         private Long minBackoffMs;
         private Long maxBackoffMs;
+        private Boolean keyParallel;
+        private Integer maxUncommittedPerPartition;
+        private PublishBatching publishBatching;
+        private final Map<String, PublishBatching> topicPublishBatching = new HashMap<>();
         
         private KafkaConfigurationBuilder() {}
         
@@ -155,6 +236,26 @@ public final class KafkaSettings {
             return this;
         }
         
+        public KafkaConfigurationBuilder setKeyParallel(final Boolean keyParallel) {
+            this.keyParallel = keyParallel;
+            return this;
+        }
+        
+        public KafkaConfigurationBuilder setMaxUncommittedPerPartition(final Integer maxUncommittedPerPartition) {
+            this.maxUncommittedPerPartition = maxUncommittedPerPartition;
+            return this;
+        }
+        
+        public KafkaConfigurationBuilder setPublishBatching(final PublishBatching publishBatching) {
+            this.publishBatching = publishBatching;
+            return this;
+        }
+        
+        public KafkaConfigurationBuilder setTopicPublishBatching(final String topic, final PublishBatching publishBatching) {
+            topicPublishBatching.put(topic, publishBatching);
+            return this;
+        }
+        
         public KafkaSettings build() {
             return new KafkaSettings(url,
                 topicPrefix,
@@ -164,7 +265,11 @@ public final class KafkaSettings {
                 maxBlockMs,
                 ackTimeoutMs,
                 minBackoffMs,
-                maxBackoffMs);
+                maxBackoffMs,
+                keyParallel,
+                maxUncommittedPerPartition,
+                publishBatching,
+                topicPublishBatching);
         }
     }
 }
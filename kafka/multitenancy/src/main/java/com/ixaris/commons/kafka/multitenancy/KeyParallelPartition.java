@@ -0,0 +1,164 @@
+package com.ixaris.commons.kafka.multitenancy;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.async.lib.CompletionStageUtil;
+
+/**
+ * Processes the records of a partition concurrently across keys, while records with the same key are processed one
+ * after the other in offset order. Records complete out of order, so the committable offset is tracked as a watermark
+ * that only advances over contiguous completed records.
+ *
+ * <p>Records are added and the watermark is advanced by the consumer thread only. Records are handled on the executor,
+ * and a failed record is retried with backoff, holding back the subsequent records with the same key (and the
+ * watermark) until it succeeds.
+ */
+final class KeyParallelPartition {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(KeyParallelPartition.class);
+    
+    private static final class Record {
+        
+        private final ConsumerRecord<String, byte[]> record;
+        private volatile boolean done = false;
+        private int failureCount = 0;
+        
+        private Record(final ConsumerRecord<String, byte[]> record) {
+            this.record = record;
+        }
+        
+    }
+    
+    private final TopicPartition partition;
+    private final KafkaMessageHandler handler;
+    private final ScheduledExecutorService executor;
+    private final IntToLongFunction retryDelay;
+    
+    // accessed by the consumer thread only, in offset order
+    private final ArrayDeque<Record> uncommitted = new ArrayDeque<>();
+    
+    // records per key, the head of each queue being processed; guarded by this
+    private final Map<String, ArrayDeque<Record>> keys = new HashMap<>();
+    private boolean revoked = false;
+    
+    /**
+     * @param retryDelay the delay in milliseconds before retrying a record, given the number of failures so far
+     */
+    KeyParallelPartition(final TopicPartition partition,
+                         final KafkaMessageHandler handler,
+                         final ScheduledExecutorService executor,
+                         final IntToLongFunction retryDelay) {
+        this.partition = partition;
+        this.handler = handler;
+        this.executor = executor;
+        this.retryDelay = retryDelay;
+    }
+    
+    void add(final ConsumerRecord<String, byte[]> consumerRecord) {
+        final Record record = new Record(consumerRecord);
+        uncommitted.add(record);
+        final boolean first;
+        synchronized (this) {
+            if (revoked) {
+                return;
+            }
+            final ArrayDeque<Record> queue = keys.computeIfAbsent(consumerRecord.key(), k -> new ArrayDeque<>());
+            queue.add(record);
+            first = queue.size() == 1;
+        }
+        if (first) {
+            executor.execute(() -> handle(record));
+        }
+    }
+    
+    /**
+     * @return the number of records received and not yet committable, whether processed or not
+     */
+    int getUncommitted() {
+        return uncommitted.size();
+    }
+    
+    /**
+     * @return the offset to commit if the watermark advanced since last called, or null
+     */
+    OffsetAndMetadata advanceWatermark() {
+        Record last = null;
+        while (!uncommitted.isEmpty() && uncommitted.peekFirst().done) {
+            last = uncommitted.pollFirst();
+        }
+        return (last != null) ? new OffsetAndMetadata(last.record.offset() + 1L) : null;
+    }
+    
+    /**
+     * Stop processing queued records, e.g. when the partition is revoked. Records being processed are not interrupted
+     * and, since they are not committed, may be processed again by the new owner of the partition.
+     */
+    synchronized void revoke() {
+        revoked = true;
+        keys.clear();
+    }
+    
+    @SuppressWarnings("squid:S1181")
+    private void handle(final Record record) {
+        Async<Void> async;
+        try {
+            async = handler.handle(record.record.key(), record.record.value());
+        } catch (final Throwable t) {
+            async = Async.rejected(t);
+        }
+        CompletionStageUtil.whenDone(async, (r, t) -> {
+            if (t == null) {
+                complete(record);
+            } else {
+                retry(record, t);
+            }
+        });
+    }
+    
+    private void complete(final Record record) {
+        record.done = true;
+        final Record next;
+        synchronized (this) {
+            if (revoked) {
+                return;
+            }
+            final ArrayDeque<Record> queue = keys.get(record.record.key());
+            queue.pollFirst();
+            next = queue.peekFirst();
+            if (next == null) {
+                keys.remove(record.record.key());
+            }
+        }
+        if (next != null) {
+            executor.execute(() -> handle(next));
+        }
+    }
+    
+    private void retry(final Record record, final Throwable t) {
+        record.failureCount++;
+        LOG.error("Failed to process message (attempt {}) at offset {} of {}; not committed to Kafka.",
+            record.failureCount,
+            record.record.offset(),
+            partition,
+            t);
+        synchronized (this) {
+            if (revoked) {
+                return;
+            }
+        }
+        executor.schedule(() -> handle(record), retryDelay.applyAsLong(record.failureCount), TimeUnit.MILLISECONDS);
+    }
+    
+}
@@ -0,0 +1,111 @@
+package com.ixaris.commons.kafka.multitenancy;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.awaitility.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ixaris.commons.async.lib.FutureAsync;
+
+public final class KeyParallelPartitionTest {
+    
+    private static final TopicPartition PARTITION = new TopicPartition("topic", 0);
+    private static final Duration TIMEOUT = Duration.FIVE_SECONDS;
+    
+    private ScheduledExecutorService executor;
+    private final Map<Long, FutureAsync<Void>> pending = new ConcurrentHashMap<>();
+    private final List<Long> handled = new CopyOnWriteArrayList<>();
+    
+    @Before
+    public void setup() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+    
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    public void differentKeys_shouldProcessConcurrentlyAndCommitContiguousOffsets() {
+        final KeyParallelPartition partition = new KeyParallelPartition(PARTITION, this::handle, executor, f -> 10L);
+        partition.add(record(0L, "a"));
+        partition.add(record(1L, "b"));
+        partition.add(record(2L, "a"));
+        
+        waitUntilHandled(0L, 1L);
+        assertThat(handled).containsExactlyInAnyOrder(0L, 1L);
+        
+        // out of order completion should not move the watermark past an incomplete record
+        pending.get(1L).complete(null);
+        assertThat(partition.advanceWatermark()).isNull();
+        assertThat(partition.getUncommitted()).isEqualTo(3);
+        
+        pending.get(0L).complete(null);
+        waitUntilHandled(0L, 1L, 2L);
+        final OffsetAndMetadata offset = advanceWatermark(partition);
+        assertThat(offset.offset()).isEqualTo(2L);
+        assertThat(partition.getUncommitted()).isEqualTo(1);
+        
+        pending.get(2L).complete(null);
+        assertThat(advanceWatermark(partition).offset()).isEqualTo(3L);
+        assertThat(partition.getUncommitted()).isZero();
+    }
+    
+    @Test
+    public void sameKey_shouldProcessInOrderAndRetryFailures() {
+        final KeyParallelPartition partition = new KeyParallelPartition(PARTITION, this::handle, executor, f -> 10L);
+        partition.add(record(0L, "a"));
+        partition.add(record(1L, "a"));
+        
+        waitUntilHandled(0L);
+        pending.remove(0L).completeExceptionally(new IllegalStateException("failed"));
+        
+        // retried, and the next record with the same key is held back
+        await().atMost(TIMEOUT).until(() -> pending.containsKey(0L));
+        assertThat(handled).containsExactly(0L, 0L);
+        assertThat(partition.advanceWatermark()).isNull();
+        
+        pending.get(0L).complete(null);
+        waitUntilHandled(0L, 0L, 1L);
+        pending.get(1L).complete(null);
+        assertThat(advanceWatermark(partition).offset()).isEqualTo(2L);
+    }
+    
+    private FutureAsync<Void> handle(final String key, final byte[] message) {
+        final long offset = Long.parseLong(new String(message, UTF_8));
+        final FutureAsync<Void> future = new FutureAsync<>();
+        pending.put(offset, future);
+        handled.add(offset);
+        return future;
+    }
+    
+    private static ConsumerRecord<String, byte[]> record(final long offset, final String key) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, key, Long.toString(offset).getBytes(UTF_8));
+    }
+    
+    private void waitUntilHandled(final Long... offsets) {
+        await().atMost(TIMEOUT).until(() -> handled.size() >= offsets.length);
+        assertThat(handled).containsExactlyInAnyOrder(offsets);
+    }
+    
+    private static OffsetAndMetadata advanceWatermark(final KeyParallelPartition partition) {
+        return await().atMost(TIMEOUT).until(partition::advanceWatermark, Objects::nonNull);
+    }
+    
+}
@@ -0,0 +1,117 @@
+package com.ixaris.commons.kafka.multitenancy;
+
+import static com.ixaris.commons.misc.lib.object.Tuple.tuple;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.async.lib.AsyncExecutor;
+import com.ixaris.commons.kafka.multitenancy.KafkaSettings.PublishBatching;
+import com.ixaris.commons.kafka.test.TestKafkaCluster;
+
+public final class PublishBatchingTest {
+    
+    private static final long LONG_LINGER_MS = TimeUnit.MINUTES.toMillis(10L);
+    
+    private TestKafkaCluster kafka;
+    private KafkaConnection kafkaConnection;
+    
+    @After
+    public void teardown() {
+        if (kafkaConnection != null) {
+            kafkaConnection.stop();
+        }
+        if (kafka != null) {
+            kafka.stop();
+        }
+    }
+    
+    @Test
+    public void defaultBatching_shouldNotLinger() {
+        final KafkaSettings kafkaSettings = KafkaSettings.newBuilder()
+            .setUrl("localhost:9092")
+            .setMaxBlockMs(5000L)
+            .setTopicPublishBatching("linger", new PublishBatching(5L, 10))
+            .build();
+        
+        assertThat(kafkaSettings.getPublishBatching("topic").getLingerMs()).isZero();
+        assertThat(kafkaSettings.getPublishBatching("linger").getLingerMs()).isEqualTo(5L);
+        
+        // batching is only done per topic, the producer itself sends immediately
+        final Properties producerProperties = KafkaProducerHelper.producerProperties(kafkaSettings);
+        assertThat(producerProperties.getProperty(ProducerConfig.LINGER_MS_CONFIG)).isEqualTo("0");
+        assertThat(producerProperties.getProperty(ProducerConfig.MAX_BLOCK_MS_CONFIG)).isEqualTo("5000");
+        assertThat(producerProperties.getProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG)).isEqualTo("localhost:9092");
+    }
+    
+    @Test
+    public void linger_shouldFlushOnceLingerElapses() throws InterruptedException, ExecutionException, TimeoutException {
+        connect(new PublishBatching(500L, 100));
+        
+        final long start = System.nanoTime();
+        final Async<Void> published = kafkaConnection.publish("topic", 1L, "message".getBytes(UTF_8));
+        assertThat(published.toCompletableFuture().isDone()).isFalse();
+        
+        published.toCompletableFuture().get(1L, TimeUnit.MINUTES);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(500L);
+    }
+    
+    @Test
+    public void batchSize_shouldFlushWithoutWaitingForLinger() throws InterruptedException, ExecutionException, TimeoutException {
+        connect(new PublishBatching(LONG_LINGER_MS, 3));
+        
+        final Async<Void> first = kafkaConnection.publish("topic", 1L, "first".getBytes(UTF_8));
+        final List<Async<Void>> rest = kafkaConnection.publish("topic",
+            Arrays.asList(tuple(2L, "second".getBytes(UTF_8)), tuple(3L, "third".getBytes(UTF_8))));
+        
+        first.toCompletableFuture().get(1L, TimeUnit.MINUTES);
+        for (final Async<Void> published : rest) {
+            published.toCompletableFuture().get(1L, TimeUnit.MINUTES);
+        }
+    }
+    
+    @Test
+    public void shutdown_shouldSendLingeringMessages() throws InterruptedException, ExecutionException, TimeoutException {
+        connect(new PublishBatching(LONG_LINGER_MS, 100));
+        
+        final List<Async<Void>> published = kafkaConnection.publish("topic",
+            Collections.singletonList(tuple(1L, "message".getBytes(UTF_8))));
+        assertThat(published.get(0).toCompletableFuture().isDone()).isFalse();
+        
+        kafkaConnection.stop();
+        kafkaConnection = null;
+        
+        published.get(0).toCompletableFuture().get(1L, TimeUnit.MINUTES);
+    }
+    
+    private void connect(final PublishBatching publishBatching) {
+        kafka = new TestKafkaCluster();
+        kafka.start();
+        
+        final KafkaSettings kafkaSettings = KafkaSettings.newBuilder()
+            .setUrl(kafka.getKafkaHost() + ":" + kafka.getKafkaPort())
+            .setTopicPrefix("test")
+            .setPartitions((short) 1)
+            .setReplicationFactor((short) 1)
+            .setGroupId("testing")
+            .setMaxBlockMs(5000L)
+            .setAckTimeoutMs(5000L)
+            .setPublishBatching(publishBatching)
+            .build();
+        kafkaConnection = new KafkaConnection(AsyncExecutor.DEFAULT, kafkaSettings);
+        kafkaConnection.start();
+    }
+    
+}
@@ -27,6 +27,7 @@ import com.ixaris.commons.async.lib.AsyncExecutor;
 import com.ixaris.commons.clustering.lib.service.ClusterDispatchFilterFactory;
 import com.ixaris.commons.clustering.lib.service.ClusterHandleFilterFactory;
 import com.ixaris.commons.clustering.lib.service.DefaultShardAllocationStrategy;
+import com.ixaris.commons.clustering.lib.service.RendezvousShardAllocationStrategy;
 import com.ixaris.commons.microservices.lib.client.discovery.ServiceDiscovery;
 import com.ixaris.commons.microservices.lib.client.support.ServiceClientFilterFactory;
 import com.ixaris.commons.microservices.lib.common.ServiceHandlerStrategy;
@@ -177,8 +178,11 @@ public class LiveConfiguration {
     @Bean(destroyMethod = "shutdown")
     @ConditionalOnProperty(value = "local", matchIfMissing = true, havingValue = "false")
     public NettyBean nettyBean(@Value("${netty.start-port:" + DEFAULT_NETTY_START_PORT + "}") final int startPort,
-                               @Value("${netty.num-threads:1}") final int numThreads) {
-        return new NettyBean(numThreads, Localhost.HOSTNAME, startPort);
+                               @Value("${netty.num-threads:1}") final int numThreads,
+                               @Value("${netty.batch.linger-micros:0}") final long batchLingerMicros,
+                               @Value("${netty.batch.max-messages:64}") final int batchMaxMessages,
+                               @Value("${netty.batch.max-bytes:65536}") final int batchMaxBytes) {
+        return new NettyBean(numThreads, Localhost.HOSTNAME, startPort, batchLingerMicros, batchMaxMessages, batchMaxBytes);
     }
     
     @Bean
@@ -200,9 +204,10 @@ public class LiveConfiguration {
                                                                     final ZookeeperClusterRegistryHelperFactory clusterRegistryHelperFactory,
                                                                     final Executor executor,
                                                                     final Set<? extends ClusterDispatchFilterFactory> dispatchFilterFactories,
-                                                                    final Set<? extends ClusterHandleFilterFactory> handleFilterFactories) {
+                                                                    final Set<? extends ClusterHandleFilterFactory> handleFilterFactories,
+                                                                    @Value("${cluster.shard-allocation:default}") final String shardAllocation) {
         return new ZookeeperServiceRegistry(zookeeperServiceDiscoveryConnection,
-            new DefaultShardAllocationStrategy(72),
+            "rendezvous".equals(shardAllocation) ? new RendezvousShardAllocationStrategy(72) : new DefaultShardAllocationStrategy(72),
             executor,
             clusterRegistryHelperFactory,
             dispatchFilterFactories,
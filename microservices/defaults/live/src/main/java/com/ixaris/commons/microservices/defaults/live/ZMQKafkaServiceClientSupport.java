@@ -4,6 +4,7 @@ import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 
 import com.ixaris.commons.async.lib.filter.AsyncFilterNext;
+import com.ixaris.commons.async.lib.scheduler.HashedWheelTimer;
 import com.ixaris.commons.kafka.microservices.client.KafkaServiceClientSupport;
 import com.ixaris.commons.kafka.multitenancy.KafkaConnectionHandler;
 import com.ixaris.commons.microservices.lib.client.discovery.ServiceDiscovery;
@@ -41,7 +42,7 @@ public class ZMQKafkaServiceClientSupport extends ServiceClientSupport {
             serviceHandlerStrategy,
             serviceFilterFactories,
             localOperations);
-        zmqServiceOperationDispatcherRegistry = new ZMQServiceOperationDispatcherRegistry(executor, serviceDiscovery);
+        zmqServiceOperationDispatcherRegistry = new ZMQServiceOperationDispatcherRegistry(HashedWheelTimer.commonTimer(), serviceDiscovery);
         kafkaServiceClientSupport = new KafkaServiceClientSupport(executor, kafkaConnectionHandler);
     }
     
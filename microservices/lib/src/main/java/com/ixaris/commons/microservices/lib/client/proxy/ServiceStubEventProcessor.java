@@ -190,6 +190,7 @@ public final class ServiceStubEventProcessor<T extends ServiceStub> implements S
             return result(wrapError(eventEnvelope, new ClientTooManyRequestsException()));
         }
         
+        final ServiceEventAckWrapperImpl eventAckWrapper = new ServiceEventAckWrapperImpl(eventEnvelope);
         Async<Void> future;
         try {
             future = aroundAsync(header, intent, () -> listener.aroundAsync(() -> onEvent(listener, header, event)));
@@ -197,7 +198,6 @@ public final class ServiceStubEventProcessor<T extends ServiceStub> implements S
             future = Async.rejected(e);
         }
         
-        final ServiceEventAckWrapperImpl eventAckWrapper = new ServiceEventAckWrapperImpl(eventEnvelope);
         if (future != null) {
             try {
                 await(future);
@@ -279,6 +279,7 @@ public final class ServiceStubEventProcessor<T extends ServiceStub> implements S
         
         private final EventEnvelope eventEnvelope;
         private final AtomicBoolean used = new AtomicBoolean(false);
+        private final long startNanos = System.nanoTime();
         
         private ServiceEventAckWrapperImpl(final EventEnvelope eventEnvelope) {
             this.eventEnvelope = eventEnvelope;
@@ -287,7 +288,7 @@ public final class ServiceStubEventProcessor<T extends ServiceStub> implements S
         @Override
         public EventAckEnvelope success() {
             if (used.compareAndSet(false, true)) {
-                proxy.handlerStrategy.getRequestStrategy().finishMessage();
+                proxy.handlerStrategy.getRequestStrategy().finishMessage(System.nanoTime() - startNanos, false);
                 return newEventAckEnvelopeBuilder(eventEnvelope).setStatusCode(ResponseStatusCode.OK).build();
             } else {
                 throw new IllegalStateException("success() or error() already called");
@@ -298,7 +299,7 @@ public final class ServiceStubEventProcessor<T extends ServiceStub> implements S
         public EventAckEnvelope error(final Throwable t) {
             if (used.compareAndSet(false, true)) {
                 LOG.error("Event Ack error", t);
-                proxy.handlerStrategy.getRequestStrategy().finishMessage();
+                proxy.handlerStrategy.getRequestStrategy().finishMessage(System.nanoTime() - startNanos, t instanceof ServerTimeoutException);
                 final ServiceException ex = (t instanceof ServiceException)
                     ? (ServiceException) t : new ServerErrorException(t.getMessage());
                 return wrapError(eventEnvelope, ex);
@@ -1,5 +1,7 @@
 package com.ixaris.commons.microservices.lib.common;
 
+import java.util.concurrent.Executor;
+
 import com.ixaris.commons.async.reactive.RequestStrategy;
 import com.ixaris.commons.async.reactive.UnboundedRequestStrategy;
 import com.ixaris.commons.misc.lib.function.CallableThrows;
@@ -17,12 +19,26 @@ public interface ServiceHandlerStrategy {
     };
     
     /**
+     * The strategy is shared by all operations (or events) of the service, and is given the latency of each, so adaptive strategies such
+     * as {@link com.ixaris.commons.async.reactive.GradientRequestStrategy} can be used to size the concurrency limit from observed
+     * latency. The same instance should be returned on every call.
+     *
      * @return the request strategy for this service
      */
     default RequestStrategy getRequestStrategy() {
         return UnboundedRequestStrategy.getInstance();
     }
     
+    /**
+     * Operations are invoked on this executor if not null, e.g. a {@link com.ixaris.commons.multitenancy.lib.async.TenantFairExecutor} so
+     * that tenants share the service's threads fairly. Otherwise, operations are invoked on the thread that received them.
+     *
+     * @return the executor on which to invoke operations, or null
+     */
+    default Executor getExecutor() {
+        return null;
+    }
+    
     /**
      * Can perform some logic around (potentially) service operation and event invocation. This is typically used to set
      * data source unit used.
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -33,7 +34,9 @@ import com.google.protobuf.ProtocolStringList;
 import com.google.protobuf.util.JsonFormat;
 
 import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.async.lib.AsyncExecutor;
 import com.ixaris.commons.async.lib.AsyncLocal;
+import com.ixaris.commons.async.lib.CompletionStageCallableThrows;
 import com.ixaris.commons.async.lib.idempotency.Intent;
 import com.ixaris.commons.microservices.lib.common.Nil;
 import com.ixaris.commons.microservices.lib.common.ServiceHeader;
@@ -260,7 +263,7 @@ final class ServiceSkeletonOperationProcessor<T extends ServiceSkeleton> impleme
         return getClass().getSimpleName() + " for " + proxy.serviceSkeletonType;
     }
     
-    @SuppressWarnings({ "squid:S134", "checkstyle:com.puppycrawl.tools.checkstyle.checks.metrics.NPathComplexityCheck" })
+    @SuppressWarnings({ "unchecked", "squid:S134", "checkstyle:com.puppycrawl.tools.checkstyle.checks.metrics.NPathComplexityCheck" })
     Async<ResponseEnvelope> invokeOnResourceProxy(final RequestEnvelope requestEnvelope) {
         final List<String> path = requestEnvelope.getPathList();
         int paramIndex = 0;
@@ -314,24 +317,31 @@ final class ServiceSkeletonOperationProcessor<T extends ServiceSkeleton> impleme
             return result(wrapError(requestEnvelope, new ClientTooManyRequestsException()));
         }
         
+        final ServiceResponseWrapperImpl<?, ?> responseWrapper = new ServiceResponseWrapperImpl<>(requestEnvelope,
+            methodInfo.responseType,
+            methodInfo.conflictType);
+        final CompletionStageCallableThrows<Object, Throwable> invocation = () -> {
+            try {
+                if (request != null) {
+                    return aroundAsync(header,
+                        intent,
+                        () -> (Async<Object>) methodInfo.method.invoke(resource, header, request));
+                } else {
+                    return aroundAsync(header, intent, () -> (Async<Object>) methodInfo.method.invoke(resource, header));
+                }
+            } catch (final InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        
+        final Executor executor = proxy.handlerStrategy.getExecutor();
         Async<?> future;
         try {
-            if (request != null) {
-                future = aroundAsync(header,
-                    intent,
-                    () -> (Async<?>) methodInfo.method.invoke(resource, header, request));
-            } else {
-                future = aroundAsync(header, intent, () -> (Async<?>) methodInfo.method.invoke(resource, header));
-            }
-        } catch (final InvocationTargetException e) {
-            future = Async.rejected(e.getCause());
+            future = (executor != null) ? AsyncExecutor.exec(executor, invocation) : (Async<?>) invocation.call();
         } catch (final Throwable e) {
             future = Async.rejected(e);
         }
         
-        final ServiceResponseWrapperImpl<?, ?> responseWrapper = new ServiceResponseWrapperImpl<>(requestEnvelope,
-            methodInfo.responseType,
-            methodInfo.conflictType);
         if (future != null) {
             try {
                 return result(responseWrapper.result(await(future)));
@@ -515,6 +525,7 @@ final class ServiceSkeletonOperationProcessor<T extends ServiceSkeleton> impleme
         private final Class<R> responseType;
         private final Class<C> conflictType;
         private final AtomicBoolean used = new AtomicBoolean(false);
+        private final long startNanos = System.nanoTime();
         
         /**
          * @param responseType the response class or null if the type is Nil
@@ -535,7 +546,7 @@ final class ServiceSkeletonOperationProcessor<T extends ServiceSkeleton> impleme
                 throw new IllegalStateException("result(), conflict() or error() already called");
             }
             
-            proxy.handlerStrategy.getRequestStrategy().finishMessage();
+            proxy.handlerStrategy.getRequestStrategy().finishMessage(System.nanoTime() - startNanos, false);
             if (responseType != null) {
                 try {
                     if (result == null) {
@@ -553,8 +564,7 @@ final class ServiceSkeletonOperationProcessor<T extends ServiceSkeleton> impleme
                     final MessageLite resultMessage = (MessageLite) result;
                     final MessageValidation validation = MessageValidator.validate(resultMessage);
                     if (!validation.getInvalid()) {
-                        final ByteString payload = !requestEnvelope.getJsonPayload()
-                            ? resultMessage.toByteString() : ByteString.copyFromUtf8(MessageHelper.json(resultMessage));
+                        final ByteString payload = MessageHelper.bytes(resultMessage, requestEnvelope.getJsonPayload());
                         return newResponseEnvelopeBuilder(requestEnvelope)
                             .setStatusCode(ResponseStatusCode.OK)
                             .setPayload(payload)
@@ -581,7 +591,7 @@ final class ServiceSkeletonOperationProcessor<T extends ServiceSkeleton> impleme
                 throw new IllegalStateException("result(), conflict() or error() already called");
             }
             
-            proxy.handlerStrategy.getRequestStrategy().finishMessage();
+            proxy.handlerStrategy.getRequestStrategy().finishMessage(System.nanoTime() - startNanos, false);
             if (conflictType != null) {
                 try {
                     if (conflict == null) {
@@ -599,9 +609,7 @@ final class ServiceSkeletonOperationProcessor<T extends ServiceSkeleton> impleme
                     final MessageLite conflictMessage = (MessageLite) conflict;
                     final MessageValidation validation = MessageValidator.validate(conflictMessage);
                     if (!validation.getInvalid()) {
-                        final ByteString payload = !requestEnvelope.getJsonPayload()
-                            ? conflictMessage.toByteString()
-                            : ByteString.copyFromUtf8(MessageHelper.json(conflictMessage));
+                        final ByteString payload = MessageHelper.bytes(conflictMessage, requestEnvelope.getJsonPayload());
                         
                         return newResponseEnvelopeBuilder(requestEnvelope)
                             .setStatusCode(ResponseStatusCode.CLIENT_CONFLICT)
@@ -629,7 +637,7 @@ final class ServiceSkeletonOperationProcessor<T extends ServiceSkeleton> impleme
         @Override
         public ResponseEnvelope error(final Throwable t) {
             if (used.compareAndSet(false, true)) {
-                proxy.handlerStrategy.getRequestStrategy().finishMessage();
+                proxy.handlerStrategy.getRequestStrategy().finishMessage(System.nanoTime() - startNanos, t instanceof ServerTimeoutException);
                 ServiceException ex;
                 try {
                     ex = proxy.serviceExceptionTranslator.apply(t);
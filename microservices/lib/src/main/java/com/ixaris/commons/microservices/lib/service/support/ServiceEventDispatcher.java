@@ -1,5 +1,8 @@
 package com.ixaris.commons.microservices.lib.service.support;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.microservices.lib.proto.CommonsMicroservicesLib.EventAckEnvelope;
 import com.ixaris.commons.microservices.lib.proto.CommonsMicroservicesLib.EventEnvelope;
@@ -13,4 +16,14 @@ public interface ServiceEventDispatcher {
     
     Async<EventAckEnvelope> dispatch(EventEnvelope eventEnvelope);
     
+    /**
+     * Dispatch many events at once. Implementations may send the events together, which is more efficient than
+     * dispatching each event separately.
+     *
+     * @return the acknowledgement of each event, in the same order as the events
+     */
+    default List<Async<EventAckEnvelope>> dispatch(final List<EventEnvelope> eventEnvelopes) {
+        return eventEnvelopes.stream().map(this::dispatch).collect(Collectors.toList());
+    }
+    
 }
@@ -8,12 +8,16 @@ import static com.ixaris.commons.microservices.lib.common.ServiceLoggingHelper.K
 import static com.ixaris.commons.microservices.lib.common.ServiceLoggingHelper.KEY_SERVICE_KEY;
 import static com.ixaris.commons.microservices.lib.common.ServiceLoggingHelper.KEY_SERVICE_NAME;
 import static com.ixaris.commons.microservices.lib.service.ServiceOperation.extractCorrelation;
+import static com.ixaris.commons.misc.lib.object.Tuple.tuple;
 import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -27,8 +31,10 @@ import com.newrelic.api.agent.Token;
 import com.newrelic.api.agent.Trace;
 
 import com.ixaris.commons.async.lib.Async;
+import com.ixaris.commons.async.lib.AsyncExecutor;
 import com.ixaris.commons.async.lib.AsyncLocal;
 import com.ixaris.commons.async.lib.CompletionStageUtil;
+import com.ixaris.commons.async.lib.FutureAsync;
 import com.ixaris.commons.async.lib.filter.AsyncFilterChain;
 import com.ixaris.commons.async.lib.filter.AsyncFilterNext;
 import com.ixaris.commons.microservices.lib.client.ServiceStubEvent;
@@ -48,7 +54,9 @@ import com.ixaris.commons.microservices.lib.service.ServiceSkeleton;
 import com.ixaris.commons.microservices.lib.service.ServiceSkeletonOperation;
 import com.ixaris.commons.microservices.lib.service.discovery.ServiceRegistry;
 import com.ixaris.commons.microservices.lib.service.proxy.ServiceSkeletonProxy;
+import com.ixaris.commons.misc.lib.function.CallableThrows;
 import com.ixaris.commons.misc.lib.object.Ordered;
+import com.ixaris.commons.misc.lib.object.Tuple2;
 import com.ixaris.commons.multitenancy.lib.MultiTenancy;
 
 public abstract class ServiceSupport {
@@ -57,6 +65,68 @@ public abstract class ServiceSupport {
     
     private static final Logger LOG = LoggerFactory.getLogger(ServiceSupport.class);
     
+    private static final AsyncLocal<EventDispatchBatch> EVENT_DISPATCH_BATCH = new AsyncLocal<>("event_dispatch_batch");
+    
+    /**
+     * Events reaching their dispatcher while a batch is open, collected per dispatcher
+     */
+    private static final class EventDispatchBatch {
+        
+        private final Map<ServiceEventDispatcher, List<Tuple2<EventEnvelope, FutureAsync<EventAckEnvelope>>>> pending = new LinkedHashMap<>();
+        private boolean closed;
+        
+        /**
+         * @return the acknowledgement of the event, or null if the batch is closed, in which case the event should be
+         *     dispatched on its own
+         */
+        private synchronized Async<EventAckEnvelope> add(final ServiceEventDispatcher dispatcher, final EventEnvelope eventEnvelope) {
+            if (closed) {
+                return null;
+            }
+            final FutureAsync<EventAckEnvelope> future = new FutureAsync<>();
+            pending.computeIfAbsent(dispatcher, k -> new ArrayList<>()).add(tuple(eventEnvelope, future));
+            return future;
+        }
+        
+        private void dispatch() {
+            synchronized (this) {
+                closed = true;
+            }
+            for (final Entry<ServiceEventDispatcher, List<Tuple2<EventEnvelope, FutureAsync<EventAckEnvelope>>>> entry : pending.entrySet()) {
+                final List<Tuple2<EventEnvelope, FutureAsync<EventAckEnvelope>>> events = entry.getValue();
+                final List<EventEnvelope> eventEnvelopes = new ArrayList<>(events.size());
+                for (final Tuple2<EventEnvelope, FutureAsync<EventAckEnvelope>> event : events) {
+                    eventEnvelopes.add(event.get1());
+                }
+                List<Async<EventAckEnvelope>> acks;
+                try {
+                    acks = entry.getKey().dispatch(eventEnvelopes);
+                } catch (final RuntimeException e) {
+                    acks = Collections.nCopies(events.size(), Async.rejected(e));
+                }
+                for (int i = 0; i < events.size(); i++) {
+                    CompletionStageUtil.whenDone(acks.get(i), AsyncExecutor.relayConsumer(events.get(i).get2()));
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * Events published by the given task, and reaching their dispatcher while the task executes, are dispatched
+     * together once the task returns using {@link ServiceEventDispatcher#dispatch(List)}, e.g. when draining a backlog
+     * of stored events. Events reaching their dispatcher later, e.g. following an asynchronous filter, are dispatched on
+     * their own.
+     */
+    public static <V, E extends Exception> V dispatchEventsTogether(final CallableThrows<V, E> task) throws E {
+        final EventDispatchBatch batch = new EventDispatchBatch();
+        try {
+            return EVENT_DISPATCH_BATCH.exec(batch, task);
+        } finally {
+            batch.dispatch();
+        }
+    }
+    
     private final MultiTenancy multiTenancy;
     private final ServiceRegistry serviceRegistry;
     private final ServiceSecurityChecker serviceSecurityChecker;
@@ -232,7 +302,9 @@ public abstract class ServiceSupport {
     private Async<EventAckEnvelope> dispatch(final EventEnvelope in, final ServiceEventDispatcher dispatcher) {
         Segment segment = NewRelic.getAgent().getTransaction().startSegment("dispatch_event");
         
-        final Async<EventAckEnvelope> f = dispatcher.dispatch(in);
+        final EventDispatchBatch batch = EVENT_DISPATCH_BATCH.get();
+        final Async<EventAckEnvelope> batched = (batch != null) ? batch.add(dispatcher, in) : null;
+        final Async<EventAckEnvelope> f = (batched != null) ? batched : dispatcher.dispatch(in);
         
         CompletionStageUtil.whenDone(f, (r, t) -> segment.end());
         
@@ -8,6 +8,7 @@ import com.google.protobuf.MessageLiteOrBuilder;
 
 import com.ixaris.commons.microservices.secrets.CertificateLoader;
 import com.ixaris.commons.misc.lib.conversion.Base64Util;
+import com.ixaris.commons.misc.lib.sensitivedata.CryptoPrimitives;
 import com.ixaris.commons.protobuf.lib.MessageHelper;
 
 /**
@@ -30,9 +31,10 @@ public final class ObjectSigner {
         }
         
         try {
-            final Signature rsa = Signature.getInstance(signatureConfig.getSignatureAlgorithm());
+            final byte[] fingerprint = Long.toString(MessageHelper.fingerprint(object)).getBytes(StandardCharsets.UTF_8);
+            final Signature rsa = CryptoPrimitives.signature(signatureConfig.getSignatureAlgorithm());
             rsa.initSign(privateKey);
-            rsa.update(Long.toString(MessageHelper.fingerprint(object)).getBytes(StandardCharsets.UTF_8));
+            rsa.update(fingerprint);
             final byte[] signature = rsa.sign();
             return Base64Util.encode(signature);
         } catch (Exception e) {
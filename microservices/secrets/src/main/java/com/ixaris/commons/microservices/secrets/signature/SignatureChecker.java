@@ -11,6 +11,7 @@ import com.google.protobuf.MessageLiteOrBuilder;
 
 import com.ixaris.commons.microservices.secrets.CertificateLoader;
 import com.ixaris.commons.misc.lib.conversion.Base64Util;
+import com.ixaris.commons.misc.lib.sensitivedata.CryptoPrimitives;
 import com.ixaris.commons.protobuf.lib.MessageHelper;
 
 /**
@@ -47,9 +48,10 @@ public class SignatureChecker {
         }
         
         try {
-            final Signature rsa = Signature.getInstance(signatureConfig.getSignatureAlgorithm());
+            final byte[] fingerprint = Long.toString(MessageHelper.fingerprint(object)).getBytes(StandardCharsets.UTF_8);
+            final Signature rsa = CryptoPrimitives.signature(signatureConfig.getSignatureAlgorithm());
             rsa.initVerify(publicCertificate.getPublicKey());
-            rsa.update(Long.toString(MessageHelper.fingerprint(object)).getBytes(StandardCharsets.UTF_8));
+            rsa.update(fingerprint);
             return rsa.verify(Base64Util.decode(signature));
         } catch (final Exception e) {
             LOG.error("An error occurred while signing a subject", e);
@@ -19,7 +19,6 @@ import com.ixaris.commons.microservices.lib.service.support.ServiceLoggingFilter
 import com.ixaris.commons.microservices.lib.service.support.ServiceOperationClusterRouteHandlerFactory;
 import com.ixaris.commons.microservices.lib.service.support.ServiceSupport;
 import com.ixaris.commons.multitenancy.lib.async.ExecutorMultiTenantAtLeastOnceProcessorFactory;
-import com.ixaris.commons.multitenancy.lib.async.MultiTenantAtLeastOnceProcessorFactory;
 
 @Configuration
 public class MicroservicesConfig {
@@ -46,9 +45,10 @@ public class MicroservicesConfig {
             Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("BaseExecutor-")));
     }
     
-    @Bean
-    public MultiTenantAtLeastOnceProcessorFactory multiTenantAtLeastOnceProcessorFactory(final ScheduledExecutorService executor) {
-        return new ExecutorMultiTenantAtLeastOnceProcessorFactory(executor);
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorMultiTenantAtLeastOnceProcessorFactory multiTenantAtLeastOnceProcessorFactory(final ScheduledExecutorService executor,
+                                                                                                 final ClusterRegistry clusterRegistry) {
+        return new ExecutorMultiTenantAtLeastOnceProcessorFactory(executor, clusterRegistry);
     }
     
     @Bean
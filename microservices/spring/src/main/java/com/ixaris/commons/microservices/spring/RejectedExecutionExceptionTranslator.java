@@ -0,0 +1,23 @@
+package com.ixaris.commons.microservices.spring;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.stereotype.Component;
+
+import com.ixaris.commons.microservices.lib.common.exception.ClientTooManyRequestsException;
+import com.ixaris.commons.microservices.lib.common.exception.ServiceException;
+import com.ixaris.commons.microservices.lib.service.support.ServiceExceptionTranslator;
+
+/**
+ * Work rejected by a saturated executor, e.g. a transaction rejected because the transaction queue of the tenant is
+ * full, is reported as too many requests, so that clients back off and retry
+ */
+@Component
+public class RejectedExecutionExceptionTranslator implements ServiceExceptionTranslator<RejectedExecutionException> {
+    
+    @Override
+    public ServiceException translate(final RejectedExecutionException e) {
+        return new ClientTooManyRequestsException(e);
+    }
+    
+}
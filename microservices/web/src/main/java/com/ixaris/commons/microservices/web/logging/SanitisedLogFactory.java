@@ -32,6 +32,10 @@ public class SanitisedLogFactory {
     }
     
     private String transformSensitiveMessage(final Message message) {
+        if (!SensitiveMessageHelper.hasSensitiveFields(message.getDescriptorForType())) {
+            return MessageHelper.json(message);
+        }
+        
         final Builder builder = SensitiveMessageHelper.mapSensitiveFields(
             message.toBuilder(),
             this::transformSensitiveData,
@@ -15,9 +15,23 @@ public class StackWalker {
      * was found (due to incorrect target, wrong skip count or use of JNI).
      */
     public static String findCaller(final Predicate<String> target, final int skip) {
+        return findCaller(target, skip + 1, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Returns the stack trace element of the immediate caller of the specified class, looking at a bounded number of
+     * frames. Frames are walked lazily, so bounding the frames bounds the cost for deep stacks.
+     *
+     * @param target the target class whose callers we are looking for.
+     * @param maxFrames the maximum number of frames to look at after the skipped frames
+     * @return the stack trace element representing the immediate caller of the specified class, or null if no caller
+     * was found within maxFrames
+     */
+    public static String findCaller(final Predicate<String> target, final int skip, final int maxFrames) {
         Objects.requireNonNull(target);
         return java.lang.StackWalker.getInstance().walk(s -> s
             .skip((long) skip + 1L)
+            .limit(maxFrames)
             .filter(f -> target.test(f.getClassName()))
             .findFirst()
             .map(f -> f.getClassName() + '#' + f.getMethodName())
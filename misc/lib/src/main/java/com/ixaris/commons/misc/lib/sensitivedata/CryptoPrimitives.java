@@ -0,0 +1,224 @@
+package com.ixaris.commons.misc.lib.sensitivedata;
+
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cache of crypto primitives, since looking up an implementation from the providers on every operation is expensive.
+ * {@link Cipher}, {@link Mac}, {@link Signature} and {@link MessageDigest} instances are confined to the calling thread
+ * and keyed by algorithm and provider (null for the default provider), so the returned instances should only be used
+ * by the calling thread, and not be held across calls that may use the same primitive, e.g. while streaming. Macs are
+ * also kept initialised with the last key used, so computing macs with the same key skips initialisation.
+ *
+ * <p>Random bytes, e.g. IVs, are generated using one of a number of {@link SecureRandom} instances, chosen by thread,
+ * rather than a single instance shared (and contended) by all threads.
+ */
+public final class CryptoPrimitives {
+    
+    private static final class MacHolder {
+        
+        private final Mac mac;
+        private byte[] key;
+        
+        private MacHolder(final Mac mac) {
+            this.mac = mac;
+        }
+        
+    }
+    
+    private static final class Primitives {
+        
+        private final Map<String, Cipher> ciphers = new HashMap<>();
+        private final Map<String, MacHolder> macs = new HashMap<>();
+        private final Map<String, Signature> signatures = new HashMap<>();
+        private final Map<String, MessageDigest> messageDigests = new HashMap<>();
+        
+    }
+    
+    private static final ThreadLocal<Primitives> PRIMITIVES = ThreadLocal.withInitial(Primitives::new);
+    
+    private static final SecureRandom[] SECURE_RANDOMS = createSecureRandoms();
+    
+    private static SecureRandom[] createSecureRandoms() {
+        // power of 2 so that a stripe is selected by masking the thread id
+        final int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        final SecureRandom[] secureRandoms = new SecureRandom[stripes];
+        for (int i = 0; i < stripes; i++) {
+            secureRandoms[i] = createSecureRandom();
+        }
+        return secureRandoms;
+    }
+    
+    private static SecureRandom createSecureRandom() {
+        try {
+            // unlike the default NativePRNG, whose instances share the same synchronized source, DRBG instances are
+            // independently seeded and synchronized
+            return SecureRandom.getInstance("DRBG");
+        } catch (final NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+    
+    /**
+     * @param transformation the algorithm, mode and padding, e.g. AES/GCM/NoPadding
+     * @return a cipher confined to the calling thread, to be initialised before use
+     */
+    public static Cipher cipher(final String transformation) {
+        return cipher(transformation, null);
+    }
+    
+    /**
+     * @param transformation the algorithm, mode and padding, e.g. AES/GCM/NoPadding
+     * @param provider the provider, or null for the default provider
+     * @return a cipher confined to the calling thread, to be initialised before use
+     */
+    public static Cipher cipher(final String transformation, final String provider) {
+        final Map<String, Cipher> ciphers = PRIMITIVES.get().ciphers;
+        final String key = key(transformation, provider);
+        Cipher cipher = ciphers.get(key);
+        if (cipher == null) {
+            cipher = createCipher(transformation, provider);
+            ciphers.put(key, cipher);
+        }
+        return cipher;
+    }
+    
+    /**
+     * @return a mac confined to the calling thread, initialised with the given key
+     */
+    public static Mac mac(final String algorithm, final byte[] key) {
+        return mac(algorithm, null, key);
+    }
+    
+    /**
+     * @param provider the provider, or null for the default provider
+     * @return a mac confined to the calling thread, initialised with the given key
+     */
+    public static Mac mac(final String algorithm, final String provider, final byte[] key) {
+        final Map<String, MacHolder> macs = PRIMITIVES.get().macs;
+        final String holderKey = key(algorithm, provider);
+        MacHolder holder = macs.get(holderKey);
+        if (holder == null) {
+            holder = new MacHolder(createMac(algorithm, provider));
+            macs.put(holderKey, holder);
+        }
+        
+        if ((holder.key == null) || !MessageDigest.isEqual(holder.key, key)) {
+            holder.key = null;
+            try {
+                holder.mac.init(new SecretKeySpec(key, algorithm));
+            } catch (final InvalidKeyException e) {
+                throw new IllegalStateException(e);
+            }
+            holder.key = key.clone();
+        } else {
+            // discard any data left over from an interrupted computation
+            holder.mac.reset();
+        }
+        return holder.mac;
+    }
+    
+    /**
+     * @return a signature confined to the calling thread, to be initialised for signing or verification before use
+     */
+    public static Signature signature(final String algorithm) {
+        return signature(algorithm, null);
+    }
+    
+    /**
+     * @param provider the provider, or null for the default provider
+     * @return a signature confined to the calling thread, to be initialised for signing or verification before use
+     */
+    public static Signature signature(final String algorithm, final String provider) {
+        final Map<String, Signature> signatures = PRIMITIVES.get().signatures;
+        final String key = key(algorithm, provider);
+        Signature signature = signatures.get(key);
+        if (signature == null) {
+            try {
+                signature = provider == null ? Signature.getInstance(algorithm) : Signature.getInstance(algorithm, provider);
+            } catch (final NoSuchAlgorithmException | NoSuchProviderException e) {
+                throw new UnsupportedOperationException(e);
+            }
+            signatures.put(key, signature);
+        }
+        return signature;
+    }
+    
+    /**
+     * @return a reset message digest confined to the calling thread
+     */
+    public static MessageDigest messageDigest(final String algorithm) {
+        return messageDigest(algorithm, null);
+    }
+    
+    /**
+     * @param provider the provider, or null for the default provider
+     * @return a reset message digest confined to the calling thread
+     */
+    public static MessageDigest messageDigest(final String algorithm, final String provider) {
+        final Map<String, MessageDigest> messageDigests = PRIMITIVES.get().messageDigests;
+        final String key = key(algorithm, provider);
+        MessageDigest messageDigest = messageDigests.get(key);
+        if (messageDigest == null) {
+            try {
+                messageDigest = provider == null ? MessageDigest.getInstance(algorithm) : MessageDigest.getInstance(algorithm, provider);
+            } catch (final NoSuchAlgorithmException | NoSuchProviderException e) {
+                throw new UnsupportedOperationException(e);
+            }
+            messageDigests.put(key, messageDigest);
+        } else {
+            messageDigest.reset();
+        }
+        return messageDigest;
+    }
+    
+    /**
+     * @return a secure random shared by a subset of threads
+     */
+    public static SecureRandom secureRandom() {
+        return SECURE_RANDOMS[(int) Thread.currentThread().getId() & (SECURE_RANDOMS.length - 1)];
+    }
+    
+    public static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        secureRandom().nextBytes(bytes);
+        return bytes;
+    }
+    
+    /**
+     * @return a new cipher, not confined to the calling thread
+     */
+    static Cipher createCipher(final String transformation, final String provider) {
+        try {
+            return provider == null ? Cipher.getInstance(transformation) : Cipher.getInstance(transformation, provider);
+        } catch (final NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+    
+    private static Mac createMac(final String algorithm, final String provider) {
+        try {
+            return provider == null ? Mac.getInstance(algorithm) : Mac.getInstance(algorithm, provider);
+        } catch (final NoSuchAlgorithmException | NoSuchProviderException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+    
+    private static String key(final String algorithm, final String provider) {
+        return provider == null ? algorithm : algorithm + '@' + provider;
+    }
+    
+    private CryptoPrimitives() {}
+    
+}
@@ -6,35 +6,33 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.ixaris.commons.misc.lib.conversion.Base64Util;
 
+/**
+ * Encryption utilities. Encryption and decryption of byte arrays and strings use ciphers confined to the calling thread
+ * (see {@link CryptoPrimitives}), while streams use a new cipher, since the cipher is in use until the stream is
+ * consumed.
+ */
 public class CryptoUtil {
     
     private static final int GCM_AUTHENTICATION_TAG_LENGTH = 128;
     private static final int GCM_IV_LENGTH = 12;
     
-    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
-    
+    /**
+     * @return a new cipher, not confined to the calling thread
+     */
     public static Cipher createCipher(final String algorithm, final String modeAndPadding) {
-        try {
-            // get an INSTANCE of cipher
-            return Cipher.getInstance(algorithm + modeAndPadding);
-        } catch (final NoSuchAlgorithmException | NoSuchPaddingException e) {
-            throw new UnsupportedOperationException(e);
-        }
+        return CryptoPrimitives.createCipher(algorithm + modeAndPadding, null);
     }
     
     /**
@@ -100,12 +98,23 @@ public class CryptoUtil {
      * @return the decrypted string
      */
     public static byte[] decrypt(final byte[] data, final byte[] key, final String algorithm, final String modeAndPadding) {
+        return decrypt(data, new SecretKeySpec(key, algorithm), modeAndPadding);
+    }
+    
+    /**
+     * Decrypt service, for keys used repeatedly
+     *
+     * @param data the data (byte array) to be decrypted
+     * @param keySpec key to decryption, including the decryption algorithm for transformation
+     * @param modeAndPadding mode and padding for transformation
+     * @return the decrypted data
+     */
+    public static byte[] decrypt(final byte[] data, final SecretKeySpec keySpec, final String modeAndPadding) {
         if (data == null) {
             return new byte[] {};
         }
         try {
-            final Cipher cipher = createCipher(algorithm, modeAndPadding);
-            final SecretKeySpec keySpec = new SecretKeySpec(key, algorithm);
+            final Cipher cipher = CryptoPrimitives.cipher(keySpec.getAlgorithm() + modeAndPadding);
             final int offset = initCipherForDecryptionAndGetOffset(cipher, keySpec, data);
             return cipher.doFinal(data, offset, data.length - offset);
         } catch (final IllegalBlockSizeException | BadPaddingException e) {
@@ -173,12 +182,23 @@ public class CryptoUtil {
      * @return the encrypted data as a btye array
      */
     public static byte[] encrypt(final byte[] data, final byte[] key, final String algorithm, final String modeAndPadding) {
+        return encrypt(data, new SecretKeySpec(key, algorithm), modeAndPadding);
+    }
+    
+    /**
+     * Encrypt service, for keys used repeatedly
+     *
+     * @param data the data to be encrypted
+     * @param keySpec key to encryption, including the encryption algorithm for transformation
+     * @param modeAndPadding either empty string or string starting with /
+     * @return the encrypted data as a byte array
+     */
+    public static byte[] encrypt(final byte[] data, final SecretKeySpec keySpec, final String modeAndPadding) {
         if (data == null) {
             return new byte[] {};
         }
         try {
-            final Cipher cipher = createCipher(algorithm, modeAndPadding);
-            final SecretKeySpec keySpec = new SecretKeySpec(key, algorithm);
+            final Cipher cipher = CryptoPrimitives.cipher(keySpec.getAlgorithm() + modeAndPadding);
             final byte[] iv = initCipherForEncryptionAndGenerateIvIfRequired(cipher, keySpec);
             final byte[] encrypted = cipher.doFinal(data);
             if (iv != null) {
@@ -242,9 +262,8 @@ public class CryptoUtil {
     }
     
     private static byte[] generateIv(final int length) {
-        final byte[] iv = new byte[length]; // For GCM, use a 12 byte (not 16) random byte-array, as recommended by NIST
-        SECURE_RANDOM.nextBytes(iv); // NEVER REUSE THIS IV WITH SAME KEY
-        return iv;
+        // For GCM, use a 12 byte (not 16) random byte-array, as recommended by NIST
+        return CryptoPrimitives.randomBytes(length); // NEVER REUSE THIS IV WITH SAME KEY
     }
     
     private static byte[] extractIv(byte[] data) {
@@ -5,16 +5,12 @@
 package com.ixaris.commons.misc.lib.sensitivedata;
 
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 
 import com.ixaris.commons.misc.lib.conversion.Base64Util;
 
 /**
- * Message Authentication Code utilities - used for strong integrity checks.
+ * Message Authentication Code utilities - used for strong integrity checks. Macs are confined to the calling thread and
+ * kept initialised with the last key used (see {@link CryptoPrimitives}).
  */
 public final class MacUtil {
     
@@ -47,20 +43,8 @@ public final class MacUtil {
             return null;
         }
         
-        try {
-            // initialise mac key
-            final SecretKeySpec secretKeySpec = new SecretKeySpec(key, algorithm);
-            
-            // generate MAC of the data
-            final Mac mac = Mac.getInstance(algorithm);
-            mac.init(secretKeySpec);
-            return mac.doFinal(data);
-            
-        } catch (InvalidKeyException e) {
-            throw new IllegalStateException(e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new UnsupportedOperationException(e);
-        }
+        // generate MAC of the data
+        return CryptoPrimitives.mac(algorithm, key).doFinal(data);
     }
     
     /**
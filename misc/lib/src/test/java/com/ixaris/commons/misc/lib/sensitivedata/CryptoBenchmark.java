@@ -0,0 +1,116 @@
+package com.ixaris.commons.misc.lib.sensitivedata;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares AES-GCM encryption / decryption and HMAC throughput using the cached primitives with looking up the
+ * primitives and generating the IV using a single shared secure random on every operation, across many threads.
+ *
+ * <p>Run {@link #main(String[])}, optionally changing the number of threads using -t.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class CryptoBenchmark {
+    
+    private static final SecureRandom SHARED_SECURE_RANDOM = new SecureRandom();
+    
+    @State(Scope.Benchmark)
+    public static class Data {
+        
+        private byte[] aesKey;
+        private SecretKeySpec aesKeySpec;
+        private byte[] macKey;
+        private byte[] data;
+        private byte[] encrypted;
+        
+        @Setup
+        public void setup() {
+            aesKey = CryptoPrimitives.randomBytes(16);
+            aesKeySpec = new SecretKeySpec(aesKey, "AES");
+            macKey = CryptoPrimitives.randomBytes(64);
+            data = "{\"cardNumber\":\"4111111111111111\",\"email\":\"somerandomlongemail@somelongerdomain.com\"}"
+                .getBytes(StandardCharsets.UTF_8);
+            encrypted = CryptoUtil.encrypt(data, aesKey, "AES", "/GCM/NoPadding");
+        }
+        
+    }
+    
+    @Benchmark
+    public byte[] gcmEncrypt(final Data data) {
+        return CryptoUtil.encrypt(data.data, data.aesKey, "AES", "/GCM/NoPadding");
+    }
+    
+    @Benchmark
+    public byte[] gcmEncryptKeySpec(final Data data) {
+        return CryptoUtil.encrypt(data.data, data.aesKeySpec, "/GCM/NoPadding");
+    }
+    
+    @Benchmark
+    public byte[] gcmEncryptUncached(final Data data) throws Exception {
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        final byte[] iv = new byte[12];
+        SHARED_SECURE_RANDOM.nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(data.aesKey, "AES"), new GCMParameterSpec(128, iv));
+        return cipher.doFinal(data.data);
+    }
+    
+    @Benchmark
+    public byte[] gcmDecrypt(final Data data) {
+        return CryptoUtil.decrypt(data.encrypted, data.aesKey, "AES", "/GCM/NoPadding");
+    }
+    
+    @Benchmark
+    public byte[] gcmDecryptUncached(final Data data) throws Exception {
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        final int ivLength = data.encrypted[0];
+        cipher.init(Cipher.DECRYPT_MODE,
+            new SecretKeySpec(data.aesKey, "AES"),
+            new GCMParameterSpec(128, data.encrypted, 1, ivLength));
+        return cipher.doFinal(data.encrypted, ivLength + 1, data.encrypted.length - ivLength - 1);
+    }
+    
+    @Benchmark
+    public byte[] hmac(final Data data) {
+        return MacUtil.getInstance().mac(data.data, data.macKey);
+    }
+    
+    @Benchmark
+    public byte[] hmacUncached(final Data data) throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA512");
+        mac.init(new SecretKeySpec(data.macKey, "HmacSHA512"));
+        return mac.doFinal(data.data);
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(CryptoBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+    
+}
@@ -0,0 +1,82 @@
+package com.ixaris.commons.misc.lib.sensitivedata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+
+import org.junit.Test;
+
+public class CryptoPrimitivesTest {
+    
+    private static final byte[] DATA = "somerandomlongemail@somelongerdomain.com".getBytes(StandardCharsets.UTF_8);
+    
+    @Test
+    public void cipher_sameInstanceWithinThread() throws Exception {
+        final Cipher cipher = CryptoPrimitives.cipher("AES/GCM/NoPadding");
+        assertThat(CryptoPrimitives.cipher("AES/GCM/NoPadding")).isSameAs(cipher);
+        assertThat(CryptoPrimitives.cipher("AES/CBC/PKCS5Padding")).isNotSameAs(cipher);
+        
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Cipher> otherThreadCipher = executor.submit(() -> CryptoPrimitives.cipher("AES/GCM/NoPadding"));
+            assertThat(otherThreadCipher.get()).isNotSameAs(cipher);
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void mac_reinitialisedWhenKeyChanges() {
+        final byte[] key1 = CryptoPrimitives.randomBytes(32);
+        final byte[] key2 = CryptoPrimitives.randomBytes(32);
+        
+        final byte[] mac1 = MacUtil.getInstance().mac(DATA, key1);
+        final byte[] mac2 = MacUtil.getInstance().mac(DATA, key2);
+        
+        assertThat(mac2).isNotEqualTo(mac1);
+        assertThat(MacUtil.getInstance().mac(DATA, key1)).isEqualTo(mac1);
+        assertThat(MacUtil.getInstance().mac(DATA, key1.clone())).isEqualTo(mac1);
+    }
+    
+    @Test
+    public void mac_interruptedComputationDiscarded() {
+        final byte[] key = CryptoPrimitives.randomBytes(32);
+        final byte[] mac = MacUtil.getInstance().mac(DATA, key);
+        
+        final Mac interrupted = CryptoPrimitives.mac("HmacSHA512", key);
+        interrupted.update(DATA);
+        
+        assertThat(MacUtil.getInstance().mac(DATA, key)).isEqualTo(mac);
+    }
+    
+    @Test
+    public void encrypt_decryptAfterFailedDecryption() {
+        final byte[] key = CryptoPrimitives.randomBytes(16);
+        final byte[] encrypted = CryptoUtil.encrypt(DATA, key, "AES", "/GCM/NoPadding");
+        final byte[] tampered = encrypted.clone();
+        tampered[tampered.length - 1] ^= 1;
+        
+        assertThatThrownBy(() -> CryptoUtil.decrypt(tampered, key, "AES", "/GCM/NoPadding")).isInstanceOf(IllegalStateException.class);
+        
+        assertThat(CryptoUtil.decrypt(encrypted, key, "AES", "/GCM/NoPadding")).isEqualTo(DATA);
+    }
+    
+    @Test
+    public void encrypt_uniqueIvs() {
+        final byte[] key = CryptoPrimitives.randomBytes(16);
+        final byte[] encrypted1 = CryptoUtil.encrypt(DATA, key, "AES", "/GCM/NoPadding");
+        final byte[] encrypted2 = CryptoUtil.encrypt(DATA, key, "AES", "/GCM/NoPadding");
+        
+        assertThat(encrypted2).isNotEqualTo(encrypted1);
+        assertThat(CryptoUtil.decrypt(encrypted1, key, "AES", "/GCM/NoPadding")).isEqualTo(DATA);
+        assertThat(CryptoUtil.decrypt(encrypted2, key, "AES", "/GCM/NoPadding")).isEqualTo(DATA);
+    }
+    
+}
@@ -87,4 +87,11 @@ public abstract class AbstractTenantAwareAtLeastOnceMessageType<T> implements At
         }
     }
     
+    protected void pollNow(final int shard) {
+        final MultiTenantAtLeastOnceProcessor processor = processors.get(DATA_UNIT.get());
+        if (processor != null) {
+            processor.pollNow(shard);
+        }
+    }
+    
 }
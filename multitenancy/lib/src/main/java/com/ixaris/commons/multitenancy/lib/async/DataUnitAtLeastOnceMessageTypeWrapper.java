@@ -2,6 +2,8 @@ package com.ixaris.commons.multitenancy.lib.async;
 
 import static com.ixaris.commons.multitenancy.lib.data.DataUnit.DATA_UNIT;
 
+import java.util.List;
+
 import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.clustering.lib.idempotency.AtLeastOnceMessageType;
 import com.ixaris.commons.clustering.lib.idempotency.PendingMessages;
@@ -37,4 +39,15 @@ public class DataUnitAtLeastOnceMessageTypeWrapper<T> implements AtLeastOnceMess
         return DATA_UNIT.exec(unit, () -> wrapped.processMessage(pendingMessage, nextRetryTimeFunction));
     }
     
+    @Override
+    public boolean isBatchProcessing() {
+        return wrapped.isBatchProcessing();
+    }
+    
+    @Override
+    public Async<Void> processMessages(final List<StoredPendingMessage<T>> pendingMessages,
+                                       final NextRetryTimeFunction nextRetryTimeFunction) {
+        return DATA_UNIT.exec(unit, () -> wrapped.processMessages(pendingMessages, nextRetryTimeFunction));
+    }
+    
 }
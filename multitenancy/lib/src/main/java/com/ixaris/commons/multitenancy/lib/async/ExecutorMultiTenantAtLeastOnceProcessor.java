@@ -15,6 +15,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -61,9 +62,16 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
     
     private static final Logger LOG = LoggerFactory.getLogger(ExecutorMultiTenantAtLeastOnceProcessor.class);
     
+    /**
+     * When woken up across the cluster, the poll interval is doubled for every consecutive empty poll, up to
+     * refreshInterval * 2^MAX_IDLE_BACKOFF_SHIFT
+     */
+    private static final int MAX_IDLE_BACKOFF_SHIFT = 2;
+    
     private final AtLeastOnceMessageType<T> messageType;
     private final long refreshInterval;
     private final ScheduledExecutorService executor;
+    private final ExecutorMultiTenantAtLeastOnceProcessorFactory cluster;
     
     private final AtomicBoolean active = new AtomicBoolean(true);
     private final Set<String> tenants = new HashSet<>();
@@ -71,10 +79,12 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
     
     ExecutorMultiTenantAtLeastOnceProcessor(final AtLeastOnceMessageType<T> messageType,
                                             final long refreshInterval,
-                                            final ScheduledExecutorService executor) {
+                                            final ScheduledExecutorService executor,
+                                            final ExecutorMultiTenantAtLeastOnceProcessorFactory cluster) {
         this.messageType = messageType;
         this.refreshInterval = refreshInterval;
         this.executor = executor;
+        this.cluster = cluster;
     }
     
     @Override
@@ -97,10 +107,21 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
     
     @Override
     public void pollNow() {
-        if (active.get()) {
+        pollTenant(TENANT.get());
+    }
+    
+    /**
+     * If the shard is owned by another node, the processor on that node is woken up instead. Wakeups for the same
+     * tenant and shard are coalesced into a single broadcast until it is sent.
+     */
+    @Override
+    public void pollNow(final int shard) {
+        if ((cluster == null) || cluster.isShardLocal(shard)) {
+            pollNow();
+        } else if (active.get()) {
             final TenantProcessor processor = processors.get(TENANT.get());
             if (processor != null) {
-                processor.pollNow();
+                processor.remotePollNow(shard);
             }
         }
     }
@@ -111,6 +132,26 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
             for (final String tenantId : tenants) {
                 stopTenant(tenantId);
             }
+            if (cluster != null) {
+                cluster.remove(this);
+            }
+        }
+    }
+    
+    void pollTenant(final String tenantId) {
+        if (active.get()) {
+            final TenantProcessor processor = processors.get(tenantId);
+            if (processor != null) {
+                processor.pollNow();
+            }
+        }
+    }
+    
+    synchronized void pollAll() {
+        if (active.get()) {
+            for (final String tenantId : tenants) {
+                Optional.ofNullable(processors.get(tenantId)).ifPresent(TenantProcessor::pollNow);
+            }
         }
     }
     
@@ -150,6 +191,9 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
         
         private final String tenant;
         private final AtomicReference<Poll> poll;
+        private final Set<Integer> remotePollsPending = ConcurrentHashMap.newKeySet();
+        // only accessed while polling, which is never concurrent
+        private int idlePolls = 0;
         
         private TenantProcessor(final String tenant) {
             this.tenant = tenant;
@@ -168,6 +212,15 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
             poll(true);
         }
         
+        public void remotePollNow(final int shard) {
+            if (remotePollsPending.add(shard)) {
+                executor.execute(() -> {
+                    remotePollsPending.remove(shard);
+                    cluster.broadcastPollNow(messageType.getKey(), tenant, shard);
+                });
+            }
+        }
+        
         public void scheduledPoll() {
             poll(false);
         }
@@ -199,7 +252,7 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
                     }
                 }
                 
-                final ScheduledFuture<?> pollSchedule = executor.schedule(this::scheduledPoll, refreshInterval, TimeUnit.MILLISECONDS);
+                final ScheduledFuture<?> pollSchedule = executor.schedule(this::scheduledPoll, nextPollDelay(), TimeUnit.MILLISECONDS);
                 final Poll updatedPoll = this.poll.updateAndGet(p -> (p.active && (p.state == WAITING))
                     ? new Poll(true, WAITING, pollSchedule) : p);
                 if (updatedPoll.schedule == null) {
@@ -217,7 +270,10 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
             try {
                 final PendingMessages<T> pending = await(messageType.pending(now));
                 if (!pending.getMessages().isEmpty()) {
+                    idlePolls = 0;
                     await(processMessages(pending.getMessages(), this::exponentialBackoff));
+                } else if (idlePolls < MAX_IDLE_BACKOFF_SHIFT) {
+                    idlePolls++;
                 }
                 done = !pending.isMorePending();
             } catch (final Throwable t) {
@@ -234,6 +290,14 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
             return result(done);
         }
         
+        /**
+         * Without cluster wide wakeups, messages stored on other nodes are only picked up by polling, so the interval
+         * is only extended when wakeups are pushed from any node
+         */
+        private long nextPollDelay() {
+            return (cluster == null) ? refreshInterval : (refreshInterval << idlePolls);
+        }
+        
         private long exponentialBackoff(final int failureCount) {
             return System.currentTimeMillis() + (refreshInterval * failureCount * failureCount) - (refreshInterval / 2);
         }
@@ -252,6 +316,17 @@ public final class ExecutorMultiTenantAtLeastOnceProcessor<T> implements MultiTe
         
         private Async<Void> processKeyMessages(final List<StoredPendingMessage<T>> messages,
                                                final NextRetryTimeFunction nextRetryTimeFunction) {
+            if (messageType.isBatchProcessing()) {
+                LOG.debug("Processing batch of {} messages of type {}", messages.size(), messageType.getKey());
+                try {
+                    await(messageType.processMessages(messages, nextRetryTimeFunction));
+                    LOG.debug("Done processing batch of {} messages of type {}", messages.size(), messageType.getKey());
+                } catch (final RuntimeException e) {
+                    LOG.error("Error processing batch of {} messages of type {}", messages.size(), messageType.getKey(), e);
+                }
+                return result();
+            }
+            
             for (final StoredPendingMessage<T> message : messages) {
                 LOG.debug("Processing {} of type {}", message, messageType.getKey());
                 try {
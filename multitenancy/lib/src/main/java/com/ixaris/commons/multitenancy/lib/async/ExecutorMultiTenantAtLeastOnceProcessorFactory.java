@@ -1,39 +1,158 @@
 package com.ixaris.commons.multitenancy.lib.async;
 
+import static com.ixaris.commons.async.lib.Async.result;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
+import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.async.lib.executor.AsyncScheduledExecutorServiceWrapper;
 import com.ixaris.commons.async.lib.thread.NamedThreadFactory;
+import com.ixaris.commons.clustering.lib.CommonsClusteringLib.AtLeastOncePollNow;
 import com.ixaris.commons.clustering.lib.idempotency.AtLeastOnceMessageType;
+import com.ixaris.commons.clustering.lib.service.ClusterBroadcastHandler;
+import com.ixaris.commons.clustering.lib.service.ClusterRegistry;
+import com.ixaris.commons.clustering.lib.service.ClusterShardsChangeListener;
+import com.ixaris.commons.collections.lib.BitSet;
+import com.ixaris.commons.collections.lib.BitSetIterator;
 import com.ixaris.commons.misc.lib.object.Wrapper;
 import com.ixaris.commons.multitenancy.lib.MultiTenancy;
 
+/**
+ * When created with a cluster registry, processors are woken up across the cluster: a poll triggered for a shard owned
+ * by another node is broadcast, and only the owning node polls. Processors also poll when this node acquires shards.
+ * Since pending messages are then pushed, processors back off polling while idle.
+ */
 public class ExecutorMultiTenantAtLeastOnceProcessorFactory implements MultiTenantAtLeastOnceProcessorFactory {
     
+    private static final String POLL_NOW_KEY = "at_least_once_poll_now";
+    
     private static ScheduledExecutorService createScheduledExecutorService(int size) {
         return Executors.newScheduledThreadPool(size,
             new NamedThreadFactory("ExecutorMultiTenantAtLeastOnceProcessorFactory-"));
     }
     
+    private final class PollNowHandler implements ClusterBroadcastHandler<AtLeastOncePollNow> {
+        
+        @Override
+        public String getKey() {
+            return POLL_NOW_KEY;
+        }
+        
+        @Override
+        public Async<Boolean> handle(final AtLeastOncePollNow message) {
+            if (isShardLocal(message.getShard())) {
+                final ExecutorMultiTenantAtLeastOnceProcessor<?> processor = processors.get(message.getType());
+                if (processor != null) {
+                    processor.pollTenant(message.getTenantId());
+                }
+            }
+            return result(true);
+        }
+        
+    }
+    
     private final ScheduledExecutorService executor;
+    private final boolean ownExecutor;
+    private final ClusterRegistry clusterRegistry;
+    private final Map<String, ExecutorMultiTenantAtLeastOnceProcessor<?>> processors = new ConcurrentHashMap<>();
+    private final PollNowHandler pollNowHandler = new PollNowHandler();
+    private final ClusterShardsChangeListener shardsChangeListener = this::onShardsChanged;
     
     public ExecutorMultiTenantAtLeastOnceProcessorFactory(final int size) {
-        this(createScheduledExecutorService(size));
+        this(size, null);
     }
     
     public ExecutorMultiTenantAtLeastOnceProcessorFactory(final ScheduledExecutorService executor) {
+        this(executor, null);
+    }
+    
+    /**
+     * The executor created for the given size is shut down by {@link #shutdown()}
+     */
+    public ExecutorMultiTenantAtLeastOnceProcessorFactory(final int size, final ClusterRegistry clusterRegistry) {
+        this(createScheduledExecutorService(size), true, clusterRegistry);
+    }
+    
+    /**
+     * @param executor the executor used to poll and process messages, which is not shut down by {@link #shutdown()}
+     * @param clusterRegistry the cluster registry used to wake up processors on other nodes, or null if not clustered
+     */
+    public ExecutorMultiTenantAtLeastOnceProcessorFactory(final ScheduledExecutorService executor, final ClusterRegistry clusterRegistry) {
+        this(executor, false, clusterRegistry);
+    }
+    
+    private ExecutorMultiTenantAtLeastOnceProcessorFactory(final ScheduledExecutorService executor,
+                                                           final boolean ownExecutor,
+                                                           final ClusterRegistry clusterRegistry) {
         if (executor == null) {
             throw new IllegalArgumentException("executor is null");
         }
         
         this.executor = Wrapper.isWrappedBy(executor, AsyncScheduledExecutorServiceWrapper.class)
             ? executor : new AsyncScheduledExecutorServiceWrapper<>(false, executor);
+        this.ownExecutor = ownExecutor;
+        this.clusterRegistry = clusterRegistry;
+        
+        if (clusterRegistry != null) {
+            clusterRegistry.register(pollNowHandler);
+            clusterRegistry.addShardsListener(shardsChangeListener);
+        }
     }
     
     @Override
     public ExecutorMultiTenantAtLeastOnceProcessor<?> create(final AtLeastOnceMessageType<?> messageType, final long refreshInterval) {
-        return new ExecutorMultiTenantAtLeastOnceProcessor<>(messageType, refreshInterval, executor);
+        final ExecutorMultiTenantAtLeastOnceProcessor<?> processor = new ExecutorMultiTenantAtLeastOnceProcessor<>(messageType,
+            refreshInterval,
+            executor,
+            (clusterRegistry != null) ? this : null);
+        if (clusterRegistry != null) {
+            processors.put(messageType.getKey(), processor);
+        }
+        return processor;
+    }
+    
+    /**
+     * Stops waking up processors across the cluster, and shuts down the executor if created by this factory
+     */
+    public void shutdown() {
+        if (clusterRegistry != null) {
+            clusterRegistry.removeShardsListener(shardsChangeListener);
+            clusterRegistry.deregister(pollNowHandler);
+        }
+        processors.clear();
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+    
+    boolean isShardLocal(final int shard) {
+        return clusterRegistry.getNodeInfo().getShards().contains(shard);
+    }
+    
+    void broadcastPollNow(final String type, final String tenantId, final int shard) {
+        clusterRegistry.broadcast(pollNowHandler,
+            AtLeastOncePollNow.newBuilder()
+                .setType(type)
+                .setTenantId(tenantId)
+                .setShard(shard)
+                .build());
+    }
+    
+    void remove(final ExecutorMultiTenantAtLeastOnceProcessor<?> processor) {
+        processors.values().remove(processor);
+    }
+    
+    private void onShardsChanged(final BitSet oldShards, final BitSet newShards) {
+        // messages stored for newly acquired shards may have been waiting for the previous owner
+        for (final BitSetIterator i = newShards.iterator(); i.hasNext();) {
+            if (!oldShards.contains(i.next())) {
+                processors.values().forEach(ExecutorMultiTenantAtLeastOnceProcessor::pollAll);
+                return;
+            }
+        }
     }
     
 }
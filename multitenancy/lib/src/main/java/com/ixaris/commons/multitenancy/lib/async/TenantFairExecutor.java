@@ -0,0 +1,427 @@
+package com.ixaris.commons.multitenancy.lib.async;
+
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.SYSTEM_TENANT;
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor that shares a delegate executor fairly between tenants, so that a burst of work for one tenant does not delay the work of every
+ * other tenant behind it in a single FIFO queue. Tasks are queued per tenant (the tenant active when the task is submitted, or the system
+ * tenant if none) and at most parallelism tasks are handed to the delegate at a time, picked using deficit round robin: in every round, a
+ * tenant may start as many tasks as its weight. A tenant may also be capped to a maximum number of concurrently running tasks, and to a maximum
+ * number of queued tasks, beyond which tasks are rejected with a {@link RejectedExecutionException} rather than queued.
+ *
+ * <p>Wrap this executor with an {@link com.ixaris.commons.async.lib.executor.AsyncExecutorWrapper} so that asynchronous tasks relay back to it,
+ * e.g. when used with {@link com.ixaris.commons.async.lib.AsyncExecutor#exec(Executor, com.ixaris.commons.async.lib.CompletionStageCallableThrows)}.
+ * Parallelism should match the number of threads of the delegate, otherwise tasks queue up in the delegate instead.
+ */
+public final class TenantFairExecutor implements Executor {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(TenantFairExecutor.class);
+    
+    /**
+     * Snapshot of the statistics of a tenant
+     */
+    public static final class TenantStats {
+        
+        private final int queueDepth;
+        private final int running;
+        private final long executed;
+        private final long rejected;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        
+        private TenantStats(final int queueDepth,
+                            final int running,
+                            final long executed,
+                            final long rejected,
+                            final long totalWaitNanos,
+                            final long maxWaitNanos) {
+            this.queueDepth = queueDepth;
+            this.running = running;
+            this.executed = executed;
+            this.rejected = rejected;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+        
+        /**
+         * @return the number of tasks waiting to be started
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+        
+        /**
+         * @return the number of tasks handed to the delegate and not yet completed
+         */
+        public int getRunning() {
+            return running;
+        }
+        
+        /**
+         * @return the number of tasks started since created
+         */
+        public long getExecuted() {
+            return executed;
+        }
+        
+        /**
+         * @return the number of tasks rejected because the queue was full since created
+         */
+        public long getRejected() {
+            return rejected;
+        }
+        
+        /**
+         * @return the average time tasks waited in the queue before being started
+         */
+        public long getAverageWait(final TimeUnit unit) {
+            return (executed == 0L) ? 0L : unit.convert(totalWaitNanos / executed, TimeUnit.NANOSECONDS);
+        }
+        
+        /**
+         * @return the maximum time a task waited in the queue before being started
+         */
+        public long getMaxWait(final TimeUnit unit) {
+            return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+        }
+        
+        @Override
+        public String toString() {
+            return "queueDepth=" + queueDepth
+                + " running=" + running
+                + " executed=" + executed
+                + " rejected=" + rejected
+                + " averageWaitMs=" + getAverageWait(TimeUnit.MILLISECONDS)
+                + " maxWaitMs=" + getMaxWait(TimeUnit.MILLISECONDS);
+        }
+        
+    }
+    
+    private static final class Task {
+        
+        private final Runnable runnable;
+        private final long enqueuedNanos;
+        
+        private Task(final Runnable runnable, final long enqueuedNanos) {
+            this.runnable = runnable;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+        
+    }
+    
+    /**
+     * Guarded by the executor
+     */
+    private static final class TenantQueue {
+        
+        private final String tenantId;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private boolean active = false;
+        private int deficit = 0;
+        private int running = 0;
+        private long executed = 0L;
+        private long rejected = 0L;
+        private long totalWaitNanos = 0L;
+        private long maxWaitNanos = 0L;
+        
+        private TenantQueue(final String tenantId) {
+            this.tenantId = tenantId;
+        }
+        
+    }
+    
+    private static final class Dispatched {
+        
+        private final TenantQueue queue;
+        private final Task task;
+        private final long waitNanos;
+        
+        private Dispatched(final TenantQueue queue, final Task task, final long waitNanos) {
+            this.queue = queue;
+            this.task = task;
+            this.waitNanos = waitNanos;
+        }
+        
+    }
+    
+    private final Executor delegate;
+    private final int parallelism;
+    private final int defaultWeight;
+    private final int defaultMaxConcurrent;
+    private final int defaultMaxQueued;
+    private final Map<String, Integer> weights = new ConcurrentHashMap<>();
+    private final Map<String, Integer> maxConcurrent = new ConcurrentHashMap<>();
+    private final Map<String, Integer> maxQueued = new ConcurrentHashMap<>();
+    
+    // guarded by this
+    private final Map<String, TenantQueue> queues = new HashMap<>();
+    private final ArrayDeque<TenantQueue> activeQueues = new ArrayDeque<>();
+    private int running = 0;
+    
+    public TenantFairExecutor(final Executor delegate, final int parallelism) {
+        this(delegate, parallelism, 1, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * @param delegate the executor that runs the tasks
+     * @param parallelism the maximum number of tasks handed to the delegate at a time
+     * @param defaultWeight the number of tasks a tenant may start per round, unless configured for the tenant
+     * @param defaultMaxConcurrent the maximum number of concurrently running tasks of a tenant, unless configured for the tenant
+     */
+    public TenantFairExecutor(final Executor delegate, final int parallelism, final int defaultWeight, final int defaultMaxConcurrent) {
+        this(delegate, parallelism, defaultWeight, defaultMaxConcurrent, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * @param delegate the executor that runs the tasks
+     * @param parallelism the maximum number of tasks handed to the delegate at a time
+     * @param defaultWeight the number of tasks a tenant may start per round, unless configured for the tenant
+     * @param defaultMaxConcurrent the maximum number of concurrently running tasks of a tenant, unless configured for the tenant
+     * @param defaultMaxQueued the maximum number of queued tasks of a tenant, unless configured for the tenant
+     */
+    public TenantFairExecutor(final Executor delegate,
+                              final int parallelism,
+                              final int defaultWeight,
+                              final int defaultMaxConcurrent,
+                              final int defaultMaxQueued) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate is null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism should be positive");
+        }
+        if (defaultWeight < 1) {
+            throw new IllegalArgumentException("defaultWeight should be positive");
+        }
+        if (defaultMaxConcurrent < 1) {
+            throw new IllegalArgumentException("defaultMaxConcurrent should be positive");
+        }
+        if (defaultMaxQueued < 1) {
+            throw new IllegalArgumentException("defaultMaxQueued should be positive");
+        }
+        
+        this.delegate = delegate;
+        this.parallelism = parallelism;
+        this.defaultWeight = defaultWeight;
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+        this.defaultMaxQueued = defaultMaxQueued;
+    }
+    
+    public void setWeight(final String tenantId, final int weight) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId is null");
+        }
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight should be positive");
+        }
+        
+        weights.put(tenantId, weight);
+    }
+    
+    public void setMaxConcurrent(final String tenantId, final int max) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId is null");
+        }
+        if (max < 1) {
+            throw new IllegalArgumentException("max should be positive");
+        }
+        
+        maxConcurrent.put(tenantId, max);
+        final List<Dispatched> dispatched;
+        synchronized (this) {
+            // raising the cap may allow queued tasks to start
+            final TenantQueue queue = queues.get(tenantId);
+            if (queue != null) {
+                activate(queue);
+            }
+            dispatched = dispatch();
+        }
+        submit(dispatched);
+    }
+    
+    public void setMaxQueued(final String tenantId, final int max) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId is null");
+        }
+        if (max < 1) {
+            throw new IllegalArgumentException("max should be positive");
+        }
+        
+        maxQueued.put(tenantId, max);
+    }
+    
+    /**
+     * @throws RejectedExecutionException if the queue of the tenant is full
+     */
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new IllegalArgumentException("command is null");
+        }
+        
+        final String tenantId = TENANT.get();
+        final Task task = new Task(command, System.nanoTime());
+        final List<Dispatched> dispatched;
+        synchronized (this) {
+            final TenantQueue queue = queues.computeIfAbsent((tenantId != null) ? tenantId : SYSTEM_TENANT, TenantQueue::new);
+            if (queue.tasks.size() >= maxQueued.getOrDefault(queue.tenantId, defaultMaxQueued)) {
+                queue.rejected++;
+                throw new RejectedExecutionException("Queue of tenant [" + queue.tenantId + "] is full");
+            }
+            queue.tasks.addLast(task);
+            activate(queue);
+            dispatched = dispatch();
+        }
+        submit(dispatched);
+    }
+    
+    /**
+     * @return the statistics of the given tenant, or null if no tasks were submitted for the tenant
+     */
+    public synchronized TenantStats getStats(final String tenantId) {
+        final TenantQueue queue = queues.get(tenantId);
+        return (queue != null) ? stats(queue) : null;
+    }
+    
+    /**
+     * @return the statistics of all tenants for which tasks were submitted
+     */
+    public synchronized Map<String, TenantStats> getStats() {
+        final Map<String, TenantStats> stats = new HashMap<>();
+        for (final TenantQueue queue : queues.values()) {
+            stats.put(queue.tenantId, stats(queue));
+        }
+        return stats;
+    }
+    
+    /**
+     * @return the number of tasks handed to the delegate and not yet completed, across tenants
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+    
+    private static TenantStats stats(final TenantQueue queue) {
+        return new TenantStats(queue.tasks.size(), queue.running, queue.executed, queue.rejected, queue.totalWaitNanos, queue.maxWaitNanos);
+    }
+    
+    private int getMaxConcurrent(final TenantQueue queue) {
+        return maxConcurrent.getOrDefault(queue.tenantId, defaultMaxConcurrent);
+    }
+    
+    /**
+     * Adds the queue to the round if it has queued tasks and is below its cap. Guarded by this.
+     */
+    private void activate(final TenantQueue queue) {
+        if (!queue.active && !queue.tasks.isEmpty() && (queue.running < getMaxConcurrent(queue))) {
+            queue.active = true;
+            activeQueues.addLast(queue);
+        }
+    }
+    
+    /**
+     * Picks queued tasks to hand to the delegate while below parallelism. Guarded by this; the tasks are handed to the delegate by
+     * {@link #submit(List)} outside the lock, since the delegate may run them on the calling thread.
+     */
+    private List<Dispatched> dispatch() {
+        List<Dispatched> dispatched = Collections.emptyList();
+        while ((running < parallelism) && !activeQueues.isEmpty()) {
+            final TenantQueue queue = activeQueues.peekFirst();
+            if (queue.running >= getMaxConcurrent(queue)) {
+                // cap lowered since activated
+                deactivate(queue);
+                continue;
+            }
+            if (queue.deficit <= 0) {
+                queue.deficit += weights.getOrDefault(queue.tenantId, defaultWeight);
+            }
+            
+            final Task task = queue.tasks.pollFirst();
+            final long wait = System.nanoTime() - task.enqueuedNanos;
+            queue.deficit--;
+            queue.running++;
+            running++;
+            queue.executed++;
+            queue.totalWaitNanos += wait;
+            if (wait > queue.maxWaitNanos) {
+                queue.maxWaitNanos = wait;
+            }
+            if (dispatched.isEmpty()) {
+                dispatched = new ArrayList<>(2);
+            }
+            dispatched.add(new Dispatched(queue, task, wait));
+            
+            if (queue.tasks.isEmpty() || (queue.running >= getMaxConcurrent(queue))) {
+                // re-activated when a task is submitted or completes
+                deactivate(queue);
+            } else if (queue.deficit <= 0) {
+                // quantum used up, next tenant's turn
+                activeQueues.addLast(activeQueues.pollFirst());
+            }
+        }
+        return dispatched;
+    }
+    
+    /**
+     * Removes the queue at the head of the round. Guarded by this.
+     */
+    private void deactivate(final TenantQueue queue) {
+        activeQueues.pollFirst();
+        queue.active = false;
+        if (queue.tasks.isEmpty()) {
+            // an idle tenant does not keep its deficit
+            queue.deficit = 0;
+        }
+    }
+    
+    private void submit(final List<Dispatched> dispatched) {
+        for (final Dispatched d : dispatched) {
+            try {
+                delegate.execute(() -> run(d.queue, d.task.runnable));
+            } catch (final RejectedExecutionException e) {
+                // retried when the next task is submitted or completes
+                LOG.error("Delegate rejected task for tenant [{}]", d.queue.tenantId, e);
+                synchronized (this) {
+                    d.queue.tasks.addFirst(d.task);
+                    d.queue.executed--;
+                    d.queue.running--;
+                    running--;
+                    // the max wait is not reverted; the task keeps its enqueued time, so it waits longer once started
+                    d.queue.totalWaitNanos -= d.waitNanos;
+                    activate(d.queue);
+                }
+            }
+        }
+    }
+    
+    private void run(final TenantQueue queue, final Runnable runnable) {
+        try {
+            runnable.run();
+        } finally {
+            final List<Dispatched> dispatched;
+            synchronized (this) {
+                queue.running--;
+                running--;
+                activate(queue);
+                dispatched = dispatch();
+            }
+            submit(dispatched);
+        }
+    }
+    
+}
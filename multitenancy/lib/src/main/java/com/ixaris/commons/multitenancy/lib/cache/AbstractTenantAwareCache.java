@@ -11,6 +11,7 @@ import javax.annotation.PreDestroy;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
 
 import com.ixaris.commons.misc.lib.object.EqualsUtil;
 import com.ixaris.commons.multitenancy.lib.MultiTenancy;
@@ -98,7 +99,12 @@ public abstract class AbstractTenantAwareCache<K extends TenantKey, V> implement
     
     public AbstractTenantAwareCache(final MultiTenancy multiTenancy, final int maxSize, final long expireAfterWriteMillis) {
         this.multiTenancy = multiTenancy;
-        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(Duration.of(expireAfterWriteMillis, ChronoUnit.MILLIS)).build();
+        this.cache = CacheBuilder
+            .newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.of(expireAfterWriteMillis, ChronoUnit.MILLIS))
+            .removalListener(this::onRemoval)
+            .build();
     }
     
     @PostConstruct
@@ -160,4 +166,15 @@ public abstract class AbstractTenantAwareCache<K extends TenantKey, V> implement
     
     protected void preRemove(final K key, final V value) {}
     
+    /**
+     * Called when an entry is evicted because of size or expiry, as opposed to invalidated or replaced
+     */
+    protected void postEvict(final K key, final V value) {}
+    
+    private void onRemoval(final RemovalNotification<K, V> notification) {
+        if (notification.wasEvicted()) {
+            postEvict(notification.getKey(), notification.getValue());
+        }
+    }
+    
 }
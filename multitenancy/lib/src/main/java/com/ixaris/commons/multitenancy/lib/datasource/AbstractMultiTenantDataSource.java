@@ -9,9 +9,13 @@ import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.IntSupplier;
 import java.util.function.Supplier;
 
 import javax.sql.DataSource;
@@ -35,19 +39,50 @@ public abstract class AbstractMultiTenantDataSource extends AbstractEagerMultiTe
     public static final String USER_KEY = "user";
     public static final String PASSWORD_KEY = "password"; // NOSONAR: this isn't a hardcoded password!
     
+    /**
+     * Sets the catalog of the current tenant on connections obtained from the shared data source. The catalog last set
+     * on each pooled connection is tracked, so setting the catalog, which costs a round trip to the database, is
+     * skipped when the connection is already on the right catalog, e.g. when a connection is reused by the same tenant.
+     * This relies on the catalog of connections being changed only through this data source, and on the pool not
+     * resetting the catalog when connections are returned to the pool (i.e. no default catalog configured).
+     *
+     * <p>Pools do not let callers pick a connection, so when the connection obtained is on another catalog and the pool
+     * reports idle connections (see {@link AbstractMultiTenantDataSource#getIdleConnections(DataSource)}), a few more
+     * connections are borrowed looking for one already on the right catalog. Borrowing an idle connection does not go
+     * to the database, unlike setting the catalog. The connections skipped are returned to the pool.
+     */
     protected static final class DataSourceWithSetCatalog extends DataSourceWrapper {
         
+        private static final int MAX_CATALOG_AFFINITY_BORROWS = 2;
+        
         private final Supplier<String> schemaNameSupplier;
+        private final Map<Connection, String> connectionCatalogs;
+        private final IntSupplier idleConnectionsSupplier;
         
-        private DataSourceWithSetCatalog(final DataSource dataSource, final Supplier<String> schemaNameProducer) {
+        private DataSourceWithSetCatalog(final DataSource dataSource,
+                                         final Supplier<String> schemaNameProducer,
+                                         final Map<Connection, String> connectionCatalogs,
+                                         final IntSupplier idleConnectionsSupplier) {
             super(dataSource);
             this.schemaNameSupplier = schemaNameProducer;
+            this.connectionCatalogs = connectionCatalogs;
+            this.idleConnectionsSupplier = idleConnectionsSupplier;
         }
         
         @Override
         public Connection getConnection() throws SQLException {
-            final Connection connection = super.getConnection();
-            connection.setCatalog(getSchemaName());
+            final String schemaName = getSchemaName();
+            Connection connection = super.getConnection();
+            if (!schemaName.equals(connectionCatalogs.get(unwrapPhysical(connection)))) {
+                connection = preferConnectionOnCatalog(connection, schemaName);
+            }
+            final Connection physicalConnection = unwrapPhysical(connection);
+            if (!schemaName.equals(connectionCatalogs.get(physicalConnection))) {
+                // forget the tracked catalog first, in case setting the catalog fails midway
+                connectionCatalogs.remove(physicalConnection);
+                connection.setCatalog(schemaName);
+                connectionCatalogs.put(physicalConnection, schemaName);
+            }
             return connection;
         }
         
@@ -65,11 +100,62 @@ public abstract class AbstractMultiTenantDataSource extends AbstractEagerMultiTe
             return schemaNameSupplier.get();
         }
         
+        private Connection preferConnectionOnCatalog(final Connection connection, final String schemaName) throws SQLException {
+            if (!connectionCatalogs.containsValue(schemaName)) {
+                // no pooled connection is on the catalog, so setting it cannot be avoided
+                return connection;
+            }
+            
+            Connection candidate = connection;
+            final List<Connection> skipped = new ArrayList<>(MAX_CATALOG_AFFINITY_BORROWS);
+            try {
+                // only borrow while the pool has idle connections, so that borrowing does not wait for a connection
+                for (int i = 0; (i < MAX_CATALOG_AFFINITY_BORROWS) && (idleConnectionsSupplier.getAsInt() > 0); i++) {
+                    final Connection next;
+                    try {
+                        next = super.getConnection();
+                    } catch (final SQLException e) {
+                        // keep the connection at hand and set the catalog on it instead
+                        break;
+                    }
+                    skipped.add(candidate);
+                    candidate = next;
+                    if (schemaName.equals(connectionCatalogs.get(unwrapPhysical(candidate)))) {
+                        break;
+                    }
+                }
+            } finally {
+                for (final Connection skippedConnection : skipped) {
+                    closeQuietly(skippedConnection);
+                }
+            }
+            return candidate;
+        }
+        
+        /**
+         * Pools hand out a different proxy every time a pooled connection is obtained, so the catalog is tracked
+         * against the underlying connection.
+         */
+        private static Connection unwrapPhysical(final Connection connection) throws SQLException {
+            final Connection physicalConnection = connection.isWrapperFor(Connection.class) ? connection.unwrap(Connection.class) : null;
+            return physicalConnection != null ? physicalConnection : connection;
+        }
+        
+        private static void closeQuietly(final Connection connection) {
+            try {
+                connection.close();
+            } catch (final SQLException e) {
+                // ignored, the connection is not used and pools reclaim connections that fail to close
+            }
+        }
+        
     }
     
     private final String prefix;
     private final String defaultUnit;
     private final Set<String> units;
+    // weak keys, so connections closed by the pool are forgotten. connections compare by identity
+    private final Map<Connection, String> connectionCatalogs = Collections.synchronizedMap(new WeakHashMap<>());
     
     public AbstractMultiTenantDataSource(final String name, final String prefix, final String defaultUnit, final Set<String> units) {
         super(name);
@@ -87,7 +173,17 @@ public abstract class AbstractMultiTenantDataSource extends AbstractEagerMultiTe
     
     @Override
     protected DataSource wrap(final DataSource dataSource, final String tenantId) {
-        return new DataSourceWithSetCatalog(dataSource, this::getCurrentSchemaName);
+        return new DataSourceWithSetCatalog(dataSource, this::getCurrentSchemaName, connectionCatalogs, () -> getIdleConnections(dataSource));
+    }
+    
+    /**
+     * @param sharedDataSource the shared data source
+     * @return the number of connections currently idle in the pool of the given data source. Connections already on the
+     *     catalog of the tenant are only preferred while there are idle connections. Defaults to 0 for pools that do not
+     *     report idle connections, which disables the preference.
+     */
+    protected int getIdleConnections(final DataSource sharedDataSource) {
+        return 0;
     }
     
     @Override
@@ -0,0 +1,146 @@
+package com.ixaris.commons.multitenancy.lib.async;
+
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.SYSTEM_TENANT;
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class TenantFairExecutorTest {
+    
+    private final ArrayDeque<Runnable> delegated = new ArrayDeque<>();
+    private final List<String> executed = new ArrayList<>();
+    
+    @Test
+    public void weightedTenants_shouldTakeTurnsByWeight() {
+        final TenantFairExecutor executor = new TenantFairExecutor(delegated::add, 1);
+        executor.setWeight("a", 2);
+        submit(executor, "a", "a1", "a2", "a3", "a4");
+        submit(executor, "b", "b1", "b2");
+        
+        runAll();
+        
+        // a1 is started as soon as submitted, then a starts 2 tasks for every task of b
+        assertThat(executed).containsExactly("a1", "a2", "a3", "b1", "a4", "b2");
+    }
+    
+    @Test
+    public void noisyTenant_shouldNotDelayOtherTenants() {
+        final TenantFairExecutor executor = new TenantFairExecutor(delegated::add, 1);
+        submit(executor, "a", "a1", "a2", "a3", "a4", "a5");
+        submit(executor, "b", "b1");
+        
+        runAll();
+        
+        assertThat(executed).containsExactly("a1", "a2", "b1", "a3", "a4", "a5");
+    }
+    
+    @Test
+    public void maxConcurrent_shouldCapRunningTasksOfTenant() {
+        final TenantFairExecutor executor = new TenantFairExecutor(delegated::add, 4);
+        executor.setMaxConcurrent("a", 1);
+        submit(executor, "a", "a1", "a2", "a3");
+        submit(executor, "b", "b1");
+        
+        assertThat(delegated).hasSize(2);
+        assertThat(executor.getStats("a").getRunning()).isEqualTo(1);
+        assertThat(executor.getStats("a").getQueueDepth()).isEqualTo(2);
+        assertThat(executor.getStats("b").getRunning()).isEqualTo(1);
+        
+        delegated.pollFirst().run();
+        assertThat(executed).containsExactly("a1");
+        assertThat(executor.getStats("a").getRunning()).isEqualTo(1);
+        assertThat(executor.getStats("a").getQueueDepth()).isEqualTo(1);
+        
+        runAll();
+        
+        assertThat(executed).containsExactly("a1", "b1", "a2", "a3");
+        assertThat(executor.getStats("a").getExecuted()).isEqualTo(3L);
+        assertThat(executor.getStats("a").getQueueDepth()).isZero();
+        assertThat(executor.getRunning()).isZero();
+    }
+    
+    @Test
+    public void maxQueued_shouldRejectTasksOfTenantWithFullQueue() {
+        final TenantFairExecutor executor = new TenantFairExecutor(delegated::add, 1, 1, Integer.MAX_VALUE, 2);
+        submit(executor, "a", "a1", "a2", "a3");
+        
+        // a1 started, a2 and a3 queued
+        assertThatThrownBy(() -> submit(executor, "a", "a4")).isInstanceOf(RejectedExecutionException.class);
+        submit(executor, "b", "b1");
+        assertThat(executor.getStats("a").getRejected()).isEqualTo(1L);
+        // the rejected task is not counted as queued or started
+        assertThat(executor.getStats("a").getQueueDepth()).isEqualTo(2);
+        assertThat(executor.getStats("a").getRunning()).isEqualTo(1);
+        assertThat(executor.getStats("a").getExecuted()).isEqualTo(1L);
+        
+        runAll();
+        
+        assertThat(executed).containsExactly("a1", "a2", "b1", "a3");
+    }
+    
+    @Test
+    public void delegateRejection_shouldRequeueTaskAndRevertStats() throws InterruptedException {
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        final TenantFairExecutor executor = new TenantFairExecutor(runnable -> {
+            if (reject.get()) {
+                throw new RejectedExecutionException("rejected");
+            }
+            delegated.add(runnable);
+        }, 1);
+        submit(executor, "a", "a1");
+        
+        assertThat(delegated).isEmpty();
+        assertThat(executor.getRunning()).isZero();
+        assertThat(executor.getStats("a").getQueueDepth()).isEqualTo(1);
+        assertThat(executor.getStats("a").getRunning()).isZero();
+        assertThat(executor.getStats("a").getExecuted()).isZero();
+        assertThat(executor.getStats("a").getAverageWait(TimeUnit.NANOSECONDS)).isZero();
+        
+        Thread.sleep(5L);
+        reject.set(false);
+        submit(executor, "a", "a2");
+        runAll();
+        
+        assertThat(executed).containsExactly("a1", "a2");
+        assertThat(executor.getStats("a").getExecuted()).isEqualTo(2L);
+        // a1 waited since first submitted
+        assertThat(executor.getStats("a").getMaxWait(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(5L);
+    }
+    
+    @Test
+    public void noTenant_shouldBeQueuedAsSystemTenant() {
+        final TenantFairExecutor executor = new TenantFairExecutor(delegated::add, 1);
+        executor.execute(() -> executed.add("s1"));
+        
+        runAll();
+        
+        assertThat(executed).containsExactly("s1");
+        assertThat(executor.getStats()).containsOnlyKeys(SYSTEM_TENANT);
+        assertThat(executor.getStats(SYSTEM_TENANT).getExecuted()).isEqualTo(1L);
+    }
+    
+    private void submit(final TenantFairExecutor executor, final String tenantId, final String... names) {
+        TENANT.exec(tenantId, () -> {
+            for (final String name : names) {
+                executor.execute(() -> executed.add(name));
+            }
+        });
+    }
+    
+    private void runAll() {
+        Runnable runnable;
+        while ((runnable = delegated.pollFirst()) != null) {
+            runnable.run();
+        }
+    }
+    
+}
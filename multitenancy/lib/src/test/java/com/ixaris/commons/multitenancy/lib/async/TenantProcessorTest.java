@@ -5,9 +5,11 @@ import static com.ixaris.commons.multitenancy.lib.TestTenants.DEFAULT;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,8 +17,14 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import com.ixaris.commons.clustering.lib.CommonsClusteringLib.AtLeastOncePollNow;
+import com.ixaris.commons.clustering.lib.common.ClusterNodeInfo;
 import com.ixaris.commons.clustering.lib.idempotency.StoredPendingMessage;
+import com.ixaris.commons.clustering.lib.service.ClusterBroadcastHandler;
+import com.ixaris.commons.clustering.lib.service.ClusterRegistry;
+import com.ixaris.commons.collections.lib.BitSet;
 import com.ixaris.commons.multitenancy.lib.async.DummyAtLeastOnceMessageType;
 import com.ixaris.commons.multitenancy.lib.async.ExecutorMultiTenantAtLeastOnceProcessor;
 import com.ixaris.commons.multitenancy.lib.async.ExecutorMultiTenantAtLeastOnceProcessorFactory;
@@ -177,4 +185,53 @@ public final class TenantProcessorTest {
         assertThat(messageType.getProcessedMessages()).containsExactly(msg1);
     }
     
+    @SuppressWarnings("squid:S2925")
+    @Test
+    public void pollNow_shardOnOtherNode_shouldBroadcastToOwningNode() throws InterruptedException {
+        final DummyAtLeastOnceMessageType messageType = new DummyAtLeastOnceMessageType("Events");
+        
+        final DummyAtLeastOnceMessageType processor = spy(messageType);
+        
+        final ClusterRegistry clusterRegistry = mock(ClusterRegistry.class);
+        when(clusterRegistry.getNodeInfo()).thenReturn(new ClusterNodeInfo(0L, BitSet.of(4, 0), null, null));
+        
+        final ExecutorMultiTenantAtLeastOnceProcessor<?> p = new ExecutorMultiTenantAtLeastOnceProcessorFactory(1, clusterRegistry)
+            .create(processor, 2000000);
+        p.registerTenant(DEFAULT);
+        
+        Thread.sleep(500L);
+        
+        TENANT.exec(DEFAULT, () -> p.pollNow(1));
+        
+        verify(clusterRegistry, timeout(1000).times(1)).broadcast(any(),
+            eq(AtLeastOncePollNow.newBuilder().setType(messageType.getKey()).setTenantId(DEFAULT).setShard(1).build()));
+    }
+    
+    @SuppressWarnings({ "squid:S2925", "unchecked" })
+    @Test
+    public void pollNowBroadcast_shardOnThisNode_shouldProcessAndAckSuccessfully() throws InterruptedException {
+        final DummyAtLeastOnceMessageType messageType = new DummyAtLeastOnceMessageType("Events");
+        
+        final DummyAtLeastOnceMessageType processor = spy(messageType);
+        
+        final ClusterRegistry clusterRegistry = mock(ClusterRegistry.class);
+        when(clusterRegistry.getNodeInfo()).thenReturn(new ClusterNodeInfo(0L, BitSet.of(4, 0), null, null));
+        
+        final ExecutorMultiTenantAtLeastOnceProcessor<?> p = new ExecutorMultiTenantAtLeastOnceProcessorFactory(1, clusterRegistry)
+            .create(processor, 2000000);
+        p.registerTenant(DEFAULT);
+        
+        final ArgumentCaptor<ClusterBroadcastHandler> handler = ArgumentCaptor.forClass(ClusterBroadcastHandler.class);
+        verify(clusterRegistry).register((ClusterBroadcastHandler<?>) handler.capture());
+        
+        Thread.sleep(500L);
+        
+        final StoredPendingMessage<Void> msg1 = messageType.store(MESSAGE_SUB_TYPE, null);
+        handler.getValue().handle(AtLeastOncePollNow.newBuilder().setType(messageType.getKey()).setTenantId(DEFAULT).setShard(0).build());
+        
+        verify(processor, timeout(1000).times(1)).processMessage(eq(msg1), any());
+        
+        assertThat(messageType.getProcessedMessages()).containsExactly(msg1);
+    }
+    
 }
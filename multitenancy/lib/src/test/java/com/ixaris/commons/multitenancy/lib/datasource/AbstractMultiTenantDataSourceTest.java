@@ -1,12 +1,18 @@
 package com.ixaris.commons.multitenancy.lib.datasource;
 
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
+import static com.ixaris.commons.multitenancy.lib.data.DataUnit.DATA_UNIT;
+
 import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Map;
 
 import org.assertj.core.api.Assertions;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import com.ixaris.commons.multitenancy.lib.MultiTenancy;
 import com.ixaris.commons.multitenancy.lib.TestTenants;
@@ -60,6 +66,83 @@ public class AbstractMultiTenantDataSourceTest {
         Assertions.assertThat(getUsageCount(getDataSources(dataSource).values().iterator().next())).isEqualTo(1);
     }
     
+    @Test
+    public void getConnection_connectionAlreadyOnTenantCatalog_catalogNotSetAgain() throws SQLException {
+        multiTenancy.addTenant(TestTenants.DEFAULT);
+        multiTenancy.addTenant(TestTenants.LEFT);
+        
+        getConnection(TestTenants.DEFAULT);
+        getConnection(TestTenants.DEFAULT);
+        getConnection(TestTenants.LEFT);
+        getConnection(TestTenants.LEFT);
+        final Connection connection = getConnection(TestTenants.DEFAULT);
+        
+        // the same pooled connection is handed out every time, so the catalog is only set when switching tenant
+        Mockito.verify(connection, Mockito.times(2)).setCatalog("test_unit_" + TestTenants.DEFAULT);
+        Mockito.verify(connection, Mockito.times(1)).setCatalog("test_unit_" + TestTenants.LEFT);
+    }
+    
+    @Test
+    public void getConnection_setCatalogFails_catalogSetOnNextConnection() throws SQLException {
+        multiTenancy.addTenant(TestTenants.DEFAULT);
+        multiTenancy.addTenant(TestTenants.LEFT);
+        final Connection connection = getConnection(TestTenants.DEFAULT);
+        Mockito.doThrow(new SQLException()).when(connection).setCatalog("test_unit_" + TestTenants.LEFT);
+        
+        Assertions.assertThatThrownBy(() -> getConnection(TestTenants.LEFT)).isInstanceOf(SQLException.class);
+        // the catalog of the connection is unknown after the failure
+        getConnection(TestTenants.DEFAULT);
+        
+        Mockito.verify(connection, Mockito.times(2)).setCatalog("test_unit_" + TestTenants.DEFAULT);
+    }
+    
+    @Test
+    public void getConnection_idleConnectionOnTenantCatalog_idleConnectionPreferred() throws SQLException {
+        final TestMultiTenancyDataSource pooledDataSource = registerPooledDataSource();
+        pooledDataSource.setIdleConnections(1);
+        
+        final Connection defaultConnection = getConnection(pooledDataSource, TestTenants.DEFAULT);
+        final Connection leftConnection = getConnection(pooledDataSource, TestTenants.LEFT);
+        // the pool hands out the connection on the default catalog first, so the next connection is borrowed instead
+        Assertions.assertThat(getConnection(pooledDataSource, TestTenants.LEFT)).isSameAs(leftConnection);
+        
+        Mockito.verify(defaultConnection).close();
+        Mockito.verify(defaultConnection, Mockito.never()).setCatalog("test_unit_" + TestTenants.LEFT);
+        Mockito.verify(leftConnection, Mockito.times(1)).setCatalog("test_unit_" + TestTenants.LEFT);
+    }
+    
+    @Test
+    public void getConnection_noIdleConnections_catalogSetOnConnectionObtained() throws SQLException {
+        final TestMultiTenancyDataSource pooledDataSource = registerPooledDataSource();
+        
+        final Connection defaultConnection = getConnection(pooledDataSource, TestTenants.DEFAULT);
+        getConnection(pooledDataSource, TestTenants.LEFT);
+        Assertions.assertThat(getConnection(pooledDataSource, TestTenants.LEFT)).isSameAs(defaultConnection);
+        
+        Mockito.verify(defaultConnection, Mockito.never()).close();
+        Mockito.verify(defaultConnection, Mockito.times(1)).setCatalog("test_unit_" + TestTenants.LEFT);
+    }
+    
+    private TestMultiTenancyDataSource registerPooledDataSource() {
+        final TestMultiTenancyDataSource pooledDataSource = new TestMultiTenancyDataSource("pooled", 2);
+        multiTenancy.registerTenantLifecycleParticipant(pooledDataSource);
+        multiTenancy.addTenant(TestTenants.DEFAULT);
+        multiTenancy.addTenant(TestTenants.LEFT);
+        return pooledDataSource;
+    }
+    
+    private Connection getConnection(final String tenantId) throws SQLException {
+        return getConnection(dataSource, tenantId);
+    }
+    
+    private Connection getConnection(final AbstractMultiTenantDataSource dataSource, final String tenantId) throws SQLException {
+        final Connection[] connection = new Connection[1];
+        DATA_UNIT.exec("unit", () -> TENANT.exec(tenantId, () -> {
+            connection[0] = dataSource.getConnection();
+        }));
+        return connection[0];
+    }
+    
     @SuppressWarnings("unchecked")
     private Map<String, Object> getDataSources(final AbstractMultiTenantDataSource dataSource) {
         try {
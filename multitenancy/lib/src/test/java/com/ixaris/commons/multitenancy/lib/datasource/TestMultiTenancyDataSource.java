@@ -8,6 +8,7 @@ import java.sql.Statement;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
@@ -25,8 +26,23 @@ public class TestMultiTenancyDataSource extends AbstractMultiTenantDataSource {
         props.put(AbstractMultiTenantDataSource.PASSWORD_KEY, "pwd");
     }
     
+    private final int connections;
+    private int idleConnections;
+    
     public TestMultiTenancyDataSource(final String name) {
+        this(name, 1);
+    }
+    
+    /**
+     * @param connections the number of pooled connections, handed out in turn
+     */
+    public TestMultiTenancyDataSource(final String name, final int connections) {
         super(name, "test", null, Collections.emptySet());
+        this.connections = connections;
+    }
+    
+    public void setIdleConnections(final int idleConnections) {
+        this.idleConnections = idleConnections;
     }
     
     @Override
@@ -54,11 +70,15 @@ public class TestMultiTenancyDataSource extends AbstractMultiTenantDataSource {
     @Override
     protected DataSource createShared(final Map<String, String> properties) {
         final DataSource dataSource = Mockito.mock(DataSource.class);
-        final Connection connection = Mockito.mock(Connection.class);
+        final Connection[] pool = new Connection[connections];
         final Statement statement = Mockito.mock(Statement.class);
         try {
-            Mockito.when(dataSource.getConnection()).thenReturn(connection);
-            Mockito.when(connection.createStatement()).thenReturn(statement);
+            for (int i = 0; i < connections; i++) {
+                pool[i] = Mockito.mock(Connection.class);
+                Mockito.when(pool[i].createStatement()).thenReturn(statement);
+            }
+            final AtomicInteger next = new AtomicInteger();
+            Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> pool[next.getAndIncrement() % connections]);
         } catch (SQLException e) {
             // ignored, never thrown when mocking
         }
@@ -66,4 +86,9 @@ public class TestMultiTenancyDataSource extends AbstractMultiTenantDataSource {
         return dataSource;
     }
     
+    @Override
+    protected int getIdleConnections(final DataSource sharedDataSource) {
+        return idleConnections;
+    }
+    
 }
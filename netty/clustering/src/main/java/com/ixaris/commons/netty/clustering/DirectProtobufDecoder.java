@@ -0,0 +1,54 @@
+package com.ixaris.commons.netty.clustering;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+/**
+ * Parses a frame (as split by {@link io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder}) in place, over the memory of the
+ * (typically direct) buffer, replacing {@link io.netty.handler.codec.protobuf.ProtobufDecoder}, which first copies a direct frame into a heap
+ * byte[] and then parses that. Payload fields are still copied once into their {@link com.google.protobuf.ByteString}, since they are parsed
+ * lazily by handlers that may complete after the frame is released.
+ */
+@Sharable
+final class DirectProtobufDecoder<T extends MessageLite> extends MessageToMessageDecoder<ByteBuf> {
+    
+    static <T extends MessageLite> T decode(final Parser<T> parser, final ByteBuf frame) throws IOException {
+        final int length = frame.readableBytes();
+        final CodedInputStream input;
+        if (frame.hasArray()) {
+            input = CodedInputStream.newInstance(frame.array(), frame.arrayOffset() + frame.readerIndex(), length);
+        } else if (frame.nioBufferCount() == 1) {
+            input = CodedInputStream.newInstance(frame.nioBuffer(frame.readerIndex(), length));
+        } else {
+            input = CodedInputStream.newInstance(ByteBufUtil.getBytes(frame, frame.readerIndex(), length, false));
+        }
+        return parser.parseFrom(input);
+    }
+    
+    private final Parser<T> parser;
+    
+    @SuppressWarnings("unchecked")
+    DirectProtobufDecoder(final T defaultInstance) {
+        if (defaultInstance == null) {
+            throw new IllegalArgumentException("defaultInstance is null");
+        }
+        
+        parser = (Parser<T>) defaultInstance.getParserForType();
+    }
+    
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf msg, final List<Object> out) throws IOException {
+        out.add(decode(parser, msg));
+    }
+    
+}
@@ -0,0 +1,72 @@
+package com.ixaris.commons.netty.clustering;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.MessageLiteOrBuilder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+/**
+ * Writes a message prefixed by its varint32 length straight into a pooled (preferably direct) buffer of the exact size, replacing
+ * {@link io.netty.handler.codec.protobuf.ProtobufEncoder} and {@link io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender},
+ * which serialize the message to a heap byte[] and then copy it into the outbound buffer after the length. Like ProtobufEncoder, builders
+ * are also accepted.
+ */
+@Sharable
+final class DirectProtobufEncoder extends MessageToByteEncoder<MessageLiteOrBuilder> {
+    
+    static final DirectProtobufEncoder INSTANCE = new DirectProtobufEncoder();
+    
+    static int getEncodedSize(final MessageLite message) {
+        final int size = message.getSerializedSize();
+        return CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+    
+    /**
+     * Encodes the length prefixed message at the writer index of the buffer, growing it if necessary
+     */
+    static void encode(final MessageLite message, final ByteBuf out) throws IOException {
+        // serialized size is memoised, so computed once
+        final int size = message.getSerializedSize();
+        final int length = CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+        out.ensureWritable(length);
+        
+        final int writerIndex = out.writerIndex();
+        final CodedOutputStream output = (out.nioBufferCount() == 1)
+            ? CodedOutputStream.newInstance(out.nioBuffer(writerIndex, length))
+            : null;
+        if (output != null) {
+            output.writeUInt32NoTag(size);
+            message.writeTo(output);
+            output.flush();
+        } else {
+            // e.g. composite buffers, not used for outbound messages
+            final byte[] bytes = new byte[length];
+            final CodedOutputStream arrayOutput = CodedOutputStream.newInstance(bytes);
+            arrayOutput.writeUInt32NoTag(size);
+            message.writeTo(arrayOutput);
+            out.setBytes(writerIndex, bytes);
+        }
+        out.writerIndex(writerIndex + length);
+    }
+    
+    private DirectProtobufEncoder() {
+        super(MessageLiteOrBuilder.class, true);
+    }
+    
+    @Override
+    protected ByteBuf allocateBuffer(final ChannelHandlerContext ctx, final MessageLiteOrBuilder msg, final boolean preferDirect) {
+        return (msg instanceof MessageLite) ? ctx.alloc().ioBuffer(getEncodedSize((MessageLite) msg)) : ctx.alloc().ioBuffer();
+    }
+    
+    @Override
+    protected void encode(final ChannelHandlerContext ctx, final MessageLiteOrBuilder msg, final ByteBuf out) throws IOException {
+        encode((msg instanceof MessageLite) ? (MessageLite) msg : ((MessageLite.Builder) msg).build(), out);
+    }
+    
+}
@@ -3,13 +3,18 @@ package com.ixaris.commons.netty.clustering;
 import static com.ixaris.commons.misc.lib.object.Tuple.tuple;
 
 import java.net.BindException;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.protobuf.MessageLite;
+
 import com.ixaris.commons.misc.lib.object.EqualsUtil;
 import com.ixaris.commons.misc.lib.object.Tuple2;
 
@@ -61,18 +66,64 @@ public final class NettyBean {
     private final MultithreadEventLoopGroup group;
     private final AtomicInteger portNumber;
     private final String hostname;
+    private final long batchLingerMicros;
+    private final int batchMaxMessages;
+    private final int batchMaxBytes;
     
     public NettyBean(final int numThreads, final String hostname, final int startPort) {
+        this(numThreads, hostname, startPort, 0L, 1, 1);
+    }
+    
+    /**
+     * @param batchLingerMicros the maximum time a message written to a channel may wait for other messages to the same
+     *     node to be sent in the same frame, or 0 to send every message in its own frame. Batching should only be enabled
+     *     once all nodes in the cluster understand batched frames.
+     * @param batchMaxMessages the maximum number of messages sent in the same frame
+     * @param batchMaxBytes the serialized size of the messages after which the frame is sent without waiting further
+     */
+    public NettyBean(final int numThreads,
+                     final String hostname,
+                     final int startPort,
+                     final long batchLingerMicros,
+                     final int batchMaxMessages,
+                     final int batchMaxBytes) {
+        if (batchLingerMicros < 0L) {
+            throw new IllegalArgumentException("batchLingerMicros should not be negative");
+        }
+        if (batchMaxMessages < 1) {
+            throw new IllegalArgumentException("batchMaxMessages should be positive");
+        }
+        if (batchMaxBytes < 1) {
+            throw new IllegalArgumentException("batchMaxBytes should be positive");
+        }
+        
         this.linux = SystemPropertyUtil.get("os.name").toLowerCase(Locale.UK).trim().startsWith("linux");
         this.group = linux ? new EpollEventLoopGroup(numThreads) : new NioEventLoopGroup(numThreads);
         this.hostname = hostname;
         this.portNumber = new AtomicInteger(startPort);
+        this.batchLingerMicros = batchLingerMicros;
+        this.batchMaxMessages = batchMaxMessages;
+        this.batchMaxBytes = batchMaxBytes;
     }
     
     public boolean isLinux() {
         return linux;
     }
     
+    public boolean isBatching() {
+        return (batchLingerMicros > 0L) && (batchMaxMessages > 1);
+    }
+    
+    /**
+     * @return a handler that batches messages of the given type written to a channel, or null if batching is disabled
+     */
+    <T extends MessageLite> NettyFrameBatcher<T> createBatcher(final Class<T> type, final Function<List<T>, T> batchFunction) {
+        if (!isBatching() || (batchFunction == null)) {
+            return null;
+        }
+        return new NettyFrameBatcher<>(type, batchFunction, TimeUnit.MICROSECONDS.toNanos(batchLingerMicros), batchMaxMessages, batchMaxBytes);
+    }
+    
     public EventLoopGroup getGroup() {
         return group;
     }
@@ -1,11 +1,13 @@
 package com.ixaris.commons.netty.clustering;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,10 +29,7 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.protobuf.ProtobufDecoder;
-import io.netty.handler.codec.protobuf.ProtobufEncoder;
 import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
-import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
 import io.netty.handler.flush.FlushConsolidationHandler;
 
 public final class NettyClientChannel implements ChannelFutureListener {
@@ -48,6 +47,20 @@ public final class NettyClientChannel implements ChannelFutureListener {
                                                       final HostAndPort url,
                                                       final T defaultInstance,
                                                       final BiConsumer<ChannelHandlerContext, T> messageConsumer) {
+        this(executor, nettyBean, url, defaultInstance, messageConsumer, null, null);
+    }
+    
+    /**
+     * @param requestType the type of messages written to the channel, batched using batchFunction if batching is enabled
+     */
+    public <T extends MessageLite, R extends MessageLite> NettyClientChannel(final ScheduledExecutorService executor,
+                                                                             final NettyBean nettyBean,
+                                                                             final HostAndPort url,
+                                                                             final T defaultInstance,
+                                                                             final BiConsumer<ChannelHandlerContext, T> messageConsumer,
+                                                                             final Class<R> requestType,
+                                                                             final Function<List<R>, R> batchFunction) {
+        final DirectProtobufDecoder<T> decoder = new DirectProtobufDecoder<>(defaultInstance);
         this.url = url;
         this.executor = executor;
         this.bootstrap = new Bootstrap()
@@ -61,9 +74,12 @@ public final class NettyClientChannel implements ChannelFutureListener {
                     
                     pipeline.addLast(new FlushConsolidationHandler());
                     pipeline.addLast(new ProtobufVarint32FrameDecoder());
-                    pipeline.addLast(new ProtobufDecoder(defaultInstance));
-                    pipeline.addLast(new ProtobufVarint32LengthFieldPrepender());
-                    pipeline.addLast(new ProtobufEncoder());
+                    pipeline.addLast(decoder);
+                    pipeline.addLast(DirectProtobufEncoder.INSTANCE);
+                    final NettyFrameBatcher<R> batcher = nettyBean.createBatcher(requestType, batchFunction);
+                    if (batcher != null) {
+                        pipeline.addLast(batcher);
+                    }
                     pipeline.addLast(new SimpleChannelInboundHandler<T>() {
                         
                         @Override
@@ -7,7 +7,7 @@ import static com.ixaris.commons.clustering.lib.service.AbstractClusterRegistry.
 import static com.ixaris.commons.clustering.lib.service.ClusterRegistry.SHARD;
 
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
@@ -28,6 +28,8 @@ import com.ixaris.commons.async.lib.AsyncExecutor;
 import com.ixaris.commons.async.lib.AsyncQueue;
 import com.ixaris.commons.async.lib.FutureAsync;
 import com.ixaris.commons.async.lib.filter.AsyncFilterNext;
+import com.ixaris.commons.async.lib.scheduler.HashedWheelTimer;
+import com.ixaris.commons.async.lib.scheduler.HashedWheelTimer.Timeout;
 import com.ixaris.commons.clustering.lib.CommonsClusteringLib.ClusterBroadcastEnvelope;
 import com.ixaris.commons.clustering.lib.CommonsClusteringLib.ClusterRequestEnvelope;
 import com.ixaris.commons.clustering.lib.CommonsClusteringLib.ClusterResponseEnvelope;
@@ -40,9 +42,12 @@ import com.ixaris.commons.clustering.lib.service.ClusterRouteTimeoutException;
 import com.ixaris.commons.clustering.lib.service.ShardNotLocalException;
 import com.ixaris.commons.collections.lib.BitSet;
 import com.ixaris.commons.collections.lib.BitSetIterator;
+import com.ixaris.commons.collections.lib.ConcurrentLongHashMap;
 import com.ixaris.commons.misc.lib.function.CallableThrows;
 import com.ixaris.commons.misc.lib.id.UniqueIdGenerator;
+import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyRequestBatch;
 import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyRequestEnvelope;
+import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyResponseBatch;
 import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyResponseEnvelope;
 import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyShardStopped;
 import com.ixaris.commons.netty.clustering.NettyBean.HostAndPort;
@@ -61,7 +66,7 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
     private static final class PendingRoute {
         
         private final BiConsumer<? super ClusterResponseEnvelope, ? super Throwable> relayConsumer;
-        private ScheduledFuture<?> scheduledTask;
+        private volatile Timeout timeout;
         
         private PendingRoute(final FutureAsync<ClusterResponseEnvelope> future) {
             relayConsumer = AsyncExecutor.relayConsumer(future);
@@ -74,7 +79,7 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
         // -ve means shard is not local - 0 is not used (1 / -1 means no in flight)
         // TODO rename to countInFlight
         private final AtomicInteger count = new AtomicInteger(-1);
-        private final Map<Long, NettyRequestEnvelope> queue = new HashMap<>();
+        private final ConcurrentLongHashMap<NettyRequestEnvelope> queue = new ConcurrentLongHashMap<>(16, 4);
         
         private ShardInfo() {}
         
@@ -82,6 +87,7 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
     
     private final NettyBean nettyBean;
     private final ScheduledExecutorService executor;
+    private final HashedWheelTimer routeTimeouts = HashedWheelTimer.commonTimer();
     private final ShardStoppedHandler shardStoppedHandler;
     private final AsyncFilterNext<ClusterRequestEnvelope, ClusterResponseEnvelope> handleRouteChain;
     private final AsyncFilterNext<ClusterBroadcastEnvelope, Boolean> handleBroadcastChain;
@@ -93,7 +99,8 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
     
     private final AsyncQueue clusterQueue = new AsyncQueue();
     private volatile NettyCluster cluster = new NettyCluster(ClusterShardResolver.DEFAULT);
-    private final Map<Long, PendingRoute> waitingRouteResponses = new HashMap<>();
+    private final ConcurrentLongHashMap<PendingRoute> waitingRouteResponses = new ConcurrentLongHashMap<>(
+        1024, Runtime.getRuntime().availableProcessors() * 4);
     
     public NettyClusterSharding(final NettyBean nettyBean,
                                 final ScheduledExecutorService executor,
@@ -115,7 +122,11 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
         }
         shardsStopping = BitSet.of(clusterRegistry.getMaxShards());
         
-        channel = new NettyServerChannel(nettyBean, NettyRequestEnvelope.getDefaultInstance(), this::handleRequest);
+        channel = new NettyServerChannel(nettyBean,
+            NettyRequestEnvelope.getDefaultInstance(),
+            this::handleRequest,
+            NettyResponseEnvelope.class,
+            NettyClusterSharding::batchResponses);
         
         clusterRegistry.mergeAttributes(ImmutableMap.of(CLUSTER_HOST_KEY, channel.getUrl().host, CLUSTER_PORT_KEY, Integer.toString(channel.getUrl().port)));
     }
@@ -175,7 +186,13 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
                     final HostAndPort url = new HostAndPort(host, Integer.parseInt(port));
                     final NettyClientChannel nodeChannel = Optional.ofNullable(nodes.remove(url)).orElseGet(() -> {
                         LOG.info("Netty cluster connected with {}", url);
-                        return new NettyClientChannel(executor, nettyBean, url, NettyResponseEnvelope.getDefaultInstance(), this::handleResponse);
+                        return new NettyClientChannel(executor,
+                            nettyBean,
+                            url,
+                            NettyResponseEnvelope.getDefaultInstance(),
+                            this::handleResponse,
+                            NettyRequestEnvelope.class,
+                            NettyClusterSharding::batchRequests);
                     });
                     newNodes.put(url, nodeChannel);
                     for (final BitSetIterator i = node.getShards().iterator(); i.hasNext();) {
@@ -211,42 +228,34 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
         return thisNode;
     }
     
-    @SuppressWarnings({ "squid:S134", "squid:S2445" })
-    private void flushQueue(final int shard, final Map<Long, NettyRequestEnvelope> queue, final Channel channel) {
-        synchronized (queue) {
-            if (!queue.isEmpty()) {
-                for (final Iterator<Entry<Long, NettyRequestEnvelope>> i = queue.entrySet().iterator(); i.hasNext();) {
-                    final NettyRequestEnvelope requestEnvelope = i.next().getValue();
-                    i.remove();
-                    
-                    if (channel == null) {
-                        final PendingRoute pendingRoute;
-                        synchronized (waitingRouteResponses) {
-                            pendingRoute = waitingRouteResponses.remove(requestEnvelope.getRef());
-                        }
-                        
-                        if (pendingRoute != null) {
-                            pendingRoute.scheduledTask.cancel(false);
-                            try {
-                                forShard(shard, () -> handleRouteChain.next(requestEnvelope.getRoute())).map(r -> {
-                                    pendingRoute.relayConsumer.accept(r, null);
-                                    return null;
-                                });
-                            } catch (final ShardNotLocalException e) {
-                                LOG.warn("Expecting shard {} to be local while flushing queue", shards, e);
-                            }
-                        }
-                    } else {
-                        channel
-                            .writeAndFlush(requestEnvelope)
-                            .addListener(writeFuture -> {
-                                if (!writeFuture.isSuccess()) {
-                                    LOG.error("Failed to send route [{}]", requestEnvelope.getRef(), writeFuture.cause());
-                                }
+    @SuppressWarnings("squid:S134")
+    private void flushQueue(final int shard, final ConcurrentLongHashMap<NettyRequestEnvelope> queue, final Channel channel) {
+        if (!queue.isEmpty()) {
+            // each queued request is drained exactly once, even if flushed concurrently or removed by a timeout
+            queue.drain((ref, requestEnvelope) -> {
+                if (channel == null) {
+                    final PendingRoute pendingRoute = waitingRouteResponses.remove(ref);
+                    if (pendingRoute != null) {
+                        pendingRoute.timeout.cancel();
+                        try {
+                            forShard(shard, () -> handleRouteChain.next(requestEnvelope.getRoute())).map(r -> {
+                                pendingRoute.relayConsumer.accept(r, null);
+                                return null;
                             });
+                        } catch (final ShardNotLocalException e) {
+                            LOG.warn("Expecting shard {} to be local while flushing queue", shard, e);
+                        }
                     }
+                } else {
+                    channel
+                        .writeAndFlush(requestEnvelope)
+                        .addListener(writeFuture -> {
+                            if (!writeFuture.isSuccess()) {
+                                LOG.error("Failed to send route [{}]", ref, writeFuture.cause());
+                            }
+                        });
                 }
-            }
+            });
         }
     }
     
@@ -268,6 +277,11 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
             case SHARD_STOPPED:
                 executor.execute(() -> shardStoppedHandler.handleShardStopped(requestEnvelope.getShardStopped().getNodeId(), requestEnvelope.getShardStopped().getShard()));
                 break;
+            case BATCH:
+                for (final NettyRequestEnvelope batchedEnvelope : requestEnvelope.getBatch().getRequestsList()) {
+                    handleRequest(ctx, batchedEnvelope);
+                }
+                break;
             default:
         }
     }
@@ -277,23 +291,33 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
         final long ref = responseEnvelope.getRef();
         switch (responseEnvelope.getMessageCase()) {
             case ROUTE:
-                final PendingRoute pendingRoute;
-                synchronized (waitingRouteResponses) {
-                    pendingRoute = waitingRouteResponses.remove(ref);
-                }
+                final PendingRoute pendingRoute = waitingRouteResponses.remove(ref);
                 
                 // It is possible that the callback was consumed by a timeout before the response
                 // was obtained, in which case, ignore response.
                 if (pendingRoute != null) {
-                    pendingRoute.scheduledTask.cancel(false);
+                    pendingRoute.timeout.cancel();
                     pendingRoute.relayConsumer.accept(responseEnvelope.getRoute(), null);
                 }
                 break;
+            case BATCH:
+                for (final NettyResponseEnvelope batchedEnvelope : responseEnvelope.getBatch().getResponsesList()) {
+                    handleResponse(ctx, batchedEnvelope);
+                }
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown message case " + responseEnvelope.getMessageCase());
         }
     }
     
+    private static NettyRequestEnvelope batchRequests(final List<NettyRequestEnvelope> requests) {
+        return NettyRequestEnvelope.newBuilder().setBatch(NettyRequestBatch.newBuilder().addAllRequests(requests)).build();
+    }
+    
+    private static NettyResponseEnvelope batchResponses(final List<NettyResponseEnvelope> responses) {
+        return NettyResponseEnvelope.newBuilder().setBatch(NettyResponseBatch.newBuilder().addAllResponses(responses)).build();
+    }
+    
     @Override
     public <T, E extends Exception> Async<T> forShard(final int shard, final CallableThrows<Async<T>, E> callable) throws E, ShardNotLocalException {
         final ShardInfo shardInfo = shards[shard];
@@ -374,16 +398,12 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
         final long ref = UniqueIdGenerator.generate();
         final FutureAsync<ClusterResponseEnvelope> future = new FutureAsync<>();
         final PendingRoute pendingRoute = new PendingRoute(future);
-        synchronized (waitingRouteResponses) {
-            waitingRouteResponses.put(ref, pendingRoute);
-        }
-        
-        pendingRoute.scheduledTask = executor.schedule(
+        // registered before scheduling the timeout, so that a timeout firing straight away finds and removes it. The
+        // timeout is set before the request is sent or queued, so it is set for whoever removes the pending route
+        waitingRouteResponses.put(ref, pendingRoute);
+        pendingRoute.timeout = routeTimeouts.newTimeout(
             () -> {
-                final PendingRoute waitingOperation;
-                synchronized (waitingRouteResponses) {
-                    waitingOperation = waitingRouteResponses.remove(ref);
-                }
+                final PendingRoute waitingOperation = waitingRouteResponses.remove(ref);
                 
                 // It is possible that the callback was consumed whilst servicing a response. In this case
                 // ignore timeout.
@@ -391,9 +411,7 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
                     LOG.debug("Sending timeout route ack [{}]", ref);
                     pendingRoute.relayConsumer.accept(
                         ClusterResponseEnvelope.newBuilder().setTimeout(true).build(), null);
-                    synchronized (shardInfo.queue) {
-                        shardInfo.queue.remove(ref);
-                    }
+                    shardInfo.queue.remove(ref);
                 }
             },
             extractTimeout(request),
@@ -413,9 +431,7 @@ public final class NettyClusterSharding extends ZookeeperClusterRegistryHelper {
                     }
                 });
         } else {
-            synchronized (shardInfo.queue) {
-                shardInfo.queue.put(ref, requestEnvelope);
-            }
+            shardInfo.queue.put(ref, requestEnvelope);
             
             if (shardInfo.count.get() > 0) {
                 // double check maybe shard was assigned to this node in the meantime
@@ -0,0 +1,121 @@
+package com.ixaris.commons.netty.clustering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.google.protobuf.MessageLite;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.PromiseNotifier;
+
+/**
+ * Coalesces messages written to the same channel into a single multi-message frame, so that many small messages sent to
+ * the same node in quick succession cost one write (and one syscall) rather than one each. Messages are accumulated
+ * until maxMessages or maxBytes (serialized size) is reached, or until the linger expires after the first flush of the
+ * batch, whichever comes first. A single pending message is written as is, otherwise the pending messages are combined
+ * using the batch function, and the receiver is expected to demultiplex the combined message.
+ *
+ * <p>Added to the pipeline after the encoder, so that it sees messages before they are encoded. Not sharable, since it
+ * keeps the pending messages of the channel; all methods are called from the channel's event loop.
+ */
+final class NettyFrameBatcher<T extends MessageLite> extends ChannelOutboundHandlerAdapter {
+    
+    private final Class<T> type;
+    private final Function<List<T>, T> batchFunction;
+    private final long lingerNanos;
+    private final int maxMessages;
+    private final int maxBytes;
+    
+    private List<T> pending = new ArrayList<>();
+    private List<ChannelPromise> pendingPromises = new ArrayList<>();
+    private int pendingBytes = 0;
+    private ScheduledFuture<?> lingerFuture;
+    
+    NettyFrameBatcher(final Class<T> type,
+                      final Function<List<T>, T> batchFunction,
+                      final long lingerNanos,
+                      final int maxMessages,
+                      final int maxBytes) {
+        this.type = type;
+        this.batchFunction = batchFunction;
+        this.lingerNanos = lingerNanos;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+    
+    @Override
+    public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
+        final Object message = (msg instanceof MessageLite.Builder) ? ((MessageLite.Builder) msg).build() : msg;
+        if (!type.isInstance(message)) {
+            // preserve ordering with respect to pending messages
+            writePending(ctx);
+            ctx.write(message, promise);
+            return;
+        }
+        
+        final T typed = type.cast(message);
+        pending.add(typed);
+        pendingPromises.add(promise);
+        pendingBytes += typed.getSerializedSize();
+        if ((pending.size() >= maxMessages) || (pendingBytes >= maxBytes)) {
+            writePending(ctx);
+        }
+    }
+    
+    @Override
+    public void flush(final ChannelHandlerContext ctx) {
+        // flush whatever was already written, e.g. a batch that reached its limits
+        ctx.flush();
+        if (!pending.isEmpty() && (lingerFuture == null)) {
+            lingerFuture = ctx.executor().schedule(() -> {
+                lingerFuture = null;
+                writePending(ctx);
+                ctx.flush();
+            }, lingerNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    @Override
+    public void close(final ChannelHandlerContext ctx, final ChannelPromise promise) {
+        writePending(ctx);
+        ctx.flush();
+        ctx.close(promise);
+    }
+    
+    @Override
+    public void handlerRemoved(final ChannelHandlerContext ctx) {
+        writePending(ctx);
+        ctx.flush();
+    }
+    
+    private void writePending(final ChannelHandlerContext ctx) {
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+            lingerFuture = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        final List<T> messages = pending;
+        final List<ChannelPromise> promises = pendingPromises;
+        pending = new ArrayList<>();
+        pendingPromises = new ArrayList<>();
+        pendingBytes = 0;
+        
+        if (messages.size() == 1) {
+            ctx.write(messages.get(0), promises.get(0));
+        } else {
+            @SuppressWarnings("unchecked")
+            final Promise<Void>[] toNotify = promises.toArray(new Promise[promises.size()]);
+            ctx.write(batchFunction.apply(messages)).addListener(new PromiseNotifier<>(false, toNotify));
+        }
+    }
+    
+}
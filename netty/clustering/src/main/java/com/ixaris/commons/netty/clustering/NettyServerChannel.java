@@ -2,8 +2,10 @@ package com.ixaris.commons.netty.clustering;
 
 import static com.ixaris.commons.netty.clustering.NettyBean.SO_BACKLOG;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,10 +25,7 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.protobuf.ProtobufDecoder;
-import io.netty.handler.codec.protobuf.ProtobufEncoder;
 import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
-import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
 import io.netty.handler.flush.FlushConsolidationHandler;
 
 public final class NettyServerChannel {
@@ -38,6 +37,18 @@ public final class NettyServerChannel {
     private final AtomicBoolean active = new AtomicBoolean(true);
     
     public <T extends MessageLite> NettyServerChannel(final NettyBean nettyBean, final T defaultInstance, final BiConsumer<ChannelHandlerContext, T> messageConsumer) {
+        this(nettyBean, defaultInstance, messageConsumer, null, null);
+    }
+    
+    /**
+     * @param responseType the type of messages written to the channel, batched using batchFunction if batching is enabled
+     */
+    public <T extends MessageLite, R extends MessageLite> NettyServerChannel(final NettyBean nettyBean,
+                                                                             final T defaultInstance,
+                                                                             final BiConsumer<ChannelHandlerContext, T> messageConsumer,
+                                                                             final Class<R> responseType,
+                                                                             final Function<List<R>, R> batchFunction) {
+        final DirectProtobufDecoder<T> decoder = new DirectProtobufDecoder<>(defaultInstance);
         final ServerBootstrap serverBootstrap = new ServerBootstrap()
             .group(nettyBean.getGroup())
             .channel(nettyBean.isLinux() ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
@@ -49,9 +60,12 @@ public final class NettyServerChannel {
                     
                     pipeline.addLast(new FlushConsolidationHandler());
                     pipeline.addLast(new ProtobufVarint32FrameDecoder());
-                    pipeline.addLast(new ProtobufDecoder(defaultInstance));
-                    pipeline.addLast(new ProtobufVarint32LengthFieldPrepender());
-                    pipeline.addLast(new ProtobufEncoder());
+                    pipeline.addLast(decoder);
+                    pipeline.addLast(DirectProtobufEncoder.INSTANCE);
+                    final NettyFrameBatcher<R> batcher = nettyBean.createBatcher(responseType, batchFunction);
+                    if (batcher != null) {
+                        pipeline.addLast(batcher);
+                    }
                     pipeline.addLast(new SimpleChannelInboundHandler<T>() {
                         
                         @Override
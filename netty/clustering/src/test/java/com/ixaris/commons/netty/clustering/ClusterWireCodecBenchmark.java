@@ -0,0 +1,144 @@
+package com.ixaris.commons.netty.clustering;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import com.ixaris.commons.clustering.lib.CommonsClusteringLib.ClusterRequestEnvelope;
+import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyRequestEnvelope;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Compares encoding and decoding a routed request envelope the way {@link io.netty.handler.codec.protobuf.ProtobufEncoder} with
+ * {@link io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender} and {@link io.netty.handler.codec.protobuf.ProtobufDecoder}
+ * do (through a heap byte[]) with {@link DirectProtobufEncoder} and {@link DirectProtobufDecoder} (in place over pooled direct buffers).
+ *
+ * <p>Run {@link #main(String[])} to include allocation rates (gc.alloc.rate.norm is bytes/op).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterWireCodecBenchmark {
+    
+    @State(Scope.Thread)
+    public static class Envelope {
+        
+        @Param({ "1024", "16384", "65536" })
+        private int payloadSize;
+        
+        private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+        private NettyRequestEnvelope envelope;
+        private ByteBuf frame;
+        
+        @Setup
+        public void setup() throws IOException {
+            final byte[] payload = new byte[payloadSize];
+            new Random(payloadSize).nextBytes(payload);
+            envelope = NettyRequestEnvelope.newBuilder()
+                .setRef(123L)
+                .setRoute(ClusterRequestEnvelope.newBuilder()
+                    .setType("benchmark")
+                    .setPayload(ByteString.copyFrom(payload))
+                    .setId(5L)
+                    .setTimeout(1000))
+                .build();
+            
+            // frame as split by ProtobufVarint32FrameDecoder, i.e. without the length
+            frame = alloc.directBuffer(envelope.getSerializedSize());
+            frame.writeBytes(envelope.toByteArray());
+        }
+        
+        @TearDown
+        public void tearDown() {
+            frame.release();
+        }
+        
+    }
+    
+    @Benchmark
+    public int encodeProtobufEncoder(final Envelope state) {
+        final ByteBuf body = Unpooled.wrappedBuffer(state.envelope.toByteArray());
+        final int bodyLength = body.readableBytes();
+        final ByteBuf out = state.alloc.ioBuffer(5 + bodyLength);
+        writeRawVarint32(out, bodyLength);
+        out.writeBytes(body);
+        body.release();
+        final int length = out.readableBytes();
+        out.release();
+        return length;
+    }
+    
+    @Benchmark
+    public int encodeDirect(final Envelope state) throws IOException {
+        final ByteBuf out = state.alloc.ioBuffer(DirectProtobufEncoder.getEncodedSize(state.envelope));
+        DirectProtobufEncoder.encode(state.envelope, out);
+        final int length = out.readableBytes();
+        out.release();
+        return length;
+    }
+    
+    @Benchmark
+    public NettyRequestEnvelope decodeProtobufDecoder(final Envelope state) throws InvalidProtocolBufferException {
+        final ByteBuf frame = state.frame;
+        final byte[] array = ByteBufUtil.getBytes(frame, frame.readerIndex(), frame.readableBytes(), false);
+        return NettyRequestEnvelope.parser().parseFrom(array);
+    }
+    
+    @Benchmark
+    public NettyRequestEnvelope decodeDirect(final Envelope state) throws IOException {
+        return DirectProtobufDecoder.decode(NettyRequestEnvelope.parser(), state.frame);
+    }
+    
+    /**
+     * Same as ProtobufVarint32LengthFieldPrepender
+     */
+    private static void writeRawVarint32(final ByteBuf out, final int value) {
+        int v = value;
+        while (true) {
+            if ((v & ~0x7F) == 0) {
+                out.writeByte(v);
+                return;
+            } else {
+                out.writeByte((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+        }
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+            .include(ClusterWireCodecBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+    
+}
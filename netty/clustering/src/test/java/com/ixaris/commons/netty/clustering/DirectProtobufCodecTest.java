@@ -0,0 +1,84 @@
+package com.ixaris.commons.netty.clustering;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+
+import com.ixaris.commons.clustering.lib.CommonsClusteringLib.ClusterRequestEnvelope;
+import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyRequestEnvelope;
+import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyShardStopped;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufEncoder;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import io.netty.handler.codec.protobuf.ProtobufVarint32LengthFieldPrepender;
+
+public final class DirectProtobufCodecTest {
+    
+    private static NettyRequestEnvelope envelope(final int payloadSize) {
+        final byte[] payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+        return NettyRequestEnvelope.newBuilder()
+            .setRef(123L)
+            .setRoute(ClusterRequestEnvelope.newBuilder().setType("test").setPayload(ByteString.copyFrom(payload)).setId(5L).setTimeout(1000))
+            .build();
+    }
+    
+    @Test
+    public void encode_shouldMatchProtobufEncoder() {
+        for (final int payloadSize : new int[] { 0, 100, 1024, 65536 }) {
+            final NettyRequestEnvelope envelope = envelope(payloadSize);
+            
+            final EmbeddedChannel direct = new EmbeddedChannel(DirectProtobufEncoder.INSTANCE);
+            final EmbeddedChannel netty = new EmbeddedChannel(new ProtobufVarint32LengthFieldPrepender(), new ProtobufEncoder());
+            direct.writeOutbound(envelope);
+            netty.writeOutbound(envelope);
+            
+            final ByteBuf directOut = direct.readOutbound();
+            final ByteBuf nettyOut = nettyOutbound(netty);
+            assertThat(ByteBufUtil.getBytes(directOut)).isEqualTo(ByteBufUtil.getBytes(nettyOut));
+            directOut.release();
+            nettyOut.release();
+        }
+    }
+    
+    @Test
+    public void decode_shouldParseEncodedFrames() {
+        final EmbeddedChannel encoder = new EmbeddedChannel(DirectProtobufEncoder.INSTANCE);
+        final EmbeddedChannel decoder = new EmbeddedChannel(new ProtobufVarint32FrameDecoder(),
+            new DirectProtobufDecoder<>(NettyRequestEnvelope.getDefaultInstance()));
+        
+        final NettyRequestEnvelope envelope = envelope(16384);
+        encoder.writeOutbound(envelope);
+        // builders are accepted, as with ProtobufEncoder
+        encoder.writeOutbound(NettyRequestEnvelope.newBuilder().setRef(1L).setShardStopped(NettyShardStopped.newBuilder().setNodeId(2).setShard(3)));
+        
+        ByteBuf out;
+        while ((out = encoder.readOutbound()) != null) {
+            decoder.writeInbound(out);
+        }
+        
+        assertThat((NettyRequestEnvelope) decoder.readInbound()).isEqualTo(envelope);
+        final NettyRequestEnvelope shardStopped = decoder.readInbound();
+        assertThat(shardStopped.getShardStopped().getShard()).isEqualTo(3);
+        assertThat((Object) decoder.readInbound()).isNull();
+    }
+    
+    private static ByteBuf nettyOutbound(final EmbeddedChannel channel) {
+        // the prepender writes the length and the message as separate buffers
+        final ByteBuf combined = channel.alloc().buffer();
+        ByteBuf out;
+        while ((out = channel.readOutbound()) != null) {
+            combined.writeBytes(out);
+            out.release();
+        }
+        return combined;
+    }
+    
+}
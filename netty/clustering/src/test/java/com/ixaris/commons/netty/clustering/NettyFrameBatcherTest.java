@@ -0,0 +1,114 @@
+package com.ixaris.commons.netty.clustering;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyRequestBatch;
+import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyRequestEnvelope;
+import com.ixaris.commons.netty.clustering.CommonsNettyClustering.NettyShardStopped;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+
+public final class NettyFrameBatcherTest {
+    
+    private static NettyRequestEnvelope envelope(final long ref) {
+        return NettyRequestEnvelope.newBuilder()
+            .setRef(ref)
+            .setShardStopped(NettyShardStopped.newBuilder().setNodeId(1).setShard((int) ref))
+            .build();
+    }
+    
+    private static NettyRequestEnvelope batch(final List<NettyRequestEnvelope> requests) {
+        return NettyRequestEnvelope.newBuilder().setBatch(NettyRequestBatch.newBuilder().addAllRequests(requests)).build();
+    }
+    
+    private static EmbeddedChannel channel(final long lingerMillis, final int maxMessages, final int maxBytes) {
+        return new EmbeddedChannel(new NettyFrameBatcher<>(NettyRequestEnvelope.class,
+            NettyFrameBatcherTest::batch,
+            TimeUnit.MILLISECONDS.toNanos(lingerMillis),
+            maxMessages,
+            maxBytes));
+    }
+    
+    @Test
+    public void write_shouldHoldMessagesUntilLingerExpires() throws InterruptedException {
+        final EmbeddedChannel channel = channel(20L, 100, 65536);
+        final ChannelFuture first = channel.writeAndFlush(envelope(1L));
+        final ChannelFuture second = channel.writeAndFlush(envelope(2L));
+        
+        assertThat((Object) channel.readOutbound()).isNull();
+        assertThat(first.isDone()).isFalse();
+        
+        Thread.sleep(50L);
+        channel.runScheduledPendingTasks();
+        
+        final NettyRequestEnvelope out = channel.readOutbound();
+        assertThat(out.getMessageCase()).isEqualTo(NettyRequestEnvelope.MessageCase.BATCH);
+        assertThat(out.getBatch().getRequestsList()).containsExactly(envelope(1L), envelope(2L));
+        assertThat((Object) channel.readOutbound()).isNull();
+        assertThat(first.isSuccess()).isTrue();
+        assertThat(second.isSuccess()).isTrue();
+    }
+    
+    @Test
+    public void write_shouldSendSingleMessageAsIs() throws InterruptedException {
+        final EmbeddedChannel channel = channel(1L, 100, 65536);
+        channel.writeAndFlush(envelope(1L));
+        
+        Thread.sleep(20L);
+        channel.runScheduledPendingTasks();
+        
+        assertThat((NettyRequestEnvelope) channel.readOutbound()).isEqualTo(envelope(1L));
+    }
+    
+    @Test
+    public void write_shouldSendWithoutLingerWhenLimitReached() {
+        final EmbeddedChannel channel = channel(60000L, 3, 65536);
+        for (long i = 1L; i <= 7L; i++) {
+            channel.writeAndFlush(envelope(i));
+        }
+        
+        assertThat(((NettyRequestEnvelope) channel.readOutbound()).getBatch().getRequestsCount()).isEqualTo(3);
+        assertThat(((NettyRequestEnvelope) channel.readOutbound()).getBatch().getRequestsCount()).isEqualTo(3);
+        assertThat((Object) channel.readOutbound()).isNull();
+        
+        // the remaining message is sent when the channel is closed
+        channel.close();
+        assertThat((NettyRequestEnvelope) channel.readOutbound()).isEqualTo(envelope(7L));
+        
+        final EmbeddedChannel bytesChannel = channel(60000L, 100, envelope(1L).getSerializedSize() * 2);
+        bytesChannel.writeAndFlush(envelope(1L));
+        bytesChannel.writeAndFlush(envelope(2L));
+        assertThat(((NettyRequestEnvelope) bytesChannel.readOutbound()).getBatch().getRequestsCount()).isEqualTo(2);
+    }
+    
+    @Test
+    public void batch_shouldBeDecodedAsSingleFrame() throws InterruptedException {
+        final EmbeddedChannel sender = new EmbeddedChannel(DirectProtobufEncoder.INSTANCE,
+            new NettyFrameBatcher<>(NettyRequestEnvelope.class, NettyFrameBatcherTest::batch, TimeUnit.MILLISECONDS.toNanos(1L), 100, 65536));
+        final EmbeddedChannel receiver = new EmbeddedChannel(new ProtobufVarint32FrameDecoder(),
+            new DirectProtobufDecoder<>(NettyRequestEnvelope.getDefaultInstance()));
+        
+        // builders are built before batching
+        sender.writeAndFlush(envelope(1L).toBuilder());
+        sender.writeAndFlush(envelope(2L));
+        Thread.sleep(20L);
+        sender.runScheduledPendingTasks();
+        
+        Object out;
+        while ((out = sender.readOutbound()) != null) {
+            receiver.writeInbound(out);
+        }
+        
+        final NettyRequestEnvelope received = receiver.readInbound();
+        assertThat(received.getBatch().getRequestsList()).containsExactly(envelope(1L), envelope(2L));
+        assertThat((Object) receiver.readInbound()).isNull();
+    }
+    
+}
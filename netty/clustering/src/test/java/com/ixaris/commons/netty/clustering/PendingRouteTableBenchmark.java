@@ -0,0 +1,108 @@
+package com.ixaris.commons.netty.clustering;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ixaris.commons.collections.lib.ConcurrentLongHashMap;
+
+/**
+ * Compares the pending route registry used by {@link NettyClusterSharding} before (a synchronized {@link HashMap})
+ * and after ({@link ConcurrentLongHashMap}). Each operation is a route round trip as seen by the registry: the
+ * request registers a pending route and the response (or timeout) removes it, typically from a different event loop
+ * thread, with a number of other routes in flight.
+ *
+ * <p>Run {@link #main(String[])} to execute across 1 to 64 threads, simulating as many event loop threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PendingRouteTableBenchmark {
+    
+    private static final Object PENDING_ROUTE = new Object();
+    
+    @State(Scope.Benchmark)
+    public static class Registry {
+        
+        @Param({ "1000" })
+        private int inFlight;
+        
+        private final AtomicLong threadIds = new AtomicLong();
+        private Map<Long, Object> synchronizedMap;
+        private ConcurrentLongHashMap<Object> concurrentMap;
+        
+        @Setup
+        public void setup() {
+            synchronizedMap = new HashMap<>();
+            concurrentMap = new ConcurrentLongHashMap<>(1024, Runtime.getRuntime().availableProcessors() * 4);
+            for (long ref = -1L; ref >= -inFlight; ref--) {
+                synchronizedMap.put(ref, PENDING_ROUTE);
+                concurrentMap.put(ref, PENDING_ROUTE);
+            }
+        }
+        
+    }
+    
+    @State(Scope.Thread)
+    public static class Refs {
+        
+        private long next;
+        
+        @Setup
+        public void setup(final Registry registry) {
+            // unique refs per thread, similar to UniqueIdGenerator
+            next = registry.threadIds.incrementAndGet() << 40;
+        }
+        
+    }
+    
+    @Benchmark
+    public Object synchronizedHashMap(final Registry registry, final Refs refs) {
+        final long ref = refs.next++;
+        final Map<Long, Object> map = registry.synchronizedMap;
+        synchronized (map) {
+            map.put(ref, PENDING_ROUTE);
+        }
+        synchronized (map) {
+            return map.remove(ref);
+        }
+    }
+    
+    @Benchmark
+    public Object concurrentLongHashMap(final Registry registry, final Refs refs) {
+        final long ref = refs.next++;
+        final ConcurrentLongHashMap<Object> map = registry.concurrentMap;
+        map.put(ref, PENDING_ROUTE);
+        return map.remove(ref);
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        for (final int threads : new int[] { 1, 2, 4, 8, 16, 32, 64 }) {
+            final Options options = new OptionsBuilder()
+                .include(PendingRouteTableBenchmark.class.getSimpleName())
+                .threads(threads)
+                .build();
+            new Runner(options).run();
+        }
+    }
+    
+}
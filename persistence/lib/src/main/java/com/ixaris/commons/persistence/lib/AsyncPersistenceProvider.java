@@ -6,15 +6,12 @@ import static com.ixaris.commons.async.lib.AsyncExecutor.execAndRelay;
 import static com.ixaris.commons.misc.lib.exception.ExceptionUtil.sneakyThrow;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.async.lib.executor.AsyncExecutorServiceWrapper;
 import com.ixaris.commons.async.lib.executor.AsyncExecutorWrapper;
 import com.ixaris.commons.async.lib.idempotency.Intent;
-import com.ixaris.commons.async.lib.thread.NamedThreadFactory;
 import com.ixaris.commons.misc.lib.function.CallableThrows;
 import com.ixaris.commons.misc.lib.function.FunctionThrows;
 import com.ixaris.commons.misc.lib.object.Wrapper;
@@ -25,37 +22,47 @@ import com.ixaris.commons.persistence.lib.idempotency.ProcessedIntents;
 /**
  * Asynchronous persistence provider that allows users to perform persistence related tasks asynchronously. The executor should be wrapped in an
  * AsyncLocalExecutor wrapper to preserve the async locals across executions. The result is relayed back to the originating executor if this is
- * wrapped by an AsyncExecutor wrapper, otherwise executed on the same thread.
+ * wrapped by an AsyncExecutor wrapper, otherwise executed on the same thread. By default, transactions are executed on a {@link
+ * TransactionExecutor}, which rejects transactions when the queue of the tenant is full.
  *
  * @author daniel.grech
  */
 public abstract class AsyncPersistenceProvider implements AsyncInitiateTransaction {
     
-    private static final int CORE_THREAD_POOL_SIZE = 10;
-    private static final int MAX_THREAD_POOL_SIZE = 50;
-    
     /**
      * The executor on which persistence tasks are executed.
      */
     private ExecutorService executor;
+    private final LongAdder optimisticLockRetryCount = new LongAdder();
     
     public AsyncPersistenceProvider(final ExecutorService executor) {
         this.executor = Wrapper.isWrappedBy(executor, AsyncExecutorWrapper.class) ? executor : new AsyncExecutorServiceWrapper<>(executor);
     }
     
     public AsyncPersistenceProvider() {
-        executor = new AsyncExecutorServiceWrapper<>(true, new ThreadPoolExecutor(CORE_THREAD_POOL_SIZE,
-            MAX_THREAD_POOL_SIZE,
-            2L,
-            TimeUnit.MINUTES,
-            new LinkedBlockingQueue<>(),
-            new NamedThreadFactory("AsyncPersistenceProvider-")));
+        this(new TransactionExecutor());
     }
     
     public void shutdown() {
         executor.shutdown();
     }
     
+    /**
+     * @return the executor on which transactions are executed, if a {@link TransactionExecutor}, for its statistics,
+     *     otherwise null
+     */
+    public TransactionExecutor getTransactionExecutor() {
+        final ExecutorService unwrapped = Wrapper.unwrap(executor);
+        return (unwrapped instanceof TransactionExecutor) ? (TransactionExecutor) unwrapped : null;
+    }
+    
+    /**
+     * @return the number of times transactions were retried due to optimistic lock failures since created
+     */
+    public long getOptimisticLockRetryCount() {
+        return optimisticLockRetryCount.sum();
+    }
+    
     public abstract ProcessedIntents getProcessedIntents();
     
     protected abstract TransactionalPersistenceContext getContext();
@@ -154,6 +161,7 @@ public abstract class AsyncPersistenceProvider implements AsyncInitiateTransacti
                 tx.executeOnRollback(e);
                 if (retriesLeft > 0) {
                     retriesLeft--;
+                    optimisticLockRetryCount.increment();
                 } else {
                     throw e;
                 }
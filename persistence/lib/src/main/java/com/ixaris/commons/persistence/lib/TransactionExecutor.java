@@ -0,0 +1,178 @@
+package com.ixaris.commons.persistence.lib;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ixaris.commons.async.lib.thread.NamedThreadFactory;
+import com.ixaris.commons.multitenancy.lib.async.TenantFairExecutor;
+import com.ixaris.commons.multitenancy.lib.async.TenantFairExecutor.TenantStats;
+
+/**
+ * Executor for blocking transactions. Runs at most pool size transactions at a time, which should match the size of the
+ * connection pool of the data source, since transactions beyond the number of connections just block waiting for a
+ * connection. Transactions waiting to be run are queued per tenant, and tenants take turns, so that a burst of
+ * transactions of one tenant does not delay the transactions of other tenants. The queue of each tenant is bounded, and
+ * transactions submitted when the queue is full are rejected with a {@link RejectedExecutionException}, so that callers
+ * get backpressure when the database slows down, rather than queueing up and timing out.
+ *
+ * <p>Transactions are optionally run on virtual threads, when supported by the JDK, otherwise on a pool of platform
+ * threads.
+ */
+public final class TransactionExecutor extends AbstractExecutorService {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionExecutor.class);
+    
+    public static final int DEFAULT_POOL_SIZE = 50;
+    public static final int DEFAULT_MAX_QUEUED_PER_TENANT = 1000;
+    
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = resolveNewVirtualThreadPerTaskExecutor();
+    
+    private static Method resolveNewVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * @return true if transactions can be run on virtual threads
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+    
+    private final int poolSize;
+    private final ExecutorService delegate;
+    private final TenantFairExecutor fairExecutor;
+    private volatile boolean shutdown = false;
+    
+    public TransactionExecutor() {
+        this(DEFAULT_POOL_SIZE, DEFAULT_MAX_QUEUED_PER_TENANT, false);
+    }
+    
+    /**
+     * @param poolSize the maximum number of concurrently running transactions. Should match the connection pool size
+     * @param maxQueuedPerTenant the maximum number of transactions of a tenant waiting to be run
+     * @param virtualThreads true to run transactions on virtual threads, if supported by the JDK
+     */
+    public TransactionExecutor(final int poolSize, final int maxQueuedPerTenant, final boolean virtualThreads) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize should be positive");
+        }
+        if (maxQueuedPerTenant < 1) {
+            throw new IllegalArgumentException("maxQueuedPerTenant should be positive");
+        }
+        
+        this.poolSize = poolSize;
+        if (virtualThreads && isVirtualThreadsSupported()) {
+            delegate = newVirtualThreadPerTaskExecutor();
+        } else {
+            if (virtualThreads) {
+                LOG.warn("Virtual threads not supported by this JDK. Using a pool of [{}] threads", poolSize);
+            }
+            // no more than pool size tasks are handed to this pool, so tasks never wait in its queue
+            final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(poolSize,
+                poolSize,
+                2L,
+                TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("TransactionExecutor-"));
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            delegate = threadPoolExecutor;
+        }
+        fairExecutor = new TenantFairExecutor(delegate, poolSize, 1, Integer.MAX_VALUE, maxQueuedPerTenant);
+    }
+    
+    /**
+     * @throws RejectedExecutionException if the queue of the current tenant is full, or if shut down
+     */
+    @Override
+    public void execute(final Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Shut down");
+        }
+        fairExecutor.execute(command);
+    }
+    
+    public int getPoolSize() {
+        return poolSize;
+    }
+    
+    /**
+     * @return the number of running transactions
+     */
+    public int getRunning() {
+        return fairExecutor.getRunning();
+    }
+    
+    /**
+     * @return the ratio of running transactions to the pool size, between 0 and 1
+     */
+    public double getUtilisation() {
+        return (double) fairExecutor.getRunning() / poolSize;
+    }
+    
+    /**
+     * @return the statistics of all tenants for which transactions were submitted, including the number of queued and
+     *     rejected transactions and the time transactions waited in the queue
+     */
+    public Map<String, TenantStats> getStats() {
+        return fairExecutor.getStats();
+    }
+    
+    /**
+     * @return the statistics of the given tenant, or null if no transactions were submitted for the tenant
+     */
+    public TenantStats getStats(final String tenantId) {
+        return fairExecutor.getStats(tenantId);
+    }
+    
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        delegate.shutdown();
+    }
+    
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        return delegate.shutdownNow();
+    }
+    
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+    
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+    
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+    
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor", e);
+        }
+    }
+    
+}
@@ -19,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.async.lib.AsyncLocal;
 import com.ixaris.commons.multitenancy.lib.datasource.AbstractMultiTenantDataSource;
+import com.ixaris.commons.persistence.lib.TransactionExecutor;
 
 /**
  * Each instance of {@link AbstractMigratableMultiTenantDataSource} represents one data source, abstracting away all the complexities of
@@ -48,6 +49,14 @@ public abstract class AbstractMigratableMultiTenantDataSource extends AbstractMu
         this.migration = migration;
     }
     
+    /**
+     * @return the maximum number of connections of the pool shared by the tenants using the same database, to size the
+     *     {@link TransactionExecutor} running transactions on this data source
+     */
+    public int getMaximumPoolSize() {
+        return TransactionExecutor.DEFAULT_POOL_SIZE;
+    }
+    
     @Override
     public Async<Void> preActivate(final String tenantId) {
         addTenant(tenantId, getTenantDatasourceProperties(tenantId));
@@ -34,4 +34,13 @@ public interface ProcessedIntents {
      * Delete the intent with the given ID.
      */
     void delete(Intent intent);
+    
+    /**
+     * Delete intents processed before the given timestamp, up to the given limit. Intents processed before the
+     * timestamp are no longer detected as duplicates.
+     *
+     * @return the number of deleted intents. If equal to the limit, more intents may be left to delete.
+     */
+    int deleteCreatedBefore(long timestamp, int limit);
+    
 }
@@ -3,11 +3,11 @@ package com.ixaris.commons.persistence.lib;
 import static com.ixaris.commons.async.lib.Async.result;
 import static com.ixaris.commons.async.lib.CompletionStageUtil.join;
 import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
-import static java.util.Collections.singleton;
 import static org.assertj.core.api.Assertions.fail;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
@@ -22,8 +22,6 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
-import com.google.common.collect.Iterables;
-
 import com.ixaris.commons.async.lib.idempotency.Intent;
 import com.ixaris.commons.async.lib.thread.ThreadLocalHelper;
 import com.ixaris.commons.async.test.CompletionStageAssert;
@@ -226,31 +224,44 @@ public class AsyncPersistenceProviderTest {
     
     private static class DummyProcessedIntents implements ProcessedIntents {
         
-        private List<Intent> processedIntents = new LinkedList<>();
+        private final Map<Intent, Long> processedIntents = new LinkedHashMap<>();
         
         @Override
         public void create(final Intent intent) throws DuplicateIntentException {
-            if (processedIntents.contains(intent)) {
+            if (processedIntents.containsKey(intent)) {
                 throw new DuplicateIntentException();
             } else {
-                processedIntents.add(intent);
+                processedIntents.put(intent, System.currentTimeMillis());
             }
         }
         
         @Override
         public boolean exists(final Intent intent) {
-            return processedIntents.contains(intent);
+            return processedIntents.containsKey(intent);
         }
         
         @Override
         public Optional<Intent> fetch(final Intent intent) {
-            return Iterables.tryFind(processedIntents, i -> i.equals(intent)).toJavaUtil();
+            return processedIntents.containsKey(intent) ? Optional.of(intent) : Optional.empty();
         }
         
         @Override
         public void delete(final Intent intent) {
-            Iterables.removeAll(processedIntents, singleton(intent));
+            processedIntents.remove(intent);
         }
+        
+        @Override
+        public int deleteCreatedBefore(final long timestamp, final int limit) {
+            int deleted = 0;
+            for (final Iterator<Long> i = processedIntents.values().iterator(); i.hasNext() && (deleted < limit);) {
+                if (i.next() < timestamp) {
+                    i.remove();
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+        
     }
     
     /**
@@ -0,0 +1,120 @@
+package com.ixaris.commons.persistence.lib;
+
+import static com.ixaris.commons.multitenancy.lib.MultiTenancy.TENANT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TransactionExecutorTest {
+    
+    private final CountDownLatch release = new CountDownLatch(1);
+    private TransactionExecutor executor;
+    
+    @After
+    public void teardown() throws InterruptedException {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(5L, TimeUnit.SECONDS);
+        }
+    }
+    
+    @Test
+    public void fullTenantQueue_shouldRejectTransactionsOfTenant() throws InterruptedException {
+        executor = new TransactionExecutor(1, 2, false);
+        final CountDownLatch done = new CountDownLatch(4);
+        
+        // a1 runs until released, a2 and a3 are queued
+        TENANT.exec("a", () -> {
+            executor.execute(() -> awaitRelease(done));
+            executor.execute(done::countDown);
+            executor.execute(done::countDown);
+        });
+        
+        TENANT.exec("a", () -> {
+            assertThatThrownBy(() -> executor.execute(done::countDown)).isInstanceOf(RejectedExecutionException.class);
+        });
+        // the queue of other tenants is not affected
+        TENANT.exec("b", () -> executor.execute(done::countDown));
+        
+        assertThat(executor.getRunning()).isEqualTo(1);
+        assertThat(executor.getUtilisation()).isEqualTo(1.0);
+        assertThat(executor.getStats("a").getQueueDepth()).isEqualTo(2);
+        assertThat(executor.getStats("a").getRejected()).isEqualTo(1L);
+        assertThat(executor.getStats("b").getRejected()).isZero();
+        
+        release.countDown();
+        assertThat(done.await(5L, TimeUnit.SECONDS)).isTrue();
+        assertThat(executor.getStats("a").getExecuted()).isEqualTo(3L);
+        assertThat(executor.getStats("b").getExecuted()).isEqualTo(1L);
+    }
+    
+    @Test
+    public void poolSize_shouldCapRunningTransactions() throws InterruptedException {
+        executor = new TransactionExecutor(2, 10, false);
+        final CountDownLatch done = new CountDownLatch(3);
+        
+        TENANT.exec("a", () -> {
+            for (int i = 0; i < 3; i++) {
+                executor.execute(() -> awaitRelease(done));
+            }
+        });
+        
+        assertThat(executor.getRunning()).isEqualTo(2);
+        assertThat(executor.getStats("a").getQueueDepth()).isEqualTo(1);
+        
+        release.countDown();
+        assertThat(done.await(5L, TimeUnit.SECONDS)).isTrue();
+    }
+    
+    @Test
+    public void shutdown_shouldRejectTransactions() {
+        executor = new TransactionExecutor(1, 1, false);
+        executor.shutdown();
+        
+        assertThat(executor.isShutdown()).isTrue();
+        assertThatThrownBy(() -> executor.execute(() -> {})).isInstanceOf(RejectedExecutionException.class);
+    }
+    
+    @Test
+    public void virtualThreads_shouldFallBackToPlatformThreadsIfUnsupported() throws InterruptedException {
+        executor = new TransactionExecutor(1, 1, true);
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        
+        executor.execute(() -> {
+            threadName.set(Thread.currentThread().getName());
+            done.countDown();
+        });
+        
+        assertThat(done.await(5L, TimeUnit.SECONDS)).isTrue();
+        if (TransactionExecutor.isVirtualThreadsSupported()) {
+            assertThat(threadName.get()).doesNotStartWith("TransactionExecutor-");
+        } else {
+            assertThat(threadName.get()).startsWith("TransactionExecutor-");
+        }
+    }
+    
+    @Test
+    public void invalidSizes_shouldBeRejected() {
+        assertThatThrownBy(() -> new TransactionExecutor(0, 1, false)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TransactionExecutor(1, 0, false)).isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    private void awaitRelease(final CountDownLatch done) {
+        try {
+            release.await(5L, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        done.countDown();
+    }
+    
+}
@@ -73,6 +73,30 @@ public abstract class AbstractProcessedIntentsTest {
         });
     }
     
+    @Test
+    public void deleteCreatedBefore_IntentsCreatedBefore_Deleted() throws Exception {
+        aroundAsync(() -> {
+            final Intent intent = new Intent(UniqueIdGenerator.generate(), "op", 0L);
+            block(provider.transaction(() -> {
+                provider.getProcessedIntents().create(intent);
+                return null;
+            }));
+            
+            // nothing created before the intent
+            block(provider.transaction(() -> provider.getProcessedIntents().deleteCreatedBefore(0L, 100)));
+            Assertions.assertThat(block(provider.transaction(() -> provider.getProcessedIntents().exists(intent)))).isTrue();
+            
+            int deleted;
+            do {
+                deleted = block(provider.transaction(() -> provider.getProcessedIntents().deleteCreatedBefore(System.currentTimeMillis() + 1L, 100)));
+            } while (deleted == 100);
+            
+            // a new provider, without the intents recently created by the previous one
+            final AsyncPersistenceProvider otherProvider = createProvider();
+            Assertions.assertThat(block(otherProvider.transaction(() -> otherProvider.getProcessedIntents().exists(intent)))).isFalse();
+        });
+    }
+    
     @Test
     public void fetch_IntentDoesNotExist_ReturnsEmptyIntent() throws Exception {
         aroundAsync(() -> {
@@ -1,10 +1,10 @@
 package com.ixaris.commons.protobuf.async;
 
 import static com.ixaris.commons.async.lib.Async.all;
+import static com.ixaris.commons.async.lib.Async.result;
 import static com.ixaris.commons.protobuf.lib.SensitiveMessageHelper.applyMappers;
 import static com.ixaris.commons.protobuf.lib.SensitiveMessageHelper.collectSensitiveFields;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -39,7 +39,8 @@ public final class AsyncSensitiveMessageHelper {
     }
     
     /**
-     * Apply mappings on sensitive data where the mapping is resolved as a promise
+     * Apply mappings on sensitive data where the mapping is resolved as a promise. The mappers are not called for
+     * messages of types without sensitive fields.
      *
      * @param builder The message builder to transform
      * @param temporaryDataMapper the mapping function of the values
@@ -52,7 +53,9 @@ public final class AsyncSensitiveMessageHelper {
                                                     final AsyncSensitiveDataFunction permanentDataMapper,
                                                     final AsyncSensitiveDataFunction maskedDataMapper) {
         final SensitiveDataCollection sensitiveDataCollection = new SensitiveDataCollection();
-        collectSensitiveFields(sensitiveDataCollection, builder, new HashSet<>());
+        if (!collectSensitiveFields(sensitiveDataCollection, builder)) {
+            return result(builder);
+        }
         
         final CompletableFuture<List<SensitiveDataContext>> temporaryDataFuture = temporaryDataMapper
             .apply(sensitiveDataCollection.getTemporaryData())
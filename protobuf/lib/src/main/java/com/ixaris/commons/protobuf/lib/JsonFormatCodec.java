@@ -0,0 +1,34 @@
+package com.ixaris.commons.protobuf.lib;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.util.JsonFormat;
+
+/**
+ * Json codec based on {@link JsonFormat}. Parsers and printers are immutable and thread safe, so a single instance of
+ * each is reused rather than building (and configuring) a new one per call.
+ */
+final class JsonFormatCodec implements MessageJsonCodec {
+    
+    static final JsonFormatCodec INSTANCE = new JsonFormatCodec();
+    
+    private static final JsonFormat.Parser PARSER = JsonFormat.parser().ignoringUnknownFields();
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer().includingDefaultValueFields();
+    private static final JsonFormat.Printer COMPRESSED_PRINTER = JsonFormat.printer().omittingInsignificantWhitespace();
+    
+    @Override
+    public void merge(final Reader json, final Message.Builder builder) throws IOException {
+        PARSER.merge(json, builder);
+    }
+    
+    @Override
+    public void print(final MessageOrBuilder message, final boolean compressed, final Appendable out) throws IOException {
+        (compressed ? COMPRESSED_PRINTER : PRINTER).appendTo(message, out);
+    }
+    
+    private JsonFormatCodec() {}
+    
+}
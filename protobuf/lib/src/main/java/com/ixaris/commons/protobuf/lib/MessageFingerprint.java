@@ -0,0 +1,45 @@
+package com.ixaris.commons.protobuf.lib;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+
+/**
+ * Field fingerprint functions used by the fingerprint functions generated per message, which compute the same
+ * fingerprint as {@link MessageHelper#fingerprint(com.google.protobuf.MessageLiteOrBuilder)} without reflection or
+ * boxing. As with the reflective fingerprint, 0 is returned for default values, which are skipped.
+ */
+public final class MessageFingerprint {
+    
+    public static long combine(final long fingerprint, final long fieldFingerprint) {
+        // skip default values
+        return (fieldFingerprint != 0L) ? (53L * fingerprint) + fieldFingerprint : fingerprint;
+    }
+    
+    public static long fingerprint(final boolean value) {
+        return value ? 1L : 0L;
+    }
+    
+    public static long fingerprint(final long value) {
+        return value;
+    }
+    
+    public static long fingerprint(final double value) {
+        return (long) value;
+    }
+    
+    public static long fingerprint(final String value) {
+        // hash code of the empty string is 0
+        return value.hashCode();
+    }
+    
+    public static long fingerprint(final ByteString value) {
+        return value.isEmpty() ? 0L : value.hashCode();
+    }
+    
+    public static long fingerprint(final MessageLite value) {
+        return MessageHelper.fingerprint(value);
+    }
+    
+    private MessageFingerprint() {}
+    
+}
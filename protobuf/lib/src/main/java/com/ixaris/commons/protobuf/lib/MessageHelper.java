@@ -1,10 +1,20 @@
 package com.ixaris.commons.protobuf.lib;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.StampedLock;
+import java.util.function.ToLongFunction;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Descriptors.EnumValueDescriptor;
@@ -17,7 +27,6 @@ import com.google.protobuf.MessageLite.Builder;
 import com.google.protobuf.MessageLiteOrBuilder;
 import com.google.protobuf.MessageOrBuilder;
 import com.google.protobuf.Parser;
-import com.google.protobuf.util.JsonFormat;
 
 import com.ixaris.commons.misc.lib.lock.LockUtil;
 
@@ -25,21 +34,49 @@ public final class MessageHelper {
     
     private static final Map<Class<?>, MessageLite> INSTANCES_MAP = new HashMap<>();
     private static final StampedLock INSTANCES_LOCK = new StampedLock();
+    private static final Map<Class<?>, MessageJsonCodec> JSON_CODECS = new ConcurrentHashMap<>();
+    
+    private static final ClassValue<ToLongFunction<MessageLiteOrBuilder>> FINGERPRINT_FUNCTIONS = new ClassValue<ToLongFunction<MessageLiteOrBuilder>>() {
+        
+        @Override
+        protected ToLongFunction<MessageLiteOrBuilder> computeValue(final Class<?> type) {
+            return resolveFingerprintFunction(type);
+        }
+        
+    };
+    
+    /**
+     * Register the json codec to use for the given message type instead of the default codec
+     */
+    public static void registerJsonCodec(final Class<? extends Message> type, final MessageJsonCodec codec) {
+        if (type == null) {
+            throw new IllegalArgumentException("type is null");
+        }
+        if (codec == null) {
+            throw new IllegalArgumentException("codec is null");
+        }
+        
+        JSON_CODECS.put(type, codec);
+    }
+    
+    /**
+     * Unregister the json codec registered for the given message type, reverting to the default codec
+     */
+    public static void unregisterJsonCodec(final Class<? extends Message> type) {
+        if (type == null) {
+            throw new IllegalArgumentException("type is null");
+        }
+        
+        JSON_CODECS.remove(type);
+    }
     
     @SuppressWarnings("unchecked")
     public static <T extends MessageLite> T parse(final T defaultInstance, final ByteString bytes) throws InvalidProtocolBufferException {
         return ((Parser<T>) defaultInstance.getParserForType()).parseFrom(bytes);
     }
     
-    @SuppressWarnings("unchecked")
     public static <T extends MessageLite> T parse(final T defaultInstance, final String json) throws InvalidProtocolBufferException {
-        final Builder builder = defaultInstance.newBuilderForType();
-        if (builder instanceof Message.Builder) {
-            JsonFormat.parser().ignoringUnknownFields().merge(json, (Message.Builder) builder);
-            return (T) builder.build();
-        } else {
-            throw new UnsupportedOperationException("Unsupported parsing json for " + defaultInstance.getClass());
-        }
+        return parseJson(defaultInstance, new StringReader(json));
     }
     
     public static <T extends MessageLite> T parse(final Class<T> type, final ByteString bytes) throws InvalidProtocolBufferException {
@@ -47,7 +84,8 @@ public final class MessageHelper {
     }
     
     public static <T extends MessageLite> T parse(final Class<T> type, final ByteString bytes, final boolean json) throws InvalidProtocolBufferException {
-        return !json ? parse(resolveInstance(type), bytes) : parse(resolveInstance(type), bytes.toStringUtf8());
+        // json is decoded while parsing rather than copied to a string first
+        return !json ? parse(resolveInstance(type), bytes) : parseJson(resolveInstance(type), new InputStreamReader(bytes.newInput(), UTF_8));
     }
     
     public static <T extends MessageLite> T parse(final Class<T> type, final String json) throws InvalidProtocolBufferException {
@@ -63,28 +101,43 @@ public final class MessageHelper {
             return "";
         }
         
-        if (instance instanceof MessageOrBuilder) {
-            try {
-                final JsonFormat.Printer printer;
-                if (compressed) {
-                    printer = JsonFormat.printer().omittingInsignificantWhitespace();
-                } else {
-                    printer = JsonFormat.printer().includingDefaultValueFields();
-                }
-                return printer.print((MessageOrBuilder) instance);
-            } catch (final InvalidProtocolBufferException e) {
-                throw new IllegalStateException(e);
-            }
-        } else {
-            throw new UnsupportedOperationException("Unsupported printing json for " + instance.getClass().toString());
+        final StringBuilder sb = new StringBuilder();
+        try {
+            printJson(instance, compressed, sb);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
         }
+        return sb.toString();
     }
     
     public static ByteString bytes(final MessageLite instance, final boolean json) {
-        return !json ? instance.toByteString() : ByteString.copyFromUtf8(json(instance));
+        if (!json) {
+            return instance.toByteString();
+        }
+        
+        // json is encoded while printing rather than copied from a string
+        final ByteString.Output out = ByteString.newOutput();
+        try (final Writer writer = new OutputStreamWriter(out, UTF_8)) {
+            printJson(instance, false, writer);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteString();
     }
     
+    /**
+     * Calculates a fingerprint of the message, combining the fingerprints of the fields having non-default values in
+     * field number order. Uses the fingerprint function generated for the message type by the validation code
+     * generator if available, falling back to reflection otherwise.
+     */
     public static long fingerprint(final MessageLiteOrBuilder instance) {
+        if (instance == null) {
+            throw new UnsupportedOperationException("Unsupported fingerprint for [null message lite instance]");
+        }
+        return FINGERPRINT_FUNCTIONS.get(instance.getClass()).applyAsLong(instance);
+    }
+    
+    static long reflectionFingerprint(final MessageLiteOrBuilder instance) {
         if (instance instanceof MessageOrBuilder) {
             final MessageOrBuilder mb = (MessageOrBuilder) instance;
             long fingerprint = 0L;
@@ -96,8 +149,7 @@ public final class MessageHelper {
             }
             return fingerprint;
         } else {
-            throw new UnsupportedOperationException("Unsupported fingerprint for "
-                + (instance == null ? "[null message lite instance]" : instance.getClass().toString()));
+            throw new UnsupportedOperationException("Unsupported fingerprint for " + instance.getClass().toString());
         }
     }
     
@@ -143,6 +195,55 @@ public final class MessageHelper {
         }
     }
     
+    @SuppressWarnings("unchecked")
+    private static ToLongFunction<MessageLiteOrBuilder> resolveFingerprintFunction(final Class<?> type) {
+        if (MessageLite.class.isAssignableFrom(type)) {
+            try {
+                final Class<?> validationType = Class.forName(type.getName().replace("$", "Validation$") + "Validation", true, type.getClassLoader());
+                return (ToLongFunction<MessageLiteOrBuilder>) validationType.getMethod("getFingerprint").invoke(null);
+            } catch (final ClassNotFoundException | NoSuchMethodException e) {
+                // no generated fingerprint function, e.g. messages with extensions
+            } catch (final IllegalArgumentException | ReflectiveOperationException | SecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return MessageHelper::reflectionFingerprint;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T extends MessageLite> T parseJson(final T defaultInstance, final Reader json) throws InvalidProtocolBufferException {
+        final Builder builder = defaultInstance.newBuilderForType();
+        if (builder instanceof Message.Builder) {
+            try {
+                resolveJsonCodec(defaultInstance.getClass()).merge(json, (Message.Builder) builder);
+            } catch (final InvalidProtocolBufferException e) {
+                throw e;
+            } catch (final IOException e) {
+                throw new InvalidProtocolBufferException(e.getMessage());
+            }
+            return (T) builder.build();
+        } else {
+            throw new UnsupportedOperationException("Unsupported parsing json for " + defaultInstance.getClass());
+        }
+    }
+    
+    private static void printJson(final MessageLiteOrBuilder instance, final boolean compressed, final Appendable out) throws IOException {
+        if (instance instanceof MessageOrBuilder) {
+            try {
+                resolveJsonCodec(instance.getClass()).print((MessageOrBuilder) instance, compressed, out);
+            } catch (final InvalidProtocolBufferException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            throw new UnsupportedOperationException("Unsupported printing json for " + instance.getClass().toString());
+        }
+    }
+    
+    private static MessageJsonCodec resolveJsonCodec(final Class<?> type) {
+        final MessageJsonCodec codec = JSON_CODECS.get(type);
+        return (codec != null) ? codec : JsonFormatCodec.INSTANCE;
+    }
+    
     @SuppressWarnings("unchecked")
     private static <T extends MessageLite> T resolveInstance(final Class<T> type) {
         if (type == null) {
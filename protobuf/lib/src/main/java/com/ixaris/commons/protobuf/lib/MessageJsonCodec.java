@@ -0,0 +1,37 @@
+package com.ixaris.commons.protobuf.lib;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+
+/**
+ * Converts messages to and from json. The default codec is based on {@link com.google.protobuf.util.JsonFormat}.
+ * Codecs for specific message types may be registered using
+ * {@link MessageHelper#registerJsonCodec(Class, MessageJsonCodec)}, e.g. a hand written or generated codec for a
+ * message type on a hot path. Such codecs should produce json equivalent to the default codec and may delegate to
+ * {@link #defaultCodec()} for unsupported features.
+ *
+ * <p>Implementations should be thread safe.
+ */
+public interface MessageJsonCodec {
+    
+    static MessageJsonCodec defaultCodec() {
+        return JsonFormatCodec.INSTANCE;
+    }
+    
+    /**
+     * Merge the json read from the given reader into the builder, ignoring unknown fields
+     */
+    void merge(Reader json, Message.Builder builder) throws IOException;
+    
+    /**
+     * Print the message as json to the given appendable
+     *
+     * @param compressed if true, insignificant whitespace and fields with default values are omitted, otherwise fields
+     *     with default values are included
+     */
+    void print(MessageOrBuilder message, boolean compressed, Appendable out) throws IOException;
+    
+}
@@ -1,14 +1,17 @@
 package com.ixaris.commons.protobuf.lib;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiFunction;
 
+import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor.JavaType;
 import com.google.protobuf.MapEntry;
@@ -23,11 +26,52 @@ import sensitive.Sensitive.SensitiveDataLifetime;
 /**
  * Helper class for messages with sensitive fields that may need to be mapped to some other value e.g. masking/tokenisation
  *
+ * <p>The fields to visit are resolved once per message type into a plan listing the sensitive fields and the message
+ * fields that lead to sensitive fields, so messages of types without sensitive fields are not traversed at all, and the
+ * rest only visit the relevant fields.
+ *
  * @author <a href="mailto:aldrin.seychell@ixaris.com">aldrin.seychell</a>
  */
 public final class SensitiveMessageHelper {
     
-    private static final Set<Class<?>> BUILDERS_WITH_NO_SENSITIVE_FIELDS = new HashSet<>();
+    /**
+     * A field to visit. Either a sensitive field, with its lifetime, or a (repeated or map) message field whose message
+     * type has sensitive fields
+     */
+    private static final class SensitiveField {
+        
+        private final FieldDescriptor descriptor;
+        private final SensitiveDataLifetime lifetime;
+        private final Descriptor messageType;
+        private final FieldDescriptor mapValueDescriptor;
+        
+        private SensitiveField(final FieldDescriptor descriptor,
+                               final SensitiveDataLifetime lifetime,
+                               final Descriptor messageType,
+                               final FieldDescriptor mapValueDescriptor) {
+            this.descriptor = descriptor;
+            this.lifetime = lifetime;
+            this.messageType = messageType;
+            this.mapValueDescriptor = mapValueDescriptor;
+        }
+        
+    }
+    
+    private static final class SensitivePlan {
+        
+        private final SensitiveField[] fields;
+        
+        private SensitivePlan(final SensitiveField[] fields) {
+            this.fields = fields;
+        }
+        
+        private boolean isEmpty() {
+            return fields.length == 0;
+        }
+        
+    }
+    
+    private static final ConcurrentMap<Descriptor, SensitivePlan> PLANS = new ConcurrentHashMap<>();
     
     private SensitiveMessageHelper() {}
     
@@ -51,6 +95,14 @@ public final class SensitiveMessageHelper {
         return Optional.empty();
     }
     
+    /**
+     * @param descriptor The protobuf message descriptor
+     * @return true if messages of the given type have sensitive fields, directly or in nested messages
+     */
+    public static boolean hasSensitiveFields(final Descriptor descriptor) {
+        return !plan(descriptor).isEmpty();
+    }
+    
     /**
      * Apply mappings on sensitive data where the mapping is resolved as a promise
      *
@@ -66,7 +118,8 @@ public final class SensitiveMessageHelper {
     }
     
     /**
-     * Apply mappings on sensitive data where the mapping is resolved as a promise
+     * Apply mappings on sensitive data where the mapping is resolved as a promise. The mappers are not called for
+     * messages of types without sensitive fields.
      *
      * @param builder The message builder to transform
      * @param temporaryDataMapper the mapping function of the values
@@ -79,7 +132,9 @@ public final class SensitiveMessageHelper {
                                                            final SensitiveDataFunction permanentDataMapper,
                                                            final SensitiveDataFunction maskedDataMapper) {
         final SensitiveDataCollection sensitiveDataCollection = new SensitiveDataCollection();
-        collectSensitiveFields(sensitiveDataCollection, builder, new HashSet<>());
+        if (!collectSensitiveFields(sensitiveDataCollection, builder)) {
+            return builder;
+        }
         
         final List<SensitiveDataContext> mappedTemporaryData = temporaryDataMapper.apply(sensitiveDataCollection.getTemporaryData());
         final List<SensitiveDataContext> mappedPermanentData = permanentDataMapper.apply(sensitiveDataCollection.getPermanentData());
@@ -103,8 +158,13 @@ public final class SensitiveMessageHelper {
             throw new IllegalStateException("Size of masked sensitive data list altered during mapping!");
         }
         
+        final SensitivePlan plan = plan(builder.getDescriptorForType());
+        if (plan.isEmpty()) {
+            return builder;
+        }
+        
         final SensitiveDataCollection updatedSensitiveData = new SensitiveDataCollection(mappedTemporaryData, mappedPermanentData, mappedMaskedData);
-        mapSensitiveFields(builder, (o, sensitiveDataLifetime) -> {
+        mapSensitiveFields(builder, plan, (o, sensitiveDataLifetime) -> {
             if (sensitiveDataLifetime == SensitiveDataLifetime.TEMPORARY) {
                 return updatedSensitiveData.popTemporaryData();
             } else if (sensitiveDataLifetime == SensitiveDataLifetime.PERMANENT) {
@@ -118,161 +178,168 @@ public final class SensitiveMessageHelper {
         return builder;
     }
     
+    /**
+     * Collect the values of all sensitive fields of the message (including repeated and nested), in the order in which
+     * {@link #applyMappers(Builder, SensitiveDataCollection, List, List, List)} expects the mapped values
+     *
+     * @return true if the message type has sensitive fields, false if there is nothing to collect or map
+     */
+    public static boolean collectSensitiveFields(final SensitiveDataCollection sensitiveDataCollection, final MessageOrBuilder messageOrBuilder) {
+        final SensitivePlan plan = plan(messageOrBuilder.getDescriptorForType());
+        if (plan.isEmpty()) {
+            return false;
+        }
+        collectSensitiveFields(sensitiveDataCollection, messageOrBuilder, plan);
+        return true;
+    }
+    
+    /**
+     * @deprecated use {@link #collectSensitiveFields(SensitiveDataCollection, MessageOrBuilder)}, recursive message types
+     *     are handled when resolving the fields to visit
+     */
+    @Deprecated
     public static boolean collectSensitiveFields(final SensitiveDataCollection sensitiveDataCollection,
                                                  final MessageOrBuilder messageOrBuilder,
                                                  final Set<Class<?>> typesBeingScanned) {
-        final Class<? extends Message> messageType = messageOrBuilder.getDefaultInstanceForType().getClass();
-        if (BUILDERS_WITH_NO_SENSITIVE_FIELDS.contains(messageType)) {
-            return false;
-        }
-        final boolean beingScanned = !typesBeingScanned.add(messageType);
-        
-        boolean hasSensitiveFields = false;
-        for (final FieldDescriptor fieldDescriptor : messageOrBuilder.getDescriptorForType().getFields()) {
-            
-            if (fieldDescriptor.isRepeated()) {
-                if (isRepeatedMessage(fieldDescriptor)) {
-                    hasSensitiveFields |= collectSensitiveRepeatedField(sensitiveDataCollection, typesBeingScanned, messageOrBuilder, messageType, fieldDescriptor);
+        return collectSensitiveFields(sensitiveDataCollection, messageOrBuilder);
+    }
+    
+    private static void collectSensitiveFields(final SensitiveDataCollection sensitiveDataCollection,
+                                               final MessageOrBuilder messageOrBuilder,
+                                               final SensitivePlan plan) {
+        for (final SensitiveField field : plan.fields) {
+            if (field.lifetime != null) {
+                final Object value = messageOrBuilder.getField(field.descriptor);
+                if (!value.toString().equals("")) {
+                    sensitiveDataCollection.addData(field.lifetime, field.descriptor.getJsonName(), value);
                 }
-            } else if (fieldDescriptor.getJavaType() == JavaType.MESSAGE) {
-                final Message field = (Message) messageOrBuilder.getField(fieldDescriptor);
-                hasSensitiveFields |= collectSensitiveMessageFields(sensitiveDataCollection, typesBeingScanned, field);
-            } else {
-                final Optional<SensitiveDataLifetime> maybeSensitiveDataLifetime = resolveSensitiveData(fieldDescriptor);
-                if (maybeSensitiveDataLifetime.isPresent()) {
-                    hasSensitiveFields = true;
-                    final SensitiveDataLifetime sensitiveDataLifetime = maybeSensitiveDataLifetime.get();
-                    Object value = messageOrBuilder.getField(fieldDescriptor);
-                    if (!value.toString().equals("")) {
-                        sensitiveDataCollection.addData(sensitiveDataLifetime, fieldDescriptor.getJsonName(), value);
+            } else if (field.descriptor.isRepeated()) {
+                final SensitivePlan nestedPlan = plan(field.messageType);
+                final int repeatedFieldCount = messageOrBuilder.getRepeatedFieldCount(field.descriptor);
+                for (int i = 0; i < repeatedFieldCount; i++) {
+                    final Object repeated = messageOrBuilder.getRepeatedField(field.descriptor, i);
+                    final Message value = (Message) (field.mapValueDescriptor != null ? ((MapEntry<?, ?>) repeated).getValue() : repeated);
+                    if (isSet(value)) {
+                        collectSensitiveFields(sensitiveDataCollection, value, nestedPlan);
                     }
+                    // repeated fields should not be marked sensitive themselves
+                }
+            } else {
+                final Message value = (Message) messageOrBuilder.getField(field.descriptor);
+                if (isSet(value)) {
+                    collectSensitiveFields(sensitiveDataCollection, value, plan(field.messageType));
                 }
             }
         }
-        
-        if (!hasSensitiveFields) {
-            BUILDERS_WITH_NO_SENSITIVE_FIELDS.add(messageType);
-        }
-        if (!beingScanned) {
-            typesBeingScanned.remove(messageType);
-        }
-        return hasSensitiveFields;
     }
     
-    private static boolean isRepeatedMessage(final FieldDescriptor fieldDescriptor) {
-        if (fieldDescriptor.getJavaType() == JavaType.MESSAGE) {
-            if (fieldDescriptor.isMapField()) {
-                final FieldDescriptor valueDescriptor = fieldDescriptor.getMessageType().getFields().get(1);
-                return valueDescriptor.getJavaType() == JavaType.MESSAGE;
+    /**
+     * Apply a mapper function on all sensitive fields of the message (including repeated and nested)
+     *
+     * @param builder The message builder to transform
+     * @param plan the fields to visit
+     * @param mapper the mapping function of the values
+     * @return Updated builder with the mapper applied to all sensitive fields
+     */
+    private static Builder mapSensitiveFields(final Builder builder,
+                                              final SensitivePlan plan,
+                                              final BiFunction<Object, SensitiveDataLifetime, SensitiveDataContext> mapper) {
+        for (final SensitiveField field : plan.fields) {
+            if (field.lifetime != null) {
+                final Object value = builder.getField(field.descriptor);
+                if (!value.toString().equals("")) {
+                    builder.setField(field.descriptor, mapper.apply(value, field.lifetime).getSensitiveData());
+                }
+            } else if (field.descriptor.isRepeated()) {
+                final SensitivePlan nestedPlan = plan(field.messageType);
+                final int repeatedFieldCount = builder.getRepeatedFieldCount(field.descriptor);
+                for (int i = 0; i < repeatedFieldCount; i++) {
+                    if (field.mapValueDescriptor != null) {
+                        final MapEntry<?, ?> mapEntry = (MapEntry<?, ?>) builder.getRepeatedField(field.descriptor, i);
+                        final Message value = (Message) mapEntry.getValue();
+                        if (isSet(value)) {
+                            builder.setRepeatedField(field.descriptor,
+                                i,
+                                mapEntry.toBuilder()
+                                    .setField(field.mapValueDescriptor, mapSensitiveFields(value.toBuilder(), nestedPlan, mapper).build())
+                                    .build());
+                        }
+                    } else {
+                        final Message value = (Message) builder.getRepeatedField(field.descriptor, i);
+                        if (isSet(value)) {
+                            builder.setRepeatedField(field.descriptor, i, mapSensitiveFields(value.toBuilder(), nestedPlan, mapper).build());
+                        }
+                    }
+                }
             } else {
-                return true;
+                final Message value = (Message) builder.getField(field.descriptor);
+                if (isSet(value)) {
+                    builder.setField(field.descriptor, mapSensitiveFields(value.toBuilder(), plan(field.messageType), mapper).build());
+                }
             }
         }
-        return false;
+        return builder;
     }
     
-    private static boolean collectSensitiveMessageFields(final SensitiveDataCollection sensitiveDataCollection, final Set<Class<?>> typesBeingScanned, final Message field) {
-        if ((field != field.getDefaultInstanceForType()) || !typesBeingScanned.contains(field.getDefaultInstanceForType().getClass())) {
-            return collectSensitiveFields(sensitiveDataCollection, field, typesBeingScanned);
-        }
-        return false;
+    private static boolean isSet(final Message message) {
+        return (message != null) && (message != message.getDefaultInstanceForType());
     }
     
-    private static boolean collectSensitiveRepeatedField(final SensitiveDataCollection sensitiveDataCollection,
-                                                         final Set<Class<?>> typesBeingScanned,
-                                                         final MessageOrBuilder messageOrBuilder,
-                                                         final Class<? extends Message> messageType,
-                                                         final FieldDescriptor fieldDescriptor) {
-        boolean hasSensitiveFields = false;
-        final int repeatedFieldCount = messageOrBuilder.getRepeatedFieldCount(fieldDescriptor);
-        for (int i = 0; i < repeatedFieldCount; i++) {
-            if (BUILDERS_WITH_NO_SENSITIVE_FIELDS.contains(messageType)) {
-                break;
-            }
-            Message repeated;
-            if (fieldDescriptor.isMapField()) {
-                final MapEntry<?, ?> mapEntry = (MapEntry<?, ?>) messageOrBuilder.getRepeatedField(fieldDescriptor, i);
-                repeated = (Message) mapEntry.getValue();
-            } else {
-                repeated = (Message) messageOrBuilder.getRepeatedField(fieldDescriptor, i);
+    private static SensitivePlan plan(final Descriptor descriptor) {
+        return PLANS.computeIfAbsent(descriptor, SensitiveMessageHelper::resolvePlan);
+    }
+    
+    private static SensitivePlan resolvePlan(final Descriptor descriptor) {
+        final List<SensitiveField> fields = new ArrayList<>();
+        for (final FieldDescriptor fieldDescriptor : descriptor.getFields()) {
+            if (fieldDescriptor.getJavaType() == JavaType.MESSAGE) {
+                final FieldDescriptor mapValueDescriptor = fieldDescriptor.isMapField() ? fieldDescriptor.getMessageType().getFields().get(1) : null;
+                final Descriptor messageType = resolveMessageType(fieldDescriptor);
+                if ((messageType != null) && reachesSensitiveField(messageType)) {
+                    fields.add(new SensitiveField(fieldDescriptor, null, messageType, mapValueDescriptor));
+                }
+            } else if (!fieldDescriptor.isRepeated()) {
+                // repeated fields should not be marked sensitive themselves
+                resolveSensitiveData(fieldDescriptor).ifPresent(lifetime -> fields.add(new SensitiveField(fieldDescriptor, lifetime, null, null)));
             }
-            hasSensitiveFields |= collectSensitiveMessageFields(sensitiveDataCollection, typesBeingScanned, repeated);
-            // repeated fields should not be marked sensitive themselves
         }
-        return hasSensitiveFields;
+        return new SensitivePlan(fields.toArray(new SensitiveField[0]));
     }
     
     /**
-     * Apply a mapper function on all sensitive fields of the message (including repeated and nested)
-     *
-     * @param builder The message builder to transform
-     * @param mapper the mapping function of the values
-     * @return Updated builder with the mapper applied to all sensitive fields
+     * @return the message type of a message field, or of the values of a map field, or null if a map of non-messages
      */
-    private static Builder mapSensitiveFields(final Builder builder, final BiFunction<Object, SensitiveDataLifetime, SensitiveDataContext> mapper) {
-        final Class<? extends Message> messageType = builder.getDefaultInstanceForType().getClass();
-        if (BUILDERS_WITH_NO_SENSITIVE_FIELDS.contains(messageType)) {
-            return builder;
+    private static Descriptor resolveMessageType(final FieldDescriptor fieldDescriptor) {
+        if (fieldDescriptor.isMapField()) {
+            final FieldDescriptor valueDescriptor = fieldDescriptor.getMessageType().getFields().get(1);
+            return valueDescriptor.getJavaType() == JavaType.MESSAGE ? valueDescriptor.getMessageType() : null;
+        } else {
+            return fieldDescriptor.getMessageType();
         }
-        
-        final Map<FieldDescriptor, Object> allFields = builder.getAllFields();
-        for (final Entry<FieldDescriptor, Object> descriptorObjectEntry : allFields.entrySet()) {
-            final FieldDescriptor fieldDescriptor = descriptorObjectEntry.getKey();
-            
-            if (fieldDescriptor.isRepeated()) {
-                boolean repeatedMessage = false;
-                FieldDescriptor valueDescriptor = null;
+    }
+    
+    /**
+     * Breadth first search of the message types reachable from the given message type (which may be recursive) for a
+     * sensitive field. Does not resolve plans, since this is called while resolving a plan.
+     */
+    private static boolean reachesSensitiveField(final Descriptor descriptor) {
+        final Set<Descriptor> visited = new HashSet<>();
+        final Deque<Descriptor> toVisit = new ArrayDeque<>();
+        visited.add(descriptor);
+        toVisit.add(descriptor);
+        while (!toVisit.isEmpty()) {
+            for (final FieldDescriptor fieldDescriptor : toVisit.poll().getFields()) {
                 if (fieldDescriptor.getJavaType() == JavaType.MESSAGE) {
-                    if (fieldDescriptor.isMapField()) {
-                        valueDescriptor = fieldDescriptor.getMessageType().getFields().get(1);
-                        if (valueDescriptor.getJavaType() == JavaType.MESSAGE) {
-                            repeatedMessage = true;
-                        }
-                    } else {
-                        repeatedMessage = true;
+                    final Descriptor messageType = resolveMessageType(fieldDescriptor);
+                    if ((messageType != null) && visited.add(messageType)) {
+                        toVisit.add(messageType);
                     }
-                }
-                
-                if (repeatedMessage) {
-                    final int repeatedFieldCount = builder.getRepeatedFieldCount(fieldDescriptor);
-                    for (int i = 0; i < repeatedFieldCount; i++) {
-                        if (BUILDERS_WITH_NO_SENSITIVE_FIELDS.contains(messageType)) {
-                            break;
-                        }
-                        if (fieldDescriptor.isMapField()) {
-                            final MapEntry<?, ?> mapEntry = (MapEntry<?, ?>) builder.getRepeatedField(fieldDescriptor, i);
-                            final Message repeated = (Message) mapEntry.getValue();
-                            if ((repeated != null) && (repeated != repeated.getDefaultInstanceForType())) {
-                                builder.setRepeatedField(fieldDescriptor,
-                                    i,
-                                    mapEntry.toBuilder()
-                                        .setField(valueDescriptor, mapSensitiveFields(repeated.toBuilder(), mapper).build())
-                                        .build());
-                            }
-                        } else {
-                            final Message repeated = (Message) builder.getRepeatedField(fieldDescriptor, i);
-                            if ((repeated != null) && (repeated != repeated.getDefaultInstanceForType())) {
-                                builder.setRepeatedField(fieldDescriptor, i, mapSensitiveFields(repeated.toBuilder(), mapper).build());
-                            }
-                        }
-                    }
-                    // repeated fields should not be marked sensitive themselves
-                }
-            } else if (fieldDescriptor.getJavaType() == JavaType.MESSAGE) {
-                final Message field = (Message) builder.getField(fieldDescriptor);
-                if (field != field.getDefaultInstanceForType()) {
-                    final Builder mappedNestedField = mapSensitiveFields(field.toBuilder(), mapper);
-                    builder.setField(fieldDescriptor, mappedNestedField.build());
-                }
-            } else if (!descriptorObjectEntry.getValue().toString().equals("")) {
-                final Optional<SensitiveDataLifetime> maybeSensitiveDataLifetime = resolveSensitiveData(fieldDescriptor);
-                if (maybeSensitiveDataLifetime.isPresent()) {
-                    final SensitiveDataContext updatedValue = mapper.apply(descriptorObjectEntry.getValue(), maybeSensitiveDataLifetime.get());
-                    builder.setField(fieldDescriptor, updatedValue.getSensitiveData());
+                } else if (!fieldDescriptor.isRepeated() && resolveSensitiveData(fieldDescriptor).isPresent()) {
+                    return true;
                 }
             }
         }
-        return builder;
+        return false;
     }
     
     @SuppressWarnings("ReturnOfCollectionOrArrayField")
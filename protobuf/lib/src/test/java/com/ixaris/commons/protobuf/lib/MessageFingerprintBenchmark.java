@@ -0,0 +1,97 @@
+package com.ixaris.commons.protobuf.lib;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.ixaris.commons.protobuf.lib.example.Example.DataWithSensitiveFields;
+import com.ixaris.commons.protobuf.lib.example.Example.FingerprintMessage;
+import com.ixaris.commons.protobuf.lib.example.Example.Nested;
+import com.ixaris.commons.protobuf.lib.example.Example.Nested.E;
+import com.ixaris.commons.protobuf.lib.example.Example.NestedSensitive;
+
+/**
+ * Compares the fingerprint generated by the validation protoc plugin with the reflection based fingerprint (via
+ * getAllFields()) on request-like messages, i.e. a few scalar fields, a nested message, lists and maps.
+ *
+ * <p>Run {@link #main(String[])} to include the allocated bytes per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageFingerprintBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class Messages {
+        
+        private FingerprintMessage small;
+        private DataWithSensitiveFields large;
+        
+        @Setup
+        public void setup() {
+            final Nested nested = Nested.newBuilder().setA("a").setC(3).setD(4L).setE(E.B).build();
+            small = FingerprintMessage.newBuilder()
+                .setS("c8c5a0b2-6fd5-4c5b-9f0e-2c0d3b0f4c2e")
+                .addL(1L)
+                .addL(2L)
+                .putM("A", 1)
+                .setNested(nested)
+                .build();
+            final DataWithSensitiveFields.Builder builder = DataWithSensitiveFields.newBuilder().setData("data").setNotSensitive(nested);
+            for (int i = 0; i < 10; i++) {
+                builder
+                    .addRepeatedNested(NestedSensitive.newBuilder().setNotSensitive("n" + i))
+                    .addNumbers(i)
+                    .putStrings("k" + i, "v" + i)
+                    .putMapNotSensitive("k" + i, nested);
+            }
+            large = builder.build();
+        }
+        
+    }
+    
+    @Benchmark
+    public long smallGenerated(final Messages messages) {
+        return MessageHelper.fingerprint(messages.small);
+    }
+    
+    @Benchmark
+    public long smallReflection(final Messages messages) {
+        return MessageHelper.reflectionFingerprint(messages.small);
+    }
+    
+    @Benchmark
+    public long largeGenerated(final Messages messages) {
+        return MessageHelper.fingerprint(messages.large);
+    }
+    
+    @Benchmark
+    public long largeReflection(final Messages messages) {
+        return MessageHelper.reflectionFingerprint(messages.large);
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+            .include(MessageFingerprintBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+    
+}
@@ -3,18 +3,25 @@ package com.ixaris.commons.protobuf.lib;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.regex.Pattern;
 
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
 
+import com.ixaris.commons.protobuf.lib.example.Example.DataWithSensitiveFields;
 import com.ixaris.commons.protobuf.lib.example.Example.ExampleMessage;
 import com.ixaris.commons.protobuf.lib.example.Example.ExampleMessage.ExampleEnum;
 import com.ixaris.commons.protobuf.lib.example.Example.FingerprintMessage;
 import com.ixaris.commons.protobuf.lib.example.Example.Nested;
 import com.ixaris.commons.protobuf.lib.example.Example.Nested.E;
+import com.ixaris.commons.protobuf.lib.example.Example.NestedSensitive;
 
 public class MessageHelperTest {
     
@@ -51,6 +58,44 @@ public class MessageHelperTest {
         assertNotEquals(MessageHelper.fingerprint(m), MessageHelper.fingerprint(m2));
     }
     
+    @Test
+    public void generatedFingerprint_shouldMatchReflectionFingerprint() {
+        final Nested nested = Nested.newBuilder().setA("a").setC(-3).setD(4L).setE(E.B).setN(Nested.newBuilder().setB("b")).build();
+        final FingerprintMessage m = FingerprintMessage.newBuilder()
+            .setS("test1")
+            .addL(0L)
+            .addL(2L)
+            .putM("A", 0)
+            .putM("", 2)
+            .setNested(nested)
+            .build();
+        final ExampleMessage m2 = ExampleMessage.newBuilder()
+            .setBoolean(true)
+            .setString("test")
+            .setInteger(42)
+            .setLong(Long.MIN_VALUE)
+            .setEnum(ExampleEnum.TWO)
+            .setNested(nested)
+            .build();
+        final DataWithSensitiveFields m3 = DataWithSensitiveFields.newBuilder()
+            .setData("data")
+            .addRepeatedNested(NestedSensitive.newBuilder().setNotSensitive("x"))
+            .addRepeatedNested(NestedSensitive.getDefaultInstance())
+            .putMapNested("k", NestedSensitive.newBuilder().setAnotherCardNumber("1234").build())
+            .addActions(DataWithSensitiveFields.ExampleEnum.ONE)
+            .addActions(DataWithSensitiveFields.ExampleEnum.ZERO)
+            .addNumbers(7L)
+            .putStrings("a", "b")
+            .putMapNotSensitive("n", nested)
+            .build();
+        
+        assertEquals(MessageHelper.reflectionFingerprint(m), MessageHelper.fingerprint(m));
+        assertEquals(MessageHelper.reflectionFingerprint(m2), MessageHelper.fingerprint(m2));
+        assertEquals(MessageHelper.reflectionFingerprint(m3), MessageHelper.fingerprint(m3));
+        assertEquals(MessageHelper.reflectionFingerprint(m.toBuilder()), MessageHelper.fingerprint(m.toBuilder()));
+        assertEquals(0L, MessageHelper.fingerprint(FingerprintMessage.getDefaultInstance()));
+    }
+    
     @Test
     public void protobufToJsonAndBack_shouldRemainEqual() throws InvalidProtocolBufferException {
         final ExampleMessage message = ExampleMessage.newBuilder()
@@ -119,6 +164,48 @@ public class MessageHelperTest {
         Assertions.assertThat(MessageHelper.parse(ExampleMessage.getDefaultInstance(), json)).isEqualTo(expectedMessage);
     }
     
+    @Test
+    public void jsonBytes_shouldMatchJsonAndParseBack() throws InvalidProtocolBufferException {
+        final ExampleMessage message = ExampleMessage.newBuilder()
+            .setString("t\u00e8st \u20ac")
+            .setLong(43L)
+            .setNested(Nested.newBuilder().setA("\"quoted\"").setE(E.A).build())
+            .build();
+        
+        final ByteString bytes = MessageHelper.bytes(message, true);
+        Assertions.assertThat(bytes.toStringUtf8()).isEqualTo(MessageHelper.json(message));
+        Assertions.assertThat(MessageHelper.parse(ExampleMessage.class, bytes, true)).isEqualTo(message);
+    }
+    
+    @Test
+    public void registeredJsonCodec_shouldBeUsedForType() throws InvalidProtocolBufferException {
+        MessageHelper.registerJsonCodec(FingerprintMessage.class, new MessageJsonCodec() {
+            
+            @Override
+            public void merge(final Reader json, final Message.Builder builder) throws IOException {
+                MessageJsonCodec.defaultCodec().merge(json, builder);
+                ((FingerprintMessage.Builder) builder).setS("custom");
+            }
+            
+            @Override
+            public void print(final MessageOrBuilder message, final boolean compressed, final Appendable out) throws IOException {
+                out.append("{\"s\":\"custom\"}");
+            }
+            
+        });
+        
+        try {
+            Assertions.assertThat(MessageHelper.json(FingerprintMessage.newBuilder().addL(1L).build())).isEqualTo("{\"s\":\"custom\"}");
+            Assertions.assertThat(MessageHelper.parse(FingerprintMessage.class, "{\"l\":[\"1\"]}"))
+                .isEqualTo(FingerprintMessage.newBuilder().setS("custom").addL(1L).build());
+            Assertions.assertThat(MessageHelper.json(ExampleMessage.getDefaultInstance(), true)).isEqualTo("{}");
+        } finally {
+            MessageHelper.unregisterJsonCodec(FingerprintMessage.class);
+        }
+        
+        Assertions.assertThat(MessageHelper.json(FingerprintMessage.newBuilder().addL(1L).build(), true)).isEqualTo("{\"l\":[\"1\"]}");
+    }
+    
     private static String cleanWhitespaces(final String toClean) {
         return WHITESPACES.matcher(toClean).replaceAll("");
     }
@@ -0,0 +1,97 @@
+package com.ixaris.commons.protobuf.lib;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+
+import com.ixaris.commons.protobuf.lib.example.Example.DataWithSensitiveFields;
+import com.ixaris.commons.protobuf.lib.example.Example.Nested;
+import com.ixaris.commons.protobuf.lib.example.Example.Nested.E;
+import com.ixaris.commons.protobuf.lib.example.Example.NestedSensitive;
+
+/**
+ * Compares the json payload path of {@link MessageHelper} (reused parser and printer, decoding and encoding while
+ * parsing and printing) with the previous path (new parser or printer per call, going through a string), for a json
+ * request payload being parsed and a json response payload being printed.
+ *
+ * <p>Run {@link #main(String[])} to include the allocated bytes per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageJsonBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class Payloads {
+        
+        private DataWithSensitiveFields message;
+        private ByteString json;
+        
+        @Setup
+        public void setup() {
+            final Nested nested = Nested.newBuilder().setA("a").setC(3).setD(4L).setE(E.B).build();
+            final DataWithSensitiveFields.Builder builder = DataWithSensitiveFields.newBuilder().setData("data").setNotSensitive(nested);
+            for (int i = 0; i < 5; i++) {
+                builder
+                    .addRepeatedNested(NestedSensitive.newBuilder().setNotSensitive("n" + i))
+                    .addNumbers(i)
+                    .putStrings("k" + i, "v" + i)
+                    .putMapNotSensitive("k" + i, nested);
+            }
+            message = builder.build();
+            json = MessageHelper.bytes(message, true);
+        }
+        
+    }
+    
+    @Benchmark
+    public ByteString printPrevious(final Payloads payloads) throws InvalidProtocolBufferException {
+        return ByteString.copyFromUtf8(JsonFormat.printer().includingDefaultValueFields().print(payloads.message));
+    }
+    
+    @Benchmark
+    public ByteString print(final Payloads payloads) {
+        return MessageHelper.bytes(payloads.message, true);
+    }
+    
+    @Benchmark
+    public DataWithSensitiveFields parsePrevious(final Payloads payloads) throws InvalidProtocolBufferException {
+        final DataWithSensitiveFields.Builder builder = DataWithSensitiveFields.newBuilder();
+        JsonFormat.parser().ignoringUnknownFields().merge(payloads.json.toStringUtf8(), builder);
+        return builder.build();
+    }
+    
+    @Benchmark
+    public DataWithSensitiveFields parse(final Payloads payloads) throws InvalidProtocolBufferException {
+        return MessageHelper.parse(DataWithSensitiveFields.class, payloads.json, true);
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+            .include(MessageJsonBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+    
+}
@@ -18,6 +18,7 @@ import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.ixaris.commons.protobuf.lib.SensitiveMessageHelper.SensitiveDataContext;
 import com.ixaris.commons.protobuf.lib.example.Example.DataWithSensitiveFields;
 import com.ixaris.commons.protobuf.lib.example.Example.DataWithSensitiveFields.ExampleEnum;
+import com.ixaris.commons.protobuf.lib.example.Example.FingerprintMessage;
 import com.ixaris.commons.protobuf.lib.example.Example.Nested;
 import com.ixaris.commons.protobuf.lib.example.Example.NestedSensitive;
 
@@ -227,12 +228,52 @@ public class MessageSensitiveDataTest {
         LOG.info("Transformed message: {}", MessageHelper.json(transformedMessage));
     }
     
+    @Test
+    public void hasSensitiveFields_resolvedFromFieldsAndNestedMessages() {
+        assertThat(SensitiveMessageHelper.hasSensitiveFields(DataWithSensitiveFields.getDescriptor())).isTrue();
+        assertThat(SensitiveMessageHelper.hasSensitiveFields(NestedSensitive.getDescriptor())).isTrue();
+        // recursive, and only nested within a message with sensitive fields
+        assertThat(SensitiveMessageHelper.hasSensitiveFields(Nested.getDescriptor())).isFalse();
+        assertThat(SensitiveMessageHelper.hasSensitiveFields(FingerprintMessage.getDescriptor())).isFalse();
+    }
+    
+    @Test
+    public void noSensitiveFields_mappersNotCalled() {
+        final MapperAssertion mapper = new MapperAssertion();
+        final Nested message = Nested.newBuilder().setA("a").setN(Nested.newBuilder().setA("b").setN(Nested.newBuilder().setA("c"))).build();
+        
+        final Nested transformedMessage = SensitiveMessageHelper.mapSensitiveFields(message.toBuilder(), mapper, mapper, mapper).build();
+        
+        assertThat(mapper.calls).isZero();
+        assertThat(transformedMessage).isEqualTo(message);
+    }
+    
+    @Test
+    public void sensitiveDataInMap_sensitiveMapper() {
+        final DataWithSensitiveFields message = DataWithSensitiveFields.newBuilder()
+            .putMapNested("a", NestedSensitive.newBuilder().setAnotherCardNumber("1").setNotSensitive("notsensitive").build())
+            .putMapNested("b", NestedSensitive.newBuilder().setAnotherCardNumber("2").build())
+            .putMapNotSensitive("c", Nested.newBuilder().setA("a").build())
+            .build();
+        
+        final DataWithSensitiveFields transformedMessage = SensitiveMessageHelper
+            .mapSensitiveFields(message.toBuilder(), new QualifierMapper("temporary_"), new QualifierMapper("permanent_"))
+            .build();
+        
+        assertThat(transformedMessage.getMapNestedOrThrow("a").getAnotherCardNumber()).isEqualTo("permanent_1");
+        assertThat(transformedMessage.getMapNestedOrThrow("a").getNotSensitive()).isEqualTo("notsensitive");
+        assertThat(transformedMessage.getMapNestedOrThrow("b").getAnotherCardNumber()).isEqualTo("permanent_2");
+        assertThat(transformedMessage.getMapNotSensitiveOrThrow("c").getA()).isEqualTo("a");
+    }
+    
     private class MapperAssertion implements SensitiveDataFunction {
         
         private final List<String> fieldName = new ArrayList<>();
+        private int calls;
         
         @Override
         public List<SensitiveDataContext> apply(final List<SensitiveDataContext> sensitiveDataContexts) {
+            calls++;
             for (final SensitiveDataContext sensitiveDataContext : sensitiveDataContexts) {
                 fieldName.add(sensitiveDataContext.getFieldName());
             }
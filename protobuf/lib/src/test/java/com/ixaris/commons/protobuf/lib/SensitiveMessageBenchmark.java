@@ -0,0 +1,117 @@
+package com.ixaris.commons.protobuf.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.protobuf.Message;
+
+import com.ixaris.commons.protobuf.lib.SensitiveMessageHelper.SensitiveDataContext;
+import com.ixaris.commons.protobuf.lib.example.Example.DataWithSensitiveFields;
+import com.ixaris.commons.protobuf.lib.example.Example.FingerprintMessage;
+import com.ixaris.commons.protobuf.lib.example.Example.Nested;
+import com.ixaris.commons.protobuf.lib.example.Example.Nested.E;
+import com.ixaris.commons.protobuf.lib.example.Example.NestedSensitive;
+
+/**
+ * Masks sensitive fields the way messages are sanitised for logging, on a request-like message without sensitive fields
+ * (skipped, since its type has no sensitive fields) and on a response-like message with sensitive fields, both directly
+ * and in nested, repeated and map fields, alongside fields that do not lead to sensitive fields.
+ *
+ * <p>Run {@link #main(String[])} to include the allocated bytes per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensitiveMessageBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class Messages {
+        
+        private FingerprintMessage request;
+        private DataWithSensitiveFields response;
+        
+        @Setup
+        public void setup() {
+            final Nested nested = Nested.newBuilder().setA("a").setC(3).setD(4L).setE(E.B).build();
+            request = FingerprintMessage.newBuilder()
+                .setS("c8c5a0b2-6fd5-4c5b-9f0e-2c0d3b0f4c2e")
+                .addL(1L)
+                .addL(2L)
+                .putM("A", 1)
+                .setNested(nested)
+                .build();
+            final DataWithSensitiveFields.Builder builder = DataWithSensitiveFields.newBuilder()
+                .setData("data")
+                .setPassword("password")
+                .setCardNumber("4111111111111111")
+                .setNested(NestedSensitive.newBuilder().setAnotherCardNumber("4111111111111111"))
+                .setNotSensitive(nested);
+            for (int i = 0; i < 10; i++) {
+                builder
+                    .addRepeatedNested(NestedSensitive.newBuilder().setAnotherCardNumber("411111111111111" + i).setNotSensitive("n" + i))
+                    .addNumbers(i)
+                    .putStrings("k" + i, "v" + i)
+                    .putMapNotSensitive("k" + i, nested);
+            }
+            response = builder.build();
+        }
+        
+    }
+    
+    @Benchmark
+    public Message request(final Messages messages) {
+        return sanitise(messages.request);
+    }
+    
+    @Benchmark
+    public Message response(final Messages messages) {
+        return sanitise(messages.response);
+    }
+    
+    private static Message sanitise(final Message message) {
+        if (!SensitiveMessageHelper.hasSensitiveFields(message.getDescriptorForType())) {
+            return message;
+        }
+        return SensitiveMessageHelper.mapSensitiveFields(message.toBuilder(),
+            SensitiveMessageBenchmark::mask,
+            SensitiveMessageBenchmark::mask,
+            SensitiveMessageBenchmark::mask)
+            .build();
+    }
+    
+    private static List<SensitiveDataContext> mask(final List<SensitiveDataContext> sensitiveData) {
+        final List<SensitiveDataContext> masked = new ArrayList<>(sensitiveData.size());
+        for (final SensitiveDataContext sensitiveDatum : sensitiveData) {
+            masked.add(sensitiveDatum.transformSensitiveData("*****"));
+        }
+        return masked;
+    }
+    
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+            .include(SensitiveMessageBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+    
+}
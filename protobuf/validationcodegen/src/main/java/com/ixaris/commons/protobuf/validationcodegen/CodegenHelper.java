@@ -47,6 +47,33 @@ public final class CodegenHelper {
         return sb.toString();
     }
     
+    /**
+     * Converts a field name to the camel case used by protoc in generated accessors, e.g. aaa_bbb2ccc to AaaBbb2Ccc.
+     * Unlike {@link #convertNameToType(String)}, letters following digits are also capitalised.
+     *
+     * @param fieldName The field name
+     * @return The accessor name without the get / has prefix
+     */
+    public static String convertFieldNameToAccessor(final String fieldName) {
+        final StringBuilder sb = new StringBuilder(fieldName.length());
+        boolean capitaliseNext = true;
+        for (final char c : fieldName.toCharArray()) {
+            if ((c >= 'a') && (c <= 'z')) {
+                sb.append(capitaliseNext ? Character.toUpperCase(c) : c);
+                capitaliseNext = false;
+            } else if ((c >= 'A') && (c <= 'Z')) {
+                sb.append(c);
+                capitaliseNext = false;
+            } else if ((c >= '0') && (c <= '9')) {
+                sb.append(c);
+                capitaliseNext = true;
+            } else {
+                capitaliseNext = true;
+            }
+        }
+        return sb.toString();
+    }
+    
     public static String concatenatePackage(final String p, final String... next) {
         return p + (p.isEmpty() ? "" : ".") + String.join(".", next);
     }
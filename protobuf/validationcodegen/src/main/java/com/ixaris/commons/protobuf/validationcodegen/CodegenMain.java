@@ -6,6 +6,7 @@ import static com.ixaris.commons.protobuf.validationcodegen.CodegenHelper.determ
 import static com.ixaris.commons.protobuf.validationcodegen.CodegenHelper.determineOuterClassname;
 import static com.ixaris.commons.protobuf.validationcodegen.CodegenHelper.getOuterClassName;
 import static com.ixaris.commons.protobuf.validationcodegen.CodegenHelper.getTemplate;
+import static com.ixaris.commons.protobuf.validationcodegen.FingerprintGenerator.generateFingerprint;
 import static com.ixaris.commons.protobuf.validationcodegen.ValidationGenerator.extractFieldValidationInfoAndDependencies;
 import static com.ixaris.commons.protobuf.validationcodegen.ValidationGenerator.generateSingleMessageValidation;
 
@@ -121,6 +122,7 @@ public final class CodegenMain implements ProtocPlugin {
         final String javaPackage = determineJavaPackage(fileDescriptor);
         final String outerClassName = determineOuterClassname(fileDescriptor, getOuterClassName(fileDescriptor));
         final String messagePackage = determineJavaInnerPackage(fileDescriptor, javaPackage, outerClassName);
+        final boolean proto3 = "proto3".equals(fileDescriptor.getSyntax());
         
         final List<String> messages = new ArrayList<>(fileDescriptor.getMessageTypeList().size());
         fileDescriptor
@@ -133,7 +135,8 @@ public final class CodegenMain implements ProtocPlugin {
                     protoPackage,
                     messagePackage,
                     fileDescriptor.getOptions().getJavaMultipleFiles() ? "" : "    ",
-                    fileDescriptor.getOptions().getJavaMultipleFiles() ? "" : "static ");
+                    fileDescriptor.getOptions().getJavaMultipleFiles() ? "" : "static ",
+                    proto3);
                 
                 if (fileDescriptor.getOptions().getJavaMultipleFiles()) {
                     
@@ -173,7 +176,8 @@ public final class CodegenMain implements ProtocPlugin {
                                         final String protoPackage,
                                         final String messagePackage,
                                         final String tab,
-                                        final String staticStr) {
+                                        final String staticStr,
+                                        final boolean proto3) {
         final Map<String, FieldValidationInfo> fieldValidations = new HashMap<>();
         final DirectedAcyclicGraph<String> fieldDependencies = new DirectedAcyclicGraph<>();
         final List<MessageValidationInfo> messageValidations = new ArrayList<>();
@@ -216,7 +220,8 @@ public final class CodegenMain implements ProtocPlugin {
                     protoPackage,
                     messagePackage + "." + descriptor.getName(),
                     tab + "    ",
-                    "static "));
+                    "static ",
+                    proto3));
             });
         
         final Map<String, Object> context = new HashMap<>();
@@ -229,6 +234,10 @@ public final class CodegenMain implements ProtocPlugin {
             context.put("keyEnums", messageKeyEnums);
         }
         context.put("validations", validations);
+        final List<String> fingerprints = generateFingerprint(descriptor, proto3);
+        if (fingerprints != null) {
+            context.put("fingerprints", fingerprints);
+        }
         context.put("messages", messages);
         
         return JIN_JAVA.render(getTemplate("MessageValidationTemplate.jinja"), context);
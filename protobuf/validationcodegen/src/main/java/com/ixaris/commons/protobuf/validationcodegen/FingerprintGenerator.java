@@ -0,0 +1,143 @@
+package com.ixaris.commons.protobuf.validationcodegen;
+
+import static com.ixaris.commons.protobuf.validationcodegen.CodegenHelper.convertFieldNameToAccessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto.Label;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor.JavaType;
+
+/**
+ * Generates the statements of a per message fingerprint function, computing the same fingerprint as the reflective
+ * MessageHelper.fingerprint() (which walks getAllFields()) using the generated accessors, without reflection or
+ * boxing. Fields are combined in field number order, as getAllFields() is sorted by field number, using the field
+ * fingerprint functions in MessageFingerprint.
+ */
+final class FingerprintGenerator {
+    
+    // protoc renames the accessors of fields with these names, so such messages are left to the reflective fingerprint
+    private static final Set<String> RENAMED_FIELD_NAMES = new HashSet<>(Arrays.asList("class",
+        "cached_size",
+        "serialized_size",
+        "default_instance_for_type",
+        "descriptor_for_type",
+        "parser_for_type",
+        "initialization_error_string",
+        "unknown_fields",
+        "all_fields",
+        "initialized"));
+    
+    /**
+     * @param descriptor the message descriptor
+     * @param proto3 true if the message is defined in a proto3 file, where enum values are accessible as ints and
+     *     singular fields have no presence (hence unset fields have default values)
+     * @return the statements of the fingerprint function for message m, accumulating into f, or null if a fingerprint
+     *     function cannot be generated for this message
+     */
+    static List<String> generateFingerprint(final DescriptorProto descriptor, final boolean proto3) {
+        if (descriptor.getExtensionRangeCount() > 0) {
+            // getAllFields() includes extensions
+            return null;
+        }
+        
+        final List<FieldDescriptorProto> fields = new ArrayList<>(descriptor.getFieldList());
+        fields.sort(Comparator.comparingInt(FieldDescriptorProto::getNumber));
+        
+        final List<String> statements = new ArrayList<>(fields.size());
+        for (final FieldDescriptorProto field : fields) {
+            if (RENAMED_FIELD_NAMES.contains(field.getName())) {
+                return null;
+            }
+            statements.add(generateFieldFingerprint(descriptor, field, proto3));
+        }
+        return statements;
+    }
+    
+    private static String generateFieldFingerprint(final DescriptorProto descriptor,
+                                                   final FieldDescriptorProto field,
+                                                   final boolean proto3) {
+        final String name = convertFieldNameToAccessor(field.getName());
+        final JavaType javaType = FieldDescriptor.Type.valueOf(field.getType()).getJavaType();
+        
+        if (field.getLabel() != Label.LABEL_REPEATED) {
+            final String value = (javaType == JavaType.ENUM) ? enumValue("m", name, "", proto3) : "m.get" + name + "()";
+            final String statement = "f = combine(f, fingerprint(" + value + "));";
+            // proto2 fields may have a non-default value when not present, e.g. [default = 1]
+            return proto3 ? statement : ("if (m.has" + name + "()) { " + statement + " }");
+        }
+        
+        final DescriptorProto mapEntry = (javaType == JavaType.MESSAGE) ? descriptor
+            .getNestedTypeList()
+            .stream()
+            .filter(n -> n.getOptions().getMapEntry() && field.getTypeName().endsWith("." + descriptor.getName() + "." + n.getName()))
+            .findAny()
+            .orElse(null) : null;
+        
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{ long l = m.get").append(name).append("Count(); ");
+        if (mapEntry != null) {
+            // map entries are messages with key and value fields, both always present
+            final JavaType keyType = FieldDescriptor.Type.valueOf(mapEntry.getField(0).getType()).getJavaType();
+            final JavaType valueType = FieldDescriptor.Type.valueOf(mapEntry.getField(1).getType()).getJavaType();
+            final boolean enumValues = valueType == JavaType.ENUM;
+            sb.append("for (final java.util.Map.Entry<?, ?> e : m.get")
+                .append(name)
+                .append((enumValues && proto3) ? "ValueMap" : "Map")
+                .append("().entrySet()) { l = combine(l, combine(combine(0L, fingerprint(")
+                .append(mapValue("e.getKey()", keyType, proto3))
+                .append(")), fingerprint(")
+                .append(mapValue("e.getValue()", valueType, proto3))
+                .append("))); } ");
+        } else {
+            final String value = (javaType == JavaType.ENUM) ? enumValue("m", name, "i", proto3) : "m.get" + name + "(i)";
+            sb.append("for (int i = 0; i < m.get")
+                .append(name)
+                .append("Count(); i++) { l = combine(l, fingerprint(")
+                .append(value)
+                .append(")); } ");
+        }
+        sb.append("f = combine(f, l); }");
+        return sb.toString();
+    }
+    
+    private static String enumValue(final String m, final String name, final String index, final boolean proto3) {
+        // proto3 enum accessors return the number even for unrecognised values
+        return proto3 ? (m + ".get" + name + "Value(" + index + ")") : (m + ".get" + name + "(" + index + ").getNumber()");
+    }
+    
+    private static String mapValue(final String value, final JavaType javaType, final boolean proto3) {
+        switch (javaType) {
+            case INT:
+                return "(Integer) " + value;
+            case LONG:
+                return "(Long) " + value;
+            case FLOAT:
+                return "(Float) " + value;
+            case DOUBLE:
+                return "(Double) " + value;
+            case BOOLEAN:
+                return "(Boolean) " + value;
+            case STRING:
+                return "(String) " + value;
+            case BYTE_STRING:
+                return "(com.google.protobuf.ByteString) " + value;
+            case ENUM:
+                return proto3 ? ("(Integer) " + value) : ("((com.google.protobuf.ProtocolMessageEnum) " + value + ").getNumber()");
+            case MESSAGE:
+                return "(com.google.protobuf.MessageLite) " + value;
+            default:
+                throw new UnsupportedOperationException("Unable to fingerprint field of type " + javaType);
+        }
+    }
+    
+    private FingerprintGenerator() {}
+    
+}
@@ -14,8 +14,6 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
@@ -34,6 +32,8 @@ import com.ixaris.commons.async.lib.Async;
 import com.ixaris.commons.async.lib.AsyncExecutor;
 import com.ixaris.commons.async.lib.AsyncTrace;
 import com.ixaris.commons.async.lib.FutureAsync;
+import com.ixaris.commons.async.lib.scheduler.HashedWheelTimer;
+import com.ixaris.commons.async.lib.scheduler.HashedWheelTimer.Timeout;
 import com.ixaris.commons.async.lib.scheduler.Scheduler;
 import com.ixaris.commons.clustering.lib.common.ClusterNodeInfo;
 import com.ixaris.commons.clustering.lib.common.ClusterShardResolver;
@@ -64,7 +64,7 @@ public final class ZMQServiceOperationDispatcherRegistry extends ZMQAfterContext
         private final BiConsumer<? super ResponseEnvelope, ? super Throwable> relayConsumer;
         
         private int retry = 20;
-        private ScheduledFuture<?> scheduledTask;
+        private Timeout timeout;
         
         private PendingOperation(final ZMQServiceOperationDispatcher dispatcher,
                                  final RequestEnvelope request,
@@ -76,7 +76,7 @@ public final class ZMQServiceOperationDispatcherRegistry extends ZMQAfterContext
         
     }
     
-    private final ScheduledExecutorService executor;
+    private final HashedWheelTimer operationTimeouts;
     private final ServiceDiscovery serviceDiscovery;
     private final ZMQProxySettings proxySettings;
     
@@ -87,17 +87,17 @@ public final class ZMQServiceOperationDispatcherRegistry extends ZMQAfterContext
     private final ConcurrentLinkedQueue<PendingOperation> pendingOperationsQueue = new ConcurrentLinkedQueue<>();
     private final Map<PendingKey, PendingOperation> waitingOperationResponses = new ConcurrentHashMap<>();
     
-    public ZMQServiceOperationDispatcherRegistry(final ScheduledExecutorService executor,
+    public ZMQServiceOperationDispatcherRegistry(final HashedWheelTimer operationTimeouts,
                                                  final ServiceDiscovery serviceDiscovery) {
-        this(executor, serviceDiscovery, null);
+        this(operationTimeouts, serviceDiscovery, null);
     }
     
-    public ZMQServiceOperationDispatcherRegistry(final ScheduledExecutorService executor,
+    public ZMQServiceOperationDispatcherRegistry(final HashedWheelTimer operationTimeouts,
                                                  final ServiceDiscovery serviceDiscovery,
                                                  final ZMQProxySettings proxySettings) {
         super(ZMQServiceOperationDispatcherRegistry.class.getSimpleName());
         
-        this.executor = executor;
+        this.operationTimeouts = operationTimeouts;
         this.serviceDiscovery = serviceDiscovery;
         this.proxySettings = proxySettings;
         this.wakeThread = new ZMQWakeThread(getName() + "-WAKE");
@@ -223,10 +223,11 @@ public final class ZMQServiceOperationDispatcherRegistry extends ZMQAfterContext
                 final PendingKey key = PendingKey.from(requestEnvelope);
                 final PendingOperation duplicate = waitingOperationResponses.put(key, pendingOperation);
                 if (duplicate != null) {
+                    duplicate.timeout.cancel();
                     cancelOperationDueToTimeout(duplicate, "Duplicate concurrent request");
                 }
                 
-                pendingOperation.scheduledTask = executor.schedule(
+                pendingOperation.timeout = operationTimeouts.newTimeout(
                     () -> cancelOperationDueToTimeout(waitingOperationResponses.remove(key), "Timed out"),
                     extractTimeout(pendingOperation.request),
                     TimeUnit.MILLISECONDS);
@@ -291,7 +292,7 @@ public final class ZMQServiceOperationDispatcherRegistry extends ZMQAfterContext
         // It is possible that the callback was consumed by a timeout before the response was obtained.
         // In this case ignore response.
         if (pendingOperation != null) {
-            pendingOperation.scheduledTask.cancel(false); // try to cancel the timeout
+            pendingOperation.timeout.cancel(); // try to cancel the timeout
             pendingOperation.relayConsumer.accept(responseEnvelope, null);
         }
     }
@@ -5,6 +5,7 @@ import java.util.Set;
 
 import com.ixaris.commons.async.lib.AsyncExecutor;
 import com.ixaris.commons.async.lib.filter.AsyncFilterNext;
+import com.ixaris.commons.async.lib.scheduler.HashedWheelTimer;
 import com.ixaris.commons.microservices.lib.client.support.ServiceClientLoggingFilterFactory;
 import com.ixaris.commons.microservices.lib.client.support.ServiceClientSupport;
 import com.ixaris.commons.microservices.lib.client.support.ServiceOperationDispatcher;
@@ -30,7 +31,7 @@ public class TestZMQServiceClientSupport extends ServiceClientSupport {
             ServiceHandlerStrategy.PASSTHROUGH,
             logging ? Collections.singleton(new ServiceClientLoggingFilterFactory()) : Collections.emptySet(),
             null);
-        operationDispatcherRegistry = new ZMQServiceOperationDispatcherRegistry(AsyncExecutor.DEFAULT, localService);
+        operationDispatcherRegistry = new ZMQServiceOperationDispatcherRegistry(HashedWheelTimer.commonTimer(), localService);
     }
     
     @Override